@@ -0,0 +1,25 @@
+#!/bin/sh
+# Dumps the AppCDS archive of the JTodo GUI, run after building the JTodo:jar artifact.
+#
+# Starts JTodo once, up to the point where the task list is interactive and the other frames'
+# classes are loaded, and archives every class loaded until then. jtodo-gui.sh and
+# startup-bench.sh map the archive instead of loading and verifying those classes again.
+# Needs a display, as the training run shows the main frame.
+
+DIR=$(cd "$(dirname "$0")" && pwd)
+CP=${JTODO_JAR:-$DIR/out/artifacts/JTodo_jar/JTodo.jar}
+ARCHIVE=${JTODO_CDS_ARCHIVE:-$DIR/out/jtodo.jsa}
+
+if [ ! -f "$CP" ]; then
+  echo "$CP not found, build the JTodo:jar artifact first." >&2
+  exit 1
+fi
+mkdir -p "$(dirname "$ARCHIVE")"
+rm -f "$ARCHIVE"
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -Xlog:cds=off -Xlog:cds+dynamic=off \
+  -Djtodo.startup.exit=true $JTODO_JAVA_OPTS -cp "$CP" Main || {
+  # The JVM dumps the archive even when the training run fails
+  rm -f "$ARCHIVE"
+  exit 1
+}
+echo "Wrote $ARCHIVE"
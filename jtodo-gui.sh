@@ -0,0 +1,13 @@
+#!/bin/sh
+# Starts the JTodo GUI, mapping the AppCDS archive written by build-cds.sh if there is one.
+
+DIR=$(cd "$(dirname "$0")" && pwd)
+CP=${JTODO_JAR:-$DIR/out/artifacts/JTodo_jar/JTodo.jar}
+ARCHIVE=${JTODO_CDS_ARCHIVE:-$DIR/out/jtodo.jsa}
+
+OPTS=""
+if [ "${JTODO_CDS:-on}" != "off" ] && [ -f "$ARCHIVE" ]; then
+  OPTS="-XX:SharedArchiveFile=$ARCHIVE -Xlog:cds=off -Xlog:cds+dynamic=off"
+fi
+
+exec java $OPTS $JTODO_JAVA_OPTS -cp "$CP" Main "$@"
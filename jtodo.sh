@@ -0,0 +1,19 @@
+#!/bin/sh
+# Headless JTodo command line, e.g. ./jtodo.sh list --todo
+#
+# Expects the JTodo:jar artifact built by IDEA (or JTODO_JAR). AppCDS only archives classes
+# loaded from JARs. On JDK 21+ the first run dumps an archive of the classes it loaded, later
+# runs map it instead of loading and verifying those classes again. Set JTODO_CDS=off to disable.
+
+DIR=$(cd "$(dirname "$0")" && pwd)
+CP=${JTODO_JAR:-$DIR/out/artifacts/JTodo_jar/JTodo.jar}
+ARCHIVE=${JTODO_CDS_ARCHIVE:-$DIR/out/jtodo-cli.jsa}
+
+# Short-lived process: C1 only, small heap, serial GC start fastest.
+OPTS="-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Xss512k -Djava.awt.headless=true"
+if [ "${JTODO_CDS:-on}" != "off" ]; then
+  mkdir -p "$(dirname "$ARCHIVE")"
+  OPTS="$OPTS -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=$ARCHIVE -Xlog:cds=off -Xlog:cds+dynamic=off"
+fi
+
+exec java $OPTS $JTODO_JAVA_OPTS -cp "$CP" cli.JTodoCli "$@"
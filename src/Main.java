@@ -1,5 +1,15 @@
+import frame.EdtWatchdog;
 import frame.MainFrame;
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.nio.file.Path;
 import javax.swing.*;
+import metrics.JfrEvents;
+import metrics.MetricsRegistry;
+import metrics.StartupTimeline;
+import server.ApiServer;
+import sync.FileCalendarServer;
+import sync.SyncEngine;
 import task.TaskManager;
 import utils.Settings;
 
@@ -8,17 +18,106 @@ import utils.Settings;
  */
 public class Main {
 
+  private static final long SYNC_INTERVAL_MILLIS = 30_000;
+  private static final long METRICS_DUMP_SECONDS = 60;
+  // Only accessed on the EDT
+  private static MainFrame mainFrame;
+
   /**
-   * Entry point of this programme.
+   * Entry point of this programme. The main frame is shown while the settings and the tasks
+   * are loaded on another thread; it shows the tasks once they are loaded.
    *
    * @param args args from command line.
    */
   public static void main(String[] args) {
-    Settings.getInstance();
-    TaskManager.getInstance();
+    StartupTimeline.mark(StartupTimeline.MAIN);
+    // Otherwise the frame fails on the EDT and the rest starts anyway, e.g. for a CDS dump
+    if (GraphicsEnvironment.isHeadless()) {
+      System.err.println("No display available, cannot show the main frame.");
+      System.exit(1);
+    }
     SwingUtilities.invokeLater(() -> {
-      MainFrame mainFrame = new MainFrame();
+      mainFrame = new MainFrame();
       mainFrame.setVisible(true);
     });
+    new Thread(Main::load, "jtodo-startup").start();
+  }
+
+  /**
+   * Loads the settings and the tasks, then starts the services depending on them.
+   */
+  private static void load() {
+    try {
+      Settings.getInstance().watch();
+      StartupTimeline.mark(StartupTimeline.SETTINGS);
+      startMetrics();
+      startEdtWatchdog();
+      TaskManager.getInstance();
+      StartupTimeline.mark(StartupTimeline.TASKS_LOADED);
+      // Queued after the creation of the frame, so mainFrame is set by then
+      SwingUtilities.invokeLater(() -> mainFrame.tasksLoaded());
+      startSync();
+      startApiServer();
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Starts background sync if a sync directory is configured.
+   */
+  private static void startSync() {
+    String directory = Settings.getInstance().getSyncDirectory();
+    if (directory.isEmpty()) {
+      return;
+    }
+    try {
+      SyncEngine engine = new SyncEngine(TaskManager.getInstance(),
+              new FileCalendarServer(Path.of(directory)));
+      engine.start(SYNC_INTERVAL_MILLIS);
+    } catch (IOException e) {
+      System.err.println("Failed to start sync: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Starts the local HTTP API if a port is configured.
+   */
+  private static void startApiServer() {
+    int port = Settings.getInstance().getApiPort();
+    if (port <= 0) {
+      return;
+    }
+    try {
+      new ApiServer(TaskManager.getInstance(), port).start();
+    } catch (IOException e) {
+      System.err.println("Failed to start API server: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Starts sampling stalls of the event dispatch thread if a threshold is configured.
+   */
+  private static void startEdtWatchdog() {
+    int thresholdMillis = Settings.getInstance().getEdtStallMillis();
+    if (thresholdMillis > 0) {
+      new EdtWatchdog(thresholdMillis, Path.of(Settings.getInstance().getEdtStallFile())).install();
+    }
+  }
+
+  /**
+   * Exposes metrics through JMX and, if configured, dumps them to a file and registers the
+   * Flight Recorder events.
+   */
+  private static void startMetrics() {
+    MetricsRegistry.getInstance().enableJmx();
+    if (Settings.getInstance().getJfrEventsSetting()) {
+      JfrEvents.enable();
+    }
+    String file = Settings.getInstance().getMetricsFile();
+    if (!file.isEmpty()) {
+      MetricsRegistry.getInstance().startDumping(Path.of(file), METRICS_DUMP_SECONDS);
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package bench;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import task.Task;
+import task.TaskManager;
+
+/**
+ * Measures agenda queries on a large in-memory store: paging month by month through two years
+ * with the interval index, compared with filtering and sorting all tasks for the same windows.
+ * Tasks start at a random time within the two years and last from an hour to a month.
+ * Usage: {@code java bench.AgendaBenchmark [taskCount]}, 500000 tasks by default.
+ */
+public class AgendaBenchmark {
+
+  private static final int MONTHS = 24;
+  private static final long HOUR_MILLIS = 3_600_000L;
+
+  /**
+   * Entry point of the benchmark.
+   *
+   * @param args optional task count.
+   */
+  public static void main(String[] args) {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+
+    ZoneId zone = ZoneId.systemDefault();
+    LocalDate first = LocalDate.now().withDayOfMonth(1);
+    long firstMillis = first.atStartOfDay(zone).toInstant().toEpochMilli();
+    long spanHours = (first.plusMonths(MONTHS).atStartOfDay(zone).toInstant().toEpochMilli()
+            - firstMillis) / HOUR_MILLIS;
+
+    TaskManager manager = TaskManager.createInMemory();
+    Random random = new Random(42);
+    long startNanos = System.nanoTime();
+    manager.batch(tx -> {
+      for (int i = 0; i < count; i++) {
+        long start = firstMillis + (long) (random.nextDouble() * spanHours) * HOUR_MILLIS;
+        long due = start + (1 + random.nextInt(30 * 24)) * HOUR_MILLIS;
+        tx.addTask(new Task(UUID.randomUUID().toString(), "Task " + i, new Date(start),
+                new Date(due)));
+      }
+    });
+    report("add task", startNanos, count, 0);
+
+    for (int round = 0; round < 3; round++) {
+      long found = 0;
+      startNanos = System.nanoTime();
+      for (int month = 0; month < MONTHS; month++) {
+        found += manager.getTasksInRange(TaskManager.QueryMode.ALL,
+                first.plusMonths(month).atStartOfDay(zone).toInstant().toEpochMilli(),
+                first.plusMonths(month + 1).atStartOfDay(zone).toInstant().toEpochMilli()).size();
+      }
+      report("month page, interval index", startNanos, MONTHS, found / MONTHS);
+
+      List<Task> all = manager.getTasks();
+      found = 0;
+      startNanos = System.nanoTime();
+      for (int month = 0; month < MONTHS; month++) {
+        long from = first.plusMonths(month).atStartOfDay(zone).toInstant().toEpochMilli();
+        long to = first.plusMonths(month + 1).atStartOfDay(zone).toInstant().toEpochMilli();
+        found += all.stream()
+                .filter(task -> task.getStartMillis() < to && task.getExpectedEndMillis() >= from)
+                .sorted(Comparator.comparingLong(Task::getExpectedEndMillis))
+                .count();
+      }
+      report("month page, full scan", startNanos, MONTHS, found / MONTHS);
+    }
+
+    startNanos = System.nanoTime();
+    long found = 0;
+    for (int day = 0; day < 365; day++) {
+      found += manager.getTasksInRange(TaskManager.QueryMode.ALL,
+              first.plusDays(day).atStartOfDay(zone).toInstant().toEpochMilli(),
+              first.plusDays(day + 1).atStartOfDay(zone).toInstant().toEpochMilli()).size();
+    }
+    report("day page, interval index", startNanos, 365, found / 365);
+  }
+
+  private static void report(String name, long startNanos, long operations, long results) {
+    long elapsedNanos = System.nanoTime() - startNanos;
+    System.out.printf("%-32s %10.3f ms total %10.3f ms/op %8d tasks/op%n", name,
+            elapsedNanos / 1e6, elapsedNanos / 1e6 / operations, results);
+  }
+}
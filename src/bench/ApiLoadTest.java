@@ -0,0 +1,129 @@
+package bench;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import server.ApiServer;
+import task.Task;
+import task.TaskManager;
+
+/**
+ * Load test for the HTTP API. Starts an {@link ApiServer} over an in-memory TaskManager and
+ * drives it from many virtual-thread clients with a read-heavy mix: paged lists, single reads,
+ * completion toggles and creations.
+ * Usage: {@code java bench.ApiLoadTest [clients] [seconds] [tasks]}, defaults 64, 10, 10000.
+ */
+public class ApiLoadTest {
+
+  private static final int MAX_SAMPLES = 1 << 20;
+
+  /**
+   * Entry point of the load test.
+   *
+   * @param args optional client count, duration in seconds and task count.
+   * @throws IOException          if the server cannot start.
+   * @throws InterruptedException if interrupted while waiting for clients.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int taskCount = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+
+    TaskManager manager = TaskManager.createInMemory();
+    long now = System.currentTimeMillis();
+    manager.batch(tx -> {
+      for (int i = 0; i < taskCount; i++) {
+        tx.addTask(new Task("Task " + i, new Date(now + i * 60_000L)));
+      }
+    });
+    int firstId = manager.getTasks().get(0).getId();
+
+    try (ApiServer server = new ApiServer(manager, 0)) {
+      server.start();
+      String base = "http://127.0.0.1:" + server.getPort();
+      HttpClient client = HttpClient.newBuilder()
+              .executor(Executors.newVirtualThreadPerTaskExecutor())
+              .build();
+      long[] latencies = new long[MAX_SAMPLES];
+      AtomicInteger samples = new AtomicInteger();
+      AtomicLong errors = new AtomicLong();
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+      ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+      for (int c = 0; c < clients; c++) {
+        workers.submit(() -> {
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          while (System.nanoTime() < deadline) {
+            HttpRequest request = nextRequest(base, random, firstId, taskCount);
+            long start = System.nanoTime();
+            try {
+              HttpResponse<Void> response = client.send(request,
+                      HttpResponse.BodyHandlers.discarding());
+              if (response.statusCode() >= 400) {
+                errors.incrementAndGet();
+              }
+            } catch (IOException | InterruptedException e) {
+              errors.incrementAndGet();
+            }
+            int index = samples.getAndIncrement();
+            if (index < MAX_SAMPLES) {
+              latencies[index] = System.nanoTime() - start;
+            }
+          }
+          return null;
+        });
+      }
+      workers.shutdown();
+      workers.awaitTermination(seconds + 30L, TimeUnit.SECONDS);
+
+      int count = Math.min(samples.get(), MAX_SAMPLES);
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      System.out.printf("%d clients, %d s: %d requests, %.0f req/s, %d errors%n",
+              clients, seconds, samples.get(), samples.get() / (double) seconds, errors.get());
+      System.out.printf("latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+              percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0));
+      System.out.println("tasks after run: " + manager.getTasks().size());
+    }
+  }
+
+  private static HttpRequest nextRequest(String base, ThreadLocalRandom random, int firstId,
+                                         int taskCount) {
+    int id = firstId + random.nextInt(taskCount);
+    int pick = random.nextInt(100);
+    if (pick < 50) {
+      return HttpRequest.newBuilder(URI.create(base + "/tasks/" + id)).GET().build();
+    } else if (pick < 80) {
+      return HttpRequest.newBuilder(URI.create(base + "/tasks?sort=DUE&offset="
+              + random.nextInt(taskCount) + "&limit=20")).GET().build();
+    } else if (pick < 95) {
+      return HttpRequest.newBuilder(URI.create(base + "/tasks/" + id))
+              .PUT(HttpRequest.BodyPublishers.ofString(
+                      "{\"completed\":" + random.nextBoolean() + "}"))
+              .build();
+    } else {
+      return HttpRequest.newBuilder(URI.create(base + "/tasks"))
+              .POST(HttpRequest.BodyPublishers.ofString("{\"title\":\"Load\",\"expectedEndTime\":"
+                      + System.currentTimeMillis() + "}"))
+              .build();
+    }
+  }
+
+  private static double percentile(long[] sorted, double fraction) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+    return sorted[Math.max(0, index)] / 1e6;
+  }
+}
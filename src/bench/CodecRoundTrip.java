@@ -0,0 +1,233 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+import task.Compression;
+import task.Subtask;
+import task.Tag;
+import task.Task;
+import task.TaskManager;
+
+/**
+ * Checks that every compression of the task file reads back what it wrote. First each codec
+ * round-trips random, repetitive and text-like blocks, among them the lengths around its
+ * boundaries: empty, one minimum match, the literals kept at the end, and both together. Then a
+ * store is saved, edited, saved again reusing the unchanged records, and reopened, for each
+ * compression. Prints each failure and exits with status 1 if there was any.
+ * Usage: {@code java bench.CodecRoundTrip [taskCount]}, 5000 tasks by default.
+ */
+public class CodecRoundTrip {
+
+  private static final int[] LENGTHS = {0, 1, 4, 5, 8, 9, 12, 13, 14, 255, 256, 4096, 65535,
+      65536};
+  private static final Counter ENCODED =
+          MetricsRegistry.getInstance().counter("task.save.encodedBytes");
+  private static final Counter REUSED =
+          MetricsRegistry.getInstance().counter("task.save.reusedBytes");
+
+  private static final List<String> failures = new ArrayList<>();
+  private static int checks;
+
+  /**
+   * Entry point of the check.
+   *
+   * @param args optional task count.
+   * @throws IOException            if the temporary file cannot be written.
+   * @throws ClassNotFoundException if a saved file cannot be read back.
+   */
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    Random random = new Random(42);
+    for (Compression compression : Compression.values()) {
+      for (int length : LENGTHS) {
+        checkBlock(compression, "random", randomBytes(random, length));
+        checkBlock(compression, "repetitive", new byte[length]);
+        checkBlock(compression, "text", textBytes(length));
+      }
+    }
+    Path file = Files.createTempFile("jtodo-roundtrip", ".data");
+    try {
+      for (Compression compression : Compression.values()) {
+        checkFile(compression, file, count, random);
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+    for (String failure : failures) {
+      System.out.println("FAILED: " + failure);
+    }
+    System.out.println((checks - failures.size()) + " of " + checks + " checks passed");
+    if (!failures.isEmpty()) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Round-trips a block, passing a longer buffer than the block and reading the compressed
+   * block at an offset, as the task file does.
+   */
+  private static void checkBlock(Compression compression, String kind, byte[] raw) {
+    String name = compression + " " + kind + " " + raw.length + " bytes";
+    byte[] padded = Arrays.copyOf(raw, raw.length + 7);
+    Arrays.fill(padded, raw.length, padded.length, (byte) 0x5A);
+    try {
+      byte[] stored = compression.compress(padded, raw.length);
+      byte[] framed = new byte[stored.length + 10];
+      System.arraycopy(stored, 0, framed, 3, stored.length);
+      check(Arrays.equals(raw, compression.decompress(framed, 3, stored.length, raw.length)),
+              name + ": decompressed bytes differ");
+    } catch (IOException | RuntimeException e) {
+      check(false, name + ": " + e);
+    }
+  }
+
+  private static byte[] randomBytes(Random random, int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] textBytes(int length) {
+    byte[] sentence = "The quick brown fox jumps over the lazy dog. ".getBytes();
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = sentence[i % sentence.length];
+    }
+    return bytes;
+  }
+
+  /**
+   * Saves a store, then edits, saves and reopens it a few times, checking that the file reads
+   * back as the store and that unchanged records were copied rather than encoded again.
+   */
+  private static void checkFile(Compression compression, Path file, int count, Random random)
+          throws IOException, ClassNotFoundException {
+    Files.deleteIfExists(file);
+    TaskManager manager = TaskManager.createInMemory();
+    manager.setCompression(compression);
+    manager.batch(tx -> {
+      for (int i = 0; i < count; i++) {
+        tx.addTask(newTask(random, i));
+      }
+    });
+    long fullEncoded = save(manager, file)[0];
+    checkReopened(compression + " after a full save", manager, file);
+
+    for (int round = 0; round < 3; round++) {
+      List<Task> tasks = manager.getTasks();
+      int edited = round;
+      manager.batch(tx -> {
+        for (int k = 0; k < Math.max(1, count / 100); k++) {
+          // Within the first tenth, so that a compressed file keeps blocks to reuse
+          Task task = tasks.get(random.nextInt(Math.max(1, tasks.size() / 10)));
+          switch (random.nextInt(4)) {
+            case 0 -> tx.setDescription(task, "Edited in round " + edited + " ü");
+            case 1 -> tx.updateHeat(task);
+            case 2 -> tx.addSubtask(task, new Subtask("Added " + k, null));
+            default -> tx.setTag(task, random.nextBoolean() ? null
+                    : new Tag("tag" + k, "#00ff00", null));
+          }
+        }
+        tx.removeTask(tasks.get(random.nextInt(Math.max(1, tasks.size() / 10))));
+        tx.addTask(newTask(random, count + edited));
+      });
+      long[] bytes = save(manager, file);
+      String name = compression + " after edit round " + round;
+      check(bytes[1] > 0, name + ": no record was reused");
+      if (compression == Compression.NONE) {
+        check(bytes[0] < fullEncoded / 2, name + ": encoded " + bytes[0] + " of "
+                + fullEncoded + " bytes");
+      }
+      checkReopened(name, manager, file);
+    }
+
+    long[] unchanged = save(manager, file);
+    check(compression != Compression.NONE || unchanged[0] < 1024,
+            compression + " save without changes: encoded " + unchanged[0] + " bytes");
+    checkReopened(compression + " after a save without changes", manager, file);
+  }
+
+  private static Task newTask(Random random, int index) {
+    Task task = new Task(UUID.randomUUID().toString(), "Task " + index, new Date(),
+            new Date(System.currentTimeMillis() + random.nextInt(1 << 30)));
+    switch (index % 3) {
+      case 0 -> task.setDescription("Description of task " + index + ", 任务说明");
+      case 1 -> task.setDescription("");
+      default -> {
+        // No description
+      }
+    }
+    if (index % 5 == 0) {
+      task.setTag(new Tag("work", "#ff0000", null));
+    }
+    if (index % 4 == 0) {
+      Subtask parent = new Subtask("Step " + index, task);
+      task.addSubtask(parent);
+      Subtask child = new Subtask("Detail " + index, task);
+      child.setParentSubtask(parent);
+      task.addSubtask(child);
+    }
+    if (index % 7 == 0) {
+      task.setCompleted(true);
+    }
+    return task;
+  }
+
+  /**
+   * Saves the store.
+   *
+   * @return the bytes encoded and the bytes copied from the previous file.
+   */
+  private static long[] save(TaskManager manager, Path file) throws IOException {
+    long encoded = ENCODED.getValue();
+    long reused = REUSED.getValue();
+    manager.saveTasksToFile(file.toString());
+    return new long[] {ENCODED.getValue() - encoded, REUSED.getValue() - reused};
+  }
+
+  private static void checkReopened(String name, TaskManager manager, Path file)
+          throws IOException, ClassNotFoundException {
+    TaskManager reopened = TaskManager.open(file.toString());
+    check(describe(manager).equals(describe(reopened)), name + ": reopened tasks differ");
+  }
+
+  private static String describe(TaskManager manager) {
+    StringBuilder text = new StringBuilder();
+    for (Task task : manager.getTasks()) {
+      Tag tag = task.getTag();
+      text.append(task.getId()).append('|').append(task.getUid()).append('|')
+              .append(task.getTitle()).append('|').append(task.getDescription()).append('|')
+              .append(task.isCompleted()).append('|').append(task.getStartMillis()).append('|')
+              .append(task.getExpectedEndMillis()).append('|')
+              .append(task.getActualEndMillis()).append('|').append(task.getHeatIndex())
+              .append('|').append(tag == null ? null : tag.getName() + "," + tag.getColor()
+                      + "," + tag.getIcon())
+              .append('|').append(task.getBlockerUids());
+      for (Subtask subtask : task.getSubtasks()) {
+        Subtask parent = subtask.getParentSubtask();
+        text.append('|').append(subtask.getUid()).append(',').append(subtask.getTitle())
+                .append(',').append(subtask.getDescription()).append(',')
+                .append(subtask.isCompleted()).append(',')
+                .append(parent == null ? null : parent.getUid());
+      }
+      text.append('\n');
+    }
+    return text.toString();
+  }
+
+  private static void check(boolean passed, String failure) {
+    checks++;
+    if (!passed) {
+      failures.add(failure);
+    }
+  }
+}
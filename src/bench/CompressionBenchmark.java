@@ -0,0 +1,115 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import task.Compression;
+import task.Task;
+import task.TaskManager;
+
+/**
+ * Compares the compressions of the task file on a large store whose descriptions are prose
+ * built from a small vocabulary: file size and ratio, full save and load throughput, and the
+ * time of a save after 1% of the tasks changed, scattered or appended at the end.
+ * Usage: {@code java bench.CompressionBenchmark [taskCount]}, 500000 tasks by default.
+ */
+public class CompressionBenchmark {
+
+  private static final String[] WORDS = ("the a meeting report review draft send call team "
+          + "budget plan project client update check schedule notes follow up with about for "
+          + "before after monday friday weekly quarterly design test release fix bug document "
+          + "prepare slides agenda email invoice order deliver confirm discuss").split(" ");
+  private static final int ROUNDS = 3;
+
+  /**
+   * Entry point of the benchmark.
+   *
+   * @param args optional task count.
+   * @throws IOException            if a temporary file cannot be written.
+   * @throws ClassNotFoundException if a saved file cannot be loaded.
+   */
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+    Path file = Files.createTempFile("jtodo-compression", ".data");
+    try {
+      TaskManager manager = TaskManager.createInMemory();
+      Random random = new Random(42);
+      manager.batch(tx -> {
+        for (int i = 0; i < count; i++) {
+          Task task = new Task(UUID.randomUUID().toString(),
+                  sentence(random, 2 + random.nextInt(5)), new Date(),
+                  new Date(System.currentTimeMillis() + random.nextInt(1 << 30)));
+          task.setDescription(sentence(random, random.nextInt(60)));
+          tx.addTask(task);
+        }
+      });
+      long rawBytes = 0;
+      System.out.printf("%-8s %12s %7s %11s %11s %12s %12s%n", "codec", "bytes", "ratio",
+              "save MB/s", "load MB/s", "1% scattered", "1% appended");
+      for (Compression compression : Compression.values()) {
+        manager.setCompression(compression);
+        long bytes = 0;
+        double saveMillis = Double.MAX_VALUE;
+        double loadMillis = Double.MAX_VALUE;
+        double scatteredMillis = Double.MAX_VALUE;
+        double appendedMillis = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+          Files.deleteIfExists(file);
+          long startNanos = System.nanoTime();
+          manager.saveTasksToFile(file.toString());
+          saveMillis = Math.min(saveMillis, (System.nanoTime() - startNanos) / 1e6);
+          bytes = Files.size(file);
+
+          startNanos = System.nanoTime();
+          TaskManager.open(file.toString());
+          loadMillis = Math.min(loadMillis, (System.nanoTime() - startNanos) / 1e6);
+
+          List<Task> tasks = manager.getTasks();
+          manager.batch(tx -> {
+            for (int k = 0; k < count / 100; k++) {
+              tx.updateHeat(tasks.get(random.nextInt(tasks.size())));
+            }
+          });
+          startNanos = System.nanoTime();
+          manager.saveTasksToFile(file.toString());
+          scatteredMillis = Math.min(scatteredMillis, (System.nanoTime() - startNanos) / 1e6);
+
+          manager.batch(tx -> {
+            for (int k = 0; k < count / 100; k++) {
+              tx.removeTask(tasks.get(tasks.size() - 1 - k));
+            }
+            for (int k = count / 100 - 1; k >= 0; k--) {
+              Task task = new Task(UUID.randomUUID().toString(), tasks.get(tasks.size() - 1 - k)
+                      .getTitle(), new Date(), new Date());
+              task.setDescription(sentence(random, random.nextInt(60)));
+              tx.addTask(task);
+            }
+          });
+          startNanos = System.nanoTime();
+          manager.saveTasksToFile(file.toString());
+          appendedMillis = Math.min(appendedMillis, (System.nanoTime() - startNanos) / 1e6);
+        }
+        if (compression == Compression.NONE) {
+          rawBytes = bytes;
+        }
+        System.out.printf("%-8s %12d %7.2f %11.1f %11.1f %9.1f ms %9.1f ms%n", compression,
+                bytes, (double) rawBytes / bytes, rawBytes / 1e3 / saveMillis,
+                rawBytes / 1e3 / loadMillis, scatteredMillis, appendedMillis);
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static String sentence(Random random, int words) {
+    StringBuilder sentence = new StringBuilder("Task");
+    for (int i = 0; i < words; i++) {
+      sentence.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return sentence.toString();
+  }
+}
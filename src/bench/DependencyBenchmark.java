@@ -0,0 +1,110 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import task.Task;
+import task.TaskManager;
+
+/**
+ * Measures the dependency graph on a large in-memory store: inserting edges in random order,
+ * rejecting cycles, completing tasks, and computing the ready set and the critical path.
+ * Edges follow a hidden random order of the tasks, unrelated to their creation order, so most
+ * insertions have to reorder part of the maintained topological order.
+ * Usage: {@code java bench.DependencyBenchmark [taskCount] [edgesPerTask]}, 100000 tasks and
+ * 10 edges per task by default.
+ */
+public class DependencyBenchmark {
+
+  private static final int EDGES_PER_BATCH = 10_000;
+
+  /**
+   * Entry point of the benchmark.
+   *
+   * @param args optional task count and number of edges per task.
+   */
+  public static void main(String[] args) {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    int edgesPerTask = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    TaskManager manager = TaskManager.createInMemory();
+    Random random = new Random(42);
+    long now = System.currentTimeMillis();
+    List<Task> tasks = new ArrayList<>(count);
+    manager.batch(tx -> {
+      for (int i = 0; i < count; i++) {
+        Task task = new Task("Task " + i, new Date(now + random.nextInt(365 * 86_400) * 1000L));
+        tx.addTask(task);
+        tasks.add(task);
+      }
+    });
+    // rank[i] is the position of task i in the hidden order; edges go from lower to higher rank
+    int[] byRank = new int[count];
+    for (int i = 0; i < count; i++) {
+      byRank[i] = i;
+    }
+    for (int i = count - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = byRank[i];
+      byRank[i] = byRank[j];
+      byRank[j] = swap;
+    }
+
+    long edges = (long) count * edgesPerTask;
+    long startNanos = System.nanoTime();
+    for (long done = 0; done < edges; done += EDGES_PER_BATCH) {
+      long batchEdges = Math.min(EDGES_PER_BATCH, edges - done);
+      manager.batch(tx -> {
+        for (long i = 0; i < batchEdges; i++) {
+          int a = random.nextInt(count);
+          int b = random.nextInt(count);
+          if (a != b) {
+            tx.addDependency(tasks.get(byRank[Math.min(a, b)]), tasks.get(byRank[Math.max(a, b)]));
+          }
+        }
+      });
+    }
+    report("add edge", startNanos, edges);
+
+    int attempts = 10_000;
+    int rejected = 0;
+    startNanos = System.nanoTime();
+    for (int i = 0; i < attempts; i++) {
+      int a = random.nextInt(count);
+      int b = random.nextInt(count);
+      try {
+        manager.addDependency(tasks.get(byRank[Math.max(a, b)]), tasks.get(byRank[Math.min(a, b)]));
+      } catch (IllegalArgumentException e) {
+        rejected++;
+      }
+    }
+    report("reverse edge (" + rejected + " cycles rejected)", startNanos, attempts);
+
+    startNanos = System.nanoTime();
+    manager.batch(tx -> {
+      for (int rank = 0; rank < count / 2; rank++) {
+        tx.setTaskCompleted(tasks.get(byRank[rank]), true);
+      }
+    });
+    report("complete task", startNanos, count / 2);
+
+    startNanos = System.nanoTime();
+    int ready = manager.getReadyTasks().size();
+    report("ready set (" + ready + " tasks)", startNanos, 1);
+
+    startNanos = System.nanoTime();
+    int pathLength = manager.getCriticalPath().size();
+    report("critical path (" + pathLength + " tasks)", startNanos, 1);
+
+    startNanos = System.nanoTime();
+    manager.getTasks(TaskManager.QueryMode.ALL, TaskManager.SortMode.READY_FIRST);
+    report("READY_FIRST query", startNanos, 1);
+  }
+
+  private static void report(String name, long startNanos, long operations) {
+    long elapsedNanos = System.nanoTime() - startNanos;
+    System.out.printf("%-40s %10.3f ms total %10.3f us/op%n", name, elapsedNanos / 1e6,
+            elapsedNanos / 1e3 / operations);
+  }
+}
@@ -0,0 +1,94 @@
+package bench;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import task.Task;
+import task.TaskManager;
+
+/**
+ * Measures query latency on a large in-memory store, sequentially and on fork/join pools of
+ * 1 to N threads. Parallel query tasks run in the pool of the calling worker, so submitting a
+ * query to a pool of p threads runs it on p cores.
+ * Usage: {@code java bench.QueryBenchmark [taskCount] [maxThreads]}, 2000000 tasks and all
+ * available processors by default.
+ */
+public class QueryBenchmark {
+
+  private static final int ROUNDS = 10;
+
+  /**
+   * Entry point of the benchmark.
+   *
+   * @param args optional task count and maximum number of threads.
+   * @throws ExecutionException   if a query fails.
+   * @throws InterruptedException if interrupted while waiting for a query.
+   */
+  public static void main(String[] args) throws ExecutionException, InterruptedException {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+
+    TaskManager manager = TaskManager.createInMemory();
+    manager.useColumnarTable(true);
+    Random random = new Random(42);
+    long now = System.currentTimeMillis();
+    manager.batch(tx -> {
+      for (int i = 0; i < count; i++) {
+        Task task = new Task("Task " + i, new Date(now + random.nextInt(365 * 86_400) * 1000L));
+        tx.addTask(task);
+        if (random.nextInt(4) == 0) {
+          tx.setTaskCompleted(task, true);
+        }
+      }
+    });
+
+    manager.setParallelQueryThreshold(Integer.MAX_VALUE);
+    report("sequential", manager, null);
+    manager.setParallelQueryThreshold(0);
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      report("parallel x" + threads, manager, pool);
+      pool.shutdown();
+    }
+  }
+
+  private static void report(String name, TaskManager manager, ForkJoinPool pool)
+          throws ExecutionException, InterruptedException {
+    double full = time(pool, () -> manager.getTasks(
+            TaskManager.QueryMode.INCOMPLETE, TaskManager.SortMode.DUE));
+    double top = time(pool, () -> manager.getTopTasks(
+            TaskManager.QueryMode.INCOMPLETE, TaskManager.SortMode.DUE, 50));
+    System.out.printf("%-14s getTasks %8.1f ms   top 50 %8.1f ms%n", name, full, top);
+  }
+
+  private static double time(ForkJoinPool pool, Callable<List<Task>> query)
+          throws ExecutionException, InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      run(pool, query);
+    }
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      run(pool, query);
+    }
+    return (System.nanoTime() - startNanos) / 1e6 / ROUNDS;
+  }
+
+  private static void run(ForkJoinPool pool, Callable<List<Task>> query)
+          throws ExecutionException, InterruptedException {
+    try {
+      if (pool == null) {
+        query.call();
+      } else {
+        pool.submit(query).get();
+      }
+    } catch (ExecutionException | InterruptedException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ExecutionException(e);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package bench;
+
+import frame.TaskRowFormatter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.LongSupplier;
+import task.Task;
+
+/**
+ * Compares the allocation and time per task row of {@link TaskRowFormatter} with the previous
+ * String.format based formatting. Allocation is measured with the per-thread allocation
+ * counter of the HotSpot ThreadMXBean.
+ * Usage: {@code java bench.RowFormatBenchmark [rowCount] [rounds]}, 200 rows and 2000 rounds by
+ * default.
+ */
+public class RowFormatBenchmark {
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+          (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  // Keeps the JIT from discarding the formatted rows
+  static long sink;
+
+  /**
+   * Entry point of the benchmark.
+   *
+   * @param args optional row count and number of rounds.
+   */
+  public static void main(String[] args) {
+    int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    List<Task> tasks = new ArrayList<>(rowCount);
+    long due = System.currentTimeMillis();
+    for (int i = 0; i < rowCount; i++) {
+      Task task = new Task("Task " + i, new Date(due + i * 3_600_000L));
+      task.setDescription("Description of task " + i);
+      tasks.add(task);
+    }
+
+    TaskRowFormatter formatter = new TaskRowFormatter();
+    String[] displayed = new String[rowCount];
+    for (int warmup = 0; warmup < 3; warmup++) {
+      legacy(tasks, rounds);
+      pooled(tasks, formatter, displayed, rounds);
+    }
+    report("String.format", tasks.size() * (long) rounds, () -> legacy(tasks, rounds));
+    report("TaskRowFormatter", tasks.size() * (long) rounds,
+            () -> pooled(tasks, formatter, displayed, rounds));
+  }
+
+  private static long legacy(List<Task> tasks, int rounds) {
+    long length = 0;
+    for (int round = 0; round < rounds; round++) {
+      Date now = null;
+      for (Task task : tasks) {
+        String text = String.format(
+                "<html><b>%s</b><br/>描述: %s<br/>热度: %d<br/>截止时间: %s</html>",
+                task.getTitle(),
+                task.getDescription() != null ? task.getDescription() : "无",
+                task.getHeatIndex(),
+                task.getExpectedEndTime());
+        now = new Date();
+        length += text.length() + (now.after(task.getExpectedEndTime()) ? 1 : 0);
+      }
+    }
+    return length;
+  }
+
+  private static long pooled(List<Task> tasks, TaskRowFormatter formatter, String[] displayed,
+                             int rounds) {
+    long length = 0;
+    for (int round = 0; round < rounds; round++) {
+      long nowMillis = System.currentTimeMillis();
+      for (int i = 0; i < tasks.size(); i++) {
+        Task task = tasks.get(i);
+        CharSequence text = formatter.format(task);
+        // Same check as TaskRow.bind: only a changed row is copied into a String.
+        if (displayed[i] == null || !displayed[i].contentEquals(text)) {
+          displayed[i] = text.toString();
+        }
+        length += text.length() + (nowMillis > task.getExpectedEndMillis() ? 1 : 0);
+      }
+    }
+    return length;
+  }
+
+  private static void report(String name, long rows, LongSupplier run) {
+    long threadId = Thread.currentThread().threadId();
+    long startBytes = THREADS.getThreadAllocatedBytes(threadId);
+    long startNanos = System.nanoTime();
+    sink += run.getAsLong();
+    long nanos = System.nanoTime() - startNanos;
+    long bytes = THREADS.getThreadAllocatedBytes(threadId) - startBytes;
+    System.out.printf("%-18s %8.1f ns/row %8.1f bytes/row%n",
+            name, (double) nanos / rows, (double) bytes / rows);
+  }
+}
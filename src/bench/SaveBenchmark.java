@@ -0,0 +1,76 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+import task.Task;
+import task.TaskManager;
+
+/**
+ * Measures saving a large store to a temporary file: a full save, then saves after changing 1%
+ * of the tasks, which only encode the changed tasks and copy the other records from the
+ * previous file. Reports how many bytes were encoded in the JVM and how many were copied.
+ * Usage: {@code java bench.SaveBenchmark [taskCount]}, 500000 tasks by default.
+ */
+public class SaveBenchmark {
+
+  private static final Counter ENCODED =
+          MetricsRegistry.getInstance().counter("task.save.encodedBytes");
+  private static final Counter REUSED =
+          MetricsRegistry.getInstance().counter("task.save.reusedBytes");
+
+  /**
+   * Entry point of the benchmark.
+   *
+   * @param args optional task count.
+   * @throws IOException if the temporary file cannot be written.
+   */
+  public static void main(String[] args) throws IOException {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+    Path file = Files.createTempFile("jtodo-save", ".data");
+    try {
+      TaskManager manager = TaskManager.createInMemory();
+      Random random = new Random(42);
+      manager.batch(tx -> {
+        for (int i = 0; i < count; i++) {
+          Task task = new Task(UUID.randomUUID().toString(), "Task " + i,
+                  new Date(), new Date(System.currentTimeMillis() + random.nextInt(1 << 30)));
+          task.setDescription("Description of task " + i);
+          tx.addTask(task);
+        }
+      });
+
+      for (int round = 0; round < 3; round++) {
+        Files.deleteIfExists(file);
+        save(manager, file, "full save");
+        for (int i = 0; i < 3; i++) {
+          List<Task> tasks = manager.getTasks();
+          manager.batch(tx -> {
+            for (int k = 0; k < count / 100; k++) {
+              tx.updateHeat(tasks.get(random.nextInt(tasks.size())));
+            }
+          });
+          save(manager, file, "save after 1% changed");
+        }
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static void save(TaskManager manager, Path file, String name) throws IOException {
+    long encoded = ENCODED.getValue();
+    long reused = REUSED.getValue();
+    long startNanos = System.nanoTime();
+    manager.saveTasksToFile(file.toString());
+    long elapsedNanos = System.nanoTime() - startNanos;
+    System.out.printf("%-24s %10.3f ms %12d bytes encoded %12d bytes copied%n", name,
+            elapsedNanos / 1e6, ENCODED.getValue() - encoded, REUSED.getValue() - reused);
+  }
+}
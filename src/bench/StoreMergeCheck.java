@@ -0,0 +1,205 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+import task.Compression;
+import task.Subtask;
+import task.Task;
+import task.TaskManager;
+import task.TaskStore;
+import task.TaskTransaction;
+
+/**
+ * Checks that two stores sharing one task file converge, as two processes would: edits of
+ * different tasks and fields on both sides, the same field changed on both sides, where the
+ * last commit wins, and a task deleted on one side while edited on the other, which keeps it.
+ * The stores commit and refresh in turn, for each compression. Prints each failure and exits
+ * with status 1 if there was any.
+ * Usage: {@code java bench.StoreMergeCheck}.
+ */
+public class StoreMergeCheck {
+
+  private static final int TASK_COUNT = 8;
+
+  private static final List<String> failures = new ArrayList<>();
+  private static int checks;
+
+  /**
+   * Entry point of the check.
+   *
+   * @param args unused.
+   * @throws IOException            if the temporary files cannot be written.
+   * @throws ClassNotFoundException if the task file cannot be read back.
+   */
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    Path directory = Files.createTempDirectory("jtodo-store-check");
+    try {
+      for (Compression compression : Compression.values()) {
+        checkStores(compression, directory.resolve(compression + ".data"));
+      }
+    } finally {
+      try (var files = Files.list(directory)) {
+        for (Path file : files.toList()) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(directory);
+    }
+    for (String failure : failures) {
+      System.out.println("FAILED: " + failure);
+    }
+    System.out.println((checks - failures.size()) + " of " + checks + " checks passed");
+    if (!failures.isEmpty()) {
+      System.exit(1);
+    }
+  }
+
+  private static void checkStores(Compression compression, Path file)
+          throws IOException, ClassNotFoundException {
+    TaskStore first = TaskStore.open(file);
+    first.getManager().setCompression(compression);
+    first.getManager().batch(tx -> {
+      for (int i = 0; i < TASK_COUNT; i++) {
+        Task task = new Task("Task " + i, new Date(System.currentTimeMillis() + i * 60_000L));
+        task.setDescription("Description " + i);
+        tx.addTask(task);
+      }
+    });
+    first.commit();
+    TaskStore second = TaskStore.open(file);
+    second.getManager().setCompression(compression);
+    String name = compression + " ";
+    checkSame(name + "after the first load", first, second);
+
+    // Different tasks and different fields of one task
+    edit(first, 0, (tx, task) -> tx.setDescription(task, "First edit"));
+    edit(first, 1, (tx, task) -> tx.setDescription(task, "First edit"));
+    edit(second, 1, (tx, task) -> tx.setTaskCompleted(task, true));
+    edit(second, 2, (tx, task) -> tx.addSubtask(task, new Subtask("Step", task)));
+    sync(first, second);
+    checkSame(name + "after edits of different fields", first, second);
+    check(description(first, 0).equals("First edit"), name + "edit of task 0 was lost");
+    check(description(second, 1).equals("First edit") && find(second, 1).isCompleted(),
+            name + "edits of task 1 were not both kept");
+    check(find(first, 2).getSubtaskCount() == 1, name + "subtask of task 2 was lost");
+
+    // The same field on both sides: the second commit wins
+    edit(first, 3, (tx, task) -> tx.setDescription(task, "First side"));
+    edit(second, 3, (tx, task) -> tx.setDescription(task, "Second side"));
+    sync(first, second);
+    checkSame(name + "after a conflicting edit", first, second);
+    check(description(first, 3).equals("Second side"),
+            name + "conflict on task 3 resolved to " + description(first, 3));
+
+    // A delete against a local edit keeps the task, a delete alone removes it
+    edit(first, 4, TaskTransaction::removeTask);
+    edit(first, 5, TaskTransaction::removeTask);
+    edit(second, 4, (tx, task) -> tx.setDescription(task, "Edited while deleted"));
+    sync(first, second);
+    checkSame(name + "after a delete against an edit", first, second);
+    check(find(first, 4) != null && description(first, 4).equals("Edited while deleted"),
+            name + "edited task 4 was deleted");
+    check(find(second, 5) == null, name + "deleted task 5 was kept");
+
+    // Tasks added on both sides
+    first.getManager().batch(tx -> tx.addTask(new Task("Added by first", new Date())));
+    second.getManager().batch(tx -> tx.addTask(new Task("Added by second", new Date())));
+    sync(first, second);
+    checkSame(name + "after adds on both sides", first, second);
+    check(first.getManager().getTasks().size() == TASK_COUNT + 1,
+            name + "expected " + (TASK_COUNT + 1) + " tasks, got "
+                    + first.getManager().getTasks().size());
+
+    // Nothing changed: the file is left alone
+    FileTime modified = Files.getLastModifiedTime(file);
+    byte[] content = Files.readAllBytes(file);
+    first.commit();
+    second.commit();
+    check(modified.equals(Files.getLastModifiedTime(file))
+            && Arrays.equals(content, Files.readAllBytes(file)),
+            name + "a commit without changes rewrote the file");
+
+    TaskStore reopened = TaskStore.open(file);
+    checkSame(name + "after reopening", first, reopened);
+    first.close();
+    second.close();
+    reopened.close();
+  }
+
+  /**
+   * Commits the first store, then the second one, which merges the first's changes, then
+   * refreshes the first.
+   */
+  private static void sync(TaskStore first, TaskStore second) throws IOException {
+    first.commit();
+    second.commit();
+    first.refresh();
+  }
+
+  private interface Edit {
+    void apply(TaskTransaction tx, Task task);
+  }
+
+  private static void edit(TaskStore store, int index, Edit edit) {
+    Task task = find(store, index);
+    store.getManager().batch(tx -> edit.apply(tx, task));
+  }
+
+  /**
+   * Finds the task created with the given index, or null if it was deleted.
+   */
+  private static Task find(TaskStore store, int index) {
+    for (Task task : store.getManager().getTasks()) {
+      if (task.getTitle().equals("Task " + index)) {
+        return task;
+      }
+    }
+    return null;
+  }
+
+  private static String description(TaskStore store, int index) {
+    Task task = find(store, index);
+    return task == null ? null : task.getDescription();
+  }
+
+  private static void checkSame(String name, TaskStore first, TaskStore second) {
+    String ours = describe(first.getManager());
+    String theirs = describe(second.getManager());
+    check(ours.equals(theirs), name + ": stores differ\n" + ours + "  vs\n" + theirs);
+  }
+
+  /**
+   * Describes the tasks by UID, as the stores may order them differently.
+   */
+  private static String describe(TaskManager manager) {
+    TreeMap<String, String> lines = new TreeMap<>();
+    for (Task task : manager.getTasks()) {
+      StringBuilder line = new StringBuilder();
+      line.append(task.getTitle()).append('|').append(task.getDescription()).append('|')
+              .append(task.isCompleted()).append('|').append(task.getHeatIndex()).append('|')
+              .append(task.getExpectedEndMillis()).append('|').append(task.getBlockerUids());
+      for (Subtask subtask : task.getSubtasks()) {
+        line.append('|').append(subtask.getUid()).append(',').append(subtask.getTitle());
+      }
+      lines.put(task.getUid(), line.toString());
+    }
+    StringBuilder text = new StringBuilder();
+    lines.forEach((uid, line) -> text.append("  ").append(uid).append(' ').append(line)
+            .append('\n'));
+    return text.toString();
+  }
+
+  private static void check(boolean passed, String failure) {
+    checks++;
+    if (!passed) {
+      failures.add(failure);
+    }
+  }
+}
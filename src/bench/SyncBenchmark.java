@@ -0,0 +1,77 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import sync.FileCalendarServer;
+import sync.SyncEngine;
+import sync.SyncStats;
+import task.Task;
+import task.TaskManager;
+
+/**
+ * Measures sync throughput between two in-memory task managers sharing a file-based server.
+ * Usage: {@code java bench.SyncBenchmark [taskCount]}, 100000 tasks by default.
+ */
+public class SyncBenchmark {
+
+  /**
+   * Entry point of the benchmark.
+   *
+   * @param args optional task count.
+   * @throws IOException          if the server directory cannot be used.
+   * @throws ExecutionException   if a sync round fails.
+   * @throws InterruptedException if interrupted while waiting for a sync round.
+   */
+  public static void main(String[] args)
+          throws IOException, ExecutionException, InterruptedException {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    Path directory = Files.createTempDirectory("jtodo-sync-bench");
+    FileCalendarServer server = new FileCalendarServer(directory);
+
+    TaskManager source = TaskManager.createInMemory();
+    TaskManager target = TaskManager.createInMemory();
+    List<Task> tasks = new ArrayList<>(count);
+    long due = System.currentTimeMillis();
+    for (int i = 0; i < count; i++) {
+      Task task = new Task("Task " + i, new Date(due + i * 60_000L));
+      task.setDescription("Description of task " + i);
+      tasks.add(task);
+    }
+    source.batch(tx -> tasks.forEach(tx::addTask));
+
+    try (SyncEngine push = new SyncEngine(source, server);
+         SyncEngine pull = new SyncEngine(target, server)) {
+      // start() runs a first round immediately; syncNow() waits for it to finish.
+      long startNanos = System.nanoTime();
+      push.start(Long.MAX_VALUE);
+      push.syncNow().get();
+      report("initial push", System.nanoTime() - startNanos, count);
+      startNanos = System.nanoTime();
+      pull.start(Long.MAX_VALUE);
+      pull.syncNow().get();
+      report("initial pull", System.nanoTime() - startNanos, count);
+
+      int changed = Math.max(1, count / 100);
+      source.batch(tx -> {
+        for (int i = 0; i < changed; i++) {
+          tx.setTaskCompleted(tasks.get(i * 100 % count), true);
+        }
+      });
+      SyncStats pushed = push.syncNow().get();
+      report("incremental push", pushed.getDurationNanos(), pushed.getPushed());
+      SyncStats pulled = pull.syncNow().get();
+      report("incremental pull", pulled.getDurationNanos(), pulled.getApplied());
+    }
+    System.out.println("target tasks: " + target.getTasks().size());
+  }
+
+  private static void report(String phase, long nanos, int records) {
+    System.out.printf("%-16s %7d records in %6d ms, %.0f records/s%n",
+            phase, records, nanos / 1_000_000, records / (nanos / 1e9));
+  }
+}
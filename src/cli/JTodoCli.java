@@ -0,0 +1,325 @@
+package cli;
+
+import ical.ICalExporter;
+import ical.ICalImporter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Predicate;
+import task.Task;
+import task.TaskManager;
+import task.TaskStore;
+import utils.Settings;
+import utils.TaskJson;
+
+/**
+ * Headless command line entry point. It only uses the task package, so neither AWT nor Swing
+ * is loaded, and it works on a detached TaskManager which is committed once per command
+ * through a {@link TaskStore}, so changes the GUI saved in the meantime are merged, not lost.
+ *
+ * <pre>
+ * jtodo [--store FILE] add TITLE [--due DATE] [--desc TEXT]
+ * jtodo [--store FILE] list [--all|--done|--todo] [--sort MODE] [--json]
+ * jtodo [--store FILE] done ID|UID [--undo]
+ * jtodo [--store FILE] search TEXT [--json]
+ * jtodo [--store FILE] export [--format ics|json] [--out FILE]
+ * jtodo [--store FILE] import FILE.ics
+ * </pre>
+ *
+ * <p>Without --store, the task save path from settings.json is used.
+ */
+public class JTodoCli {
+
+  private static final int EXIT_USAGE = 2;
+  private static final int EXIT_FAILURE = 1;
+
+  private final TaskManager manager;
+  private final Writer out;
+  private boolean modified;
+
+  private JTodoCli(TaskManager manager, Writer out) {
+    this.manager = manager;
+    this.out = out;
+  }
+
+  /**
+   * Entry point of the command line.
+   *
+   * @param args args from command line.
+   */
+  public static void main(String[] args) {
+    System.exit(run(args, System.out, System.err));
+  }
+
+  /**
+   * Runs one command.
+   *
+   * @param args the command line.
+   * @param out  where results are written.
+   * @param err  where errors are written.
+   * @return the process exit code.
+   */
+  public static int run(String[] args, PrintStream out, PrintStream err) {
+    List<String> arguments = new ArrayList<>(List.of(args));
+    String store = takeOption(arguments, "--store");
+    if (arguments.isEmpty()) {
+      err.println("Usage: jtodo [--store FILE] add|list|done|search|export|import ...");
+      return EXIT_USAGE;
+    }
+    if (store == null) {
+      store = Settings.getInstance().getTaskSavePath();
+    }
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+            1 << 16);
+    try {
+      TaskStore taskStore = TaskStore.open(Path.of(store));
+      JTodoCli cli = new JTodoCli(taskStore.getManager(), writer);
+      int code = cli.execute(arguments.remove(0), arguments);
+      writer.flush();
+      if (cli.modified) {
+        taskStore.commit();
+      }
+      return code;
+    } catch (IllegalArgumentException e) {
+      err.println("jtodo: " + e.getMessage());
+      return EXIT_USAGE;
+    } catch (IOException | ClassNotFoundException e) {
+      err.println("jtodo: " + e.getMessage());
+      return EXIT_FAILURE;
+    }
+  }
+
+  private int execute(String command, List<String> args) throws IOException {
+    return switch (command) {
+      case "add" -> add(args);
+      case "list" -> list(args);
+      case "done" -> done(args);
+      case "search" -> search(args);
+      case "export" -> export(args);
+      case "import" -> importFile(args);
+      default -> throw new IllegalArgumentException("Unknown command: " + command);
+    };
+  }
+
+  private int add(List<String> args) throws IOException {
+    String due = takeOption(args, "--due");
+    String description = takeOption(args, "--desc");
+    if (args.size() != 1) {
+      throw new IllegalArgumentException("Usage: jtodo add TITLE [--due DATE] [--desc TEXT]");
+    }
+    Task task = new Task(args.get(0), due == null ? endOfToday() : parseDate(due));
+    task.setDescription(description);
+    manager.addTask(task);
+    modified = true;
+    out.write(task.getId() + "\t" + task.getUid() + "\n");
+    return 0;
+  }
+
+  private int list(List<String> args) throws IOException {
+    boolean json = takeFlag(args, "--json");
+    TaskManager.QueryMode queryMode = takeFlag(args, "--done") ? TaskManager.QueryMode.COMPLETE
+            : takeFlag(args, "--todo") ? TaskManager.QueryMode.INCOMPLETE
+            : TaskManager.QueryMode.ALL;
+    takeFlag(args, "--all");
+    String sort = takeOption(args, "--sort");
+    if (!args.isEmpty()) {
+      throw new IllegalArgumentException("Unexpected argument: " + args.get(0));
+    }
+    if (sort == null) {
+      // Creation order is the storage order, so rows are streamed without sorting.
+      return stream(json, task -> queryMode == TaskManager.QueryMode.ALL
+              || task.isCompleted() == (queryMode == TaskManager.QueryMode.COMPLETE));
+    }
+    TaskManager.SortMode sortMode;
+    try {
+      sortMode = TaskManager.SortMode.valueOf(sort.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown sort mode: " + sort);
+    }
+    StringBuilder row = new StringBuilder(128);
+    for (Task task : manager.getTasks(queryMode, sortMode)) {
+      write(task, json, row);
+    }
+    return 0;
+  }
+
+  private int done(List<String> args) throws IOException {
+    boolean undo = takeFlag(args, "--undo");
+    if (args.size() != 1) {
+      throw new IllegalArgumentException("Usage: jtodo done ID|UID [--undo]");
+    }
+    Optional<Task> task = findTask(args.get(0));
+    if (task.isEmpty()) {
+      out.write("No task " + args.get(0) + "\n");
+      return EXIT_FAILURE;
+    }
+    manager.setTaskCompleted(task.get(), !undo);
+    modified = true;
+    return 0;
+  }
+
+  private int search(List<String> args) throws IOException {
+    boolean json = takeFlag(args, "--json");
+    if (args.size() != 1) {
+      throw new IllegalArgumentException("Usage: jtodo search TEXT [--json]");
+    }
+    String needle = args.get(0).toLowerCase(Locale.ROOT);
+    return stream(json, task -> task.getTitle().toLowerCase(Locale.ROOT).contains(needle)
+            || (task.getDescription() != null
+                && task.getDescription().toLowerCase(Locale.ROOT).contains(needle)));
+  }
+
+  private int export(List<String> args) throws IOException {
+    String format = Optional.ofNullable(takeOption(args, "--format")).orElse("ics");
+    String file = takeOption(args, "--out");
+    Writer target = file == null ? out
+            : new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8), 1 << 16);
+    switch (format) {
+      case "ics" -> {
+        ICalExporter.export(manager, file == null ? new NonClosingWriter(out) : target);
+        return 0;
+      }
+      case "json" -> {
+        JTodoCli exporter = new JTodoCli(manager, target);
+        exporter.stream(true, task -> true);
+        if (file != null) {
+          target.close();
+        }
+        return 0;
+      }
+      default -> throw new IllegalArgumentException("Unknown export format: " + format);
+    }
+  }
+
+  private int importFile(List<String> args) throws IOException {
+    if (args.size() != 1) {
+      throw new IllegalArgumentException("Usage: jtodo import FILE.ics");
+    }
+    try (BufferedReader reader = new BufferedReader(
+            new FileReader(args.get(0), StandardCharsets.UTF_8))) {
+      out.write(new ICalImporter(manager).importFrom(reader) + "\n");
+    }
+    modified = true;
+    return 0;
+  }
+
+  /**
+   * Writes matching tasks in storage order while holding the read lock, one row at a time.
+   */
+  private int stream(boolean json, Predicate<Task> filter) throws IOException {
+    StringBuilder row = new StringBuilder(128);
+    IOException[] failure = new IOException[1];
+    manager.read(tasks -> {
+      for (Task task : tasks) {
+        if (filter.test(task)) {
+          try {
+            write(task, json, row);
+          } catch (IOException e) {
+            failure[0] = e;
+            break;
+          }
+        }
+      }
+      return null;
+    });
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+    return 0;
+  }
+
+  private void write(Task task, boolean json, StringBuilder row) throws IOException {
+    if (json) {
+      out.write(TaskJson.toJson(task).toString());
+      out.write('\n');
+      return;
+    }
+    row.setLength(0);
+    row.append(task.getId()).append('\t')
+            .append(task.isCompleted() ? "[x]" : "[ ]").append('\t');
+    LocalDateTime due = LocalDateTime.ofInstant(task.getExpectedEndTime().toInstant(),
+            ZoneId.systemDefault());
+    row.append(due.toLocalDate()).append(' ');
+    appendTwoDigits(row, due.getHour());
+    row.append(':');
+    appendTwoDigits(row, due.getMinute());
+    row.append('\t').append(task.getTitle()).append('\n');
+    out.append(row);
+  }
+
+  private static void appendTwoDigits(StringBuilder row, int value) {
+    row.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+  }
+
+  private Optional<Task> findTask(String key) {
+    try {
+      return manager.getTaskById(Integer.parseInt(key));
+    } catch (NumberFormatException e) {
+      return manager.getTaskByUid(key);
+    }
+  }
+
+  private static Date parseDate(String text) {
+    try {
+      if (text.length() == 10) {
+        return Date.from(LocalDate.parse(text).atTime(23, 59)
+                .atZone(ZoneId.systemDefault()).toInstant());
+      }
+      return Date.from(LocalDateTime.parse(text.replace(' ', 'T'))
+              .atZone(ZoneId.systemDefault()).toInstant());
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid date, expected yyyy-MM-dd[THH:mm]: " + text);
+    }
+  }
+
+  private static Date endOfToday() {
+    return Date.from(LocalDate.now().atTime(23, 59).atZone(ZoneId.systemDefault()).toInstant());
+  }
+
+  private static String takeOption(List<String> args, String name) {
+    int index = args.indexOf(name);
+    if (index < 0) {
+      return null;
+    }
+    if (index + 1 >= args.size()) {
+      throw new IllegalArgumentException("Missing value for " + name);
+    }
+    args.remove(index);
+    return args.remove(index);
+  }
+
+  private static boolean takeFlag(List<String> args, String name) {
+    return args.remove(name);
+  }
+
+  /**
+   * Keeps standard output open when an exporter closes its writer.
+   */
+  private static final class NonClosingWriter extends FilterWriter {
+    private NonClosingWriter(Writer out) {
+      super(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
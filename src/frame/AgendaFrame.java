@@ -0,0 +1,219 @@
+package frame;
+
+import java.awt.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import task.Task;
+import task.TaskChangeListener;
+import task.TaskManager;
+import utils.ConfigListener;
+import utils.Settings;
+
+/**
+ * Agenda of the tasks in a day, week or month. Tasks due in the period are listed under their
+ * due day; tasks which started before the end of the period but are due after it are listed at
+ * the end as ongoing. Pages are queried from the interval index of the TaskManager, so paging
+ * through months does not scan the whole store.
+ */
+public class AgendaFrame extends JFrame {
+
+  private static final LatencyHistogram REFRESH_TIME =
+          MetricsRegistry.getInstance().histogram("ui.agenda.refresh");
+
+  private static final DateTimeFormatter DAY_FORMAT =
+          DateTimeFormatter.ofPattern("yyyy-MM-dd EEEE", Locale.CHINA);
+
+  /**
+   * The length of a page of the agenda.
+   */
+  private enum Period {
+    DAY("日"),
+    WEEK("周"),
+    MONTH("月");
+
+    private final String label;
+
+    Period(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  private final JFrame mainFrame;
+  private final TaskRowFormatter rowFormatter = new TaskRowFormatter();
+  private final List<TaskRow> rows = new ArrayList<>();
+  private final TaskChangeListener changeListener =
+          event -> SwingUtilities.invokeLater(this::refreshAgenda);
+  private final ConfigListener configListener =
+          (oldConfig, newConfig) -> SwingUtilities.invokeLater(this::refreshAgenda);
+  private JPanel agendaPanel;
+  private JLabel periodLabel;
+  private Period period = Period.WEEK;
+  private LocalDate anchor = LocalDate.now();
+
+  /**
+   * Creates an agenda frame showing the current week.
+   *
+   * @param mainFrame the main frame, which task detail frames return to.
+   */
+  public AgendaFrame(JFrame mainFrame) {
+    this.mainFrame = mainFrame;
+    setTitle("日程");
+    setSize(600, 600);
+    setLocationRelativeTo(null);
+    setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+    initializeComponents();
+    refreshAgenda();
+    TaskManager.getInstance().addChangeListener(changeListener);
+    Settings.getInstance().addConfigListener(configListener);
+  }
+
+  private void initializeComponents() {
+    JPanel contentPanel = new JPanel(new BorderLayout());
+    contentPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+    setContentPane(contentPanel);
+
+    // Navigation between pages
+    JPanel navigationPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    JButton previousButton = new JButton("<");
+    previousButton.addActionListener(e -> move(-1));
+    JButton todayButton = new JButton("今天");
+    todayButton.addActionListener(e -> {
+      anchor = LocalDate.now();
+      refreshAgenda();
+    });
+    JButton nextButton = new JButton(">");
+    nextButton.addActionListener(e -> move(1));
+    JComboBox<Period> periodBox = new JComboBox<>(Period.values());
+    periodBox.setSelectedItem(period);
+    periodBox.addActionListener(e -> {
+      period = (Period) periodBox.getSelectedItem();
+      refreshAgenda();
+    });
+    periodLabel = new JLabel();
+    periodLabel.setFont(new Font("SansSerif", Font.BOLD, 16));
+
+    navigationPanel.add(previousButton);
+    navigationPanel.add(todayButton);
+    navigationPanel.add(nextButton);
+    navigationPanel.add(periodBox);
+    navigationPanel.add(periodLabel);
+    contentPanel.add(navigationPanel, BorderLayout.NORTH);
+
+    agendaPanel = new JPanel();
+    agendaPanel.setLayout(new BoxLayout(agendaPanel, BoxLayout.Y_AXIS));
+    agendaPanel.setBackground(Color.WHITE);
+    JScrollPane scrollPane = new JScrollPane(agendaPanel);
+    scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+    scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+    contentPanel.add(scrollPane, BorderLayout.CENTER);
+  }
+
+  private void move(int pages) {
+    anchor = switch (period) {
+      case DAY -> anchor.plusDays(pages);
+      case WEEK -> anchor.plusWeeks(pages);
+      case MONTH -> anchor.plusMonths(pages);
+    };
+    refreshAgenda();
+  }
+
+  private LocalDate periodStart() {
+    return switch (period) {
+      case DAY -> anchor;
+      case WEEK -> anchor.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+      case MONTH -> anchor.withDayOfMonth(1);
+    };
+  }
+
+  private LocalDate periodEnd(LocalDate start) {
+    return switch (period) {
+      case DAY -> start.plusDays(1);
+      case WEEK -> start.plusWeeks(1);
+      case MONTH -> start.plusMonths(1);
+    };
+  }
+
+  /**
+   * Queries the tasks of the current page and lays them out by due day.
+   */
+  private void refreshAgenda() {
+    long startNanos = System.nanoTime();
+    ZoneId zone = ZoneId.systemDefault();
+    LocalDate start = periodStart();
+    LocalDate end = periodEnd(start);
+    periodLabel.setText(period == Period.DAY ? start.format(DAY_FORMAT)
+            : start + " ~ " + end.minusDays(1));
+    long endMillis = end.atStartOfDay(zone).toInstant().toEpochMilli();
+    List<Task> tasks = TaskManager.getInstance().getTasksInRange(TaskManager.QueryMode.ALL,
+            start.atStartOfDay(zone).toInstant().toEpochMilli(), endMillis);
+
+    agendaPanel.removeAll();
+    // Rows beyond a page are summarized, Swing does not lay out huge lists quickly
+    int maxRows = Settings.getInstance().getConfig().pageSize();
+    long nowMillis = System.currentTimeMillis();
+    int width = agendaPanel.getWidth();
+    int shown = 0;
+    LocalDate day = null;
+    for (Task task : tasks) {
+      if (shown == maxRows) {
+        break;
+      }
+      // Tasks are sorted by due time, so headers come in order
+      LocalDate dueDay = task.getExpectedEndMillis() >= endMillis ? null
+              : task.getExpectedEndTime().toInstant().atZone(zone).toLocalDate();
+      if (shown == 0 || !Objects.equals(dueDay, day)) {
+        addHeader(dueDay == null ? "进行中 (截止于本期之后)" : dueDay.format(DAY_FORMAT));
+        day = dueDay;
+      }
+      if (shown == rows.size()) {
+        rows.add(new TaskRow(this::openTaskDetailsFrame));
+      }
+      TaskRow row = rows.get(shown++);
+      row.bind(task, rowFormatter.format(task), nowMillis, width);
+      agendaPanel.add(row);
+    }
+    if (tasks.isEmpty()) {
+      addHeader("本期无待办事项");
+    } else if (tasks.size() > shown) {
+      addHeader("另有 " + (tasks.size() - shown) + " 项未显示");
+    }
+    agendaPanel.revalidate();
+    agendaPanel.repaint();
+    REFRESH_TIME.recordSince(startNanos);
+  }
+
+  private void addHeader(String text) {
+    JLabel header = new JLabel(text);
+    header.setFont(new Font("SansSerif", Font.BOLD, 14));
+    header.setBorder(new EmptyBorder(10, 5, 5, 5));
+    agendaPanel.add(header);
+  }
+
+  private void openTaskDetailsFrame(Task task) {
+    ((MainFrame) mainFrame).openTaskDetailsFrame(task);
+  }
+
+  @Override
+  public void dispose() {
+    TaskManager.getInstance().removeChangeListener(changeListener);
+    Settings.getInstance().removeConfigListener(configListener);
+    super.dispose();
+  }
+}
@@ -0,0 +1,177 @@
+package frame;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+/**
+ * Detects stalls of the event dispatch thread.
+ * The watchdog replaces the system event queue with one that stamps the start of every
+ * dispatched event. A daemon thread checks the stamp periodically; while one event has been
+ * running for longer than the threshold, it samples the EDT stack. Samples are aggregated into
+ * a collapsed-stack file that flamegraph.pl or speedscope can read, and attributed to the
+ * innermost TaskManager or frame method on the stack.
+ * When nothing stalls, the only cost on the EDT is two volatile writes per event.
+ */
+public class EdtWatchdog extends EventQueue {
+
+  private static final LatencyHistogram STALL_TIME =
+          MetricsRegistry.getInstance().histogram("ui.edt.stall");
+  private static final Counter STALLS = MetricsRegistry.getInstance().counter("ui.edt.stalls");
+
+  private final long thresholdNanos;
+  private final long sampleMillis;
+  private final Path foldedFile;
+
+  // Written by the EDT, read by the watchdog thread
+  private volatile long dispatchStartNanos;
+  private volatile long dispatchCount;
+  private volatile Thread dispatchThread;
+
+  // Guarded by this; updated by the watchdog thread only
+  private final Map<String, Long> foldedStacks = new HashMap<>();
+  private final Map<String, Long> stallMethods = new HashMap<>();
+
+  /**
+   * Creates a watchdog; call {@link #install()} to start it.
+   *
+   * @param thresholdMillis dispatch time after which the EDT is considered stalled.
+   * @param foldedFile      file which the collapsed stacks are written to.
+   */
+  public EdtWatchdog(long thresholdMillis, Path foldedFile) {
+    this.thresholdNanos = thresholdMillis * 1_000_000L;
+    this.sampleMillis = Math.max(5, thresholdMillis / 4);
+    this.foldedFile = foldedFile;
+  }
+
+  /**
+   * Pushes this queue onto the system event queue and starts the sampling thread.
+   */
+  public void install() {
+    Toolkit.getDefaultToolkit().getSystemEventQueue().push(this);
+    Thread thread = new Thread(this::watch, "jtodo-edt-watchdog");
+    thread.setDaemon(true);
+    thread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      String report = report(5);
+      if (!report.isEmpty()) {
+        System.err.print(report);
+      }
+    }));
+  }
+
+  @Override
+  protected void dispatchEvent(AWTEvent event) {
+    if (dispatchThread == null) {
+      dispatchThread = Thread.currentThread();
+    }
+    dispatchCount++;
+    dispatchStartNanos = System.nanoTime();
+    try {
+      super.dispatchEvent(event);
+    } finally {
+      dispatchStartNanos = 0;
+    }
+  }
+
+  private void watch() {
+    long stalledDispatch = -1;
+    long stallStartNanos = 0;
+    while (true) {
+      try {
+        Thread.sleep(sampleMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+      long count = dispatchCount;
+      long startNanos = dispatchStartNanos;
+      boolean stalled = startNanos != 0 && System.nanoTime() - startNanos > thresholdNanos;
+      if (stalledDispatch != -1 && (!stalled || count != stalledDispatch)) {
+        endStall(stallStartNanos);
+        stalledDispatch = -1;
+      }
+      if (stalled) {
+        if (stalledDispatch == -1) {
+          stalledDispatch = count;
+          stallStartNanos = startNanos;
+        }
+        sample(dispatchThread.getStackTrace());
+      }
+    }
+  }
+
+  private synchronized void sample(StackTraceElement[] stack) {
+    if (stack.length == 0) {
+      return;
+    }
+    StringBuilder folded = new StringBuilder();
+    for (int i = stack.length - 1; i >= 0; i--) {
+      if (folded.length() > 0) {
+        folded.append(';');
+      }
+      folded.append(stack[i].getClassName()).append('.').append(stack[i].getMethodName());
+    }
+    foldedStacks.merge(folded.toString(), 1L, Long::sum);
+    for (StackTraceElement frame : stack) {
+      String className = frame.getClassName();
+      boolean application = className.startsWith("task.TaskManager")
+              || className.startsWith("frame.");
+      if (application && !className.equals(EdtWatchdog.class.getName())) {
+        stallMethods.merge(className + "." + frame.getMethodName(), 1L, Long::sum);
+        break;
+      }
+    }
+  }
+
+  private void endStall(long stallStartNanos) {
+    STALLS.increment();
+    STALL_TIME.recordSince(stallStartNanos);
+    long stallMillis = (System.nanoTime() - stallStartNanos) / 1_000_000;
+    System.err.println("EDT stalled for " + stallMillis + " ms");
+    try {
+      writeFoldedStacks();
+    } catch (IOException e) {
+      System.err.println("Failed to write EDT stacks: " + e.getMessage());
+    }
+  }
+
+  private synchronized void writeFoldedStacks() throws IOException {
+    try (Writer writer = Files.newBufferedWriter(foldedFile, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, Long> entry : foldedStacks.entrySet()) {
+        writer.write(entry.getKey());
+        writer.write(' ');
+        writer.write(Long.toString(entry.getValue()));
+        writer.write('\n');
+      }
+    }
+  }
+
+  /**
+   * Returns the TaskManager and frame methods seen most often at the top of stalled stacks.
+   *
+   * @param limit maximum number of methods.
+   * @return one line per method with its sample count, or an empty string if there were none.
+   */
+  public synchronized String report(int limit) {
+    List<Map.Entry<String, Long>> entries = new ArrayList<>(stallMethods.entrySet());
+    entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+    StringBuilder report = new StringBuilder();
+    for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+      report.append("EDT stall samples ").append(entry.getValue())
+              .append(' ').append(entry.getKey()).append('\n');
+    }
+    return report.toString();
+  }
+}
@@ -1,12 +1,33 @@
 package frame;
 
+import ical.ICalExporter;
+import ical.ICalImporter;
 import java.awt.*;
-import java.util.Date;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import metrics.JfrEvents;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import metrics.RefreshEvent;
+import metrics.StartupTimeline;
 import task.Task;
 import task.TaskManager;
+import task.TaskProgress;
+import utils.Settings;
 
 /**
  * The MainFrame class displays and manages the task list user interface.
@@ -15,17 +36,106 @@ import task.TaskManager;
  */
 public class MainFrame extends JFrame {
 
+  private static final LatencyHistogram REFRESH_TIME =
+          MetricsRegistry.getInstance().histogram("ui.refreshTasks");
+  // Rows built before the first screen is painted; the rest are built in a later event
+  private static final int FIRST_SCREEN_ROWS = 30;
+
+  private final TaskRowFormatter rowFormatter = new TaskRowFormatter();
+  private final List<TaskRow> rows = new ArrayList<>();
+  // Set while a refresh is queued; changes made until it runs are shown by it.
+  private final AtomicBoolean refreshPending = new AtomicBoolean();
   private JPanel taskListPanel;
+  private JLabel progressLabel;
+  private JButton newTaskButton;
+  private boolean tasksLoaded;
+  // Created on first use and rebound for every task
+  private TaskDetailFrame taskDetailFrame;
+  private TaskEditFrame taskEditFrame;
   private TaskManager.QueryMode queryMode = TaskManager.QueryMode.ALL;
   private TaskManager.SortMode sortMode = TaskManager.SortMode.CREATION;
 
   /**
    * Constructs the main frame with options to view, sort, and manage tasks.
+   * The frame does not touch the tasks or the settings, which may still be loading, until
+   * {@link #tasksLoaded()} is called.
    */
   public MainFrame() {
     initializeUI();
   }
 
+  /**
+   * Shows the tasks once the task store has been loaded. The first screen of rows is painted
+   * right away; the remaining rows, and the classes of the other frames, are loaded afterwards.
+   */
+  public void tasksLoaded() {
+    tasksLoaded = true;
+    // Changes made off the EDT, e.g. by sync, are not followed by a refresh of their own.
+    TaskManager.getInstance().addChangeListener(event -> {
+      if (!SwingUtilities.isEventDispatchThread()) {
+        queueRefresh();
+      }
+    });
+    // E.g. the recurrence horizon may have changed
+    Settings.getInstance().addConfigListener((oldConfig, newConfig) -> queueRefresh());
+
+    List<Task> tasks = queryTasks();
+    taskListPanel.removeAll();
+    populateTaskList(tasks.subList(0, Math.min(FIRST_SCREEN_ROWS, tasks.size())));
+    updateProgressLabel();
+    getRootPane().validate();
+    getRootPane().paintImmediately(getRootPane().getBounds());
+    StartupTimeline.mark(StartupTimeline.FIRST_SCREEN);
+
+    SwingUtilities.invokeLater(() -> {
+      refreshTasks();
+      newTaskButton.setEnabled(true);
+      for (int i = 0; i < getJMenuBar().getMenuCount(); i++) {
+        getJMenuBar().getMenu(i).setEnabled(true);
+      }
+      StartupTimeline.mark(StartupTimeline.INTERACTIVE);
+      Thread warmer = new Thread(MainFrame::loadFrameClasses, "jtodo-class-warmer");
+      warmer.setDaemon(true);
+      warmer.setPriority(Thread.MIN_PRIORITY);
+      warmer.start();
+    });
+  }
+
+  /**
+   * Refreshes the task list on the EDT, once for any number of calls made before it runs, so a
+   * burst of changes from sync or the API does not queue a full refresh per change.
+   */
+  private void queueRefresh() {
+    if (refreshPending.compareAndSet(false, true)) {
+      SwingUtilities.invokeLater(() -> {
+        // Cleared first, so a change made during the refresh queues another one
+        refreshPending.set(false);
+        refreshTasks();
+      });
+    }
+  }
+
+  /**
+   * Loads the classes of the frames opened from this one, so that opening the first of them
+   * does not pay for class loading. Not needed for the first paint, hence done afterwards.
+   */
+  private static void loadFrameClasses() {
+    try {
+      Class.forName("frame.TaskDetailFrame");
+      Class.forName("frame.TaskEditFrame");
+      Class.forName("frame.AgendaFrame");
+    } catch (ClassNotFoundException e) {
+      System.err.println("Failed to load frame classes: " + e.getMessage());
+    }
+    StartupTimeline.finish(StartupTimeline.WARM);
+  }
+
+  @Override
+  public void paint(Graphics g) {
+    super.paint(g);
+    StartupTimeline.mark(StartupTimeline.FIRST_PAINT);
+  }
+
   /**
    * Initializes the user interface components for the main frame.
    */
@@ -51,9 +161,14 @@ public class MainFrame extends JFrame {
     titleLabel.setFont(new Font("SansSerif", Font.BOLD, 24));
     headerPanel.add(titleLabel, BorderLayout.WEST);
 
-    JButton newTaskButton = new JButton("+");
+    progressLabel = new JLabel();
+    progressLabel.setHorizontalAlignment(SwingConstants.CENTER);
+    headerPanel.add(progressLabel, BorderLayout.CENTER);
+
+    newTaskButton = new JButton("+");
     newTaskButton.setToolTipText("新建待办事项");
     newTaskButton.addActionListener(e -> openNewTaskFrame());
+    newTaskButton.setEnabled(false);
     headerPanel.add(newTaskButton, BorderLayout.EAST);
     mainPanel.add(headerPanel, BorderLayout.NORTH);
 
@@ -66,12 +181,16 @@ public class MainFrame extends JFrame {
     scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
     mainPanel.add(scrollPane, BorderLayout.CENTER);
 
-    refreshTasks();
+    // Replaced by the tasks once they are loaded
+    taskListPanel.add(new JLabel("加载中…"));
 
-    // Set up the menu bar with sorting and filtering options.
+    // Set up the menu bar with sorting and filtering options, usable once tasks are loaded.
     JMenuBar menuBar = new JMenuBar();
     setJMenuBar(menuBar);
     initializeMenuBar(menuBar);
+    for (int i = 0; i < menuBar.getMenuCount(); i++) {
+      menuBar.getMenu(i).setEnabled(false);
+    }
   }
 
   /**
@@ -87,10 +206,33 @@ public class MainFrame extends JFrame {
     newTaskMenuItem.addActionListener(e -> openNewTaskFrame());
     optionsMenu.add(newTaskMenuItem);
 
+    JMenuItem agendaMenuItem = new JMenuItem("日程视图");
+    agendaMenuItem.addActionListener(e -> new AgendaFrame(this).setVisible(true));
+    optionsMenu.add(agendaMenuItem);
+
+    JMenuItem importMenuItem = new JMenuItem("导入 iCalendar");
+    importMenuItem.addActionListener(e -> importICalendar());
+    optionsMenu.add(importMenuItem);
+
+    JMenuItem exportMenuItem = new JMenuItem("导出 iCalendar");
+    exportMenuItem.addActionListener(e -> exportICalendar());
+    optionsMenu.add(exportMenuItem);
+
     JMenuItem settingsMenuItem = new JMenuItem("设置");
     settingsMenuItem.addActionListener(e -> openSettingsFrame());
     optionsMenu.add(settingsMenuItem);
 
+    JMenu editMenu = new JMenu("编辑");
+    menuBar.add(editMenu);
+    int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+    JMenuItem undoMenuItem = createMenuItem("撤销", () -> undoOrRedo(true));
+    undoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut));
+    editMenu.add(undoMenuItem);
+    JMenuItem redoMenuItem = createMenuItem("重做", () -> undoOrRedo(false));
+    redoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z,
+            shortcut | InputEvent.SHIFT_DOWN_MASK));
+    editMenu.add(redoMenuItem);
+
     JMenu sortMenu = new JMenu("排序方式");
     menuBar.add(sortMenu);
     addSortMenuItems(sortMenu);
@@ -120,6 +262,8 @@ public class MainFrame extends JFrame {
             () -> setSortMode(TaskManager.SortMode.COMPLETE_R)));
     sortMenu.add(createMenuItem("按任务热度",
             () -> setSortMode(TaskManager.SortMode.HEAT)));
+    sortMenu.add(createMenuItem("就绪优先",
+            () -> setSortMode(TaskManager.SortMode.READY_FIRST)));
   }
 
   /**
@@ -146,6 +290,20 @@ public class MainFrame extends JFrame {
     return menuItem;
   }
 
+  /**
+   * Undoes or redoes the last change, beeping if there is none.
+   *
+   * @param undo true to undo, false to redo.
+   */
+  private void undoOrRedo(boolean undo) {
+    boolean done = undo ? TaskManager.getInstance().undo() : TaskManager.getInstance().redo();
+    if (done) {
+      refreshTasks();
+    } else {
+      Toolkit.getDefaultToolkit().beep();
+    }
+  }
+
   private void setSortMode(TaskManager.SortMode sortMode) {
     this.sortMode = sortMode;
     refreshTasks();
@@ -160,80 +318,159 @@ public class MainFrame extends JFrame {
    * Refreshes the task list by querying tasks from the TaskManager.
    */
   public void refreshTasks() {
-    List<Task> tasks = TaskManager.getInstance().getTasks(queryMode, sortMode);
+    if (!tasksLoaded) {
+      return;
+    }
+    RefreshEvent event = null;
+    if (JfrEvents.isEnabled()) {
+      event = new RefreshEvent();
+      event.begin();
+    }
+    long startNanos = System.nanoTime();
+    List<Task> tasks = queryTasks();
+    long queryNanos = System.nanoTime() - startNanos;
     populateTaskList(tasks);
+    updateProgressLabel();
+    REFRESH_TIME.recordSince(startNanos);
+    if (event != null) {
+      event.queryMode = queryMode.name();
+      event.sortMode = sortMode.name();
+      event.rowCount = tasks.size();
+      event.queryNanos = queryNanos;
+      event.commit();
+    }
+  }
+
+  private List<Task> queryTasks() {
+    if (sortMode == TaskManager.SortMode.DUE) {
+      // Occurrences of recurring tasks are listed from today on, within the horizon
+      LocalDate today = LocalDate.now();
+      ZoneId zone = ZoneId.systemDefault();
+      return TaskManager.getInstance().getTasksByDue(queryMode,
+              today.atStartOfDay(zone).toInstant().toEpochMilli(),
+              today.plusDays(Settings.getInstance().getRecurrenceHorizonDays())
+                      .atStartOfDay(zone).toInstant().toEpochMilli());
+    }
+    return TaskManager.getInstance().getTasks(queryMode, sortMode);
+  }
+
+  private void updateProgressLabel() {
+    TaskProgress progress = TaskManager.getInstance().getTodayProgress();
+    progressLabel.setText(progress.total() == 0 ? "今日无待办"
+            : "今日进度: " + progress.done() + "/" + progress.total()
+            + " (" + progress.percent() + "%)");
   }
 
   /**
    * Populates the task list panel with the provided tasks.
+   * Rows of earlier refreshes are rebound instead of recreated, and "now" is read once.
    *
    * @param tasks the list of tasks to display
    */
   private void populateTaskList(List<Task> tasks) {
-    taskListPanel.removeAll();
-    for (Task task : tasks) {
-      JPanel taskPanel = createTaskPanel(task);
-      taskListPanel.add(taskPanel);
+    long nowMillis = System.currentTimeMillis();
+    int width = taskListPanel.getWidth();
+    for (int i = 0; i < tasks.size(); i++) {
+      if (i == rows.size()) {
+        rows.add(new TaskRow(this::openTaskDetailsFrame));
+      }
+      Task task = tasks.get(i);
+      TaskRow row = rows.get(i);
+      row.bind(task, rowFormatter.format(task), nowMillis, width);
+      if (i == taskListPanel.getComponentCount()) {
+        taskListPanel.add(row);
+      }
+    }
+    while (taskListPanel.getComponentCount() > tasks.size()) {
+      taskListPanel.remove(taskListPanel.getComponentCount() - 1);
     }
     taskListPanel.revalidate();
     taskListPanel.repaint();
   }
 
   /**
-   * Creates a panel for displaying a single task.
-   *
-   * @param task the task to display
-   * @return the panel for the task
+   * Imports tasks from an .ics file on a background thread, large files may take a while.
    */
-  private JPanel createTaskPanel(Task task) {
-    JPanel taskPanel = new JPanel(new BorderLayout());
-    taskPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
-    taskPanel.setPreferredSize(new Dimension(taskListPanel.getWidth(), 90));
-
-    String taskInfo = String.format(
-            "<html><b>%s</b><br/>描述: %s<br/>热度: %d<br/>截止时间: %s</html>",
-            task.getTitle(),
-            task.getDescription() != null ? task.getDescription() : "无",
-            task.getHeatIndex(),
-            task.getExpectedEndTime()
-    );
-
-    JLabel taskLabel = new JLabel(taskInfo);
-    setTaskLabelColor(task, taskLabel);
-
-    JButton detailsButton = new JButton("查看详情");
-    detailsButton.addActionListener(e -> openTaskDetailsFrame(task));
-
-    taskPanel.add(taskLabel, BorderLayout.CENTER);
-    taskPanel.add(detailsButton, BorderLayout.EAST);
-    taskPanel.setBackground(Color.WHITE);
-
-    return taskPanel;
+  private void importICalendar() {
+    JFileChooser chooser = new JFileChooser();
+    if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    File file = chooser.getSelectedFile();
+    new Thread(() -> {
+      String message;
+      try (BufferedReader reader = new BufferedReader(
+              new FileReader(file, StandardCharsets.UTF_8))) {
+        message = new ICalImporter(TaskManager.getInstance()).importFrom(reader);
+      } catch (IOException | RuntimeException e) {
+        message = "导入失败: " + e.getMessage();
+      }
+      String result = message;
+      SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, result));
+    }, "jtodo-ical-import").start();
   }
 
-  private void setTaskLabelColor(Task task, JLabel taskLabel) {
-    if (task.isCompleted()) {
-      taskLabel.setForeground(Color.GREEN);
-    } else if (new Date().after(task.getExpectedEndTime())) {
-      taskLabel.setForeground(Color.RED);
+  /**
+   * Exports all tasks to an .ics file on a background thread.
+   */
+  private void exportICalendar() {
+    JFileChooser chooser = new JFileChooser();
+    chooser.setSelectedFile(new File("tasks.ics"));
+    if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+      return;
     }
+    File file = chooser.getSelectedFile();
+    new Thread(() -> {
+      String message;
+      try {
+        int count = ICalExporter.export(TaskManager.getInstance(),
+                new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8)));
+        message = "已导出 " + count + " 个待办事项";
+      } catch (IOException e) {
+        message = "导出失败: " + e.getMessage();
+      }
+      String result = message;
+      SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, result));
+    }, "jtodo-ical-export").start();
   }
 
   private void openSettingsFrame() {
     JOptionPane.showMessageDialog(this, "跳转至设置界面");
   }
 
-  private void openTaskDetailsFrame(Task task) {
-    if (!task.isCompleted()) {
+  /**
+   * Shows the details of a task in the shared detail frame.
+   *
+   * @param task the task.
+   */
+  void openTaskDetailsFrame(Task task) {
+    // Occurrences of recurring tasks are not managed tasks and have no heat of their own
+    if (!task.isCompleted() && task.getTemplate() == null) {
       TaskManager.getInstance().updateHeat(task);
     }
-    TaskDetailFrame taskDetailFrame = new TaskDetailFrame(this, task);
+    if (taskDetailFrame == null) {
+      taskDetailFrame = new TaskDetailFrame(this);
+    }
+    taskDetailFrame.bind(task);
     taskDetailFrame.setVisible(true);
+    taskDetailFrame.toFront();
   }
 
-  private void openNewTaskFrame() {
-    TaskEditFrame taskEditFrame = new TaskEditFrame(this);
+  /**
+   * Opens the shared edit frame, hiding this frame until it is closed.
+   *
+   * @param task the task to edit, or null to create a new task.
+   */
+  void openTaskEditFrame(Task task) {
+    if (taskEditFrame == null) {
+      taskEditFrame = new TaskEditFrame(this);
+    }
+    taskEditFrame.bind(task);
     taskEditFrame.setVisible(true);
     setVisible(false);
   }
+
+  private void openNewTaskFrame() {
+    openTaskEditFrame(null);
+  }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package frame;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
 import java.util.List;
 import javax.swing.*;
 import task.Subtask;
@@ -9,27 +10,42 @@ import task.Task;
 import task.TaskManager;
 
 /**
- * The frame which displays detail of a specific task.
+ * The frame which displays detail of a specific task. The main frame creates it once and
+ * rebinds it to the task to show, see {@link #bind(Task)}.
  */
 public class TaskDetailFrame extends JFrame {
 
-  private final Task task;
-  private JPanel subtaskPanel;
+  // Fixed cell sizes let the subtask list render only the visible subtasks
+  private static final int SUBTASK_HEIGHT = 24;
+  private static final int SUBTASK_WIDTH = 100;
+  private static final int INDENT = 20;
+
   private final JFrame mainFrame;
+  private final SubtaskListModel subtaskModel = new SubtaskListModel();
+  private final JLabel titleLabel = new JLabel();
+  private final JLabel descriptionLabel = new JLabel();
+  private final JLabel startTimeLabel = new JLabel();
+  private final JLabel dueDateLabel = new JLabel();
+  private final JLabel endTimeLabel = new JLabel();
+  private final JLabel repeatLabel = new JLabel();
+  private final JLabel heatLabel = new JLabel();
+  private final JLabel blockersLabel = new JLabel();
+  private final JCheckBox completeCheckBox = new JCheckBox("标记为已完成");
+  private final SubtaskRenderer subtaskRenderer = new SubtaskRenderer();
+  private JList<Subtask> subtaskList;
+  private Task task;
 
   /**
-   * Create a new TaskDetailFrame with a specific task.
+   * Create a new TaskDetailFrame, not bound to any task yet.
    *
    * @param mainFrame the parent mainFrame.
-   * @param task a specific task.
    */
-  public TaskDetailFrame(JFrame mainFrame, Task task) {
+  public TaskDetailFrame(JFrame mainFrame) {
     this.mainFrame = mainFrame;
-    this.task = task;
     setTitle("任务详情");
     setSize(400, 500);
     setLocationRelativeTo(null);
-    setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
     setLayout(new BorderLayout());
 
     initializeComponents();
@@ -47,45 +63,45 @@ public class TaskDetailFrame extends JFrame {
     infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
     infoPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
-    // Display task title
-    JLabel titleLabel = new JLabel("标题: " + task.getTitle());
     titleLabel.setFont(new Font("Serif", Font.BOLD, 18));
     infoPanel.add(titleLabel);
-
-    // Display task description
-    JLabel descriptionLabel = new JLabel("<html><b>描述:</b><br>"
-            + (task.getDescription() != null ? task.getDescription() : "无")
-            + "</html>");
     descriptionLabel.setBorder(BorderFactory.createEmptyBorder(10, 0, 10, 0));
     infoPanel.add(descriptionLabel);
-
-    // Display due date, start time, and actual end time
-    infoPanel.add(new JLabel("开始时间: " + task.getStartTime()));
-    infoPanel.add(new JLabel("截止时间: " + task.getExpectedEndTime()));
-    if (task.getActualEndTime() != null) {
-      infoPanel.add(new JLabel("完成时间: " + task.getActualEndTime()));
-    }
-
-    // Display task heat index
-    infoPanel.add(new JLabel("热度指数: " + task.getHeatIndex()));
-
-    // Task completion checkbox
-    JCheckBox completeCheckBox = new JCheckBox("标记为已完成");
-    completeCheckBox.setSelected(task.isCompleted());
+    infoPanel.add(startTimeLabel);
+    infoPanel.add(dueDateLabel);
+    infoPanel.add(endTimeLabel);
+    infoPanel.add(repeatLabel);
+    infoPanel.add(heatLabel);
+    infoPanel.add(blockersLabel);
+
+    // Action events, unlike item events, are not fired by bind calling setSelected
     infoPanel.add(completeCheckBox);
-    completeCheckBox.addItemListener(this::completeCheckBoxChanged);
+    completeCheckBox.addActionListener(e -> completeCheckBoxChanged());
 
     add(infoPanel, BorderLayout.NORTH);
 
     // Subtasks section
     JPanel subtaskArea = new JPanel(new BorderLayout());
-    subtaskPanel = new JPanel();
-    subtaskPanel.setLayout(new BoxLayout(subtaskPanel, BoxLayout.Y_AXIS));
     subtaskArea.setBorder(BorderFactory.createTitledBorder("子任务"));
-
-    displaySubtasks();
-
-    subtaskArea.add(new JScrollPane(subtaskPanel), BorderLayout.CENTER);
+    subtaskList = new JList<>(subtaskModel);
+    subtaskList.setCellRenderer(subtaskRenderer);
+    subtaskList.setFixedCellHeight(SUBTASK_HEIGHT);
+    subtaskList.setFixedCellWidth(SUBTASK_WIDTH);
+    subtaskList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    subtaskList.addMouseListener(new MouseAdapter() {
+      @Override
+      public void mouseClicked(MouseEvent e) {
+        subtaskClicked(e.getPoint());
+      }
+    });
+    subtaskList.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, 0), "toggle");
+    subtaskList.getActionMap().put("toggle", new AbstractAction() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        toggleSubtask(subtaskList.getSelectedIndex());
+      }
+    });
+    subtaskArea.add(new JScrollPane(subtaskList), BorderLayout.CENTER);
     add(subtaskArea, BorderLayout.CENTER);
 
     // Edit button
@@ -110,73 +126,192 @@ public class TaskDetailFrame extends JFrame {
   }
 
   /**
-   * Display each subtask with a checkbox showing completion status, non-editable.
+   * Shows another task in this frame, reusing its components.
+   *
+   * @param task the task to show.
    */
-  private void displaySubtasks() {
-    subtaskPanel.removeAll();
-
-    List<Subtask> subtasks = task.getSubtasks();
-    for (Subtask subtask : subtasks) {
-
+  public void bind(Task task) {
+    this.task = task;
+    titleLabel.setText("标题: " + task.getTitle());
+    descriptionLabel.setText("<html><b>描述:</b><br>"
+            + (task.getDescription() != null ? task.getDescription() : "无")
+            + "</html>");
 
-      JCheckBox subtaskCheckBox = new JCheckBox(subtask.getTitle());
-      subtaskCheckBox.setSelected(subtask.isCompleted());
-      subtaskCheckBox.addItemListener(e -> subtaskCheckBoxChanged(e, subtask));
+    // Display due date, start time, and actual end time
+    startTimeLabel.setText("开始时间: " + task.getStartTime());
+    dueDateLabel.setText("截止时间: " + task.getExpectedEndTime());
+    endTimeLabel.setVisible(task.getActualEndTime() != null);
+    if (task.getActualEndTime() != null) {
+      endTimeLabel.setText("完成时间: " + task.getActualEndTime());
+    }
 
-      JLabel subtaskDescLabel = new JLabel("<html><i>"
-              + (subtask.getDescription() != null ? subtask.getDescription() : "无描述")
-              + "</i></html>");
-      subtaskDescLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+    // Display the recurrence rule of an occurrence
+    repeatLabel.setVisible(task.getTemplate() != null);
+    if (task.getTemplate() != null) {
+      repeatLabel.setText("重复: " + task.getTemplate().getRule());
+    }
 
-      JPanel subtaskItem = new JPanel(new BorderLayout());
-      subtaskItem.add(subtaskCheckBox, BorderLayout.WEST);
-      subtaskItem.add(subtaskDescLabel, BorderLayout.CENTER);
-      subtaskPanel.add(subtaskItem);
+    heatLabel.setText("热度指数: " + task.getHeatIndex());
+
+    // Display blocking tasks
+    List<Task> blockers = TaskManager.getInstance().getBlockers(task);
+    blockersLabel.setVisible(!blockers.isEmpty());
+    if (!blockers.isEmpty()) {
+      StringBuilder blockerTitles = new StringBuilder();
+      for (Task blocker : blockers) {
+        if (blockerTitles.length() > 0) {
+          blockerTitles.append(", ");
+        }
+        blockerTitles.append(blocker.getTitle()).append(blocker.isCompleted() ? " (已完成)" : "");
+      }
+      blockersLabel.setText("前置任务: " + blockerTitles);
     }
 
-    subtaskPanel.revalidate();
-    subtaskPanel.repaint();
+    completeCheckBox.setSelected(task.isCompleted());
+    subtaskModel.setSubtasks(task.getSubtasks());
+    subtaskList.clearSelection();
+    subtaskList.ensureIndexIsVisible(0);
   }
 
-  private void completeCheckBoxChanged(ItemEvent e) {
-    if (e.getStateChange() == ItemEvent.SELECTED) {
-      TaskManager.getInstance().setTaskCompleted(task, true);
-    } else if (e.getStateChange() == ItemEvent.DESELECTED) {
-      TaskManager.getInstance().setTaskCompleted(task, false);
+  /**
+   * Toggles a subtask if the click hit its checkbox.
+   */
+  private void subtaskClicked(Point point) {
+    int index = subtaskList.locationToIndex(point);
+    if (index < 0) {
+      return;
+    }
+    Rectangle bounds = subtaskList.getCellBounds(index, index);
+    int checkBoxEnd = bounds.x + INDENT * subtaskModel.getElementAt(index).getDepth()
+            + subtaskRenderer.checkBox.getPreferredSize().width;
+    if (bounds.contains(point) && point.x < checkBoxEnd) {
+      toggleSubtask(index);
     }
   }
 
-  private void subtaskCheckBoxChanged(ItemEvent e, Subtask subtask) {
-    if (e.getStateChange() == ItemEvent.SELECTED) {
-      TaskManager.getInstance().setSubtaskCompleted(subtask, true);
-    } else if (e.getStateChange() == ItemEvent.DESELECTED) {
-      TaskManager.getInstance().setSubtaskCompleted(subtask, false);
+  private void toggleSubtask(int index) {
+    if (index < 0) {
+      return;
     }
+    Subtask subtask = subtaskModel.getElementAt(index);
+    TaskManager.getInstance().setSubtaskCompleted(subtask, !subtask.isCompleted());
+    // The counts of its ancestors, and the task itself, may have changed too
+    subtaskModel.subtasksChanged();
+    completeCheckBox.setSelected(task.isCompleted());
+  }
+
+  private void completeCheckBoxChanged() {
+    TaskManager.getInstance().setTaskCompleted(task, completeCheckBox.isSelected());
   }
 
   private void editButtonClicked() {
     if (task.isCompleted()) {
       JOptionPane.showMessageDialog(this, "已完成任务不能编辑");
+    } else if (task.getTemplate() != null) {
+      JOptionPane.showMessageDialog(this, "重复任务的单次实例不能编辑");
     } else {
-      TaskEditFrame taskEditFrame = new TaskEditFrame(mainFrame, task);
-      taskEditFrame.setVisible(true);
       setVisible(false);
-      dispose();
+      ((MainFrame) mainFrame).openTaskEditFrame(task);
     }
   }
 
   private void deleteButtonClicked() {
+    if (task.getTemplate() != null) {
+      // An occurrence cannot be deleted alone; deleting removes every occurrence
+      int option = JOptionPane.showConfirmDialog(this, "将删除该重复任务的所有实例，是否继续？",
+              "删除重复任务", JOptionPane.OK_CANCEL_OPTION);
+      if (option != JOptionPane.OK_OPTION) {
+        return;
+      }
+      TaskManager.getInstance().removeRecurringTask(task.getTemplate());
+      returnToMainFrame();
+      return;
+    }
     TaskManager.getInstance().removeTask(task);
     returnToMainFrame();
   }
 
   private void returnToMainFrame() {
+    setVisible(false);
+    // Drop the subtasks, which may belong to a task removed meanwhile
+    subtaskModel.setSubtasks(List.of());
     mainFrame.setVisible(true);
     ((MainFrame) mainFrame).refreshTasks();
-    dispose();
   }
 
   private void actionPerformed(ActionEvent e) {
     editButtonClicked();
   }
-}
\ No newline at end of file
+
+  /**
+   * The subtasks of the bound task, in pre-order.
+   */
+  private static class SubtaskListModel extends AbstractListModel<Subtask> {
+
+    private final List<Subtask> subtasks = new ArrayList<>();
+
+    void setSubtasks(List<Subtask> newSubtasks) {
+      int oldSize = subtasks.size();
+      subtasks.clear();
+      if (oldSize > 0) {
+        fireIntervalRemoved(this, 0, oldSize - 1);
+      }
+      subtasks.addAll(newSubtasks);
+      if (!subtasks.isEmpty()) {
+        fireIntervalAdded(this, 0, subtasks.size() - 1);
+      }
+    }
+
+    void subtasksChanged() {
+      if (!subtasks.isEmpty()) {
+        fireContentsChanged(this, 0, subtasks.size() - 1);
+      }
+    }
+
+    @Override
+    public int getSize() {
+      return subtasks.size();
+    }
+
+    @Override
+    public Subtask getElementAt(int index) {
+      return subtasks.get(index);
+    }
+  }
+
+  /**
+   * Renders a subtask as a checkbox showing its completion and a description, indented by
+   * depth. Only called for visible subtasks.
+   */
+  private static class SubtaskRenderer extends JPanel implements ListCellRenderer<Subtask> {
+
+    private final JCheckBox checkBox = new JCheckBox();
+    private final JLabel descriptionLabel = new JLabel();
+
+    SubtaskRenderer() {
+      super(new BorderLayout());
+      checkBox.setOpaque(false);
+      descriptionLabel.setFont(descriptionLabel.getFont().deriveFont(Font.ITALIC));
+      descriptionLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+      add(checkBox, BorderLayout.WEST);
+      add(descriptionLabel, BorderLayout.CENTER);
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<? extends Subtask> list,
+            Subtask subtask, int index, boolean isSelected, boolean cellHasFocus) {
+      String subtaskTitle = subtask.getTitle();
+      int subtreeCount = subtask.getSubtreeCount();
+      if (subtreeCount > 1) {
+        subtaskTitle += " (" + subtask.getCompletedSubtreeCount() + "/" + subtreeCount + ")";
+      }
+      checkBox.setText(subtaskTitle);
+      checkBox.setSelected(subtask.isCompleted());
+      descriptionLabel.setText(subtask.getDescription() != null ? subtask.getDescription()
+              : "无描述");
+      setBorder(BorderFactory.createEmptyBorder(0, INDENT * subtask.getDepth(), 0, 0));
+      setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+      return this;
+    }
+  }
+}
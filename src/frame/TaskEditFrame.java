@@ -8,7 +8,10 @@ import java.awt.event.WindowEvent;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 import javax.swing.*;
+import task.RecurrenceRule;
+import task.RecurringTask;
 import task.Subtask;
 import task.Task;
 import task.TaskManager;
@@ -17,51 +20,43 @@ import task.TaskManager;
 /**
  * Frame for creating or editing a task, allowing management of subtasks.
  * Closes the main frame when opened, then reopens and refreshes it after task operations.
+ * The main frame creates it once and rebinds it for every task, see {@link #bind(Task)}.
  */
 public class TaskEditFrame extends JFrame {
 
+  // Fixed cell sizes let the subtask list render only the visible subtasks
+  private static final int SUBTASK_HEIGHT = 36;
+  private static final int SUBTASK_WIDTH = 100;
+
   private JTextField titleField;
   private JTextArea descriptionArea;
   private JSpinner dueDateSpinner;
+  private JComboBox<String> repeatBox;
+  private JPanel repeatPanel;
+  private JButton actionButton;
+  private JList<Subtask> subtaskList;
   private final JFrame mainFrame;
-  private final List<Subtask> subtasks;
-  private JPanel subtaskPanel;
+  private final List<Subtask> subtasks = new ArrayList<>();
+  private final SubtaskListModel subtaskModel = new SubtaskListModel();
 
   // If task is null, the frame operates in creation mode; otherwise, in edit mode.
-  private final Task task;
+  private Task task;
 
   /**
-   * Creates a new task creat frame with parent MainFrame.
+   * Creates a new task edit frame with parent MainFrame, in creation mode.
    *
    * @param mainFrame parent MainFrame.
    */
   public TaskEditFrame(JFrame mainFrame) {
     this.mainFrame = mainFrame;
-    this.task = null;
-    this.subtasks = new ArrayList<>();
-    setTitle("New Task");
-
-    initializeUI();
-  }
-
-  /**
-   * Creates a new task edit frame with parent MainFrame.
-   *
-   * @param mainFrame parent MainFrame.
-   */
-  public TaskEditFrame(JFrame mainFrame, Task task) {
-    this.mainFrame = mainFrame;
-    this.task = task;
-    this.subtasks = task.getSubtasks();
-    setTitle("Edit Task");
-
     initializeUI();
+    bind(null);
   }
 
   private void initializeUI() {
     setSize(400, 400);
     setLocationRelativeTo(null);
-    setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
     setLayout(new BorderLayout());
     initializeComponents();
 
@@ -83,11 +78,6 @@ public class TaskEditFrame extends JFrame {
     titleField = new JTextField();
     titlePanel.add(titleField, BorderLayout.CENTER);
 
-    if (task != null) {
-      titleField.setText(task.getTitle());
-      titleField.setEditable(false);
-    }
-
     JPanel formPanel = new JPanel(new BorderLayout(10, 10));
     formPanel.add(titlePanel, BorderLayout.NORTH);
 
@@ -97,9 +87,6 @@ public class TaskEditFrame extends JFrame {
     descriptionArea = new JTextArea(3, 20);
     descriptionPanel.add(new JScrollPane(descriptionArea), BorderLayout.CENTER);
     formPanel.add(descriptionPanel, BorderLayout.CENTER);
-    if (task != null) {
-      descriptionArea.setText(task.getDescription());
-    }
 
     // Due date
     JPanel dueDatePanel = new JPanel(new BorderLayout());
@@ -108,30 +95,43 @@ public class TaskEditFrame extends JFrame {
     JSpinner.DateEditor dateEditor = new JSpinner.DateEditor(dueDateSpinner, "yyyy-MM-dd HH:mm");
     dueDateSpinner.setEditor(dateEditor);
     dueDatePanel.add(dueDateSpinner, BorderLayout.CENTER);
-    formPanel.add(dueDatePanel, BorderLayout.SOUTH);
-    if (task != null) {
-      dueDateSpinner.setValue(task.getExpectedEndTime());
-    }
+
+    // Repetition, only shown when creating; the due date is the first occurrence
+    repeatPanel = new JPanel(new BorderLayout());
+    repeatPanel.add(new JLabel("Repeat:"), BorderLayout.WEST);
+    repeatBox = new JComboBox<>(new String[] {"None", "Daily", "Weekly", "Monthly", "Yearly"});
+    repeatPanel.add(repeatBox, BorderLayout.CENTER);
+    JPanel schedulePanel = new JPanel();
+    schedulePanel.setLayout(new BoxLayout(schedulePanel, BoxLayout.Y_AXIS));
+    schedulePanel.add(dueDatePanel);
+    schedulePanel.add(repeatPanel);
+    formPanel.add(schedulePanel, BorderLayout.SOUTH);
 
     add(formPanel, BorderLayout.NORTH);
 
     // Subtask area
     JPanel subtaskArea = new JPanel(new BorderLayout());
+    JPanel subtaskButtonPanel = new JPanel(new GridLayout(1, 2));
     JButton addSubtaskButton = new JButton("Add Subtask");
     addSubtaskButton.addActionListener(this::addSubtask);
-    subtaskArea.add(addSubtaskButton, BorderLayout.NORTH);
-
-    subtaskPanel = new JPanel();
-    subtaskPanel.setLayout(new BoxLayout(subtaskPanel, BoxLayout.Y_AXIS));
-    subtaskArea.add(new JScrollPane(subtaskPanel), BorderLayout.CENTER);
+    subtaskButtonPanel.add(addSubtaskButton);
+    JButton deleteSubtaskButton = new JButton("Delete Subtask");
+    deleteSubtaskButton.addActionListener(e -> deleteSubtask());
+    subtaskButtonPanel.add(deleteSubtaskButton);
+    subtaskArea.add(subtaskButtonPanel, BorderLayout.NORTH);
+
+    subtaskList = new JList<>(subtaskModel);
+    subtaskList.setCellRenderer(new SubtaskRenderer());
+    subtaskList.setFixedCellHeight(SUBTASK_HEIGHT);
+    subtaskList.setFixedCellWidth(SUBTASK_WIDTH);
+    subtaskList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    subtaskArea.add(new JScrollPane(subtaskList), BorderLayout.CENTER);
 
     add(subtaskArea, BorderLayout.CENTER);
 
-    displaySubtasks();
-
     // Buttons for task operations
     JPanel buttonPanel = new JPanel();
-    JButton actionButton = new JButton(task == null ? "Create" : "Edit");
+    actionButton = new JButton();
     actionButton.addActionListener(e -> {
       if (task == null) {
         createTask();
@@ -149,16 +149,53 @@ public class TaskEditFrame extends JFrame {
     add(buttonPanel, BorderLayout.SOUTH);
   }
 
+  /**
+   * Resets this frame to create a new task, or to edit an existing one, reusing its
+   * components.
+   *
+   * @param task the task to edit, or null to create a new task.
+   */
+  public void bind(Task task) {
+    this.task = task;
+    subtasks.clear();
+    if (task == null) {
+      setTitle("New Task");
+      actionButton.setText("Create");
+      titleField.setText("");
+      titleField.setEditable(true);
+      descriptionArea.setText("");
+      dueDateSpinner.setValue(new Date());
+      repeatBox.setSelectedIndex(0);
+    } else {
+      setTitle("Edit Task");
+      actionButton.setText("Edit");
+      titleField.setText(task.getTitle());
+      titleField.setEditable(false);
+      descriptionArea.setText(task.getDescription());
+      dueDateSpinner.setValue(task.getExpectedEndTime());
+      subtasks.addAll(task.getSubtasks());
+    }
+    repeatPanel.setVisible(task == null);
+    displaySubtasks();
+  }
+
   /**
    * Opens a dialog to create a new subtask.
-   * Allows setting a title and optional description for the subtask.
+   * Allows setting a title, optional description and optional parent subtask for the subtask.
    */
   private void addSubtask(ActionEvent e) {
     JTextField subtaskTitleField = new JTextField(10);
     JTextArea subtaskDescField = new JTextArea(3, 20);
+    String[] parentTitles = new String[subtasks.size() + 1];
+    parentTitles[0] = "None";
+    for (int i = 0; i < subtasks.size(); i++) {
+      parentTitles[i + 1] = "  ".repeat(subtasks.get(i).getDepth()) + subtasks.get(i).getTitle();
+    }
+    JComboBox<String> parentBox = new JComboBox<>(parentTitles);
     Object[] message = {
       "Subtask Title:", subtaskTitleField,
-      "Subtask Description:", new JScrollPane(subtaskDescField)
+      "Subtask Description:", new JScrollPane(subtaskDescField),
+      "Parent Subtask:", parentBox
     };
 
     int option = JOptionPane.showConfirmDialog(this, message,
@@ -172,33 +209,45 @@ public class TaskEditFrame extends JFrame {
       }
       Subtask subtask = new Subtask(title, null);
       subtask.setDescription(subtaskDescField.getText().trim());
-      subtasks.add(subtask);
+      int parentIndex = parentBox.getSelectedIndex() - 1;
+      if (parentIndex < 0) {
+        subtasks.add(subtask);
+      } else {
+        // Keep the list in pre-order: insert after the last descendant of the parent
+        Subtask parent = subtasks.get(parentIndex);
+        int index = parentIndex + 1;
+        while (index < subtasks.size() && isDescendant(subtasks.get(index), parent)) {
+          index++;
+        }
+        subtask.setParentSubtask(parent);
+        subtasks.add(index, subtask);
+      }
       displaySubtasks();
     }
   }
 
   private void displaySubtasks() {
-    subtaskPanel.removeAll();
-    for (Subtask subtask : subtasks) {
-      JPanel subtaskItem = new JPanel(new BorderLayout());
-      String taskInfo = String.format(
-              "<html><b>%s</b><br/>Description: %s</html>",
-              subtask.getTitle(),
-              subtask.getDescription() != null ? subtask.getDescription() : "None"
-      );
-      subtaskItem.add(new JLabel(taskInfo), BorderLayout.WEST);
-
-      JButton deleteButton = new JButton("Delete");
-      deleteButton.addActionListener(e -> {
-        subtasks.remove(subtask);
-        displaySubtasks();
-      });
-      subtaskItem.add(deleteButton, BorderLayout.EAST);
-
-      subtaskPanel.add(subtaskItem);
+    subtaskModel.subtasksChanged();
+    subtaskList.clearSelection();
+  }
+
+  private void deleteSubtask() {
+    Subtask subtask = subtaskList.getSelectedValue();
+    if (subtask == null) {
+      return;
     }
-    subtaskPanel.revalidate();
-    subtaskPanel.repaint();
+    subtasks.removeIf(candidate -> candidate == subtask || isDescendant(candidate, subtask));
+    displaySubtasks();
+  }
+
+  private static boolean isDescendant(Subtask subtask, Subtask ancestor) {
+    for (Subtask parent = subtask.getParentSubtask(); parent != null;
+            parent = parent.getParentSubtask()) {
+      if (parent == ancestor) {
+        return true;
+      }
+    }
+    return false;
   }
 
   private void createTask() {
@@ -212,6 +261,24 @@ public class TaskEditFrame extends JFrame {
       return;
     }
 
+    int repeat = repeatBox.getSelectedIndex();
+    if (repeat > 0) {
+      if (!subtasks.isEmpty()) {
+        JOptionPane.showMessageDialog(this, "Repeating tasks cannot have subtasks.",
+                "Input Error", JOptionPane.ERROR_MESSAGE);
+        return;
+      }
+      RecurringTask template = new RecurringTask(title, dueDate,
+              RecurrenceRule.of(RecurrenceRule.Frequency.values()[repeat - 1]));
+      template.setDescription(description);
+      TaskManager.getInstance().addRecurringTask(template);
+      JOptionPane.showMessageDialog(this, "Repeating task created successfully!",
+              "Success", JOptionPane.INFORMATION_MESSAGE);
+
+      returnToMainFrame();
+      return;
+    }
+
     Task newTask = new Task(title, dueDate);
     newTask.setDescription(description);
 
@@ -231,16 +298,20 @@ public class TaskEditFrame extends JFrame {
     if (task == null) {
       return;
     }
-    task.setDescription(descriptionArea.getText().trim());
-    task.setDueDate((Date) dueDateSpinner.getValue());
-    task.clearSubtasks();
-
-    for (Subtask subtask : subtasks) {
-      subtask.setParentTask(task);
-      task.addSubtask(subtask);
-    }
+    String description = descriptionArea.getText().trim();
+    Date dueDate = (Date) dueDateSpinner.getValue();
+    // The area shows a missing description as empty text; leaving it empty is no edit
+    boolean descriptionChanged = !description.equals(
+            Objects.requireNonNullElse(task.getDescription(), ""));
+    // Unchanged fields record nothing, so an edit without changes is not an undoable batch
+    TaskManager.getInstance().undoableBatch(tx -> {
+      if (descriptionChanged) {
+        tx.setDescription(task, description);
+      }
+      tx.setDueDate(task, dueDate);
+      tx.setSubtasks(task, subtasks);
+    });
 
-    TaskManager.getInstance().triggerAutoSave();
     JOptionPane.showMessageDialog(this, "Task edited successfully.",
             "Success", JOptionPane.INFORMATION_MESSAGE);
 
@@ -248,8 +319,73 @@ public class TaskEditFrame extends JFrame {
   }
 
   private void returnToMainFrame() {
+    setVisible(false);
+    // Drop the subtasks, which may belong to a task removed meanwhile
+    subtasks.clear();
+    displaySubtasks();
     mainFrame.setVisible(true);
     ((MainFrame) mainFrame).refreshTasks();
-    dispose();
+  }
+
+  /**
+   * The subtasks being edited, in pre-order.
+   */
+  private class SubtaskListModel extends AbstractListModel<Subtask> {
+
+    private int size;
+
+    /**
+     * Tells the list the subtasks have changed. Fires removal and addition rather than a
+     * change, as the list only rereads its size then.
+     */
+    void subtasksChanged() {
+      if (size > 0) {
+        int oldSize = size;
+        size = 0;
+        fireIntervalRemoved(this, 0, oldSize - 1);
+      }
+      size = subtasks.size();
+      if (size > 0) {
+        fireIntervalAdded(this, 0, size - 1);
+      }
+    }
+
+    @Override
+    public int getSize() {
+      return size;
+    }
+
+    @Override
+    public Subtask getElementAt(int index) {
+      return subtasks.get(index);
+    }
+  }
+
+  /**
+   * Renders a subtask as its title above its description, indented by depth. Only called for
+   * visible subtasks.
+   */
+  private static class SubtaskRenderer extends JPanel implements ListCellRenderer<Subtask> {
+
+    private final JLabel titleLabel = new JLabel();
+    private final JLabel descriptionLabel = new JLabel();
+
+    SubtaskRenderer() {
+      super(new GridLayout(2, 1));
+      titleLabel.setFont(titleLabel.getFont().deriveFont(Font.BOLD));
+      add(titleLabel);
+      add(descriptionLabel);
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<? extends Subtask> list,
+            Subtask subtask, int index, boolean isSelected, boolean cellHasFocus) {
+      titleLabel.setText(subtask.getTitle());
+      descriptionLabel.setText("Description: "
+              + (subtask.getDescription() != null ? subtask.getDescription() : "None"));
+      setBorder(BorderFactory.createEmptyBorder(0, 20 * subtask.getDepth(), 0, 0));
+      setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+      return this;
+    }
   }
 }
\ No newline at end of file
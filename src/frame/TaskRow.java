@@ -0,0 +1,70 @@
+package frame;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.function.Consumer;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.border.EmptyBorder;
+import task.Task;
+
+/**
+ * A row of the main frame's task list. Rows are created once and rebound to other tasks on
+ * every refresh, so their label, button and listener are reused.
+ */
+class TaskRow extends JPanel {
+
+  private static final int HEIGHT = 90;
+
+  private final JLabel taskLabel = new JLabel();
+  private final Color defaultForeground = taskLabel.getForeground();
+  private String text = "";
+  private int width = -1;
+  private Task task;
+
+  /**
+   * Creates an unbound row.
+   *
+   * @param openDetails called with the bound task when "查看详情" is pressed.
+   */
+  TaskRow(Consumer<Task> openDetails) {
+    super(new BorderLayout());
+    setBorder(new EmptyBorder(5, 5, 5, 5));
+    setBackground(Color.WHITE);
+
+    JButton detailsButton = new JButton("查看详情");
+    detailsButton.addActionListener(e -> openDetails.accept(task));
+
+    add(taskLabel, BorderLayout.CENTER);
+    add(detailsButton, BorderLayout.EAST);
+  }
+
+  /**
+   * Shows a task in this row. The label text is only replaced if it changed.
+   *
+   * @param task      the task.
+   * @param text      the formatted label text.
+   * @param nowMillis the time of the current refresh, used to mark overdue tasks.
+   * @param width     preferred width of the row.
+   */
+  void bind(Task task, CharSequence text, long nowMillis, int width) {
+    this.task = task;
+    if (!this.text.contentEquals(text)) {
+      this.text = text.toString();
+      taskLabel.setText(this.text);
+    }
+    if (this.width != width) {
+      this.width = width;
+      setPreferredSize(new Dimension(width, HEIGHT));
+    }
+    if (task.isCompleted()) {
+      taskLabel.setForeground(Color.GREEN);
+    } else if (nowMillis > task.getExpectedEndMillis()) {
+      taskLabel.setForeground(Color.RED);
+    } else {
+      taskLabel.setForeground(defaultForeground);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package frame;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import task.Task;
+
+/**
+ * Formats the HTML text of task rows in the main frame.
+ * The formatter reuses one StringBuilder and caches formatted dates by epoch minute, so
+ * formatting a row whose due date has been seen before does not allocate. The returned text is
+ * only valid until the next call; callers compare it with what they display and copy it into a
+ * String only when it changed. Not thread-safe, it is meant to be used on the EDT.
+ */
+public class TaskRowFormatter {
+
+  private static final int DATE_CACHE_SIZE = 1024;
+  private static final long MILLIS_PER_MINUTE = 60_000L;
+
+  private final StringBuilder builder = new StringBuilder(256);
+  private final DateTimeFormatter dateFormatter;
+  private final long[] cachedMinutes = new long[DATE_CACHE_SIZE];
+  private final String[] cachedDates = new String[DATE_CACHE_SIZE];
+
+  /**
+   * Creates a formatter for dates in the system default time zone.
+   */
+  public TaskRowFormatter() {
+    dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+            .withZone(ZoneId.systemDefault());
+    Arrays.fill(cachedMinutes, Long.MIN_VALUE);
+  }
+
+  /**
+   * Formats the label text of a task row.
+   *
+   * @param task the task.
+   * @return the text, backed by a buffer that the next call overwrites.
+   */
+  public CharSequence format(Task task) {
+    builder.setLength(0);
+    builder.append("<html><b>");
+    appendEscaped(task.getTitle());
+    builder.append("</b><br/>描述: ");
+    if (task.getDescription() != null) {
+      appendEscaped(task.getDescription());
+    } else {
+      builder.append("无");
+    }
+    builder.append("<br/>热度: ").append(task.getHeatIndex());
+    int subtaskCount = task.getSubtaskCount();
+    if (subtaskCount > 0) {
+      builder.append("&nbsp;&nbsp;子任务: ").append(task.getCompletedSubtaskCount())
+              .append('/').append(subtaskCount);
+    }
+    builder.append("<br/>截止时间: ");
+    builder.append(formatDate(task.getExpectedEndMillis()));
+    builder.append("</html>");
+    return builder;
+  }
+
+  /**
+   * Formats a time to minute precision, reusing the String of earlier calls in the same minute.
+   *
+   * @param epochMillis the time.
+   * @return the formatted time.
+   */
+  public String formatDate(long epochMillis) {
+    long minute = Math.floorDiv(epochMillis, MILLIS_PER_MINUTE);
+    int slot = (int) (minute & (DATE_CACHE_SIZE - 1));
+    if (cachedMinutes[slot] != minute) {
+      cachedDates[slot] = dateFormatter.format(Instant.ofEpochMilli(minute * MILLIS_PER_MINUTE));
+      cachedMinutes[slot] = minute;
+    }
+    return cachedDates[slot];
+  }
+
+  private void appendEscaped(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '<' -> builder.append("&lt;");
+        case '>' -> builder.append("&gt;");
+        case '&' -> builder.append("&amp;");
+        default -> builder.append(c);
+      }
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package ical;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+import task.Task;
+import task.TaskManager;
+
+/**
+ * Exports every task of a {@link TaskManager} as an iCalendar stream.
+ */
+public final class ICalExporter {
+
+  // Tasks rendered per acquisition of the read lock
+  private static final int CHUNK_TASKS = 1000;
+
+  private ICalExporter() {
+  }
+
+  /**
+   * Writes all tasks, in creation order. The tasks are listed under the TaskManager read lock
+   * and then rendered in chunks, each under the read lock so every task is written in a
+   * consistent state, while the rendered text is written to the destination outside the lock.
+   * Batches therefore only wait for the rendering of one chunk, not for the whole export; a
+   * task removed meanwhile is still written as it was when removed.
+   *
+   * @param manager the task manager to export.
+   * @param out     the destination, which is closed afterwards.
+   * @return the number of tasks written.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static int export(TaskManager manager, Writer out) throws IOException {
+    CharArrayWriter chunk = new CharArrayWriter();
+    try (Writer target = out) {
+      ICalWriter writer = new ICalWriter(chunk);
+      List<Task> tasks = manager.read(List::copyOf);
+      for (int first = 0; first < tasks.size(); first += CHUNK_TASKS) {
+        List<Task> part = tasks.subList(first, Math.min(first + CHUNK_TASKS, tasks.size()));
+        manager.read(ignored -> {
+          try {
+            for (Task task : part) {
+              writer.writeTask(task);
+            }
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          return null;
+        });
+        chunk.writeTo(target);
+        chunk.reset();
+      }
+      writer.close();
+      chunk.writeTo(target);
+      return tasks.size();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+}
@@ -0,0 +1,302 @@
+package ical;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import task.Subtask;
+import task.Tag;
+import task.Task;
+import task.TaskManager;
+import task.TaskTransaction;
+
+/**
+ * Imports VTODO components from an iCalendar stream into a {@link TaskManager}.
+ * Components are mapped to tasks as they are parsed and inserted in batches, so the importer
+ * only holds one batch of tasks at a time. A VTODO with RELATED-TO becomes a subtask of the
+ * referenced task. Tasks whose UID already exists are skipped, and so are their subtasks and
+ * subtasks whose UID already exists under their task, so importing a file again adds nothing.
+ */
+public class ICalImporter {
+
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+  private static final String DEFAULT_TAG_COLOR = "#808080";
+
+  private final TaskManager manager;
+  private final int batchSize;
+
+  // Components parsed since the last flush.
+  private final Map<String, PendingTask> pendingTasks = new LinkedHashMap<>();
+  private final List<PendingSubtask> pendingSubtasks = new ArrayList<>();
+  // Subtasks whose parent has not been seen yet, by parent UID.
+  private final Map<String, List<PendingSubtask>> orphans = new HashMap<>();
+  // UIDs of the tasks skipped as existing, whose subtasks are skipped too.
+  private final Set<String> skippedTasks = new HashSet<>();
+
+  private int importedTasks;
+  private int importedSubtasks;
+  private int skipped;
+
+  /**
+   * Constructs an importer with the default batch size.
+   *
+   * @param manager the task manager to import into.
+   */
+  public ICalImporter(TaskManager manager) {
+    this(manager, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Constructs an importer.
+   *
+   * @param manager   the task manager to import into.
+   * @param batchSize the number of components inserted per TaskManager batch.
+   */
+  public ICalImporter(TaskManager manager, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive.");
+    }
+    this.manager = manager;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Imports every VTODO of a stream. Other components, such as VEVENT or VALARM, are ignored.
+   *
+   * @param in the iCalendar source.
+   * @return a summary of the import.
+   * @throws IOException if an I/O error occurs or the content is malformed.
+   */
+  public String importFrom(Reader in) throws IOException {
+    ICalReader reader = new ICalReader(in);
+    Component todo = null;
+    int ignoredDepth = 0;
+    while (reader.next()) {
+      if (reader.is("BEGIN")) {
+        if (todo == null && ignoredDepth == 0 && reader.valueIs("VTODO")) {
+          todo = new Component();
+        } else if (todo != null || !reader.valueIs("VCALENDAR")) {
+          ignoredDepth++;
+        }
+      } else if (reader.is("END")) {
+        if (ignoredDepth > 0) {
+          ignoredDepth--;
+        } else if (todo != null) {
+          accept(todo);
+          todo = null;
+        }
+      } else if (todo != null && ignoredDepth == 0) {
+        todo.read(reader);
+      }
+    }
+    flush();
+    int orphanCount = orphans.values().stream().mapToInt(List::size).sum();
+    orphans.clear();
+    return String.format("Imported %d tasks and %d subtasks, skipped %d existing ones, "
+            + "dropped %d subtasks without parent.",
+            importedTasks, importedSubtasks, skipped, orphanCount);
+  }
+
+  private void accept(Component todo) {
+    if (todo.summary == null || todo.summary.isEmpty()) {
+      todo.summary = "(untitled)";
+    }
+    if (todo.uid == null) {
+      todo.uid = UUID.randomUUID().toString();
+    }
+    if (todo.start == null) {
+      todo.start = new Date();
+    }
+    Date completedAt = todo.completed
+            ? (todo.completedAt != null ? todo.completedAt : new Date()) : null;
+
+    if (todo.relatedTo != null) {
+      Subtask subtask = new Subtask(todo.uid, todo.summary, todo.start, null);
+      subtask.setDescription(todo.description);
+      PendingSubtask pendingSubtask = new PendingSubtask(todo.relatedTo, subtask, completedAt);
+      PendingTask parent = pendingTasks.get(todo.relatedTo);
+      Task existing;
+      if (parent != null) {
+        parent.attach(pendingSubtask);
+      } else if (skippedTasks.contains(todo.relatedTo)) {
+        skipped++;
+        return;
+      } else if ((existing = manager.getTaskByUid(todo.relatedTo).orElse(null)) != null) {
+        if (hasSubtask(existing, todo.uid)) {
+          skipped++;
+          return;
+        }
+        pendingSubtasks.add(pendingSubtask);
+      } else {
+        orphans.computeIfAbsent(todo.relatedTo, uid -> new ArrayList<>()).add(pendingSubtask);
+        return;
+      }
+    } else {
+      if (pendingTasks.containsKey(todo.uid) || manager.getTaskByUid(todo.uid).isPresent()) {
+        skippedTasks.add(todo.uid);
+        List<PendingSubtask> waiting = orphans.remove(todo.uid);
+        skipped += 1 + (waiting != null ? waiting.size() : 0);
+        return;
+      }
+      Task task = new Task(todo.uid, todo.summary, todo.start,
+              todo.due != null ? todo.due : todo.start);
+      task.setDescription(todo.description);
+      if (todo.category != null && !todo.category.isEmpty()) {
+        task.setTag(new Tag(todo.category,
+                todo.color != null && todo.color.matches("^#([A-Fa-f0-9]{6})$")
+                        ? todo.color : DEFAULT_TAG_COLOR, null));
+      }
+      PendingTask pendingTask = new PendingTask(task, completedAt, todo.heat);
+      List<PendingSubtask> waiting = orphans.remove(todo.uid);
+      if (waiting != null) {
+        waiting.forEach(pendingTask::attach);
+      }
+      pendingTasks.put(todo.uid, pendingTask);
+    }
+    if (pendingTasks.size() + pendingSubtasks.size() >= batchSize) {
+      flush();
+    }
+  }
+
+  private boolean hasSubtask(Task task, String uid) {
+    for (Subtask subtask : task.getSubtasks()) {
+      if (subtask.getUid().equals(uid)) {
+        return true;
+      }
+    }
+    for (PendingSubtask pendingSubtask : pendingSubtasks) {
+      if (pendingSubtask.subtask.getUid().equals(uid)
+              && pendingSubtask.parentUid.equals(task.getUid())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void flush() {
+    if (pendingTasks.isEmpty() && pendingSubtasks.isEmpty()) {
+      return;
+    }
+    manager.batch(tx -> {
+      for (PendingTask pendingTask : pendingTasks.values()) {
+        tx.addTask(pendingTask.task);
+        if (pendingTask.completedAt != null) {
+          tx.setTaskCompleted(pendingTask.task, true, pendingTask.completedAt);
+        }
+        if (pendingTask.heat != 0) {
+          tx.setHeat(pendingTask.task, pendingTask.heat);
+        }
+        pendingTask.subtasks.forEach(subtask -> subtask.complete(tx));
+      }
+      for (PendingSubtask pendingSubtask : pendingSubtasks) {
+        tx.addSubtask(manager.getTaskByUid(pendingSubtask.parentUid).orElseThrow(),
+                pendingSubtask.subtask);
+        pendingSubtask.complete(tx);
+      }
+    });
+    for (PendingTask pendingTask : pendingTasks.values()) {
+      importedSubtasks += pendingTask.subtasks.size();
+    }
+    importedTasks += pendingTasks.size();
+    importedSubtasks += pendingSubtasks.size();
+    pendingTasks.clear();
+    pendingSubtasks.clear();
+  }
+
+  /**
+   * A parsed task waiting to be inserted, with the values which are set through the batch.
+   */
+  private static final class PendingTask {
+    private final Task task;
+    private final Date completedAt;
+    private final int heat;
+    private final List<PendingSubtask> subtasks = new ArrayList<>();
+
+    private PendingTask(Task task, Date completedAt, int heat) {
+      this.task = task;
+      this.completedAt = completedAt;
+      this.heat = heat;
+    }
+
+    private void attach(PendingSubtask pendingSubtask) {
+      pendingSubtask.subtask.setParentTask(task);
+      task.addSubtask(pendingSubtask.subtask);
+      subtasks.add(pendingSubtask);
+    }
+  }
+
+  /**
+   * A parsed subtask waiting to be inserted.
+   */
+  private static final class PendingSubtask {
+    private final String parentUid;
+    private final Subtask subtask;
+    private final Date completedAt;
+
+    private PendingSubtask(String parentUid, Subtask subtask, Date completedAt) {
+      this.parentUid = parentUid;
+      this.subtask = subtask;
+      this.completedAt = completedAt;
+    }
+
+    private void complete(TaskTransaction tx) {
+      if (completedAt != null) {
+        tx.setSubtaskCompleted(subtask, true, completedAt);
+      }
+    }
+  }
+
+  /**
+   * Properties of the VTODO currently being parsed.
+   */
+  private static final class Component {
+    private String uid;
+    private String summary;
+    private String description;
+    private String category;
+    private String color;
+    private String relatedTo;
+    private Date start;
+    private Date due;
+    private Date completedAt;
+    private boolean completed;
+    private int heat;
+
+    private void read(ICalReader reader) throws IOException {
+      if (reader.is("UID")) {
+        uid = reader.textValue();
+      } else if (reader.is("SUMMARY")) {
+        summary = reader.textValue();
+      } else if (reader.is("DESCRIPTION")) {
+        description = reader.textValue();
+      } else if (reader.is("CATEGORIES")) {
+        category = reader.textValue();
+      } else if (reader.is("X-JTODO-COLOR")) {
+        color = reader.rawValue();
+      } else if (reader.is("X-JTODO-HEAT")) {
+        heat = Integer.parseInt(reader.rawValue().trim());
+      } else if (reader.is("RELATED-TO")) {
+        String type = reader.parameter("RELTYPE");
+        if (type == null || type.equalsIgnoreCase("PARENT")) {
+          relatedTo = reader.textValue();
+        }
+      } else if (reader.is("DTSTART")) {
+        start = reader.dateValue();
+      } else if (reader.is("DUE")) {
+        due = reader.dateValue();
+      } else if (reader.is("COMPLETED")) {
+        completedAt = reader.dateValue();
+        completed = true;
+      } else if (reader.is("STATUS")) {
+        completed = reader.valueIs("COMPLETED");
+      }
+    }
+  }
+}
@@ -0,0 +1,285 @@
+package ical;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * Streaming pull parser for iCalendar (RFC 5545) content lines.
+ * Each call to {@link #next()} unfolds one content line into a reused buffer, so memory use is
+ * bounded by the longest property rather than by the size of the file. No component tree is
+ * built; callers react to BEGIN and END properties themselves.
+ */
+public class ICalReader implements Closeable {
+
+  private final Reader in;
+  private final char[] buffer = new char[1 << 16];
+  private int position;
+  private int limit;
+
+  // The current unfolded content line and the offsets of its parts.
+  private final StringBuilder line = new StringBuilder(256);
+  private int nameEnd;
+  private int valueStart;
+  private int lineNumber;
+
+  /**
+   * Constructs a reader.
+   *
+   * @param in the source, decoding UTF-8. It does not need to be buffered.
+   */
+  public ICalReader(Reader in) {
+    this.in = in;
+  }
+
+  /**
+   * Advances to the next content line.
+   *
+   * @return false at the end of the input.
+   * @throws IOException if an I/O error occurs or the line is malformed.
+   */
+  public boolean next() throws IOException {
+    do {
+      if (!readLine()) {
+        return false;
+      }
+    } while (line.length() == 0);
+    lineNumber++;
+    nameEnd = 0;
+    while (nameEnd < line.length() && line.charAt(nameEnd) != ';' && line.charAt(nameEnd) != ':') {
+      nameEnd++;
+    }
+    valueStart = -1;
+    boolean quoted = false;
+    for (int i = nameEnd; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == ':' && !quoted) {
+        valueStart = i + 1;
+        break;
+      }
+    }
+    if (valueStart < 0) {
+      throw new IOException("Malformed iCalendar line " + lineNumber + ": missing ':'.");
+    }
+    return true;
+  }
+
+  /**
+   * Reads one logical line into the line buffer, joining folded continuation lines.
+   */
+  private boolean readLine() throws IOException {
+    line.setLength(0);
+    if (!fill()) {
+      return false;
+    }
+    while (fill()) {
+      char c = buffer[position++];
+      if (c == '\r') {
+        continue;
+      }
+      if (c == '\n') {
+        // A line starting with a space or tab continues the previous one.
+        if (fill() && (buffer[position] == ' ' || buffer[position] == '\t')) {
+          position++;
+          continue;
+        }
+        return true;
+      }
+      line.append(c);
+    }
+    return true;
+  }
+
+  private boolean fill() throws IOException {
+    if (position < limit) {
+      return true;
+    }
+    int read = in.read(buffer, 0, buffer.length);
+    if (read <= 0) {
+      return false;
+    }
+    position = 0;
+    limit = read;
+    return true;
+  }
+
+  /**
+   * Returns whether the current property has a given name, ignoring case.
+   *
+   * @param name the name to compare with.
+   * @return true if the names match.
+   */
+  public boolean is(String name) {
+    if (name.length() != nameEnd) {
+      return false;
+    }
+    for (int i = 0; i < nameEnd; i++) {
+      if (Character.toUpperCase(line.charAt(i)) != name.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the name of the current property in upper case.
+   *
+   * @return the property name.
+   */
+  public String name() {
+    return line.substring(0, nameEnd).toUpperCase();
+  }
+
+  /**
+   * Returns whether the raw value of the current property equals a string, ignoring case.
+   *
+   * @param value the value to compare with.
+   * @return true if the values match.
+   */
+  public boolean valueIs(String value) {
+    int length = line.length() - valueStart;
+    if (length != value.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (Character.toUpperCase(line.charAt(valueStart + i)) != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the raw value of the current property.
+   *
+   * @return the value, without unescaping.
+   */
+  public String rawValue() {
+    return line.substring(valueStart);
+  }
+
+  /**
+   * Returns the value of the current property as TEXT, with escapes resolved.
+   * For list values such as CATEGORIES, only the first item is returned.
+   *
+   * @return the unescaped value.
+   */
+  public String textValue() {
+    StringBuilder text = new StringBuilder(line.length() - valueStart);
+    for (int i = valueStart; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\\' && i + 1 < line.length()) {
+        char escaped = line.charAt(++i);
+        text.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+      } else if (c == ',' && is("CATEGORIES")) {
+        break;
+      } else {
+        text.append(c);
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+   * Returns the value of a parameter of the current property.
+   *
+   * @param name the parameter name in upper case, e.g. TZID.
+   * @return the parameter value without quotes, or null if absent.
+   */
+  public String parameter(String name) {
+    int i = nameEnd;
+    while (i < valueStart - 1 && line.charAt(i) == ';') {
+      int keyStart = i + 1;
+      int equals = line.indexOf("=", keyStart);
+      if (equals < 0 || equals >= valueStart) {
+        return null;
+      }
+      int end = equals + 1;
+      boolean quoted = false;
+      while (end < valueStart - 1) {
+        char c = line.charAt(end);
+        if (c == '"') {
+          quoted = !quoted;
+        } else if (c == ';' && !quoted) {
+          break;
+        }
+        end++;
+      }
+      if (line.substring(keyStart, equals).equalsIgnoreCase(name)) {
+        String value = line.substring(equals + 1, end);
+        return value.startsWith("\"") && value.endsWith("\"") && value.length() >= 2
+                ? value.substring(1, value.length() - 1) : value;
+      }
+      i = end;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the value of the current property as a date. Supports UTC times, floating times
+   * in the system time zone, times with a TZID parameter and plain dates.
+   *
+   * @return the date.
+   * @throws IOException if the value is not a valid date.
+   */
+  public Date dateValue() throws IOException {
+    int length = line.length() - valueStart;
+    try {
+      int year = digits(0, 4);
+      int month = digits(4, 2);
+      int day = digits(6, 2);
+      if (length == 8) {
+        return Date.from(LocalDate.of(year, month, day)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant());
+      }
+      if (length < 15 || line.charAt(valueStart + 8) != 'T') {
+        throw new IOException("Malformed iCalendar date on line " + lineNumber + ".");
+      }
+      LocalDateTime time = LocalDateTime.of(year, month, day,
+              digits(9, 2), digits(11, 2), digits(13, 2));
+      ZoneId zone;
+      if (length == 16 && line.charAt(valueStart + 15) == 'Z') {
+        zone = ZoneOffset.UTC;
+      } else {
+        String tzid = parameter("TZID");
+        zone = tzid != null ? ZoneId.of(tzid) : ZoneId.systemDefault();
+      }
+      return Date.from(time.atZone(zone).toInstant());
+    } catch (RuntimeException e) {
+      throw new IOException("Malformed iCalendar date on line " + lineNumber + ".", e);
+    }
+  }
+
+  private int digits(int offset, int count) {
+    int value = 0;
+    for (int i = 0; i < count; i++) {
+      char c = line.charAt(valueStart + offset + i);
+      if (c < '0' || c > '9') {
+        throw new NumberFormatException("Not a digit: " + c);
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  /**
+   * Returns the number of the current content line, counting unfolded lines.
+   *
+   * @return the line number.
+   */
+  public int getLineNumber() {
+    return lineNumber;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
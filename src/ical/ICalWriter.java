@@ -0,0 +1,201 @@
+package ical;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import task.Subtask;
+import task.Tag;
+import task.Task;
+
+/**
+ * Streaming iCalendar (RFC 5545) writer which emits tasks as VTODO components.
+ * Lines are folded at 75 octets while they are written, without building them in memory first.
+ * Subtasks are written as separate VTODOs right after their parent, linked with RELATED-TO.
+ */
+public class ICalWriter implements Closeable, Flushable {
+
+  private static final String CRLF = "\r\n";
+  private static final int MAX_LINE_OCTETS = 75;
+
+  private final Writer out;
+  private final long stamp = System.currentTimeMillis();
+  private int lineOctets;
+  private final char[] dateBuffer = new char[16];
+
+  /**
+   * Constructs a writer and writes the VCALENDAR header.
+   *
+   * @param out the destination, should be buffered and encode UTF-8.
+   * @throws IOException if an I/O error occurs.
+   */
+  public ICalWriter(Writer out) throws IOException {
+    this.out = out;
+    writeProperty("BEGIN", "VCALENDAR");
+    writeProperty("VERSION", "2.0");
+    writeProperty("PRODID", "-//JTodo//JTodo//EN");
+  }
+
+  /**
+   * Writes a task and its subtasks.
+   *
+   * @param task the task to write.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void writeTask(Task task) throws IOException {
+    writeProperty("BEGIN", "VTODO");
+    writeProperty("UID", task.getUid());
+    writeDate("DTSTAMP", stamp);
+    writeDate("DTSTART", task.getStartMillis());
+    writeDate("DUE", task.getExpectedEndMillis());
+    writeText("SUMMARY", task.getTitle());
+    if (task.getDescription() != null && !task.getDescription().isEmpty()) {
+      writeText("DESCRIPTION", task.getDescription());
+    }
+    Tag tag = task.getTag();
+    if (tag != null) {
+      writeText("CATEGORIES", tag.getName());
+      writeProperty("X-JTODO-COLOR", tag.getColor());
+    }
+    writeCompletion(task.isCompleted(), task.getActualEndMillis());
+    if (task.getHeatIndex() != 0) {
+      writeProperty("X-JTODO-HEAT", Integer.toString(task.getHeatIndex()));
+    }
+    writeProperty("END", "VTODO");
+
+    for (Subtask subtask : task.getSubtasks()) {
+      writeProperty("BEGIN", "VTODO");
+      writeProperty("UID", subtask.getUid());
+      writeDate("DTSTAMP", stamp);
+      writeDate("DTSTART", subtask.getStartMillis());
+      writeText("SUMMARY", subtask.getTitle());
+      if (subtask.getDescription() != null && !subtask.getDescription().isEmpty()) {
+        writeText("DESCRIPTION", subtask.getDescription());
+      }
+      writeCompletion(subtask.isCompleted(), subtask.getActualEndMillis());
+      writeProperty("RELATED-TO;RELTYPE=PARENT", task.getUid());
+      writeProperty("END", "VTODO");
+    }
+  }
+
+  private void writeCompletion(boolean completed, long actualEndTime) throws IOException {
+    writeProperty("STATUS", completed ? "COMPLETED" : "NEEDS-ACTION");
+    if (completed && actualEndTime != Task.NO_TIME) {
+      writeDate("COMPLETED", actualEndTime);
+    }
+  }
+
+  /**
+   * Writes the VCALENDAR footer and closes the underlying writer.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Override
+  public void close() throws IOException {
+    writeProperty("END", "VCALENDAR");
+    out.close();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private void writeDate(String name, long epochMillis) throws IOException {
+    // Format as UTC basic form, e.g. 20240101T093000Z.
+    LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis),
+            ZoneOffset.UTC);
+    putDigits(0, time.getYear(), 4);
+    putDigits(4, time.getMonthValue(), 2);
+    putDigits(6, time.getDayOfMonth(), 2);
+    dateBuffer[8] = 'T';
+    putDigits(9, time.getHour(), 2);
+    putDigits(11, time.getMinute(), 2);
+    putDigits(13, time.getSecond(), 2);
+    dateBuffer[15] = 'Z';
+    startLine(name);
+    for (char c : dateBuffer) {
+      put(c);
+    }
+    endLine();
+  }
+
+  private void putDigits(int offset, int value, int width) {
+    for (int i = offset + width - 1; i >= offset; i--) {
+      dateBuffer[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  private void writeProperty(String name, String value) throws IOException {
+    startLine(name);
+    for (int i = 0; i < value.length(); i++) {
+      put(value.charAt(i));
+    }
+    endLine();
+  }
+
+  private void writeText(String name, String value) throws IOException {
+    startLine(name);
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\\', ';', ',' -> {
+          put('\\');
+          put(c);
+        }
+        case '\n' -> {
+          put('\\');
+          put('n');
+        }
+        case '\r' -> {
+          // Dropped, line breaks are written as \n.
+        }
+        default -> {
+          if (Character.isHighSurrogate(c) && i + 1 < value.length()) {
+            putPair(c, value.charAt(++i));
+          } else {
+            put(c);
+          }
+        }
+      }
+    }
+    endLine();
+  }
+
+  private void startLine(String name) throws IOException {
+    lineOctets = 0;
+    for (int i = 0; i < name.length(); i++) {
+      put(name.charAt(i));
+    }
+    put(':');
+  }
+
+  private void endLine() throws IOException {
+    out.write(CRLF);
+  }
+
+  private void put(char c) throws IOException {
+    int octets = c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+    fold(octets);
+    out.write(c);
+  }
+
+  private void putPair(char high, char low) throws IOException {
+    fold(4);
+    out.write(high);
+    out.write(low);
+  }
+
+  private void fold(int octets) throws IOException {
+    if (lineOctets + octets > MAX_LINE_OCTETS) {
+      out.write(CRLF);
+      out.write(' ');
+      lineOctets = 1;
+    }
+    lineOctets += octets;
+  }
+}
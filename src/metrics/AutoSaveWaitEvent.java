@@ -0,0 +1,23 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+
+/**
+ * JFR event spanning the time an auto-save request waits in the queue before it runs.
+ */
+@Name("jtodo.AutoSaveWait")
+@Label("Auto-Save Queue Wait")
+@Category({"JTodo", "Persistence"})
+@Description("Time between requesting an auto-save and the start of the save")
+@Registered(false)
+public class AutoSaveWaitEvent extends Event {
+
+  @Label("Queue Depth")
+  @Description("Auto-saves waiting when this one was requested")
+  public long queueDepth;
+}
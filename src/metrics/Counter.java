@@ -0,0 +1,36 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free counter. Also usable as a gauge, e.g. a queue depth, by adding negative amounts.
+ */
+public class Counter implements CounterMXBean {
+
+  private final LongAdder value = new LongAdder();
+
+  Counter() {
+  }
+
+  public void increment() {
+    value.increment();
+  }
+
+  public void decrement() {
+    value.decrement();
+  }
+
+  public void add(long amount) {
+    value.add(amount);
+  }
+
+  @Override
+  public long getValue() {
+    return value.sum();
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(getValue());
+  }
+}
@@ -0,0 +1,36 @@
+package metrics;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Switch for the JTodo Java Flight Recorder events. The events are not registered with JFR
+ * until {@link #enable()} is called, and call sites check {@link #isEnabled()} before creating
+ * an event, so disabled events cost one field read.
+ */
+public final class JfrEvents {
+
+  private static volatile boolean enabled;
+
+  private JfrEvents() {
+  }
+
+  /**
+   * Registers the JTodo events, so that recordings started with -XX:StartFlightRecording or
+   * from JDK Mission Control include them.
+   */
+  public static synchronized void enable() {
+    if (enabled) {
+      return;
+    }
+    FlightRecorder.register(SaveEvent.class);
+    FlightRecorder.register(LoadEvent.class);
+    FlightRecorder.register(QueryEvent.class);
+    FlightRecorder.register(AutoSaveWaitEvent.class);
+    FlightRecorder.register(RefreshEvent.class);
+    enabled = true;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+}
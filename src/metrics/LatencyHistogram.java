@@ -0,0 +1,145 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets in the style of HdrHistogram.
+ * Every power of two is split into 32 linear sub-buckets, so recorded values are kept with
+ * about 3% relative precision over the whole range of a long, in a fixed 15 KB of memory.
+ * Recording is one array increment plus two adders and never allocates.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  LatencyHistogram() {
+  }
+
+  /**
+   * Records one latency.
+   *
+   * @param nanos the latency in nanoseconds, negative values are recorded as 0.
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(indexOf(value));
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Records the time elapsed since a {@link System#nanoTime()} reading.
+   *
+   * @param startNanos the reading taken when the operation started.
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  static long valueOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lower = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    // Middle of the bucket.
+    return lower + ((1L << shift) >> 1);
+  }
+
+  /**
+   * Returns the latency below which a fraction of the recorded values fall.
+   *
+   * @param fraction a number between 0 and 1, e.g. 0.99.
+   * @return the latency in nanoseconds, or 0 if nothing was recorded.
+   */
+  public long percentile(double fraction) {
+    long total = 0;
+    long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(valueOf(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  @Override
+  public long getCount() {
+    return count.sum();
+  }
+
+  @Override
+  public double getMeanMicros() {
+    long n = count.sum();
+    return n == 0 ? 0 : sum.sum() / (double) n / 1000;
+  }
+
+  @Override
+  public double getP50Micros() {
+    return percentile(0.5) / 1000.0;
+  }
+
+  @Override
+  public double getP99Micros() {
+    return percentile(0.99) / 1000.0;
+  }
+
+  @Override
+  public double getP999Micros() {
+    return percentile(0.999) / 1000.0;
+  }
+
+  @Override
+  public double getMaxMicros() {
+    return max.get() / 1000.0;
+  }
+
+  /**
+   * Clears all recorded values. Values recorded concurrently may be partially kept.
+   */
+  @Override
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+            getCount(), getMeanMicros(), getP50Micros(), getP99Micros(), getP999Micros(),
+            getMaxMicros());
+  }
+}
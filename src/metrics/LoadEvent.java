@@ -0,0 +1,30 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+
+/**
+ * JFR event for one load of the task store.
+ */
+@Name("jtodo.Load")
+@Label("Task Store Load")
+@Category({"JTodo", "Persistence"})
+@Description("Deserialization of all tasks from the save file")
+@Registered(false)
+public class LoadEvent extends Event {
+
+  @Label("Path")
+  public String path;
+
+  @Label("Task Count")
+  public int taskCount;
+
+  @Label("Bytes Read")
+  @DataAmount
+  public long bytes;
+}
@@ -0,0 +1,137 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of named counters and latency histograms.
+ * Metrics are looked up once, typically into static final fields, and then updated without
+ * locks. They can be exposed as JMX MBeans under the "jtodo" domain and periodically appended
+ * to a local file.
+ */
+public class MetricsRegistry {
+
+  private static final MetricsRegistry instance = new MetricsRegistry();
+
+  private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+  private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+  private volatile MBeanServer mbeanServer;
+  private ScheduledExecutorService dumpExecutor;
+
+  private MetricsRegistry() {
+  }
+
+  /**
+   * Gets the single instance of MetricsRegistry.
+   *
+   * @return the instance of MetricsRegistry
+   */
+  public static MetricsRegistry getInstance() {
+    return instance;
+  }
+
+  /**
+   * Returns the counter with a given name, creating it if needed.
+   *
+   * @param name a dotted name, e.g. "task.autosave.queue".
+   * @return the counter.
+   */
+  public Counter counter(String name) {
+    return counters.computeIfAbsent(name, key -> register(key, "Counter", new Counter()));
+  }
+
+  /**
+   * Returns the latency histogram with a given name, creating it if needed.
+   *
+   * @param name a dotted name, e.g. "task.getTasks".
+   * @return the histogram.
+   */
+  public LatencyHistogram histogram(String name) {
+    return histograms.computeIfAbsent(name,
+            key -> register(key, "Latency", new LatencyHistogram()));
+  }
+
+  /**
+   * Registers all current and future metrics with the platform MBean server.
+   */
+  public synchronized void enableJmx() {
+    if (mbeanServer != null) {
+      return;
+    }
+    mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    counters.forEach((name, counter) -> register(name, "Counter", counter));
+    histograms.forEach((name, histogram) -> register(name, "Latency", histogram));
+  }
+
+  private <T> T register(String name, String type, T metric) {
+    MBeanServer server = mbeanServer;
+    if (server != null) {
+      try {
+        ObjectName objectName = new ObjectName("jtodo:type=" + type + ",name=" + name);
+        if (!server.isRegistered(objectName)) {
+          server.registerMBean(metric, objectName);
+        }
+      } catch (JMException e) {
+        System.err.println("Failed to register metric " + name + ": " + e.getMessage());
+      }
+    }
+    return metric;
+  }
+
+  /**
+   * Appends a snapshot of all metrics to a file at a fixed rate, on a daemon thread.
+   *
+   * @param file          the file to append to.
+   * @param periodSeconds the delay between two snapshots.
+   */
+  public synchronized void startDumping(Path file, long periodSeconds) {
+    if (dumpExecutor != null) {
+      return;
+    }
+    dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "jtodo-metrics");
+      thread.setDaemon(true);
+      return thread;
+    });
+    dumpExecutor.scheduleAtFixedRate(() -> {
+      try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        writer.write(dump());
+      } catch (IOException e) {
+        System.err.println("Failed to dump metrics: " + e.getMessage());
+      }
+    }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Formats all metrics, one per line, sorted by name.
+   *
+   * @return the formatted snapshot.
+   */
+  public String dump() {
+    StringBuilder sb = new StringBuilder("# ").append(Instant.now()).append('\n');
+    new TreeMap<>(counters).forEach((name, counter) ->
+            sb.append(name).append(' ').append(counter).append('\n'));
+    new TreeMap<>(histograms).forEach((name, histogram) -> {
+      if (histogram.getCount() > 0) {
+        sb.append(name).append(' ').append(histogram).append('\n');
+      }
+    });
+    return sb.toString();
+  }
+}
@@ -0,0 +1,31 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+
+/**
+ * JFR event for one TaskManager query, including the wait for the read lock.
+ */
+@Name("jtodo.Query")
+@Label("Task Query")
+@Category({"JTodo", "Query"})
+@Description("Filtering and sorting of tasks by TaskManager.getTasks")
+@Registered(false)
+public class QueryEvent extends Event {
+
+  @Label("Query Mode")
+  public String queryMode;
+
+  @Label("Sort Mode")
+  public String sortMode;
+
+  @Label("Result Size")
+  public int resultSize;
+
+  @Label("Cache Hit")
+  public boolean cacheHit;
+}
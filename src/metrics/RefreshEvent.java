@@ -0,0 +1,33 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one refresh of the task list on the event dispatch thread.
+ */
+@Name("jtodo.Refresh")
+@Label("Task List Refresh")
+@Category({"JTodo", "UI"})
+@Description("Query plus rebuilding of the task rows in MainFrame")
+@Registered(false)
+public class RefreshEvent extends Event {
+
+  @Label("Query Mode")
+  public String queryMode;
+
+  @Label("Sort Mode")
+  public String sortMode;
+
+  @Label("Row Count")
+  public int rowCount;
+
+  @Label("Query Time")
+  @Timespan(Timespan.NANOSECONDS)
+  public long queryNanos;
+}
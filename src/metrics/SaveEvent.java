@@ -0,0 +1,30 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+
+/**
+ * JFR event for one save of the task store.
+ */
+@Name("jtodo.Save")
+@Label("Task Store Save")
+@Category({"JTodo", "Persistence"})
+@Description("Serialization of all tasks to the save file")
+@Registered(false)
+public class SaveEvent extends Event {
+
+  @Label("Path")
+  public String path;
+
+  @Label("Task Count")
+  public int taskCount;
+
+  @Label("Bytes Written")
+  @DataAmount
+  public long bytes;
+}
@@ -0,0 +1,95 @@
+package metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Milestones of application startup, in milliseconds since the launch of the process. Each
+ * milestone is recorded once, into the "startup.&lt;milestone&gt;" histogram.
+ *
+ * <p>System properties, used by startup-bench.sh and build-cds.sh:
+ * <ul>
+ *   <li>{@code jtodo.startup.launchMillis}: epoch millis at which the launcher started the JVM;
+ *       without it the start time of the process is used, which the OS may round.</li>
+ *   <li>{@code jtodo.startup.report}: print each milestone to stderr.</li>
+ *   <li>{@code jtodo.startup.exit}: exit once startup has finished.</li>
+ * </ul>
+ */
+public final class StartupTimeline {
+
+  /**
+   * The main method has been entered.
+   */
+  public static final String MAIN = "main";
+  /**
+   * The settings have been parsed.
+   */
+  public static final String SETTINGS = "settings";
+  /**
+   * The task store has been loaded.
+   */
+  public static final String TASKS_LOADED = "tasksLoaded";
+  /**
+   * The main frame has been painted for the first time, before showing any task.
+   */
+  public static final String FIRST_PAINT = "firstPaint";
+  /**
+   * The first screen of tasks has been painted.
+   */
+  public static final String FIRST_SCREEN = "firstScreen";
+  /**
+   * Every task row has been built and the main frame reacts to input.
+   */
+  public static final String INTERACTIVE = "interactive";
+  /**
+   * The classes of the other frames have been loaded in the background.
+   */
+  public static final String WARM = "warm";
+
+  private static final long LAUNCH_MILLIS = launchMillis();
+  private static final boolean REPORT = Boolean.getBoolean("jtodo.startup.report");
+  private static final boolean EXIT = Boolean.getBoolean("jtodo.startup.exit");
+  private static final Map<String, Long> milestones = new ConcurrentHashMap<>();
+
+  private StartupTimeline() {
+  }
+
+  private static long launchMillis() {
+    Long launch = Long.getLong("jtodo.startup.launchMillis");
+    if (launch != null) {
+      return launch;
+    }
+    return ProcessHandle.current().info().startInstant()
+            .map(instant -> instant.toEpochMilli())
+            .orElse(System.currentTimeMillis());
+  }
+
+  /**
+   * Records a milestone, unless it has been recorded before.
+   *
+   * @param milestone the name of the milestone, e.g. {@link #FIRST_PAINT}.
+   */
+  public static void mark(String milestone) {
+    long elapsedMillis = System.currentTimeMillis() - LAUNCH_MILLIS;
+    if (milestones.putIfAbsent(milestone, elapsedMillis) != null) {
+      return;
+    }
+    MetricsRegistry.getInstance().histogram("startup." + milestone)
+            .record(elapsedMillis * 1_000_000L);
+    if (REPORT) {
+      System.err.println("startup " + milestone + " " + elapsedMillis + " ms");
+    }
+  }
+
+  /**
+   * Records the last milestone, and exits if a benchmark or training run asked for it.
+   *
+   * @param milestone the name of the milestone.
+   */
+  public static void finish(String milestone) {
+    mark(milestone);
+    if (EXIT) {
+      System.exit(0);
+    }
+  }
+}
@@ -0,0 +1,387 @@
+package server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import task.Subtask;
+import task.Task;
+import task.TaskManager;
+import utils.TaskJson;
+
+/**
+ * Local HTTP/JSON API over a {@link TaskManager}, so that other tools on the machine can use the
+ * same task store as the UI. Every request runs on its own virtual thread, and all access to
+ * tasks goes through the TaskManager read lock or a batch.
+ *
+ * <pre>
+ * GET    /tasks?query=ALL&amp;sort=CREATION&amp;offset=0&amp;limit=50
+ * POST   /tasks                                  {"title", "expectedEndTime", "description"}
+ * GET    /tasks/{id}
+ * PUT    /tasks/{id}                             {"description", "expectedEndTime", "completed"}
+ * DELETE /tasks/{id}
+ * PUT    /tasks/{id}/subtasks/{subtaskId}        {"completed"}
+ * GET    /events                                 Server-Sent Events of task changes
+ * </pre>
+ *
+ * <p>Only requests addressed to localhost or 127.0.0.1 on the bound port, and not sent from a
+ * web page of another origin, are served; others get 403. This keeps web pages the user opens
+ * from writing tasks with cross-origin requests, or reading them through DNS rebinding.
+ *
+ * <p>Single tasks carry a strong ETag; PUT and DELETE honour If-Match and answer 412 when the
+ * task changed in between. Task lists carry an ETag derived from the TaskManager version.
+ */
+public class ApiServer implements AutoCloseable {
+
+  private static final int DEFAULT_LIMIT = 50;
+  private static final int MAX_LIMIT = 1000;
+
+  private final TaskManager manager;
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final SseBroadcaster broadcaster = new SseBroadcaster();
+
+  /**
+   * Creates a server listening on the loopback interface. Call {@link #start()} to serve.
+   *
+   * @param manager the task manager to expose.
+   * @param port    the port, or 0 to pick a free one.
+   * @throws IOException if the port cannot be bound.
+   */
+  public ApiServer(TaskManager manager, int port) throws IOException {
+    // Without TCP_NODELAY, small responses wait ~40 ms for delayed ACKs. The JDK server reads
+    // this property once, so it must be set before the first server is created.
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    this.manager = manager;
+    this.server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+    server.setExecutor(executor);
+    Filter localOnly = new LocalOriginFilter();
+    server.createContext("/tasks", this::handle).getFilters().add(localOnly);
+    server.createContext("/events", exchange -> {
+      try (exchange) {
+        if (!exchange.getRequestMethod().equals("GET")) {
+          send(exchange, 405, error("Method not allowed."));
+          return;
+        }
+        broadcaster.stream(exchange);
+      }
+    }).getFilters().add(localOnly);
+  }
+
+  /**
+   * Starts serving requests.
+   */
+  public void start() {
+    manager.addChangeListener(broadcaster);
+    server.start();
+  }
+
+  /**
+   * Returns the port the server listens on.
+   *
+   * @return the bound port.
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Stops the server, giving running requests one second to finish.
+   */
+  @Override
+  public void close() {
+    manager.removeChangeListener(broadcaster);
+    server.stop(1);
+    executor.shutdownNow();
+  }
+
+  /**
+   * Runs the API over the shared task store until the process is killed.
+   *
+   * @param args optional port, 8080 by default.
+   * @throws IOException if the port cannot be bound.
+   */
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    ApiServer server = new ApiServer(TaskManager.getInstance(), port);
+    server.start();
+    System.out.println("JTodo API listening on http://127.0.0.1:" + server.getPort());
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+      String method = exchange.getRequestMethod();
+      if (path.length == 1) {
+        switch (method) {
+          case "GET" -> listTasks(exchange);
+          case "POST" -> createTask(exchange);
+          default -> send(exchange, 405, error("Method not allowed."));
+        }
+      } else if (path.length == 2) {
+        int id = parseId(path[1]);
+        switch (method) {
+          case "GET" -> getTask(exchange, id);
+          case "PUT" -> updateTask(exchange, id);
+          case "DELETE" -> deleteTask(exchange, id);
+          default -> send(exchange, 405, error("Method not allowed."));
+        }
+      } else if (path.length == 4 && path[2].equals("subtasks") && method.equals("PUT")) {
+        updateSubtask(exchange, parseId(path[1]), parseId(path[3]));
+      } else {
+        send(exchange, 404, error("Not found."));
+      }
+    } catch (NoSuchElementException e) {
+      send(exchange, 404, error(e.getMessage()));
+    } catch (IllegalArgumentException | JSONException e) {
+      send(exchange, 400, error(e.getMessage()));
+    } catch (PreconditionFailedException e) {
+      send(exchange, 412, error("Task was modified, reload it and retry."));
+    }
+  }
+
+  private void listTasks(HttpExchange exchange) throws IOException {
+    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+    TaskManager.QueryMode queryMode = TaskManager.QueryMode.valueOf(
+            query.getOrDefault("query", "ALL").toUpperCase(Locale.ROOT));
+    TaskManager.SortMode sortMode = TaskManager.SortMode.valueOf(
+            query.getOrDefault("sort", "CREATION").toUpperCase(Locale.ROOT));
+    int offset = Math.max(0, Integer.parseInt(query.getOrDefault("offset", "0")));
+    int limit = Math.min(MAX_LIMIT,
+            Math.max(0, Integer.parseInt(query.getOrDefault("limit", "" + DEFAULT_LIMIT))));
+
+    long version = manager.getVersion();
+    String etag = "\"v" + version + "-" + queryMode + "-" + sortMode + "-" + offset + "-" + limit
+            + "\"";
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      exchange.getResponseHeaders().set("ETag", etag);
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    JSONObject body = manager.read(all -> {
+      // Tasks are converted under the read lock so that no row is read mid-update.
+      List<Task> tasks = manager.getTopTasks(queryMode, sortMode,
+              (int) Math.min(Integer.MAX_VALUE, (long) offset + limit));
+      JSONArray page = new JSONArray();
+      for (int i = offset; i < tasks.size(); i++) {
+        page.put(TaskJson.toJson(tasks.get(i)));
+      }
+      return new JSONObject()
+              .put("total", manager.countTasks(queryMode, sortMode))
+              .put("offset", offset)
+              .put("limit", limit)
+              .put("version", manager.getVersion())
+              .put("tasks", page);
+    });
+    // The version may have moved on between the ETag check and the read.
+    if (body.getLong("version") == version) {
+      exchange.getResponseHeaders().set("ETag", etag);
+    }
+    send(exchange, 200, body);
+  }
+
+  private void createTask(HttpExchange exchange) throws IOException {
+    JSONObject request = readBody(exchange);
+    Task task = new Task(request.getString("title"), new Date(request.getLong("expectedEndTime")));
+    if (request.has("description") && !request.isNull("description")) {
+      task.setDescription(request.getString("description"));
+    }
+    manager.addTask(task);
+    JSONObject body = manager.read(tasks -> TaskJson.toJson(task));
+    exchange.getResponseHeaders().set("Location", "/tasks/" + task.getId());
+    exchange.getResponseHeaders().set("ETag", etag(body));
+    send(exchange, 201, body);
+  }
+
+  private void getTask(HttpExchange exchange, int id) throws IOException {
+    JSONObject body = manager.read(tasks -> TaskJson.toJson(findTask(id)));
+    String etag = etag(body);
+    exchange.getResponseHeaders().set("ETag", etag);
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    send(exchange, 200, body);
+  }
+
+  private void updateTask(HttpExchange exchange, int id) throws IOException {
+    JSONObject request = readBody(exchange);
+    String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+    JSONObject[] result = new JSONObject[1];
+    // The ETag check and the update share one batch, so no other writer can slip in between.
+    manager.batch(tx -> {
+      Task task = findTask(id);
+      checkIfMatch(ifMatch, task);
+      if (request.has("description")) {
+        tx.setDescription(task, request.isNull("description")
+                ? null : request.getString("description"));
+      }
+      if (request.has("expectedEndTime")) {
+        tx.setDueDate(task, new Date(request.getLong("expectedEndTime")));
+      }
+      if (request.has("completed") && request.getBoolean("completed") != task.isCompleted()) {
+        tx.setTaskCompleted(task, request.getBoolean("completed"));
+      }
+      result[0] = TaskJson.toJson(task);
+    });
+    exchange.getResponseHeaders().set("ETag", etag(result[0]));
+    send(exchange, 200, result[0]);
+  }
+
+  private void deleteTask(HttpExchange exchange, int id) throws IOException {
+    String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+    manager.batch(tx -> {
+      Task task = findTask(id);
+      checkIfMatch(ifMatch, task);
+      tx.removeTask(task);
+    });
+    exchange.sendResponseHeaders(204, -1);
+  }
+
+  private void updateSubtask(HttpExchange exchange, int taskId, int subtaskId) throws IOException {
+    JSONObject request = readBody(exchange);
+    boolean completed = request.getBoolean("completed");
+    String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+    JSONObject[] result = new JSONObject[1];
+    manager.batch(tx -> {
+      Task task = findTask(taskId);
+      checkIfMatch(ifMatch, task);
+      Subtask subtask = task.getSubtasks().stream()
+              .filter(candidate -> candidate.getId() == subtaskId)
+              .findFirst()
+              .orElseThrow(() -> new NoSuchElementException("No subtask " + subtaskId + "."));
+      if (subtask.isCompleted() != completed) {
+        tx.setSubtaskCompleted(subtask, completed);
+      }
+      result[0] = TaskJson.toJson(task);
+    });
+    exchange.getResponseHeaders().set("ETag", etag(result[0]));
+    send(exchange, 200, result[0]);
+  }
+
+  private Task findTask(int id) {
+    return manager.getTaskById(id)
+            .orElseThrow(() -> new NoSuchElementException("No task " + id + "."));
+  }
+
+  private static void checkIfMatch(String ifMatch, Task task) {
+    if (ifMatch != null && !ifMatch.equals("*") && !ifMatch.equals(etag(TaskJson.toJson(task)))) {
+      throw new PreconditionFailedException();
+    }
+  }
+
+  private static String etag(JSONObject task) {
+    // Key order of JSONObject is stable for the same set of keys within a JVM.
+    long hash = 1125899906842597L;
+    String text = task.toString();
+    for (int i = 0; i < text.length(); i++) {
+      hash = 31 * hash + text.charAt(i);
+    }
+    return "\"" + Long.toHexString(hash) + "\"";
+  }
+
+  private static int parseId(String text) {
+    try {
+      return Integer.parseInt(text);
+    } catch (NumberFormatException e) {
+      throw new NoSuchElementException("No task " + text + ".");
+    }
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) {
+    Map<String, String> query = new HashMap<>();
+    if (rawQuery == null || rawQuery.isEmpty()) {
+      return query;
+    }
+    for (String pair : rawQuery.split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals > 0) {
+        query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return query;
+  }
+
+  private static JSONObject readBody(HttpExchange exchange) throws IOException {
+    try (InputStream in = exchange.getRequestBody()) {
+      return new JSONObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+
+  private static JSONObject error(String message) {
+    return new JSONObject().put("error", message == null ? "Bad request." : message);
+  }
+
+  private static void send(HttpExchange exchange, int status, JSONObject body)
+          throws IOException {
+    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Rejects requests whose Host is not this server on the loopback interface, and requests
+   * from a web page of another origin. Browsers send Origin on cross-origin requests and on
+   * every POST, PUT and DELETE, so a page cannot drop it.
+   */
+  private final class LocalOriginFilter extends Filter {
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+      String host = exchange.getRequestHeaders().getFirst("Host");
+      String origin = exchange.getRequestHeaders().getFirst("Origin");
+      if (host == null || !isLocal(host)
+              || (origin != null && !isLocal(origin.replaceFirst("^http://", "")))) {
+        try (exchange) {
+          send(exchange, 403, error("Forbidden."));
+        }
+        return;
+      }
+      chain.doFilter(exchange);
+    }
+
+    @Override
+    public String description() {
+      return "Rejects requests not addressed to, or not sent from, this server on localhost.";
+    }
+
+    private boolean isLocal(String authority) {
+      int port = getPort();
+      return authority.equals("localhost:" + port) || authority.equals("127.0.0.1:" + port)
+              || authority.equals("[::1]:" + port);
+    }
+  }
+
+  /**
+   * Thrown inside a batch when If-Match does not match, which also rolls the batch back.
+   */
+  private static final class PreconditionFailedException extends RuntimeException {
+    private PreconditionFailedException() {
+      super(null, null, false, false);
+    }
+  }
+}
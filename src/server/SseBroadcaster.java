@@ -0,0 +1,87 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import task.Task;
+import task.TaskChangeEvent;
+import task.TaskChangeListener;
+
+/**
+ * Fans out TaskManager change events to Server-Sent Events clients.
+ * The listener only formats the event once and offers it to each client's bounded queue, so a
+ * slow client never blocks a mutator; a client whose queue overflows is disconnected.
+ */
+class SseBroadcaster implements TaskChangeListener {
+
+  private static final int CLIENT_QUEUE_SIZE = 256;
+  private static final long HEARTBEAT_SECONDS = 15;
+  private static final String CLOSED = "";
+
+  private final Set<BlockingQueue<String>> clients = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public void tasksChanged(TaskChangeEvent event) {
+    if (clients.isEmpty()) {
+      return;
+    }
+    JSONObject data = new JSONObject()
+            .put("version", event.getVersion())
+            .put("added", ids(event.getAdded()))
+            .put("removed", ids(event.getRemoved()))
+            .put("updated", ids(event.getUpdated()));
+    String message = "id: " + event.getVersion() + "\nevent: change\ndata: " + data + "\n\n";
+    for (BlockingQueue<String> queue : clients) {
+      if (!queue.offer(message)) {
+        clients.remove(queue);
+        queue.clear();
+        queue.offer(CLOSED);
+      }
+    }
+  }
+
+  private static JSONArray ids(Set<Task> tasks) {
+    JSONArray array = new JSONArray();
+    tasks.forEach(task -> array.put(task.getId()));
+    return array;
+  }
+
+  /**
+   * Streams events to a client until it disconnects. Blocks the calling (virtual) thread.
+   *
+   * @param exchange the client's request.
+   * @throws IOException if the response cannot be written.
+   */
+  void stream(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    exchange.sendResponseHeaders(200, 0);
+    BlockingQueue<String> queue = new ArrayBlockingQueue<>(CLIENT_QUEUE_SIZE);
+    clients.add(queue);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+      out.flush();
+      while (true) {
+        String message = queue.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        if (message == CLOSED) {
+          return;
+        }
+        out.write((message == null ? ": heartbeat\n\n" : message)
+                .getBytes(StandardCharsets.UTF_8));
+        out.flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      clients.remove(queue);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package sync;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records returned by a pull, together with the sync token to use for the next pull.
+ */
+public class Delta {
+
+  private final List<TaskRecord> records;
+  private final String syncToken;
+
+  /**
+   * Constructs a delta.
+   *
+   * @param records   the changed records.
+   * @param syncToken the token to use for the next pull.
+   */
+  public Delta(List<TaskRecord> records, String syncToken) {
+    this.records = Collections.unmodifiableList(records);
+    this.syncToken = syncToken;
+  }
+
+  // Getters for each field
+
+  public List<TaskRecord> getRecords() {
+    return records;
+  }
+
+  public String getSyncToken() {
+    return syncToken;
+  }
+}
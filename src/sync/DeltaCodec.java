@@ -0,0 +1,63 @@
+package sync;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.json.JSONObject;
+
+/**
+ * Wire format of a delta batch: one JSON record per line, GZIP-compressed.
+ */
+public final class DeltaCodec {
+
+  private DeltaCodec() {
+  }
+
+  /**
+   * Writes a batch of records.
+   *
+   * @param records the records to write.
+   * @param out     the stream to write to, which is closed afterwards.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static void write(List<TaskRecord> records, OutputStream out) throws IOException {
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(out, 1 << 16), StandardCharsets.UTF_8))) {
+      for (TaskRecord record : records) {
+        writer.write(record.toJson().toString());
+        writer.write('\n');
+      }
+    }
+  }
+
+  /**
+   * Reads a batch of records.
+   *
+   * @param in the stream to read from, which is closed afterwards.
+   * @return the records.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static List<TaskRecord> read(InputStream in) throws IOException {
+    List<TaskRecord> records = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(in, 1 << 16), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          records.add(TaskRecord.fromJson(new JSONObject(line)));
+        }
+      }
+    }
+    return records;
+  }
+}
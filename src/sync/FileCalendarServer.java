@@ -0,0 +1,134 @@
+package sync;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stand-in for a remote calendar server, backed by a local directory.
+ * Every pushed batch becomes one compressed delta file numbered by a sequence number,
+ * and a sync token is the highest sequence number a client has seen.
+ * Several JTodo instances can share the directory to exercise sync without a network: a delta
+ * is published as a hard link to a complete file, which fails rather than replacing a delta
+ * another instance published with the same sequence number, and is retried with the next one.
+ */
+public class FileCalendarServer implements SyncAdapter {
+
+  private static final String PREFIX = "delta-";
+  private static final String SUFFIX = ".jsonl.gz";
+
+  private final Path directory;
+
+  /**
+   * Constructs a server storing its deltas in a directory, which is created if needed.
+   *
+   * @param directory the directory to use.
+   * @throws IOException if the directory cannot be created.
+   */
+  public FileCalendarServer(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory);
+  }
+
+  @Override
+  public synchronized Delta pull(String syncToken) throws IOException {
+    long since = syncToken == null ? 0 : Long.parseLong(syncToken);
+    TreeMap<Long, Path> files = listDeltas();
+    Map<String, TaskRecord> merged = new LinkedHashMap<>();
+    for (Map.Entry<Long, Path> entry : files.tailMap(since, false).entrySet()) {
+      for (TaskRecord record : DeltaCodec.read(Files.newInputStream(entry.getValue()))) {
+        merged.merge(record.getUid(), record, TaskRecord::merge);
+      }
+    }
+    long latest = files.isEmpty() ? since : Math.max(since, files.lastKey());
+    return new Delta(new ArrayList<>(merged.values()), Long.toString(latest));
+  }
+
+  @Override
+  public synchronized void push(List<TaskRecord> records) throws IOException {
+    if (records.isEmpty()) {
+      return;
+    }
+    Path temp = writeTemp(records);
+    try {
+      TreeMap<Long, Path> files = listDeltas();
+      long sequence = files.isEmpty() ? 1 : files.lastKey() + 1;
+      while (true) {
+        try {
+          Files.createLink(deltaPath(sequence), temp);
+          return;
+        } catch (FileAlreadyExistsException e) {
+          // Taken by another instance since the listing
+          sequence++;
+        }
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Merges all deltas into a single one carrying the latest sequence number.
+   * Clients holding an older token receive the merged delta, which is a superset of
+   * what they missed.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  public synchronized void compact() throws IOException {
+    TreeMap<Long, Path> files = listDeltas();
+    if (files.size() < 2) {
+      return;
+    }
+    Delta all = pull(null);
+    Path temp = writeTemp(all.getRecords());
+    try {
+      // Replaces the latest delta with a superset of it
+      Files.move(temp, deltaPath(files.lastKey()), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    for (Path path : files.headMap(files.lastKey()).values()) {
+      Files.delete(path);
+    }
+  }
+
+  private Path deltaPath(long sequence) {
+    return directory.resolve(String.format("%s%012d%s", PREFIX, sequence, SUFFIX));
+  }
+
+  /**
+   * Writes a delta to a temporary file in the directory, deleted again if writing fails.
+   */
+  private Path writeTemp(List<TaskRecord> records) throws IOException {
+    Path temp = Files.createTempFile(directory, PREFIX, ".tmp");
+    try (OutputStream out = Files.newOutputStream(temp)) {
+      DeltaCodec.write(records, out);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+    return temp;
+  }
+
+  private TreeMap<Long, Path> listDeltas() throws IOException {
+    TreeMap<Long, Path> files = new TreeMap<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+            PREFIX + "*" + SUFFIX)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        files.put(Long.parseLong(name.substring(PREFIX.length(),
+                name.length() - SUFFIX.length())), path);
+      }
+    }
+    return files;
+  }
+}
@@ -0,0 +1,28 @@
+package sync;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Connection to a remote calendar or task service which stores {@link TaskRecord}s.
+ * Implementations are only called from the sync thread and may block.
+ */
+public interface SyncAdapter {
+
+  /**
+   * Fetches the records changed since a sync token.
+   *
+   * @param syncToken the token returned by the previous pull, or null for a full pull.
+   * @return the changed records and the token to use for the next pull.
+   * @throws IOException if the remote cannot be reached.
+   */
+  Delta pull(String syncToken) throws IOException;
+
+  /**
+   * Sends one batch of locally changed records to the remote.
+   *
+   * @param records the records to send.
+   * @throws IOException if the remote cannot be reached.
+   */
+  void push(List<TaskRecord> records) throws IOException;
+}
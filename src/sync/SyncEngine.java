@@ -0,0 +1,254 @@
+package sync;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import task.Task;
+import task.TaskChangeEvent;
+import task.TaskChangeListener;
+import task.TaskManager;
+
+/**
+ * Exchanges task changes between a {@link TaskManager} and a {@link SyncAdapter}.
+ *
+ * <p>The change listener only queues references to changed tasks, so TaskManager mutators
+ * never wait for sync. Everything else runs on a single background thread: changed tasks are
+ * snapshotted into {@link TaskRecord}s, pushed in batches, and remote records are pulled with
+ * an incremental sync token and merged field by field using per-field timestamps.
+ * Remote changes are applied back to the TaskManager in a single batch.
+ */
+public class SyncEngine implements TaskChangeListener, AutoCloseable {
+
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+
+  private final TaskManager manager;
+  private final SyncAdapter adapter;
+  private final int batchSize;
+  private final ScheduledExecutorService executor =
+          Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jtodo-sync");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // Written by mutating threads, drained by the sync thread.
+  private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+
+  // Only accessed by the sync thread.
+  private final Map<String, TaskRecord> known = new HashMap<>();
+  private String syncToken;
+
+  /**
+   * Constructs a sync engine with the default push batch size.
+   *
+   * @param manager the task manager to synchronize.
+   * @param adapter the remote to synchronize with.
+   */
+  public SyncEngine(TaskManager manager, SyncAdapter adapter) {
+    this(manager, adapter, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Constructs a sync engine.
+   *
+   * @param manager   the task manager to synchronize.
+   * @param adapter   the remote to synchronize with.
+   * @param batchSize the maximum number of records per pushed batch.
+   */
+  public SyncEngine(TaskManager manager, SyncAdapter adapter, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive.");
+    }
+    this.manager = manager;
+    this.adapter = adapter;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Starts listening for changes and schedules a sync round at a fixed interval.
+   * Tasks which already exist are pushed with old timestamps, so that newer remote edits win.
+   *
+   * @param intervalMillis the delay between the end of a round and the start of the next.
+   */
+  public void start(long intervalMillis) {
+    manager.addChangeListener(this);
+    manager.read(tasks -> {
+      tasks.forEach(task -> changes.add(new Change(task, null, 0)));
+      return null;
+    });
+    executor.scheduleWithFixedDelay(() -> {
+      try {
+        syncOnce();
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Failed to sync tasks: " + e.getMessage());
+      }
+    }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Requests a sync round as soon as possible.
+   *
+   * @return a future completed with the statistics of the round.
+   */
+  public Future<SyncStats> syncNow() {
+    return executor.submit(this::syncOnce);
+  }
+
+  @Override
+  public void tasksChanged(TaskChangeEvent event) {
+    long now = System.currentTimeMillis();
+    event.getAdded().forEach(task -> changes.add(new Change(task, null, now)));
+    event.getUpdated().forEach(task -> changes.add(new Change(task, null, now)));
+    event.getRemoved().forEach(task -> changes.add(new Change(null, task.getUid(), now)));
+  }
+
+  /**
+   * Runs one sync round on the calling thread: push local changes, then pull and apply remote
+   * changes. Must not be called concurrently with itself; {@link #start} and {@link #syncNow}
+   * run it on the sync thread.
+   *
+   * @return statistics of the round.
+   * @throws IOException if the remote cannot be reached; unsent changes are retried next round.
+   */
+  public SyncStats syncOnce() throws IOException {
+    long startNanos = System.nanoTime();
+    List<TaskRecord> outgoing = collectLocalChanges();
+    for (int from = 0; from < outgoing.size(); from += batchSize) {
+      List<TaskRecord> batch = outgoing.subList(from, Math.min(outgoing.size(), from + batchSize));
+      try {
+        adapter.push(batch);
+      } catch (IOException e) {
+        // Forget the unsent records so that they are captured again next round.
+        outgoing.subList(from, outgoing.size()).forEach(record -> requeue(record.getUid()));
+        throw e;
+      }
+    }
+
+    Delta delta = adapter.pull(syncToken);
+    Map<String, TaskRecord> incoming = new LinkedHashMap<>();
+    for (TaskRecord remote : delta.getRecords()) {
+      TaskRecord local = known.get(remote.getUid());
+      TaskRecord merged = local == null ? remote : local.merge(remote);
+      if (merged != local) {
+        known.put(remote.getUid(), merged);
+        incoming.put(remote.getUid(), merged);
+      }
+    }
+    int applied = applyRemoteChanges(incoming);
+    syncToken = delta.getSyncToken();
+    return new SyncStats(outgoing.size(), delta.getRecords().size(), applied,
+            System.nanoTime() - startNanos);
+  }
+
+  private List<TaskRecord> collectLocalChanges() {
+    Map<Task, Long> dirty = new IdentityHashMap<>();
+    Map<String, Long> deleted = new LinkedHashMap<>();
+    Change change;
+    while ((change = changes.poll()) != null) {
+      if (change.task != null) {
+        dirty.merge(change.task, change.time, Math::max);
+      } else {
+        deleted.merge(change.deletedUid, change.time, Math::max);
+      }
+    }
+    List<TaskRecord> outgoing = new ArrayList<>();
+    manager.read(tasks -> {
+      dirty.forEach((task, time) -> {
+        if (deleted.containsKey(task.getUid())) {
+          return;
+        }
+        TaskRecord previous = known.get(task.getUid());
+        TaskRecord current = TaskRecord.capture(task, previous, time);
+        if (current != previous) {
+          known.put(task.getUid(), current);
+          outgoing.add(current);
+        }
+      });
+      return null;
+    });
+    deleted.forEach((uid, time) -> {
+      TaskRecord previous = known.get(uid);
+      TaskRecord tombstone = previous == null
+              ? TaskRecord.tombstone(uid, time) : previous.delete(time);
+      known.put(uid, tombstone);
+      outgoing.add(tombstone);
+    });
+    return outgoing;
+  }
+
+  private void requeue(String uid) {
+    TaskRecord record = known.remove(uid);
+    if (record != null && record.isDeleted()) {
+      changes.add(new Change(null, uid, record.getModified(TaskRecord.Field.DELETED)));
+    } else {
+      manager.getTaskByUid(uid).ifPresent(task -> changes.add(new Change(task, null, 0)));
+    }
+  }
+
+  private int applyRemoteChanges(Map<String, TaskRecord> incoming) {
+    if (incoming.isEmpty()) {
+      return 0;
+    }
+    int[] applied = {0};
+    manager.batch(tx -> {
+      for (TaskRecord record : incoming.values()) {
+        Optional<Task> existing = manager.getTaskByUid(record.getUid());
+        if (record.isDeleted()) {
+          existing.ifPresent(task -> {
+            tx.removeTask(task);
+            applied[0]++;
+          });
+          continue;
+        }
+        Task task = existing.orElse(null);
+        if (task == null) {
+          task = record.newTask();
+          tx.addTask(task);
+        }
+        // Compare against the live task so that only differing fields are written.
+        TaskRecord current = TaskRecord.capture(task, null, 0);
+        for (TaskRecord.Field field : TaskRecord.Field.values()) {
+          if (field != TaskRecord.Field.DELETED && current.differs(record, field)) {
+            record.applyTo(tx, task, field);
+          }
+        }
+        applied[0]++;
+      }
+    });
+    return applied[0];
+  }
+
+  /**
+   * Stops the sync thread and unregisters the change listener.
+   */
+  @Override
+  public void close() {
+    manager.removeChangeListener(this);
+    executor.shutdown();
+  }
+
+  /**
+   * A queued local change: either a task to snapshot or the UID of a removed task.
+   */
+  private static final class Change {
+    private final Task task;
+    private final String deletedUid;
+    private final long time;
+
+    private Change(Task task, String deletedUid, long time) {
+      this.task = task;
+      this.deletedUid = deletedUid;
+      this.time = time;
+    }
+  }
+}
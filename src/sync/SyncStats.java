@@ -0,0 +1,47 @@
+package sync;
+
+/**
+ * Counters describing one sync round.
+ */
+public class SyncStats {
+
+  private final int pushed;
+  private final int pulled;
+  private final int applied;
+  private final long durationNanos;
+
+  SyncStats(int pushed, int pulled, int applied, long durationNanos) {
+    this.pushed = pushed;
+    this.pulled = pulled;
+    this.applied = applied;
+    this.durationNanos = durationNanos;
+  }
+
+  // Getters for each field
+
+  public int getPushed() {
+    return pushed;
+  }
+
+  public int getPulled() {
+    return pulled;
+  }
+
+  public int getApplied() {
+    return applied;
+  }
+
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "SyncStats{"
+            + "pushed=" + pushed
+            + ", pulled=" + pulled
+            + ", applied=" + applied
+            + ", durationMillis=" + durationNanos / 1_000_000
+            + '}';
+  }
+}
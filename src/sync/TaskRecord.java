@@ -0,0 +1,335 @@
+package sync;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import task.Subtask;
+import task.Tag;
+import task.Task;
+import task.TaskTransaction;
+
+/**
+ * Immutable snapshot of the synchronized fields of a task, keyed by the task's stable UID.
+ * Every mutable field carries the time it was last modified, so that two records of the same
+ * task can be merged field by field with last-writer-wins semantics.
+ */
+public final class TaskRecord {
+
+  /**
+   * Mutable fields of a task which are synchronized independently.
+   */
+  public enum Field {
+    DESCRIPTION,
+    TAG,
+    DUE,
+    COMPLETION,
+    HEAT,
+    SUBTASKS,
+    DELETED,
+  }
+
+  private static final Field[] FIELDS = Field.values();
+
+  private final String uid;
+  private final String title;
+  private final long startTime;
+  // Indexed by Field.ordinal(); values are String, Long or Boolean and may be null.
+  private final Object[] values;
+  private final long[] modified;
+
+  private TaskRecord(String uid, String title, long startTime, Object[] values, long[] modified) {
+    this.uid = uid;
+    this.title = title;
+    this.startTime = startTime;
+    this.values = values;
+    this.modified = modified;
+  }
+
+  /**
+   * Captures the current state of a task. Fields whose value differs from the previous record
+   * are stamped with the given time, the others keep their previous timestamp.
+   * Must be called while holding the TaskManager read lock.
+   *
+   * @param task     the task to capture.
+   * @param previous the last known record of the task, or null if there is none.
+   * @param time     the modification time of changed fields.
+   * @return the new record, or the previous record if nothing changed.
+   */
+  public static TaskRecord capture(Task task, TaskRecord previous, long time) {
+    Object[] values = new Object[FIELDS.length];
+    values[Field.DESCRIPTION.ordinal()] = task.getDescription();
+    values[Field.TAG.ordinal()] = encodeTag(task.getTag());
+    values[Field.DUE.ordinal()] = task.getExpectedEndMillis();
+    values[Field.COMPLETION.ordinal()] = task.isCompleted() && task.getActualEndMillis() != Task.NO_TIME
+            ? task.getActualEndMillis() : -1L;
+    values[Field.HEAT.ordinal()] = (long) task.getHeatIndex();
+    values[Field.SUBTASKS.ordinal()] = encodeSubtasks(task.getSubtasks());
+    values[Field.DELETED.ordinal()] = Boolean.FALSE;
+
+    long[] modified = new long[FIELDS.length];
+    boolean changed = previous == null;
+    for (int i = 0; i < FIELDS.length; i++) {
+      if (previous == null || !Objects.equals(previous.values[i], values[i])) {
+        modified[i] = time;
+        changed = true;
+      } else {
+        modified[i] = previous.modified[i];
+      }
+    }
+    if (!changed) {
+      return previous;
+    }
+    return new TaskRecord(task.getUid(), task.getTitle(), task.getStartMillis(),
+            values, modified);
+  }
+
+  /**
+   * Returns a copy of this record marked as deleted at the given time.
+   *
+   * @param time the deletion time.
+   * @return the tombstone record.
+   */
+  public TaskRecord delete(long time) {
+    Object[] newValues = values.clone();
+    long[] newModified = modified.clone();
+    newValues[Field.DELETED.ordinal()] = Boolean.TRUE;
+    newModified[Field.DELETED.ordinal()] = time;
+    return new TaskRecord(uid, title, startTime, newValues, newModified);
+  }
+
+  /**
+   * Creates a tombstone for a task whose content is unknown.
+   *
+   * @param uid  the UID of the deleted task.
+   * @param time the deletion time.
+   * @return the tombstone record.
+   */
+  public static TaskRecord tombstone(String uid, long time) {
+    Object[] values = new Object[FIELDS.length];
+    long[] modified = new long[FIELDS.length];
+    values[Field.DELETED.ordinal()] = Boolean.TRUE;
+    modified[Field.DELETED.ordinal()] = time;
+    return new TaskRecord(uid, uid, 0, values, modified);
+  }
+
+  /**
+   * Merges another record of the same task into this one, keeping for each field the value
+   * with the newer timestamp. Ties keep the value of this record.
+   *
+   * @param other another record with the same UID.
+   * @return the merged record, which is this record if nothing was taken from other.
+   * @throws IllegalArgumentException if the UIDs differ.
+   */
+  public TaskRecord merge(TaskRecord other) {
+    if (!uid.equals(other.uid)) {
+      throw new IllegalArgumentException("Cannot merge records of different tasks.");
+    }
+    Object[] newValues = null;
+    long[] newModified = null;
+    for (int i = 0; i < FIELDS.length; i++) {
+      if (other.modified[i] > modified[i]) {
+        if (newValues == null) {
+          newValues = values.clone();
+          newModified = modified.clone();
+        }
+        newValues[i] = other.values[i];
+        newModified[i] = other.modified[i];
+      }
+    }
+    if (newValues == null) {
+      return this;
+    }
+    // A tombstone created without content carries a placeholder title.
+    boolean keepOwnHeader = startTime != 0 || other.startTime == 0;
+    return new TaskRecord(uid, keepOwnHeader ? title : other.title,
+            keepOwnHeader ? startTime : other.startTime, newValues, newModified);
+  }
+
+  /**
+   * Returns whether a field holds a different value in another record.
+   *
+   * @param other another record.
+   * @param field the field to compare.
+   * @return true if the values differ.
+   */
+  public boolean differs(TaskRecord other, Field field) {
+    return !Objects.equals(values[field.ordinal()], other.values[field.ordinal()]);
+  }
+
+  /**
+   * Creates a new task from this record. The caller adds it to a TaskManager and then applies
+   * the remaining fields with {@link #applyTo}.
+   *
+   * @return a new task with this record's UID, title, start and due time.
+   */
+  public Task newTask() {
+    return new Task(uid, title, new Date(startTime), new Date(getLong(Field.DUE)));
+  }
+
+  /**
+   * Applies a field of this record to a task through a transaction.
+   *
+   * @param tx    the transaction to apply the change in.
+   * @param task  the task to update.
+   * @param field the field to apply, DELETED is handled by the caller.
+   */
+  public void applyTo(TaskTransaction tx, Task task, Field field) {
+    switch (field) {
+      case DESCRIPTION -> tx.setDescription(task, (String) values[field.ordinal()]);
+      case TAG -> tx.setTag(task, decodeTag((String) values[field.ordinal()]));
+      case DUE -> tx.setDueDate(task, new Date(getLong(field)));
+      case COMPLETION -> {
+        long completedAt = getLong(field);
+        tx.setTaskCompleted(task, completedAt >= 0, completedAt >= 0 ? new Date(completedAt) : null);
+      }
+      case HEAT -> tx.setHeat(task, (int) getLong(field));
+      case SUBTASKS -> applySubtasks(tx, task, (String) values[field.ordinal()]);
+      default -> {
+        // DELETED is not a task field.
+      }
+    }
+  }
+
+  private static void applySubtasks(TaskTransaction tx, Task task, String encoded) {
+    JSONArray array = new JSONArray(encoded == null ? "[]" : encoded);
+    Subtask[] subtasks = new Subtask[array.length()];
+    Map<String, Subtask> byUid = new HashMap<>();
+    for (int i = 0; i < array.length(); i++) {
+      JSONArray item = array.getJSONArray(i);
+      subtasks[i] = new Subtask(item.getString(0), item.getString(1),
+              new Date(item.getLong(3)), task);
+      subtasks[i].setDescription(item.isNull(2) ? null : item.getString(2));
+      // Records written before nesting have no parent UID
+      if (item.length() > 5 && !item.isNull(5)) {
+        subtasks[i].setParentSubtask(byUid.get(item.getString(5)));
+      }
+      byUid.put(subtasks[i].getUid(), subtasks[i]);
+    }
+    tx.setSubtasks(task, Arrays.asList(subtasks));
+    for (int i = 0; i < subtasks.length; i++) {
+      long completedAt = array.getJSONArray(i).getLong(4);
+      if (completedAt >= 0) {
+        tx.setSubtaskCompleted(subtasks[i], true, new Date(completedAt));
+      }
+    }
+  }
+
+  private static String encodeTag(Tag tag) {
+    if (tag == null) {
+      return null;
+    }
+    return new JSONArray().put(tag.getName()).put(tag.getColor())
+            .put(tag.getIcon() == null ? JSONObject.NULL : tag.getIcon()).toString();
+  }
+
+  private static Tag decodeTag(String encoded) {
+    if (encoded == null) {
+      return null;
+    }
+    JSONArray array = new JSONArray(encoded);
+    return new Tag(array.getString(0), array.getString(1),
+            array.isNull(2) ? null : array.getString(2));
+  }
+
+  private static String encodeSubtasks(List<Subtask> subtasks) {
+    if (subtasks.isEmpty()) {
+      return null;
+    }
+    JSONArray array = new JSONArray();
+    for (Subtask subtask : subtasks) {
+      array.put(new JSONArray()
+              .put(subtask.getUid())
+              .put(subtask.getTitle())
+              .put(subtask.getDescription() == null ? JSONObject.NULL : subtask.getDescription())
+              .put(subtask.getStartMillis())
+              .put(subtask.isCompleted() && subtask.getActualEndMillis() != Task.NO_TIME
+                      ? subtask.getActualEndMillis() : -1L)
+              .put(subtask.getParentSubtask() == null ? JSONObject.NULL
+                      : subtask.getParentSubtask().getUid()));
+    }
+    return array.toString();
+  }
+
+  /**
+   * Encodes this record as JSON.
+   *
+   * @return a JSON object.
+   */
+  public JSONObject toJson() {
+    JSONObject json = new JSONObject();
+    json.put("uid", uid);
+    json.put("title", title);
+    json.put("start", startTime);
+    JSONObject fields = new JSONObject();
+    for (Field field : FIELDS) {
+      Object value = values[field.ordinal()];
+      fields.put(field.name(), new JSONArray()
+              .put(value == null ? JSONObject.NULL : value)
+              .put(modified[field.ordinal()]));
+    }
+    json.put("fields", fields);
+    return json;
+  }
+
+  /**
+   * Decodes a record encoded by {@link #toJson()}.
+   *
+   * @param json a JSON object.
+   * @return the record.
+   */
+  public static TaskRecord fromJson(JSONObject json) {
+    Object[] values = new Object[FIELDS.length];
+    long[] modified = new long[FIELDS.length];
+    JSONObject fields = json.getJSONObject("fields");
+    for (Field field : FIELDS) {
+      JSONArray pair = fields.optJSONArray(field.name());
+      if (pair == null) {
+        continue;
+      }
+      int i = field.ordinal();
+      modified[i] = pair.getLong(1);
+      if (!pair.isNull(0)) {
+        values[i] = switch (field) {
+          case DUE, COMPLETION, HEAT -> pair.getLong(0);
+          case DELETED -> pair.getBoolean(0);
+          default -> pair.getString(0);
+        };
+      }
+    }
+    return new TaskRecord(json.getString("uid"), json.getString("title"),
+            json.getLong("start"), values, modified);
+  }
+
+  // Getters for each field
+
+  public String getUid() {
+    return uid;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public boolean isDeleted() {
+    return Boolean.TRUE.equals(values[Field.DELETED.ordinal()]);
+  }
+
+  public long getModified(Field field) {
+    return modified[field.ordinal()];
+  }
+
+  private long getLong(Field field) {
+    Object value = values[field.ordinal()];
+    return value == null ? -1L : (Long) value;
+  }
+
+  @Override
+  public String toString() {
+    return "TaskRecord" + toJson();
+  }
+}
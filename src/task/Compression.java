@@ -0,0 +1,105 @@
+package task;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the blocks of a task file, see {@link TaskCodec}. Each block is compressed on
+ * its own, so it can be inflated without the blocks before it.
+ */
+public enum Compression {
+  /**
+   * Records are stored as they are, and each unchanged record is reused by the next save. The
+   * default.
+   */
+  NONE,
+  /**
+   * Deflate from the JDK: the smallest files, the slowest saves and loads.
+   */
+  DEFLATE,
+  /**
+   * A byte-oriented LZ77 codec in the style of LZ4: a lower ratio than Deflate, but fast.
+   */
+  LZ;
+
+  /**
+   * Compresses a block.
+   *
+   * @param raw    the buffer holding the block.
+   * @param length the length of the block.
+   * @return the compressed block.
+   */
+  public byte[] compress(byte[] raw, int length) {
+    return switch (this) {
+      case NONE -> Arrays.copyOf(raw, length);
+      case DEFLATE -> deflate(raw, length);
+      case LZ -> LzCodec.compress(raw, length);
+    };
+  }
+
+  /**
+   * Decompresses a block.
+   *
+   * @param stored    the buffer holding the compressed block.
+   * @param offset    the offset of the compressed block.
+   * @param length    the length of the compressed block.
+   * @param rawLength the length of the block once decompressed.
+   * @return the block.
+   * @throws IOException if the compressed block is malformed.
+   */
+  public byte[] decompress(byte[] stored, int offset, int length, int rawLength)
+          throws IOException {
+    return switch (this) {
+      case NONE -> Arrays.copyOfRange(stored, offset, offset + length);
+      case DEFLATE -> inflate(stored, offset, length, rawLength);
+      case LZ -> LzCodec.decompress(stored, offset, length, rawLength);
+    };
+  }
+
+  private static byte[] deflate(byte[] raw, int length) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(raw, 0, length);
+      deflater.finish();
+      byte[] stored = new byte[length / 2 + 64];
+      int size = 0;
+      while (!deflater.finished()) {
+        if (size == stored.length) {
+          stored = Arrays.copyOf(stored, stored.length * 2);
+        }
+        size += deflater.deflate(stored, size, stored.length - size);
+      }
+      return Arrays.copyOf(stored, size);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] stored, int offset, int length, int rawLength)
+          throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(stored, offset, length);
+      byte[] raw = new byte[rawLength];
+      int size = 0;
+      while (size < rawLength && !inflater.finished()) {
+        int inflated = inflater.inflate(raw, size, rawLength - size);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        size += inflated;
+      }
+      if (size != rawLength) {
+        throw new IOException("Truncated Deflate block.");
+      }
+      return raw;
+    } catch (DataFormatException e) {
+      throw new IOException("Malformed Deflate block.", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
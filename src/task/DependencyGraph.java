@@ -0,0 +1,453 @@
+package task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Graph of "blocked by" dependencies between the managed tasks.
+ * Tasks are nodes with dense indexes, looked up by task id; edges point from a blocker to the
+ * tasks it blocks. The graph keeps a topological order up to date with the Pearce-Kelly
+ * algorithm, which on insertion of an edge only visits and reorders the nodes between its two
+ * ends, and keeps the set of ready tasks, i.e. incomplete tasks whose blockers are all completed,
+ * which a completion change updates in time proportional to the number of dependents.
+ * The edges themselves are stored on the dependent tasks as blocker UIDs, so they are saved with
+ * the tasks; a blocker which is not managed, e.g. because it was removed, does not block.
+ * Not thread-safe; guarded by the TaskManager lock.
+ */
+final class DependencyGraph {
+
+  private static final int[] NO_EDGES = new int[0];
+
+  private final Function<String, Task> tasksByUid;
+  private final Map<Integer, Integer> nodeByTaskId = new HashMap<>();
+  // Dependents whose blocker is not managed, by blocker UID; checked again when it is attached.
+  private final Map<String, List<Task>> waiting = new HashMap<>();
+
+  private Task[] tasks = new Task[16];
+  private int[] order = new int[16];
+  private int[] nodeAt = new int[16];
+  private int[][] out = new int[16][];
+  private int[] outSize = new int[16];
+  private int[][] in = new int[16][];
+  private int[] inSize = new int[16];
+  private int[] openBlockers = new int[16];
+  private boolean[] completed = new boolean[16];
+  private final BitSet ready = new BitSet();
+  private int nodeCount;
+  private int[] freeNodes = new int[16];
+  private int freeCount;
+
+  // Scratch space of the searches
+  private int[] visited = new int[16];
+  private int visitStamp;
+  private int[] stack = new int[16];
+
+  /**
+   * Creates an empty graph.
+   *
+   * @param tasksByUid finds a managed task by UID, or returns null.
+   */
+  DependencyGraph(Function<String, Task> tasksByUid) {
+    this.tasksByUid = tasksByUid;
+  }
+
+  /**
+   * Adds a task with the dependencies recorded on it and on tasks waiting for it. Dependencies
+   * which would close a cycle, e.g. in a file edited by hand, are skipped with a warning.
+   */
+  void addTask(Task task) {
+    int node = allocateNode(task);
+    for (String uid : task.getBlockerUids()) {
+      Task blocker = tasksByUid.apply(uid);
+      if (blocker == null || !nodeByTaskId.containsKey(blocker.getId())) {
+        waiting.computeIfAbsent(uid, key -> new ArrayList<>()).add(task);
+      } else {
+        addRecordedEdge(nodeOf(blocker), node);
+      }
+    }
+    List<Task> dependents = waiting.remove(task.getUid());
+    if (dependents != null) {
+      for (Task dependent : dependents) {
+        Integer dependentNode = nodeByTaskId.get(dependent.getId());
+        if (dependentNode != null && tasks[dependentNode] == dependent
+                && dependent.getBlockerUids().contains(task.getUid())) {
+          addRecordedEdge(node, dependentNode);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes a task and its edges. Its dependents keep the blocker UID, so the edges come back
+   * if the task is added again, e.g. when a removal is rolled back.
+   */
+  void removeTask(Task task) {
+    Integer boxed = nodeByTaskId.remove(task.getId());
+    if (boxed == null) {
+      return;
+    }
+    int node = boxed;
+    for (int i = 0; i < outSize[node]; i++) {
+      int dependent = out[node][i];
+      removeEntry(in, inSize, dependent, node);
+      if (!completed[node]) {
+        openBlockers[dependent]--;
+        refreshReady(dependent);
+      }
+      waiting.computeIfAbsent(task.getUid(), key -> new ArrayList<>()).add(tasks[dependent]);
+    }
+    for (int i = 0; i < inSize[node]; i++) {
+      removeEntry(out, outSize, in[node][i], node);
+    }
+    outSize[node] = 0;
+    inSize[node] = 0;
+    openBlockers[node] = 0;
+    ready.clear(node);
+    tasks[node] = null;
+    // The node keeps its position, which the next new node takes over: a node without edges can
+    // be anywhere in a topological order.
+    freeNodes = grow(freeNodes, freeCount + 1);
+    freeNodes[freeCount++] = node;
+  }
+
+  /**
+   * Adds an edge from a blocker to a dependent, both managed.
+   *
+   * @return false if the edge already exists.
+   * @throws IllegalArgumentException if the edge would close a cycle.
+   */
+  boolean addEdge(Task blocker, Task dependent) {
+    int from = nodeOf(blocker);
+    int to = nodeOf(dependent);
+    if (indexOf(out[from], outSize[from], to) >= 0) {
+      return false;
+    }
+    if (from == to || !reorder(from, to)) {
+      throw new IllegalArgumentException("Task " + blocker.getId() + " already depends on task "
+              + dependent.getId() + ".");
+    }
+    link(from, to);
+    return true;
+  }
+
+  /**
+   * Removes an edge from a blocker to a dependent.
+   *
+   * @return false if there was no such edge.
+   */
+  boolean removeEdge(Task blocker, Task dependent) {
+    Integer from = nodeByTaskId.get(blocker.getId());
+    Integer to = nodeByTaskId.get(dependent.getId());
+    if (from == null || to == null || indexOf(out[from], outSize[from], to) < 0) {
+      return false;
+    }
+    removeEntry(out, outSize, from, to);
+    removeEntry(in, inSize, to, from);
+    if (!completed[from]) {
+      openBlockers[to]--;
+      refreshReady(to);
+    }
+    return true;
+  }
+
+  /**
+   * Updates the ready set if the completion status of a task changed. O(1) if it did not,
+   * otherwise proportional to the number of tasks it blocks.
+   */
+  void completionChanged(Task task) {
+    Integer boxed = nodeByTaskId.get(task.getId());
+    if (boxed == null || completed[boxed] == task.isCompleted()) {
+      return;
+    }
+    int node = boxed;
+    completed[node] = task.isCompleted();
+    int delta = completed[node] ? -1 : 1;
+    for (int i = 0; i < outSize[node]; i++) {
+      int dependent = out[node][i];
+      openBlockers[dependent] += delta;
+      refreshReady(dependent);
+    }
+    refreshReady(node);
+  }
+
+  boolean isReady(Task task) {
+    Integer node = nodeByTaskId.get(task.getId());
+    return node != null && ready.get(node);
+  }
+
+  List<Task> readyTasks() {
+    List<Task> result = new ArrayList<>(ready.cardinality());
+    for (int node = ready.nextSetBit(0); node >= 0; node = ready.nextSetBit(node + 1)) {
+      result.add(tasks[node]);
+    }
+    return result;
+  }
+
+  List<Task> blockers(Task task) {
+    Integer node = nodeByTaskId.get(task.getId());
+    return node == null ? Collections.emptyList() : toTasks(in[node], inSize[node]);
+  }
+
+  List<Task> dependents(Task task) {
+    Integer node = nodeByTaskId.get(task.getId());
+    return node == null ? Collections.emptyList() : toTasks(out[node], outSize[node]);
+  }
+
+  /**
+   * Gets the group of a task for sorting ready tasks first: 0 if ready, 1 if blocked, 2 if
+   * completed.
+   */
+  int readyGroup(Task task) {
+    if (task.isCompleted()) {
+      return 2;
+    }
+    return isReady(task) ? 0 : 1;
+  }
+
+  /**
+   * Lists the incomplete tasks in topological order, every blocker before its dependents.
+   */
+  List<Task> topologicalOrder() {
+    List<Task> result = new ArrayList<>();
+    for (int position = 0; position < nodeCount; position++) {
+      int node = nodeAt[position];
+      if (tasks[node] != null && !completed[node]) {
+        result.add(tasks[node]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds the chain of incomplete tasks which finishes last. A task cannot finish before its
+   * expected end time, nor sooner after its last incomplete blocker than its own planned
+   * duration, from its start time to its expected end time. One pass in topological order,
+   * O(V + E).
+   *
+   * @return the tasks of the chain, blockers first.
+   */
+  List<Task> criticalPath() {
+    long[] finish = new long[nodeCount];
+    int[] previous = new int[nodeCount];
+    int last = -1;
+    for (int position = 0; position < nodeCount; position++) {
+      int node = nodeAt[position];
+      Task task = tasks[node];
+      if (task == null || completed[node]) {
+        continue;
+      }
+      long expectedEnd = task.getExpectedEndMillis();
+      long duration = Math.max(0, expectedEnd - task.getStartMillis());
+      finish[node] = expectedEnd;
+      previous[node] = -1;
+      for (int i = 0; i < inSize[node]; i++) {
+        int blocker = in[node][i];
+        if (!completed[blocker] && finish[blocker] + duration > finish[node]) {
+          finish[node] = finish[blocker] + duration;
+          previous[node] = blocker;
+        }
+      }
+      if (last == -1 || finish[node] > finish[last]) {
+        last = node;
+      }
+    }
+    List<Task> path = new ArrayList<>();
+    for (int node = last; node != -1; node = previous[node]) {
+      path.add(tasks[node]);
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  private int nodeOf(Task task) {
+    Integer node = nodeByTaskId.get(task.getId());
+    if (node == null || tasks[node] != task) {
+      throw new IllegalArgumentException("Task " + task.getId() + " is not managed.");
+    }
+    return node;
+  }
+
+  private int allocateNode(Task task) {
+    int node;
+    if (freeCount > 0) {
+      node = freeNodes[--freeCount];
+    } else {
+      node = nodeCount++;
+      ensureCapacity(nodeCount);
+      order[node] = node;
+      nodeAt[node] = node;
+      out[node] = NO_EDGES;
+      in[node] = NO_EDGES;
+    }
+    tasks[node] = task;
+    completed[node] = task.isCompleted();
+    nodeByTaskId.put(task.getId(), node);
+    refreshReady(node);
+    return node;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= tasks.length) {
+      return;
+    }
+    int length = Math.max(capacity, tasks.length * 2);
+    tasks = Arrays.copyOf(tasks, length);
+    order = Arrays.copyOf(order, length);
+    nodeAt = Arrays.copyOf(nodeAt, length);
+    out = Arrays.copyOf(out, length);
+    outSize = Arrays.copyOf(outSize, length);
+    in = Arrays.copyOf(in, length);
+    inSize = Arrays.copyOf(inSize, length);
+    openBlockers = Arrays.copyOf(openBlockers, length);
+    completed = Arrays.copyOf(completed, length);
+    visited = Arrays.copyOf(visited, length);
+  }
+
+  private void addRecordedEdge(int from, int to) {
+    if (indexOf(out[from], outSize[from], to) >= 0) {
+      return;
+    }
+    if (from == to || !reorder(from, to)) {
+      System.err.println("Ignoring dependency of task " + tasks[to].getId() + " on task "
+              + tasks[from].getId() + ", which would close a cycle.");
+      return;
+    }
+    link(from, to);
+  }
+
+  private void link(int from, int to) {
+    out[from] = grow(out[from], outSize[from] + 1);
+    out[from][outSize[from]++] = to;
+    in[to] = grow(in[to], inSize[to] + 1);
+    in[to][inSize[to]++] = from;
+    if (!completed[from]) {
+      openBlockers[to]++;
+      refreshReady(to);
+    }
+  }
+
+  private void refreshReady(int node) {
+    ready.set(node, tasks[node] != null && !completed[node] && openBlockers[node] == 0);
+  }
+
+  /**
+   * Makes the order place from before to, if needed, by moving the nodes between them which are
+   * reachable from to, or reach from.
+   *
+   * @return false if to reaches from, i.e. an edge from before to would close a cycle.
+   */
+  private boolean reorder(int from, int to) {
+    int lower = order[to];
+    int upper = order[from];
+    if (upper < lower) {
+      return true;
+    }
+    int[] forward = search(to, out, outSize, lower, upper, from);
+    if (forward == null) {
+      return false;
+    }
+    int[] backward = search(from, in, inSize, lower, upper, -1);
+    sortByOrder(forward);
+    sortByOrder(backward);
+    int[] positions = new int[forward.length + backward.length];
+    for (int i = 0; i < backward.length; i++) {
+      positions[i] = order[backward[i]];
+    }
+    for (int i = 0; i < forward.length; i++) {
+      positions[backward.length + i] = order[forward[i]];
+    }
+    Arrays.sort(positions);
+    // Nodes reaching from keep their relative order and go first, then those reachable from to.
+    for (int i = 0; i < backward.length; i++) {
+      place(backward[i], positions[i]);
+    }
+    for (int i = 0; i < forward.length; i++) {
+      place(forward[i], positions[backward.length + i]);
+    }
+    return true;
+  }
+
+  private void place(int node, int position) {
+    order[node] = position;
+    nodeAt[position] = node;
+  }
+
+  /**
+   * Depth-first search with an explicit stack, staying between the lower and upper positions.
+   *
+   * @return the visited nodes, or null if target was reached.
+   */
+  private int[] search(int start, int[][] edges, int[] sizes, int lower, int upper, int target) {
+    int stamp = ++visitStamp;
+    int[] found = new int[16];
+    int foundCount = 0;
+    int top = 0;
+    stack = grow(stack, 1);
+    stack[top++] = start;
+    visited[start] = stamp;
+    while (top > 0) {
+      int node = stack[--top];
+      found = grow(found, foundCount + 1);
+      found[foundCount++] = node;
+      for (int i = 0; i < sizes[node]; i++) {
+        int next = edges[node][i];
+        if (next == target) {
+          return null;
+        }
+        int position = order[next];
+        if (visited[next] != stamp && position >= lower && position <= upper) {
+          visited[next] = stamp;
+          stack = grow(stack, top + 1);
+          stack[top++] = next;
+        }
+      }
+    }
+    return Arrays.copyOf(found, foundCount);
+  }
+
+  private void sortByOrder(int[] nodes) {
+    long[] keys = new long[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      keys[i] = (long) order[nodes[i]] << 32 | nodes[i];
+    }
+    Arrays.sort(keys);
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = (int) keys[i];
+    }
+  }
+
+  private List<Task> toTasks(int[] nodes, int count) {
+    List<Task> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(tasks[nodes[i]]);
+    }
+    return result;
+  }
+
+  private static int indexOf(int[] nodes, int count, int node) {
+    for (int i = 0; i < count; i++) {
+      if (nodes[i] == node) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static void removeEntry(int[][] edges, int[] sizes, int node, int entry) {
+    int index = indexOf(edges[node], sizes[node], entry);
+    if (index >= 0) {
+      edges[node][index] = edges[node][--sizes[node]];
+    }
+  }
+
+  private static int[] grow(int[] array, int capacity) {
+    return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity,
+            array.length * 2));
+  }
+}
@@ -0,0 +1,74 @@
+package task;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges tasks sorted by due time with the occurrences of recurring tasks in a window, lazily
+ * and in due order. Each source is consumed one element ahead, so the cost per element is
+ * O(log k) for k sources, independent of how many elements are never read. On equal due
+ * times, ordinary tasks come first, then recurring tasks in the order they were given.
+ */
+final class DueOrderIterator implements Iterator<Task> {
+
+  private record Head(Task task, int source) {
+  }
+
+  private final List<Iterator<Task>> sources = new ArrayList<>();
+  private final TaskManager.QueryMode queryMode;
+  private final PriorityQueue<Head> heads = new PriorityQueue<>(
+          Comparator.comparingLong((Head head) -> head.task().getExpectedEndMillis())
+                  .thenComparingInt(Head::source));
+
+  /**
+   * Creates a merging iterator.
+   *
+   * @param tasks      ordinary tasks in due order, already filtered by queryMode.
+   * @param templates  recurring tasks whose occurrences to merge in.
+   * @param queryMode  which occurrences to return, by completion status.
+   * @param fromMillis the start of the occurrence window, inclusive.
+   * @param toMillis   the end of the occurrence window, exclusive.
+   */
+  DueOrderIterator(Iterator<Task> tasks, List<RecurringTask> templates,
+                   TaskManager.QueryMode queryMode, long fromMillis, long toMillis) {
+    this.queryMode = queryMode;
+    sources.add(tasks);
+    for (RecurringTask template : templates) {
+      sources.add(template.occurrences(fromMillis, toMillis));
+    }
+    for (int source = 0; source < sources.size(); source++) {
+      pull(source);
+    }
+  }
+
+  private void pull(int source) {
+    Iterator<Task> iterator = sources.get(source);
+    while (iterator.hasNext()) {
+      Task task = iterator.next();
+      if (source == 0 || queryMode == TaskManager.QueryMode.ALL
+              || task.isCompleted() == (queryMode == TaskManager.QueryMode.COMPLETE)) {
+        heads.add(new Head(task, source));
+        return;
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !heads.isEmpty();
+  }
+
+  @Override
+  public Task next() {
+    Head head = heads.poll();
+    if (head == null) {
+      throw new NoSuchElementException();
+    }
+    pull(head.source());
+    return head.task();
+  }
+}
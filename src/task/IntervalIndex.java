@@ -0,0 +1,246 @@
+package task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Index of the tasks by the interval from their start time to their due time.
+ * The intervals are kept in a treap ordered by due time, whose nodes also carry the earliest
+ * start below them. A query visits only subtrees which can hold an overlapping interval, so it
+ * costs at most O(k log n) expected time for k results instead of a scan of all tasks, and an
+ * insertion, removal or update costs O(log n). Results come out in due order, which is the
+ * order the agenda lists them in. Not thread-safe; guarded by the TaskManager lock.
+ */
+final class IntervalIndex {
+
+  private static final class Node {
+    private final Task task;
+    // Copied from the task when indexed, as the task may change before it is updated here
+    private final long start;
+    private final long end;
+    private final int id;
+    private final int priority;
+    private Node left;
+    private Node right;
+    private long minStart;
+    private int size;
+
+    private Node(Task task) {
+      this.task = task;
+      this.start = start(task);
+      this.end = end(task);
+      this.id = task.getId();
+      this.priority = ThreadLocalRandom.current().nextInt();
+      this.minStart = start;
+      this.size = 1;
+    }
+
+    private int compareTo(Node other) {
+      int result = Long.compare(end, other.end);
+      return result != 0 ? result : Integer.compare(id, other.id);
+    }
+  }
+
+  private final Map<Task, Node> nodes = new IdentityHashMap<>();
+  private Node root;
+
+  /**
+   * Gets the number of indexed tasks.
+   */
+  int size() {
+    return root == null ? 0 : root.size;
+  }
+
+  /**
+   * Indexes a task. Adding a task which is already indexed updates it.
+   */
+  void add(Task task) {
+    remove(task);
+    Node node = new Node(task);
+    nodes.put(task, node);
+    Node[] parts = split(root, node);
+    root = merge(merge(parts[0], node), parts[1]);
+  }
+
+  /**
+   * Removes a task from the index. Removing a task which is not indexed has no effect.
+   */
+  void remove(Task task) {
+    Node node = nodes.remove(task);
+    if (node != null) {
+      root = remove(root, node);
+    }
+  }
+
+  /**
+   * Re-indexes a task if its start or due time changed since it was indexed.
+   */
+  void update(Task task) {
+    Node node = nodes.get(task);
+    if (node != null && (node.start != start(task) || node.end != end(task))) {
+      add(task);
+    }
+  }
+
+  /**
+   * Replaces the content of the index with a collection of tasks. Builds the treap from the
+   * sorted intervals in one pass instead of inserting the tasks one by one.
+   */
+  void rebuild(Collection<Task> tasks) {
+    nodes.clear();
+    Node[] sorted = new Node[tasks.size()];
+    int count = 0;
+    for (Task task : tasks) {
+      Node node = new Node(task);
+      nodes.put(task, node);
+      sorted[count++] = node;
+    }
+    Arrays.sort(sorted, Node::compareTo);
+    // Right spine of the treap built so far, as in the construction of a Cartesian tree
+    Deque<Node> spine = new ArrayDeque<>();
+    for (Node node : sorted) {
+      Node last = null;
+      while (!spine.isEmpty() && spine.peek().priority < node.priority) {
+        last = spine.pop();
+        update(last);
+      }
+      node.left = last;
+      if (!spine.isEmpty()) {
+        spine.peek().right = node;
+      }
+      spine.push(node);
+    }
+    Node top = null;
+    while (!spine.isEmpty()) {
+      top = spine.pop();
+      update(top);
+    }
+    root = top;
+  }
+
+  /**
+   * Visits the tasks whose interval overlaps a window, in order of due time.
+   *
+   * @param fromMillis the start of the window, inclusive.
+   * @param toMillis   the end of the window, exclusive.
+   * @param action     called with each overlapping task.
+   */
+  void forEachOverlapping(long fromMillis, long toMillis, Consumer<Task> action) {
+    Deque<Node> stack = new ArrayDeque<>();
+    Node node = root;
+    while (node != null || !stack.isEmpty()) {
+      // Descend to the first interval ending in the window, skipping subtrees which all start
+      // after it
+      while (node != null && node.minStart < toMillis) {
+        if (node.end < fromMillis) {
+          node = node.right;
+        } else {
+          stack.push(node);
+          node = node.left;
+        }
+      }
+      if (stack.isEmpty()) {
+        return;
+      }
+      node = stack.pop();
+      if (node.start < toMillis) {
+        action.accept(node.task);
+      }
+      node = node.right;
+    }
+  }
+
+  /**
+   * Lists the tasks whose interval overlaps a window, in order of due time.
+   *
+   * @param fromMillis the start of the window, inclusive.
+   * @param toMillis   the end of the window, exclusive.
+   * @return a new list of tasks.
+   */
+  List<Task> overlapping(long fromMillis, long toMillis) {
+    List<Task> result = new ArrayList<>();
+    forEachOverlapping(fromMillis, toMillis, result::add);
+    return result;
+  }
+
+  // The interval of a task; a task due before its start time only covers its due time
+  private static long start(Task task) {
+    return Math.min(task.getStartMillis(), task.getExpectedEndMillis());
+  }
+
+  private static long end(Task task) {
+    return task.getExpectedEndMillis();
+  }
+
+  private static long minStart(Node node) {
+    return node == null ? Long.MAX_VALUE : node.minStart;
+  }
+
+  private static int size(Node node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static void update(Node node) {
+    node.minStart = Math.min(node.start, Math.min(minStart(node.left), minStart(node.right)));
+    node.size = 1 + size(node.left) + size(node.right);
+  }
+
+  // Splits a treap into the nodes before key and the rest. Recursion depth is the treap
+  // height, which is logarithmic in the number of nodes with high probability.
+  private static Node[] split(Node node, Node key) {
+    if (node == null) {
+      return new Node[2];
+    }
+    Node[] parts;
+    if (key.compareTo(node) <= 0) {
+      parts = split(node.left, key);
+      node.left = parts[1];
+      update(node);
+      parts[1] = node;
+    } else {
+      parts = split(node.right, key);
+      node.right = parts[0];
+      update(node);
+      parts[0] = node;
+    }
+    return parts;
+  }
+
+  private static Node merge(Node left, Node right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      update(left);
+      return left;
+    }
+    right.left = merge(left, right.left);
+    update(right);
+    return right;
+  }
+
+  private static Node remove(Node node, Node key) {
+    if (node == key) {
+      return merge(node.left, node.right);
+    }
+    if (key.compareTo(node) < 0) {
+      node.left = remove(node.left, key);
+    } else {
+      node.right = remove(node.right, key);
+    }
+    update(node);
+    return node;
+  }
+}
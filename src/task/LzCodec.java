@@ -0,0 +1,170 @@
+package task;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A byte-oriented LZ77 codec in the style of LZ4, used by {@link Compression#LZ}. A block is a
+ * series of sequences, each a token byte, literals and a match:
+ *
+ * <pre>
+ * token: literal length (high nibble), match length - 4 (low nibble); 15 means that more
+ *        length bytes follow, each added until one is not 255
+ * literal bytes
+ * match offset, 2 bytes little-endian, then the extra match length bytes
+ * </pre>
+ *
+ * <p>The last sequence only has literals. Matches are found through a hash table of the 4-byte
+ * sequences seen so far, without chains, which trades ratio for speed.
+ */
+final class LzCodec {
+
+  private static final int MIN_MATCH = 4;
+  // The last bytes of a block are always literals, so the last sequence is literals only
+  private static final int LAST_LITERALS = 5;
+  private static final int MAX_OFFSET = 0xFFFF;
+  private static final int HASH_BITS = 14;
+
+  private LzCodec() {
+  }
+
+  /**
+   * Compresses a block.
+   *
+   * @param src    the buffer holding the block.
+   * @param length the length of the block.
+   * @return the compressed block.
+   */
+  static byte[] compress(byte[] src, int length) {
+    // Incompressible data grows by one length byte per 255 literals, plus a token
+    byte[] dst = new byte[length + length / 255 + 16];
+    int[] table = new int[1 << HASH_BITS];  // Position + 1 of the last sequence with a hash
+    int limit = length - LAST_LITERALS - MIN_MATCH;
+    int ip = 0;
+    int anchor = 0;
+    int op = 0;
+    while (ip <= limit) {
+      int sequence = readInt(src, ip);
+      int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+      int ref = table[hash] - 1;
+      table[hash] = ip + 1;
+      if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+        ip++;
+        continue;
+      }
+      int matchLength = MIN_MATCH;
+      int matchLimit = length - LAST_LITERALS;
+      while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+        matchLength++;
+      }
+      op = writeSequence(dst, op, src, anchor, ip - anchor, ip - ref, matchLength);
+      ip += matchLength;
+      anchor = ip;
+    }
+    op = writeSequence(dst, op, src, anchor, length - anchor, 0, 0);
+    return Arrays.copyOf(dst, op);
+  }
+
+  private static int writeSequence(byte[] dst, int op, byte[] src, int literalStart,
+                                   int literalLength, int offset, int matchLength) {
+    int tokenAt = op++;
+    int token = (Math.min(literalLength, 15) << 4);
+    if (literalLength >= 15) {
+      op = writeLength(dst, op, literalLength - 15);
+    }
+    System.arraycopy(src, literalStart, dst, op, literalLength);
+    op += literalLength;
+    if (matchLength > 0) {
+      dst[op++] = (byte) offset;
+      dst[op++] = (byte) (offset >>> 8);
+      int extra = matchLength - MIN_MATCH;
+      token |= Math.min(extra, 15);
+      if (extra >= 15) {
+        op = writeLength(dst, op, extra - 15);
+      }
+    }
+    dst[tokenAt] = (byte) token;
+    return op;
+  }
+
+  private static int writeLength(byte[] dst, int op, int length) {
+    while (length >= 255) {
+      dst[op++] = (byte) 255;
+      length -= 255;
+    }
+    dst[op++] = (byte) length;
+    return op;
+  }
+
+  /**
+   * Decompresses a block.
+   *
+   * @param src       the buffer holding the compressed block.
+   * @param offset    the offset of the compressed block.
+   * @param length    the length of the compressed block.
+   * @param rawLength the length of the block once decompressed.
+   * @return the block.
+   * @throws IOException if the compressed block is malformed.
+   */
+  static byte[] decompress(byte[] src, int offset, int length, int rawLength)
+          throws IOException {
+    byte[] dst = new byte[rawLength];
+    int ip = offset;
+    int end = offset + length;
+    int op = 0;
+    try {
+      while (true) {
+        int token = src[ip++] & 0xFF;
+        int literalLength = token >>> 4;
+        if (literalLength == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xFF;
+            literalLength += b;
+          } while (b == 255);
+        }
+        System.arraycopy(src, ip, dst, op, literalLength);
+        ip += literalLength;
+        op += literalLength;
+        if (ip >= end) {
+          break;
+        }
+        int matchOffset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+        ip += 2;
+        int matchLength = token & 15;
+        if (matchLength == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xFF;
+            matchLength += b;
+          } while (b == 255);
+        }
+        matchLength += MIN_MATCH;
+        int from = op - matchOffset;
+        if (matchOffset == 0 || from < 0) {
+          throw new IOException("Malformed LZ block: bad match offset.");
+        }
+        if (matchOffset >= matchLength) {
+          System.arraycopy(dst, from, dst, op, matchLength);
+          op += matchLength;
+        } else {
+          // Overlapping match, e.g. a run of one repeated byte
+          for (int i = 0; i < matchLength; i++) {
+            dst[op++] = dst[from + i];
+          }
+        }
+      }
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("Malformed LZ block.", e);
+    }
+    if (ip != end || op != rawLength) {
+      throw new IOException("Malformed LZ block: wrong length.");
+    }
+    return dst;
+  }
+
+  private static int readInt(byte[] src, int index) {
+    return (src[index] & 0xFF) | (src[index + 1] & 0xFF) << 8 | (src[index + 2] & 0xFF) << 16
+            | (src[index + 3] & 0xFF) << 24;
+  }
+}
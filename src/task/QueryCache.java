@@ -0,0 +1,50 @@
+package task;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of query results. Every entry remembers the stamp it was computed at; the
+ * stamp of a query only moves when a field which the query depends on changes, so a lookup
+ * with a newer stamp is a miss and the stale entry is replaced on the next put.
+ * Readers share TaskManager's read lock, so the cache synchronizes on itself.
+ */
+final class QueryCache {
+
+  private record Entry(long stamp, List<Task> tasks) {
+  }
+
+  private final Map<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+      return size() > capacity;
+    }
+  };
+  private int capacity;
+
+  QueryCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns the cached result of a query, or null if there is none for this stamp.
+   */
+  synchronized List<Task> get(int key, long stamp) {
+    Entry entry = entries.get(key);
+    return entry != null && entry.stamp() == stamp ? entry.tasks() : null;
+  }
+
+  synchronized void put(int key, long stamp, List<Task> tasks) {
+    if (capacity > 0) {
+      entries.put(key, new Entry(stamp, tasks));
+    }
+  }
+
+  synchronized void setCapacity(int capacity) {
+    this.capacity = capacity;
+    while (entries.size() > capacity) {
+      entries.remove(entries.keySet().iterator().next());
+    }
+  }
+}
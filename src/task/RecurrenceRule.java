@@ -0,0 +1,325 @@
+package task;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+
+/**
+ * A recurrence rule in the iCalendar RRULE syntax, e.g. {@code FREQ=WEEKLY;BYDAY=MO,WE}.
+ * Supported parts are FREQ (DAILY, WEEKLY, MONTHLY or YEARLY), INTERVAL, COUNT, UNTIL and, for
+ * weekly rules, BYDAY. Occurrences keep the local time of the first one across daylight saving
+ * changes; a monthly or yearly rule starting on a day which a month lacks, e.g. the 31st, falls
+ * on the last day of such months instead of skipping them.
+ */
+public final class RecurrenceRule implements Serializable {
+
+  @Serial
+  private static final long serialVersionUID = 1L;
+
+  private static final String[] DAY_CODES = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+  private static final DateTimeFormatter UNTIL_FORMAT =
+          DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+  /**
+   * How often a rule repeats.
+   */
+  public enum Frequency {
+    DAILY(ChronoUnit.DAYS),
+    WEEKLY(ChronoUnit.WEEKS),
+    MONTHLY(ChronoUnit.MONTHS),
+    YEARLY(ChronoUnit.YEARS);
+
+    private final ChronoUnit unit;
+
+    Frequency(ChronoUnit unit) {
+      this.unit = unit;
+    }
+  }
+
+  private final Frequency frequency;
+  private final int interval;
+  private final int count; // 0 if unlimited
+  private final long until; // Task.NO_TIME if unlimited
+  private final int byDayMask; // Bit 0 is Monday, 0 if not set
+
+  private RecurrenceRule(Frequency frequency, int interval, int count, long until, int byDayMask) {
+    this.frequency = frequency;
+    this.interval = interval;
+    this.count = count;
+    this.until = until;
+    this.byDayMask = byDayMask;
+  }
+
+  /**
+   * Creates a rule repeating every period, without end.
+   *
+   * @param frequency how often the rule repeats.
+   * @return a new rule.
+   */
+  public static RecurrenceRule of(Frequency frequency) {
+    return new RecurrenceRule(frequency, 1, 0, Task.NO_TIME, 0);
+  }
+
+  /**
+   * Parses a rule, with or without the "RRULE:" prefix.
+   *
+   * @param rule the rule, e.g. "FREQ=DAILY;INTERVAL=2;COUNT=10".
+   * @return the parsed rule.
+   * @throws IllegalArgumentException if the rule is malformed or uses unsupported parts.
+   */
+  public static RecurrenceRule parse(String rule) {
+    if (rule.regionMatches(true, 0, "RRULE:", 0, 6)) {
+      rule = rule.substring(6);
+    }
+    Frequency frequency = null;
+    int interval = 1;
+    int count = 0;
+    long until = Task.NO_TIME;
+    int byDayMask = 0;
+    for (String part : rule.split(";")) {
+      int equals = part.indexOf('=');
+      if (equals < 0) {
+        throw new IllegalArgumentException("Malformed recurrence rule part: " + part);
+      }
+      String name = part.substring(0, equals).toUpperCase(Locale.ROOT);
+      String value = part.substring(equals + 1).toUpperCase(Locale.ROOT);
+      try {
+        switch (name) {
+          case "FREQ" -> frequency = Frequency.valueOf(value);
+          case "INTERVAL" -> interval = Integer.parseInt(value);
+          case "COUNT" -> count = Integer.parseInt(value);
+          case "UNTIL" -> until = parseUntil(value);
+          case "BYDAY" -> byDayMask = parseDays(value);
+          case "WKST" -> {
+            // Weeks always start on Monday, the default.
+          }
+          default -> throw new IllegalArgumentException(
+                  "Unsupported recurrence rule part: " + name);
+        }
+      } catch (NumberFormatException | DateTimeParseException e) {
+        throw new IllegalArgumentException("Malformed recurrence rule part: " + part, e);
+      }
+    }
+    if (frequency == null) {
+      throw new IllegalArgumentException("Recurrence rule has no FREQ.");
+    }
+    if (interval < 1 || count < 0) {
+      throw new IllegalArgumentException("INTERVAL must be positive and COUNT not negative.");
+    }
+    if (byDayMask != 0 && frequency != Frequency.WEEKLY) {
+      throw new IllegalArgumentException("BYDAY is only supported for weekly rules.");
+    }
+    return new RecurrenceRule(frequency, interval, count, until, byDayMask);
+  }
+
+  private static long parseUntil(String value) {
+    if (value.length() == 8) {
+      // A date: the rule ends with that day, in local time
+      return LocalDate.parse(value, DateTimeFormatter.BASIC_ISO_DATE).plusDays(1)
+              .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+    }
+    if (value.endsWith("Z")) {
+      return LocalDateTime.parse(value, UNTIL_FORMAT).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+    return LocalDateTime.parse(value, DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss"))
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  private static int parseDays(String value) {
+    int mask = 0;
+    for (String day : value.split(",")) {
+      int index = indexOfDay(day);
+      if (index < 0) {
+        throw new IllegalArgumentException("Unsupported BYDAY value: " + day);
+      }
+      mask |= 1 << index;
+    }
+    return mask;
+  }
+
+  private static int indexOfDay(String code) {
+    for (int i = 0; i < DAY_CODES.length; i++) {
+      if (DAY_CODES[i].equals(code)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // Getters for each field
+
+  public Frequency getFrequency() {
+    return frequency;
+  }
+
+  public int getInterval() {
+    return interval;
+  }
+
+  /**
+   * Gets the maximum number of occurrences.
+   *
+   * @return the number of occurrences, or 0 if unlimited.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the time after which there are no more occurrences.
+   *
+   * @return the end in epoch millis, or {@link Task#NO_TIME} if unlimited.
+   */
+  public long getUntilMillis() {
+    return until;
+  }
+
+  /**
+   * Creates a cursor over the occurrences at or after a time.
+   * Skipping to fromMillis is O(1), not proportional to the number of earlier occurrences.
+   *
+   * @param startMillis the first occurrence, which defines the time of day and the period grid.
+   * @param fromMillis  the earliest occurrence to return.
+   * @return a cursor positioned before the first occurrence at or after fromMillis.
+   */
+  Cursor cursor(long startMillis, long fromMillis) {
+    return new Cursor(startMillis, fromMillis);
+  }
+
+  /**
+   * Iterates over the occurrences of a rule in time order.
+   */
+  final class Cursor {
+    private final ZonedDateTime base;
+    private final int[] days;
+    // Occurrences in the first period, which has none before start
+    private final int firstSkipped;
+    private final int firstCount;
+    private final long fromMillis;
+    private long period;
+    private int slot;
+    private long millis;
+    private int index;
+    private boolean done;
+
+    private Cursor(long startMillis, long fromMillis) {
+      this.fromMillis = fromMillis;
+      ZonedDateTime start = Instant.ofEpochMilli(startMillis).atZone(ZoneId.systemDefault());
+      if (byDayMask == 0) {
+        days = null;
+        base = start;
+        firstSkipped = 0;
+        firstCount = 1;
+      } else {
+        days = new int[Integer.bitCount(byDayMask)];
+        for (int day = 0, i = 0; day < 7; day++) {
+          if ((byDayMask & 1 << day) != 0) {
+            days[i++] = day;
+          }
+        }
+        base = start.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        int startDay = start.getDayOfWeek().ordinal();
+        int skipped = 0;
+        while (skipped < days.length && days[skipped] < startDay) {
+          skipped++;
+        }
+        firstSkipped = skipped;
+        firstCount = days.length - skipped;
+      }
+      if (fromMillis > startMillis) {
+        ZonedDateTime from = Instant.ofEpochMilli(fromMillis).atZone(start.getZone());
+        // One period early, as the period arithmetic ignores the time of day
+        period = Math.max(0, frequency.unit.between(base, from) / interval - 1);
+      }
+      slot = period == 0 ? firstSkipped : 0;
+    }
+
+    /**
+     * Moves to the next occurrence.
+     *
+     * @return false if there are no more occurrences.
+     */
+    boolean next() {
+      while (advance()) {
+        if (millis >= fromMillis) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    long millis() {
+      return millis;
+    }
+
+    /**
+     * Gets the index of the current occurrence, 0 for the first occurrence of the rule.
+     */
+    int index() {
+      return index;
+    }
+
+    private boolean advance() {
+      if (done) {
+        return false;
+      }
+      int perPeriod = days == null ? 1 : days.length;
+      if (slot >= perPeriod) {
+        period++;
+        slot = 0;
+      }
+      long offset = period * interval;
+      ZonedDateTime occurrence = days == null ? base.plus(offset, frequency.unit)
+              : base.plusWeeks(offset).plusDays(days[slot]);
+      long ordinal = period == 0 ? slot - firstSkipped
+              : firstCount + (period - 1) * perPeriod + slot;
+      slot++;
+      millis = occurrence.toInstant().toEpochMilli();
+      if (ordinal > Integer.MAX_VALUE || count > 0 && ordinal >= count
+              || until != Task.NO_TIME && millis > until) {
+        done = true;
+        return false;
+      }
+      index = (int) ordinal;
+      return true;
+    }
+  }
+
+  /**
+   * Formats this rule in the RRULE syntax, without the "RRULE:" prefix.
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("FREQ=").append(frequency);
+    if (interval != 1) {
+      builder.append(";INTERVAL=").append(interval);
+    }
+    if (count > 0) {
+      builder.append(";COUNT=").append(count);
+    }
+    if (until != Task.NO_TIME) {
+      builder.append(";UNTIL=")
+              .append(UNTIL_FORMAT.format(Instant.ofEpochMilli(until).atOffset(ZoneOffset.UTC)));
+    }
+    if (byDayMask != 0) {
+      builder.append(";BYDAY=");
+      for (int day = 0, i = 0; day < 7; day++) {
+        if ((byDayMask & 1 << day) != 0) {
+          builder.append(i++ == 0 ? "" : ",").append(DAY_CODES[day]);
+        }
+      }
+    }
+    return builder.toString();
+  }
+}
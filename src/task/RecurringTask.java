@@ -0,0 +1,211 @@
+package task;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * A template for a task which repeats according to a {@link RecurrenceRule}.
+ * Occurrences are not stored: they are generated on demand for a date window, as tasks which
+ * are not managed by TaskManager and are recognized by {@link Task#getTemplate()}. Only the
+ * indexes of completed occurrences are stored, one bit each.
+ */
+public class RecurringTask implements Serializable {
+
+  @Serial
+  private static final long serialVersionUID = 1L;
+
+  // Occurrence tasks kept so that repeated queries return the same objects
+  private static final int OCCURRENCE_CACHE_SIZE = 256;
+
+  private final String uid;
+  private final String title;
+  private String description; // Optional
+  private Tag tag; // Optional
+  private final long createdTime;
+  private final long firstDueTime;
+  private final RecurrenceRule rule;
+  // Bit i is set if occurrence i is completed
+  private final BitSet completed = new BitSet();
+  private transient Map<Integer, Task> occurrences;
+
+  /**
+   * Constructs a new recurring task.
+   *
+   * @param title    The title of every occurrence, cannot be null or empty.
+   * @param firstDue The expected end time of the first occurrence, cannot be null.
+   * @param rule     The rule the occurrences follow, cannot be null.
+   * @throws IllegalArgumentException if an argument is null or empty.
+   */
+  public RecurringTask(String title, Date firstDue, RecurrenceRule rule) {
+    if (title == null || title.isEmpty()) {
+      throw new IllegalArgumentException("Task title cannot be null or empty.");
+    }
+    if (firstDue == null || rule == null) {
+      throw new IllegalArgumentException("First due time and rule cannot be null.");
+    }
+    this.uid = UUID.randomUUID().toString();
+    this.title = title;
+    this.createdTime = System.currentTimeMillis();
+    this.firstDueTime = firstDue.getTime();
+    this.rule = rule;
+  }
+
+  public synchronized void setDescription(String description) {
+    this.description = description;
+    occurrences = null;
+  }
+
+  public synchronized void setTag(Tag tag) {
+    this.tag = tag;
+    occurrences = null;
+  }
+
+  // Getters for each field
+
+  public String getUid() {
+    return uid;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public Tag getTag() {
+    return tag;
+  }
+
+  public long getCreatedMillis() {
+    return createdTime;
+  }
+
+  public long getFirstDueMillis() {
+    return firstDueTime;
+  }
+
+  public RecurrenceRule getRule() {
+    return rule;
+  }
+
+  /**
+   * Returns whether an occurrence is completed.
+   *
+   * @param index the index of the occurrence, 0 for the first one.
+   * @return true if the occurrence is completed.
+   */
+  public synchronized boolean isOccurrenceCompleted(int index) {
+    return completed.get(index);
+  }
+
+  /**
+   * Gets the number of completed occurrences.
+   *
+   * @return the number of completed occurrences.
+   */
+  public synchronized int getCompletedCount() {
+    return completed.cardinality();
+  }
+
+  /**
+   * Gets the indexes of the completed occurrences.
+   *
+   * @return a new set of indexes.
+   */
+  synchronized BitSet getCompletedOccurrences() {
+    return (BitSet) completed.clone();
+  }
+
+  /**
+   * Marks an occurrence as completed or not completed, used by TaskTransaction.
+   */
+  synchronized void setOccurrenceCompleted(int index, boolean isCompleted) {
+    completed.set(index, isCompleted);
+    Task occurrence = occurrences == null ? null : occurrences.get(index);
+    if (occurrence != null) {
+      occurrence.restoreCompletion(isCompleted, Task.NO_TIME);
+    }
+  }
+
+  /**
+   * Iterates lazily over the occurrences due in a window, in due order.
+   *
+   * @param fromMillis the start of the window, inclusive.
+   * @param toMillis   the end of the window, exclusive.
+   * @return an iterator over occurrence tasks.
+   */
+  public Iterator<Task> occurrences(long fromMillis, long toMillis) {
+    RecurrenceRule.Cursor cursor = rule.cursor(firstDueTime, fromMillis);
+    return new Iterator<>() {
+      private Task next = advance();
+
+      private Task advance() {
+        if (!cursor.next() || cursor.millis() >= toMillis) {
+          return null;
+        }
+        return occurrence(cursor.index(), cursor.millis());
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public Task next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        Task result = next;
+        next = advance();
+        return result;
+      }
+    };
+  }
+
+  /**
+   * Gets the task representing an occurrence.
+   */
+  private synchronized Task occurrence(int index, long dueMillis) {
+    if (occurrences == null) {
+      occurrences = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Task> eldest) {
+          return size() > OCCURRENCE_CACHE_SIZE;
+        }
+      };
+    }
+    Task occurrence = occurrences.get(index);
+    if (occurrence == null) {
+      occurrence = new Task(uid + "/" + index, title, new Date(createdTime), new Date(dueMillis));
+      occurrence.setDescription(description);
+      occurrence.setTag(tag);
+      occurrence.markOccurrence(this, index);
+      if (completed.get(index)) {
+        occurrence.restoreCompletion(true, Task.NO_TIME);
+      }
+      occurrences.put(index, occurrence);
+    }
+    return occurrence;
+  }
+
+  @Override
+  public String toString() {
+    return "RecurringTask{"
+            + "uid='" + uid + '\''
+            + ", title='" + title + '\''
+            + ", firstDueTime=" + new Date(firstDueTime)
+            + ", rule=" + rule
+            + ", completedCount=" + getCompletedCount()
+            + '}';
+  }
+}
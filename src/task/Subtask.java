@@ -1,29 +1,58 @@
 package task;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.Objects;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a subtask associated with a main task. Each subtask has a unique ID,
  * title, optional description, completion status, and a reference to its parent task.
+ * Subtasks can be nested; a subtask without a parent subtask sits at the top level of its task.
  */
 public class Subtask implements Serializable {
 
   @Serial
   private static final long serialVersionUID = 1L;
 
+  // Times are stored as epoch millis but serialized as Dates, see Task.
+  @Serial
+  private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("id", int.class),
+      new ObjectStreamField("uid", String.class),
+      new ObjectStreamField("title", String.class),
+      new ObjectStreamField("description", String.class),
+      new ObjectStreamField("isCompleted", boolean.class),
+      new ObjectStreamField("parentTask", Task.class),
+      new ObjectStreamField("startTime", Date.class),
+      new ObjectStreamField("actualEndTime", Date.class),
+  };
+
   private static final AtomicInteger idGenerator = new AtomicInteger(0);
 
-  private final int id;
-  private final String title;
+  // id, title and startTime are not final because readObject assigns them.
+  private int id;
+  // Stable across runs and devices, unlike id. Assigned on load for data saved before UIDs.
+  private String uid;
+  private String title;
   private String description;
   private boolean isCompleted;
   private Task parentTask;
-  private final Date startTime;
-  private Date actualEndTime;
+  private long startTime;
+  private long actualEndTime = Task.NO_TIME;
+  // The task whose subtask tree holds this subtask, notified of completion changes.
+  private transient Task owner;
+  // Not serialized, so that deep trees do not recurse; Task stores the tree as parent indexes.
+  private transient Subtask parentSubtask;
+  // Tokens of this subtask in the SubtaskTree of its owner, null while not in a tree.
+  transient SubtaskTree.Node enterToken;
+  transient SubtaskTree.Node exitToken;
 
   /**
    * Constructs a new Subtask instance with a required title, optional description,
@@ -39,10 +68,58 @@ public class Subtask implements Serializable {
       throw new IllegalArgumentException("Subtask title cannot be null or empty.");
     }
     this.id = idGenerator.incrementAndGet(); // Generates a unique ID
+    this.uid = UUID.randomUUID().toString();
     this.title = title;
     this.isCompleted = false;
     this.parentTask = parentTask;
-    this.startTime = new Date(); // Sets start time to current time
+    this.startTime = System.currentTimeMillis(); // Sets start time to current time
+  }
+
+  /**
+   * Constructs a Subtask which was created elsewhere, keeping its UID and start time.
+   *
+   * @param uid        The stable UID of the subtask, cannot be null or empty.
+   * @param title      The title of the subtask, cannot be null or empty.
+   * @param startTime  The start time of the subtask, cannot be null.
+   * @param parentTask The parent task associated with this subtask.
+   * @throws IllegalArgumentException if uid, title or startTime is null or empty.
+   */
+  public Subtask(String uid, String title, Date startTime, Task parentTask) {
+    if (uid == null || uid.isEmpty()) {
+      throw new IllegalArgumentException("Subtask UID cannot be null or empty.");
+    }
+    if (title == null || title.isEmpty()) {
+      throw new IllegalArgumentException("Subtask title cannot be null or empty.");
+    }
+    if (startTime == null) {
+      throw new IllegalArgumentException("Start time cannot be null.");
+    }
+    this.id = idGenerator.incrementAndGet();
+    this.uid = uid;
+    this.title = title;
+    this.isCompleted = false;
+    this.parentTask = parentTask;
+    this.startTime = startTime.getTime();
+  }
+
+  /**
+   * Constructs a Subtask decoded from a task file, keeping its id. Used by {@link TaskCodec}.
+   */
+  Subtask(int id, String uid, String title, long startTime, Task parentTask) {
+    this.id = id;
+    this.uid = uid;
+    this.title = title;
+    this.parentTask = parentTask;
+    this.startTime = startTime;
+  }
+
+  /**
+   * Makes sure ids generated from now on are greater than an id loaded from disk.
+   *
+   * @param loadedId an id which is already in use.
+   */
+  static void reserveId(int loadedId) {
+    idGenerator.accumulateAndGet(loadedId, Math::max);
   }
 
   public void setDescription(String description) {
@@ -53,12 +130,39 @@ public class Subtask implements Serializable {
    * Marks the subtask as completed and records the actual end time.
    */
   public void setCompleted(boolean isCompleted) {
+    notifyOwner(isCompleted);
     this.isCompleted = isCompleted;
     if (isCompleted) {
-      this.actualEndTime = new Date(); // Sets end time to current time
+      this.actualEndTime = System.currentTimeMillis(); // Sets end time to current time
     }
   }
 
+  /**
+   * Restores the completion status and actual end time, used when rolling back a batch.
+   */
+  void restoreCompletion(boolean completed, long actualEndTime) {
+    notifyOwner(completed);
+    this.isCompleted = completed;
+    this.actualEndTime = actualEndTime;
+  }
+
+  private void notifyOwner(boolean completed) {
+    if (owner != null && completed != isCompleted) {
+      owner.subtaskCompletionChanged(this, completed);
+    }
+  }
+
+  void setOwner(Task owner) {
+    this.owner = owner;
+  }
+
+  Task getOwner() {
+    return owner;
+  }
+
+  void restoreParentSubtask(Subtask parentSubtask) {
+    this.parentSubtask = parentSubtask;
+  }
 
   // Getters for each field
 
@@ -66,6 +170,10 @@ public class Subtask implements Serializable {
     return id;
   }
 
+  public String getUid() {
+    return uid;
+  }
+
   public String getTitle() {
     return title;
   }
@@ -82,11 +190,67 @@ public class Subtask implements Serializable {
     return parentTask;
   }
 
+  /**
+   * Gets the subtask this subtask is nested in.
+   *
+   * @return the parent subtask, or null for a top-level subtask.
+   */
+  public Subtask getParentSubtask() {
+    return parentSubtask;
+  }
+
+  /**
+   * Gets the nesting depth, which is 0 for a top-level subtask.
+   *
+   * @return the number of ancestor subtasks.
+   */
+  public int getDepth() {
+    int depth = 0;
+    for (Subtask ancestor = parentSubtask; ancestor != null; ancestor = ancestor.parentSubtask) {
+      depth++;
+    }
+    return depth;
+  }
+
+  /**
+   * Counts this subtask and its descendants in O(log n).
+   *
+   * @return the size of the subtree rooted at this subtask.
+   */
+  public int getSubtreeCount() {
+    return enterToken == null ? 1 : owner.getSubtaskTree().subtreeSize(this);
+  }
+
+  /**
+   * Counts the completed subtasks among this subtask and its descendants in O(log n).
+   *
+   * @return the number of completed subtasks in the subtree rooted at this subtask.
+   */
+  public int getCompletedSubtreeCount() {
+    if (enterToken == null) {
+      return isCompleted ? 1 : 0;
+    }
+    return owner.getSubtaskTree().subtreeCompleted(this);
+  }
+
   public Date getStartTime() {
-    return startTime;
+    return new Date(startTime);
   }
 
   public Date getActualEndTime() {
+    return actualEndTime == Task.NO_TIME ? null : new Date(actualEndTime);
+  }
+
+  public long getStartMillis() {
+    return startTime;
+  }
+
+  /**
+   * Gets the actual end time in epoch millis.
+   *
+   * @return the actual end time, or {@link Task#NO_TIME} if the subtask was never completed.
+   */
+  public long getActualEndMillis() {
     return actualEndTime;
   }
 
@@ -96,6 +260,50 @@ public class Subtask implements Serializable {
     this.parentTask = parentTask;
   }
 
+  /**
+   * Sets the subtask to nest this subtask in when it is added to a task.
+   * Use {@link TaskTransaction#moveSubtask(Subtask, Subtask)} for a subtask already in a task.
+   *
+   * @param parentSubtask the parent subtask, or null for the top level.
+   * @throws IllegalStateException if this subtask already belongs to a task.
+   */
+  public void setParentSubtask(Subtask parentSubtask) {
+    if (owner != null) {
+      throw new IllegalStateException("Subtask already belongs to a task, move it instead.");
+    }
+    this.parentSubtask = parentSubtask;
+  }
+
+  @Serial
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("id", id);
+    fields.put("uid", uid);
+    fields.put("title", title);
+    fields.put("description", description);
+    fields.put("isCompleted", isCompleted);
+    fields.put("parentTask", parentTask);
+    fields.put("startTime", new Date(startTime));
+    fields.put("actualEndTime", getActualEndTime());
+    out.writeFields();
+  }
+
+  @Serial
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    id = fields.get("id", 0);
+    uid = (String) fields.get("uid", null);
+    title = (String) fields.get("title", null);
+    description = (String) fields.get("description", null);
+    isCompleted = fields.get("isCompleted", false);
+    parentTask = (Task) fields.get("parentTask", null);
+    startTime = Task.toMillis((Date) fields.get("startTime", null));
+    actualEndTime = Task.toMillis((Date) fields.get("actualEndTime", null));
+    if (uid == null) {
+      uid = UUID.randomUUID().toString();
+    }
+  }
+
   // Override equals, hashCode, and toString methods
 
   @Override
@@ -119,12 +327,14 @@ public class Subtask implements Serializable {
   public String toString() {
     return "Subtask{"
             + "id=" + id
+            + ", uid='" + uid + '\''
             + ", title='" + title + '\''
             + ", description='" + description + '\''
             + ", isCompleted=" + isCompleted
             + ", parentTaskId=" + parentTask.getId()
-            + ", startTime=" + startTime
-            + ", actualEndTime=" + actualEndTime
+            + ", parentSubtaskId=" + (parentSubtask == null ? null : parentSubtask.getId())
+            + ", startTime=" + getStartTime()
+            + ", actualEndTime=" + getActualEndTime()
             + '}';
   }
 }
\ No newline at end of file
@@ -0,0 +1,369 @@
+package task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Index of the subtask tree of one task, stored as an Euler tour.
+ * Every subtask contributes an enter token and an exit token, and the tokens of its descendants
+ * lie between the two, so a subtree is a contiguous range of the tour. The tour is kept in a
+ * treap ordered by position, whose nodes carry the number of subtasks and completed subtasks
+ * below them. This gives O(log n) expected time for inserting, removing and moving whole
+ * subtrees, for changing a completion status, and for counting a subtree or its completed part.
+ * Not thread-safe; guarded by the TaskManager lock like the rest of a task.
+ */
+final class SubtaskTree {
+
+  /**
+   * A token of the tour. Subtasks keep references to their two tokens.
+   */
+  static final class Node {
+    private final Subtask subtask;
+    private final boolean enter;
+    private final int priority;
+    private Node left;
+    private Node right;
+    private Node parent;
+    // Aggregates over the treap rooted here
+    private int tokens;
+    private int subtasks;
+    private int completed;
+
+    private Node(Subtask subtask, boolean enter) {
+      this.subtask = subtask;
+      this.enter = enter;
+      this.priority = ThreadLocalRandom.current().nextInt();
+      this.tokens = 1;
+      if (enter) {
+        this.subtasks = 1;
+        this.completed = subtask.isCompleted() ? 1 : 0;
+      }
+    }
+  }
+
+  private Node root;
+
+  /**
+   * Gets the number of subtasks in the tree.
+   */
+  int size() {
+    return root == null ? 0 : root.subtasks;
+  }
+
+  /**
+   * Gets the number of completed subtasks in the tree.
+   */
+  int completedCount() {
+    return root == null ? 0 : root.completed;
+  }
+
+  /**
+   * Inserts a subtask without children as the last child of a parent.
+   *
+   * @param parent  the parent, or null to insert at the top level.
+   * @param subtask the subtask to insert.
+   */
+  void append(Subtask parent, Subtask subtask) {
+    int position = parent == null ? tokens(root) : position(parent.exitToken);
+    insert(position, newTokens(subtask));
+  }
+
+  /**
+   * Inserts a subtask without children right before one of its future siblings.
+   *
+   * @param subtask the subtask to insert.
+   * @param next    the sibling to insert before.
+   */
+  void insertBefore(Subtask subtask, Subtask next) {
+    insert(position(next.enterToken), newTokens(subtask));
+  }
+
+  /**
+   * Removes a subtask together with its descendants.
+   *
+   * @param subtask the subtask to remove.
+   * @return the removed subtasks in pre-order, starting with subtask.
+   */
+  List<Subtask> remove(Subtask subtask) {
+    Node removed = cut(subtask);
+    List<Subtask> result = new ArrayList<>();
+    forEachToken(removed, node -> {
+      if (node.enter) {
+        node.subtask.enterToken = null;
+        node.subtask.exitToken = null;
+        result.add(node.subtask);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Moves a subtask with its descendants to a new place in the tree.
+   *
+   * @param subtask   the subtask to move.
+   * @param newParent the new parent, or null for the top level.
+   * @param next      the new next sibling, or null to become the last child.
+   * @throws IllegalArgumentException if newParent is the subtask or one of its descendants.
+   */
+  void move(Subtask subtask, Subtask newParent, Subtask next) {
+    if (newParent != null && contains(subtask, newParent)) {
+      throw new IllegalArgumentException("A subtask cannot be moved below itself.");
+    }
+    Node moved = cut(subtask);
+    int position;
+    if (next != null) {
+      position = position(next.enterToken);
+    } else if (newParent != null) {
+      position = position(newParent.exitToken);
+    } else {
+      position = tokens(root);
+    }
+    insert(position, moved);
+  }
+
+  /**
+   * Updates the completion aggregates after the status of a subtask changed.
+   *
+   * @param subtask   the subtask which changed.
+   * @param completed the new status.
+   */
+  void setCompleted(Subtask subtask, boolean completed) {
+    Node node = subtask.enterToken;
+    node.completed += completed ? 1 : -1;
+    for (node = node.parent; node != null; node = node.parent) {
+      node.completed += completed ? 1 : -1;
+    }
+  }
+
+  /**
+   * Counts a subtask and its descendants.
+   */
+  int subtreeSize(Subtask subtask) {
+    return before(subtask.exitToken, false) - before(subtask.enterToken, false);
+  }
+
+  /**
+   * Counts the completed subtasks among a subtask and its descendants.
+   */
+  int subtreeCompleted(Subtask subtask) {
+    return before(subtask.exitToken, true) - before(subtask.enterToken, true);
+  }
+
+  /**
+   * Returns whether a subtask is an ancestor of, or the same as, another subtask.
+   */
+  boolean contains(Subtask ancestor, Subtask subtask) {
+    int position = position(subtask.enterToken);
+    return position >= position(ancestor.enterToken) && position < position(ancestor.exitToken);
+  }
+
+  /**
+   * Gets the sibling right after a subtask.
+   *
+   * @return the next sibling, or null if the subtask is the last child.
+   */
+  Subtask nextSibling(Subtask subtask) {
+    Node next = successor(subtask.exitToken);
+    return next != null && next.enter ? next.subtask : null;
+  }
+
+  /**
+   * Lists the children of a subtask in order.
+   *
+   * @param parent the parent, or null for the top-level subtasks.
+   */
+  List<Subtask> children(Subtask parent) {
+    List<Subtask> result = new ArrayList<>();
+    Node node = parent == null ? first(root) : successor(parent.enterToken);
+    int depth = 0;
+    for (; node != null; node = successor(node)) {
+      if (node.enter) {
+        if (depth == 0) {
+          result.add(node.subtask);
+        }
+        depth++;
+      } else if (depth-- == 0) {
+        break; // The exit token of parent
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Lists all subtasks in pre-order, i.e. every subtask before its descendants.
+   */
+  List<Subtask> preorder() {
+    List<Subtask> result = new ArrayList<>(size());
+    forEachToken(root, node -> {
+      if (node.enter) {
+        result.add(node.subtask);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Removes all subtasks.
+   */
+  void clear() {
+    forEachToken(root, node -> {
+      node.subtask.enterToken = null;
+      node.subtask.exitToken = null;
+    });
+    root = null;
+  }
+
+  private static Node newTokens(Subtask subtask) {
+    subtask.enterToken = new Node(subtask, true);
+    subtask.exitToken = new Node(subtask, false);
+    return merge(subtask.enterToken, subtask.exitToken);
+  }
+
+  private void insert(int position, Node tokens) {
+    Node[] parts = split(root, position);
+    root = merge(merge(parts[0], tokens), parts[1]);
+    root.parent = null;
+  }
+
+  private Node cut(Subtask subtask) {
+    int from = position(subtask.enterToken);
+    int to = position(subtask.exitToken) + 1;
+    Node[] head = split(root, from);
+    Node[] tail = split(head[1], to - from);
+    root = merge(head[0], tail[1]);
+    if (root != null) {
+      root.parent = null;
+    }
+    tail[0].parent = null;
+    return tail[0];
+  }
+
+  // Position of a token in the tour
+  private static int position(Node node) {
+    int position = tokens(node.left);
+    for (; node.parent != null; node = node.parent) {
+      if (node == node.parent.right) {
+        position += tokens(node.parent.left) + 1;
+      }
+    }
+    return position;
+  }
+
+  // Number of subtasks, or completed subtasks, whose enter token comes before a token
+  private static int before(Node node, boolean completedOnly) {
+    int count = count(node.left, completedOnly);
+    for (; node.parent != null; node = node.parent) {
+      Node parent = node.parent;
+      if (node == parent.right) {
+        count += count(parent.left, completedOnly) + selfCount(parent, completedOnly);
+      }
+    }
+    return count;
+  }
+
+  private static int count(Node node, boolean completedOnly) {
+    if (node == null) {
+      return 0;
+    }
+    return completedOnly ? node.completed : node.subtasks;
+  }
+
+  private static int selfCount(Node node, boolean completedOnly) {
+    if (!node.enter) {
+      return 0;
+    }
+    return !completedOnly || node.subtask.isCompleted() ? 1 : 0;
+  }
+
+  private static int tokens(Node node) {
+    return node == null ? 0 : node.tokens;
+  }
+
+  private static void update(Node node) {
+    node.tokens = 1 + tokens(node.left) + tokens(node.right);
+    node.subtasks = selfCount(node, false) + count(node.left, false) + count(node.right, false);
+    node.completed = selfCount(node, true) + count(node.left, true) + count(node.right, true);
+    if (node.left != null) {
+      node.left.parent = node;
+    }
+    if (node.right != null) {
+      node.right.parent = node;
+    }
+  }
+
+  // Splits a treap into the first count tokens and the rest. Recursion depth is the treap
+  // height, which is logarithmic in the number of tokens with high probability.
+  private static Node[] split(Node node, int count) {
+    if (node == null) {
+      return new Node[2];
+    }
+    Node[] parts;
+    if (tokens(node.left) >= count) {
+      parts = split(node.left, count);
+      node.left = parts[1];
+      update(node);
+      parts[1] = node;
+    } else {
+      parts = split(node.right, count - tokens(node.left) - 1);
+      node.right = parts[0];
+      update(node);
+      parts[0] = node;
+    }
+    node.parent = null;
+    return parts;
+  }
+
+  private static Node merge(Node left, Node right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      update(left);
+      return left;
+    }
+    right.left = merge(left, right.left);
+    update(right);
+    return right;
+  }
+
+  private static Node first(Node node) {
+    if (node == null) {
+      return null;
+    }
+    while (node.left != null) {
+      node = node.left;
+    }
+    return node;
+  }
+
+  private static Node successor(Node node) {
+    if (node.right != null) {
+      return first(node.right);
+    }
+    while (node.parent != null && node == node.parent.right) {
+      node = node.parent;
+    }
+    return node.parent;
+  }
+
+  private static void forEachToken(Node node, Consumer<Node> action) {
+    Deque<Node> stack = new ArrayDeque<>();
+    while (node != null || !stack.isEmpty()) {
+      for (; node != null; node = node.left) {
+        stack.push(node);
+      }
+      node = stack.pop();
+      Node right = node.right;
+      action.accept(node);
+      node = right;
+    }
+  }
+}
@@ -1,11 +1,19 @@
 package task;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -17,18 +25,61 @@ public class Task implements Serializable {
   @Serial
   private static final long serialVersionUID = 1L;
 
+  /**
+   * Value of a timestamp which is not set, e.g. the actual end time of an incomplete task.
+   */
+  public static final long NO_TIME = Long.MIN_VALUE;
+
+  // Times are stored as epoch millis, but serialized as Dates like before, so files written by
+  // earlier versions still load and vice versa. Subtasks are serialized as a flat list in
+  // pre-order plus the index of each one's parent, so nesting depth never turns into recursion
+  // depth; earlier versions read the list and ignore the nesting.
+  @Serial
+  private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("id", int.class),
+      new ObjectStreamField("uid", String.class),
+      new ObjectStreamField("title", String.class),
+      new ObjectStreamField("description", String.class),
+      new ObjectStreamField("isCompleted", boolean.class),
+      new ObjectStreamField("subtasks", List.class),
+      new ObjectStreamField("subtaskParents", int[].class),
+      new ObjectStreamField("tag", Tag.class),
+      new ObjectStreamField("startTime", Date.class),
+      new ObjectStreamField("expectedEndTime", Date.class),
+      new ObjectStreamField("actualEndTime", Date.class),
+      new ObjectStreamField("heatIndex", int.class),
+      new ObjectStreamField("blockedBy", String[].class),
+  };
+
   private static final AtomicInteger idGenerator = new AtomicInteger(0);
+  private static final String[] NO_BLOCKERS = new String[0];
 
-  private final int id;
-  private final String title;
+  // id, title, subtaskTree and startTime are not final because readObject assigns them.
+  private int id;
+  // Stable across runs and devices, unlike id. Assigned on load for data saved before UIDs.
+  private String uid;
+  private String title;
   private String description; // Optional
   private boolean isCompleted;
-  private final List<Subtask> subtasks;
+  private transient SubtaskTree subtaskTree;
   private Tag tag; // Optional
-  private final Date startTime;
-  private Date expectedEndTime;
-  private Date actualEndTime;
+  private long startTime;
+  private long expectedEndTime;
+  private long actualEndTime = NO_TIME;
   private int heatIndex;
+  // UIDs of the tasks this task is blocked by, see TaskManager#getBlockers(Task)
+  private String[] blockedBy = NO_BLOCKERS;
+  // Set on the occurrences of a RecurringTask, which are generated on demand and not managed
+  private transient RecurringTask template;
+  private transient int occurrenceIndex;
+  // Extent of this task's record in the file its manager last saved or loaded, see TaskCodec,
+  // and in a compressed file the number of tasks in its block.
+  // recordOffset is -1 once the task differs from that record.
+  transient long recordOffset = -1;
+  transient int recordLength;
+  transient int recordBlockTasks;
+  // Checksum of that record, see TaskCodec#checksum(ByteBuffer); 0 once the task differs.
+  transient long recordChecksum;
 
   /**
    * Constructs a new Task instance with required title and expected end time.
@@ -46,14 +97,66 @@ public class Task implements Serializable {
       throw new IllegalArgumentException("Expected end time cannot be null.");
     }
     this.id = idGenerator.incrementAndGet(); // Generates a unique ID
+    this.uid = UUID.randomUUID().toString();
     this.title = title;
     this.isCompleted = false;
-    this.subtasks = new ArrayList<>();
-    this.startTime = new Date(); // Sets start time to current time
-    this.expectedEndTime = expectedEndTime;
+    this.subtaskTree = new SubtaskTree();
+    this.startTime = System.currentTimeMillis(); // Sets start time to current time
+    this.expectedEndTime = expectedEndTime.getTime();
+    this.heatIndex = 0;
+  }
+
+  /**
+   * Constructs a Task which was created elsewhere, e.g. on another device or in another app,
+   * keeping its UID and start time.
+   *
+   * @param uid             The stable UID of the task, cannot be null or empty.
+   * @param title           The title of the task, cannot be null or empty.
+   * @param startTime       The start time of the task, cannot be null.
+   * @param expectedEndTime The expected end time of the task, cannot be null.
+   * @throws IllegalArgumentException if any argument is null or empty.
+   */
+  public Task(String uid, String title, Date startTime, Date expectedEndTime) {
+    if (uid == null || uid.isEmpty()) {
+      throw new IllegalArgumentException("Task UID cannot be null or empty.");
+    }
+    if (title == null || title.isEmpty()) {
+      throw new IllegalArgumentException("Task title cannot be null or empty.");
+    }
+    if (startTime == null || expectedEndTime == null) {
+      throw new IllegalArgumentException("Start time and expected end time cannot be null.");
+    }
+    this.id = idGenerator.incrementAndGet();
+    this.uid = uid;
+    this.title = title;
+    this.isCompleted = false;
+    this.subtaskTree = new SubtaskTree();
+    this.startTime = startTime.getTime();
+    this.expectedEndTime = expectedEndTime.getTime();
     this.heatIndex = 0;
   }
 
+  /**
+   * Constructs a Task decoded from a task file, keeping its id. Used by {@link TaskCodec}.
+   */
+  Task(int id, String uid, String title, long startTime, long expectedEndTime) {
+    this.id = id;
+    this.uid = uid;
+    this.title = title;
+    this.subtaskTree = new SubtaskTree();
+    this.startTime = startTime;
+    this.expectedEndTime = expectedEndTime;
+  }
+
+  /**
+   * Makes sure ids generated from now on are greater than an id loaded from disk.
+   *
+   * @param loadedId an id which is already in use.
+   */
+  static void reserveId(int loadedId) {
+    idGenerator.accumulateAndGet(loadedId, Math::max);
+  }
+
   // Optional setters for description and tag
 
   public void setDescription(String description) {
@@ -65,7 +168,14 @@ public class Task implements Serializable {
   }
 
   public void setDueDate(Date dueDate) {
-    this.expectedEndTime = dueDate;
+    this.expectedEndTime = dueDate.getTime();
+  }
+
+  /**
+   * Sets the expected end time in epoch millis, used when rolling back a batch.
+   */
+  void restoreExpectedEndMillis(long expectedEndTime) {
+    this.expectedEndTime = expectedEndTime;
   }
 
   /**
@@ -77,30 +187,135 @@ public class Task implements Serializable {
   }
 
   /**
-   * Adds a subtask to the current task.
+   * Adds a subtask to the current task, as the last child of its parent subtask if that belongs
+   * to this task, or at the top level otherwise.
    *
    * @param subtask The subtask to add.
+   * @throws IllegalStateException if the subtask already belongs to a task.
    */
   public void addSubtask(Subtask subtask) {
-    subtasks.add(subtask);
+    if (subtask.getOwner() != null) {
+      throw new IllegalStateException("Subtask already belongs to a task.");
+    }
+    Subtask parent = subtask.getParentSubtask();
+    if (parent != null && parent.getOwner() != this) {
+      parent = null;
+      subtask.restoreParentSubtask(null);
+    }
+    subtaskTree.append(parent, subtask);
+    subtask.setOwner(this);
+  }
+
+  /**
+   * Removes a subtask and its descendants from the current task, used when rolling back a batch.
+   */
+  void removeSubtask(Subtask subtask) {
+    if (subtask.getOwner() == this) {
+      subtaskTree.remove(subtask).forEach(removed -> removed.setOwner(null));
+    }
+  }
+
+  /**
+   * Moves a subtask and its descendants within this task.
+   *
+   * @param subtask   the subtask to move.
+   * @param newParent the new parent subtask, or null for the top level.
+   * @param next      the subtask to insert before, or null to append to the children of newParent.
+   * @throws IllegalArgumentException if a subtask does not belong to this task, next is not a child
+   *                                  of newParent, or newParent is inside the moved subtree.
+   */
+  void moveSubtask(Subtask subtask, Subtask newParent, Subtask next) {
+    if (subtask.getOwner() != this || newParent != null && newParent.getOwner() != this) {
+      throw new IllegalArgumentException("Subtask does not belong to this task.");
+    }
+    if (next != null && (next.getOwner() != this || next.getParentSubtask() != newParent)) {
+      throw new IllegalArgumentException("Next subtask is not a child of the new parent.");
+    }
+    subtaskTree.move(subtask, newParent, next);
+    subtask.restoreParentSubtask(newParent);
+  }
+
+  /**
+   * Gets the sibling after a subtask of this task, or null if it is the last child.
+   */
+  Subtask nextSibling(Subtask subtask) {
+    return subtaskTree.nextSibling(subtask);
+  }
+
+  SubtaskTree getSubtaskTree() {
+    return subtaskTree;
   }
 
   /**
-   * Marks the task as completed if all subtasks are completed and sets the actual end time.
+   * Updates the completion counts when one of this task's subtasks changes status.
+   */
+  void subtaskCompletionChanged(Subtask subtask, boolean completed) {
+    subtaskTree.setCompleted(subtask, completed);
+  }
+
+  /**
+   * Marks the task as completed or not completed and sets the actual end time.
+   * Completing the last open subtask only completes the task when
+   * {@link TaskManager#setAutoCompleteParent(boolean)} is enabled.
    */
   public void setCompleted(boolean completed) {
     this.isCompleted = completed;
     if (completed) {
-      this.actualEndTime = new Date(); // Sets actual end time to the current time
+      this.actualEndTime = System.currentTimeMillis(); // Sets actual end time to the current time
     }
   }
 
+  /**
+   * Restores the completion status and actual end time, used when rolling back a batch.
+   */
+  void restoreCompletion(boolean completed, long actualEndTime) {
+    this.isCompleted = completed;
+    this.actualEndTime = actualEndTime;
+  }
+
+  /**
+   * Records that this task is blocked by another task. Use
+   * {@link TaskTransaction#addDependency(Task, Task)}, which also updates the dependency graph.
+   */
+  void addBlockerUid(String uid) {
+    blockedBy = Arrays.copyOf(blockedBy, blockedBy.length + 1);
+    blockedBy[blockedBy.length - 1] = uid;
+  }
+
+  /**
+   * Forgets that this task is blocked by another task.
+   */
+  void removeBlockerUid(String uid) {
+    List<String> uids = new ArrayList<>(Arrays.asList(blockedBy));
+    uids.remove(uid);
+    blockedBy = uids.isEmpty() ? NO_BLOCKERS : uids.toArray(NO_BLOCKERS);
+  }
+
+  /**
+   * Marks this task as an occurrence of a recurring task.
+   */
+  void markOccurrence(RecurringTask template, int occurrenceIndex) {
+    this.template = template;
+    this.occurrenceIndex = occurrenceIndex;
+  }
+
+  /**
+   * Restores the heat index, used when rolling back a batch.
+   */
+  void restoreHeat(int heatIndex) {
+    this.heatIndex = heatIndex;
+  }
+
   // Getters for each field
 
   public int getId() {
     return id;
   }
 
+  public String getUid() {
+    return uid;
+  }
+
   public String getTitle() {
     return title;
   }
@@ -114,14 +329,31 @@ public class Task implements Serializable {
   }
 
   public Date getStartTime() {
-    return startTime;
+    return new Date(startTime);
   }
 
   public Date getExpectedEndTime() {
-    return expectedEndTime;
+    return new Date(expectedEndTime);
   }
 
   public Date getActualEndTime() {
+    return actualEndTime == NO_TIME ? null : new Date(actualEndTime);
+  }
+
+  public long getStartMillis() {
+    return startTime;
+  }
+
+  public long getExpectedEndMillis() {
+    return expectedEndTime;
+  }
+
+  /**
+   * Gets the actual end time in epoch millis.
+   *
+   * @return the actual end time, or {@link #NO_TIME} if the task was never completed.
+   */
+  public long getActualEndMillis() {
     return actualEndTime;
   }
 
@@ -129,8 +361,26 @@ public class Task implements Serializable {
     return isCompleted;
   }
 
+  /**
+   * Gets all subtasks, nested ones included, each before its descendants.
+   *
+   * @return a new list of the subtasks in pre-order.
+   */
   public List<Subtask> getSubtasks() {
-    return new ArrayList<>(subtasks);
+    return subtaskTree.preorder();
+  }
+
+  /**
+   * Gets the direct children of a subtask of this task.
+   *
+   * @param parent the parent subtask, or null for the top-level subtasks.
+   * @return a new list of the children in order.
+   */
+  public List<Subtask> getChildSubtasks(Subtask parent) {
+    if (parent != null && parent.getOwner() != this) {
+      throw new IllegalArgumentException("Subtask does not belong to this task.");
+    }
+    return subtaskTree.children(parent);
   }
 
   public int getHeatIndex() {
@@ -138,10 +388,125 @@ public class Task implements Serializable {
   }
 
   /**
-   * Clear all subtasks of this task.
+   * Gets the recurring task this task is an occurrence of.
+   *
+   * @return the template, or null if this is an ordinary task.
+   */
+  public RecurringTask getTemplate() {
+    return template;
+  }
+
+  /**
+   * Gets the index of this occurrence among the occurrences of its template.
+   *
+   * @return the index, 0 for the first occurrence; meaningless if this is an ordinary task.
+   */
+  public int getOccurrenceIndex() {
+    return occurrenceIndex;
+  }
+
+  /**
+   * Gets the UIDs of the tasks this task is blocked by, including ones which are not managed
+   * and ones which the dependency graph skipped because they would close a cycle.
+   *
+   * @return an unmodifiable list of UIDs.
+   */
+  public List<String> getBlockerUids() {
+    return List.of(blockedBy);
+  }
+
+  /**
+   * Gets the number of subtasks, nested ones included, without copying them.
+   *
+   * @return the number of subtasks.
+   */
+  public int getSubtaskCount() {
+    return subtaskTree.size();
+  }
+
+  /**
+   * Gets the number of completed subtasks, nested ones included, in O(1).
+   *
+   * @return the number of completed subtasks.
+   */
+  public int getCompletedSubtaskCount() {
+    return subtaskTree.completedCount();
+  }
+
+  /**
+   * Clear all subtasks of this task. The subtasks keep their parent subtask, so adding them
+   * again in pre-order restores the nesting.
    */
   public void clearSubtasks() {
-    subtasks.clear();
+    subtaskTree.preorder().forEach(subtask -> subtask.setOwner(null));
+    subtaskTree.clear();
+  }
+
+  @Serial
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("id", id);
+    fields.put("uid", uid);
+    fields.put("title", title);
+    fields.put("description", description);
+    fields.put("isCompleted", isCompleted);
+    List<Subtask> subtasks = subtaskTree.preorder();
+    Map<Subtask, Integer> indexes = new IdentityHashMap<>();
+    int[] subtaskParents = new int[subtasks.size()];
+    for (int i = 0; i < subtasks.size(); i++) {
+      Subtask parent = subtasks.get(i).getParentSubtask();
+      subtaskParents[i] = parent == null ? -1 : indexes.get(parent);
+      indexes.put(subtasks.get(i), i);
+    }
+    fields.put("subtasks", subtasks);
+    fields.put("subtaskParents", subtaskParents);
+    fields.put("tag", tag);
+    fields.put("startTime", new Date(startTime));
+    fields.put("expectedEndTime", new Date(expectedEndTime));
+    fields.put("actualEndTime", getActualEndTime());
+    fields.put("heatIndex", heatIndex);
+    fields.put("blockedBy", blockedBy);
+    out.writeFields();
+  }
+
+  @Serial
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    id = fields.get("id", 0);
+    uid = (String) fields.get("uid", null);
+    title = (String) fields.get("title", null);
+    description = (String) fields.get("description", null);
+    isCompleted = fields.get("isCompleted", false);
+    List<Subtask> subtasks = (List<Subtask>) fields.get("subtasks", null);
+    int[] subtaskParents = (int[]) fields.get("subtaskParents", null);
+    tag = (Tag) fields.get("tag", null);
+    startTime = toMillis((Date) fields.get("startTime", null));
+    expectedEndTime = toMillis((Date) fields.get("expectedEndTime", null));
+    actualEndTime = toMillis((Date) fields.get("actualEndTime", null));
+    heatIndex = fields.get("heatIndex", 0);
+    blockedBy = (String[]) fields.get("blockedBy", null);
+    if (blockedBy == null) {
+      blockedBy = NO_BLOCKERS;
+    }
+    subtaskTree = new SubtaskTree();
+    if (subtasks != null) {
+      for (int i = 0; i < subtasks.size(); i++) {
+        Subtask subtask = subtasks.get(i);
+        Subtask parent = subtaskParents == null || subtaskParents[i] < 0
+                ? null : subtasks.get(subtaskParents[i]);
+        subtask.restoreParentSubtask(parent);
+        subtaskTree.append(parent, subtask);
+        subtask.setOwner(this);
+      }
+    }
+    if (uid == null) {
+      uid = UUID.randomUUID().toString();
+    }
+  }
+
+  static long toMillis(Date date) {
+    return date == null ? NO_TIME : date.getTime();
   }
 
   // Override equals, hashCode, and toString methods if necessary
@@ -163,7 +528,7 @@ public class Task implements Serializable {
     return id == task.id
             && title.equals(task.getTitle())
             && description.equals(task.getDescription())
-            && startTime.equals(task.getStartTime());
+            && startTime == task.startTime;
   }
 
   @Override
@@ -175,12 +540,13 @@ public class Task implements Serializable {
   public String toString() {
     return "Task{"
             + "id=" + id
+            + ", uid='" + uid + '\''
             + ", title='" + title + '\''
             + ", description='" + description + '\''
             + ", isCompleted=" + isCompleted
-            + ", startTime=" + startTime
-            + ", expectedEndTime=" + expectedEndTime
-            + ", actualEndTime=" + actualEndTime
+            + ", startTime=" + getStartTime()
+            + ", expectedEndTime=" + getExpectedEndTime()
+            + ", actualEndTime=" + getActualEndTime()
             + ", heatIndex=" + heatIndex
             + '}';
   }
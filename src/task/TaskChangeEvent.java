@@ -0,0 +1,59 @@
+package task;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Describes the tasks touched by one committed batch of mutations.
+ * A task that was added or removed in the batch is not repeated in the updated set.
+ */
+public class TaskChangeEvent {
+
+  private final long version;
+  private final Set<Task> added;
+  private final Set<Task> removed;
+  private final Set<Task> updated;
+
+  /**
+   * Constructs a change event.
+   *
+   * @param version the TaskManager version after the batch was committed.
+   * @param added   tasks added by the batch.
+   * @param removed tasks removed by the batch.
+   * @param updated tasks modified by the batch.
+   */
+  TaskChangeEvent(long version, Set<Task> added, Set<Task> removed, Set<Task> updated) {
+    this.version = version;
+    this.added = Collections.unmodifiableSet(added);
+    this.removed = Collections.unmodifiableSet(removed);
+    this.updated = Collections.unmodifiableSet(updated);
+  }
+
+  // Getters for each field
+
+  public long getVersion() {
+    return version;
+  }
+
+  public Set<Task> getAdded() {
+    return added;
+  }
+
+  public Set<Task> getRemoved() {
+    return removed;
+  }
+
+  public Set<Task> getUpdated() {
+    return updated;
+  }
+
+  @Override
+  public String toString() {
+    return "TaskChangeEvent{"
+            + "version=" + version
+            + ", added=" + added.size()
+            + ", removed=" + removed.size()
+            + ", updated=" + updated.size()
+            + '}';
+  }
+}
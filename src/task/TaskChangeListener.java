@@ -0,0 +1,15 @@
+package task;
+
+/**
+ * Listener notified by {@link TaskManager} after a batch of mutations has been committed.
+ */
+@FunctionalInterface
+public interface TaskChangeListener {
+
+  /**
+   * Called once per committed batch, after the TaskManager lock has been released.
+   *
+   * @param event the changes made by the batch.
+   */
+  void tasksChanged(TaskChangeEvent event);
+}
@@ -0,0 +1,949 @@
+package task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary format of task files. A file holds a header, the task records, and the recurring
+ * tasks, which are few, in Java serialization:
+ *
+ * <pre>
+ * int magic, int version, int taskCount, byte compression (version 2 only)
+ * uncompressed: taskCount x (int length, byte[length] task record)
+ * compressed:   blocks of (int taskCount, int rawLength, int storedLength,
+ *               byte[storedLength] compressed records, each as above)
+ * int length, byte[length] serialized ArrayList of RecurringTask
+ * </pre>
+ *
+ * <p>Records are encoded into pooled direct buffers and written with gathering writes. A task
+ * which has not changed since its manager last saved or loaded the file keeps the extent of its
+ * record there, and the next save copies that record from the old file with
+ * {@link FileChannel#transferTo}, so the bytes never pass through the JVM; runs of adjacent
+ * unchanged records are copied with one call. Only the encoding needs the tasks, see
+ * {@link Writer}: the file is written afterwards, while the tasks may change again. In a compressed file the extent is that of the
+ * block, which is only copied if none of its tasks changed, and blocks are compressed on their
+ * own so that each can be inflated without the others.
+ */
+final class TaskCodec {
+
+  static final int MAGIC = 0x4A544B46;  // "JTKF"
+  private static final int VERSION = 2;
+  // Uncompressed files are written as version 1, which earlier releases can read
+  private static final int UNCOMPRESSED_VERSION = 1;
+  private static final int HEADER_BYTES = 13;
+  private static final int V1_HEADER_BYTES = 12;
+  private static final int BLOCK_HEADER_BYTES = 12;
+  // Uncompressed size from which a block is compressed and written
+  private static final int BLOCK_BYTES = 1 << 15;
+  private static final int NO_STRING = -1;
+
+  // Fixed-size part of a task record and of each subtask in it, see Writer#encode
+  private static final int TASK_FIXED_BYTES = 4 + 1 + 8 + 8 + 8 + 4 + 1 + 4 + 4;
+  private static final int SUBTASK_FIXED_BYTES = 4 + 4 + 1 + 8 + 8;
+
+  private static final int BUFFER_BYTES = 1 << 16;
+  // Buffers gathered into one write, and direct buffers kept between saves
+  private static final int MAX_GATHERED_BUFFERS = 16;
+  private static final int MAX_POOLED_BUFFERS = 32;
+  private static final ArrayDeque<ByteBuffer> POOL = new ArrayDeque<>();
+  private static int directBuffers;
+
+  private TaskCodec() {
+  }
+
+  /**
+   * Identity and version of a task file: the extents recorded in tasks are only valid for the
+   * file exactly as their manager left it.
+   */
+  record FileStamp(Path path, Object fileKey, long size, long modifiedMillis) {
+
+    /**
+     * Reads the stamp of a file.
+     *
+     * @return the stamp, or null if the file does not exist.
+     */
+    static FileStamp read(Path path) throws IOException {
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return new FileStamp(path, attributes.fileKey(), attributes.size(),
+                attributes.lastModifiedTime().toMillis());
+      } catch (NoSuchFileException e) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Content of a task file.
+   */
+  record Content(List<Task> tasks, List<RecurringTask> templates) {
+  }
+
+  /**
+   * Records of a task file, not decoded yet, and its recurring tasks.
+   */
+  record Scan(List<Record> records, List<RecurringTask> templates) {
+  }
+
+  /**
+   * A task record of a file, identified by the UID and checksum of the task and only decoded
+   * on demand, so that a reader can skip the records it knows already.
+   */
+  static final class Record {
+
+    private final String uid;
+    private final long checksum;
+    private final ByteBuffer bytes;
+    private final long offset;
+    private Task task;
+
+    Record(String uid, long checksum, ByteBuffer bytes, long offset) {
+      this.uid = uid;
+      this.checksum = checksum;
+      this.bytes = bytes;
+      this.offset = offset;
+    }
+
+    /**
+     * Creates a record of a task read from a file in an earlier format, whose checksum is not
+     * known.
+     */
+    Record(Task task) {
+      this(task.getUid(), 0, null, -1);
+      this.task = task;
+    }
+
+    String getUid() {
+      return uid;
+    }
+
+    /**
+     * Gets the checksum of the record, see {@link Task#recordChecksum}; 0 if not known.
+     */
+    long getChecksum() {
+      return checksum;
+    }
+
+    /**
+     * Decodes the task.
+     *
+     * @throws IOException if the record is malformed.
+     */
+    Task decode() throws IOException {
+      if (task == null) {
+        task = decodeRecord(bytes.duplicate(), offset);
+      }
+      return task;
+    }
+  }
+
+  /**
+   * Gets a pooled direct buffer, or a heap buffer once as many direct buffers as the pool keeps
+   * are in use, so that a save encoding a large file does not hold on to direct memory.
+   */
+  private static synchronized ByteBuffer acquire() {
+    ByteBuffer buffer = POOL.poll();
+    if (buffer != null) {
+      return buffer;
+    }
+    if (directBuffers < MAX_POOLED_BUFFERS) {
+      directBuffers++;
+      return ByteBuffer.allocateDirect(BUFFER_BYTES);
+    }
+    return ByteBuffer.allocate(BUFFER_BYTES);
+  }
+
+  private static synchronized void release(ByteBuffer buffer) {
+    if (buffer.isDirect()) {
+      POOL.push(buffer.clear());
+    }
+  }
+
+  /**
+   * Returns whether a file is in this format rather than the earlier Java serialization.
+   */
+  static boolean isTaskFile(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(4);
+      while (magic.hasRemaining() && channel.read(magic) >= 0) {
+        // Keep reading, a read may return fewer bytes
+      }
+      return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+    }
+  }
+
+  /**
+   * Reads a task file. Each task records the extent and checksum of its record, so that saving
+   * it back to the same file can reuse the record.
+   *
+   * @throws IOException            if an I/O error occurs or the file is malformed.
+   * @throws ClassNotFoundException if the recurring tasks do not match expected format.
+   */
+  static Content read(Path path) throws IOException, ClassNotFoundException {
+    List<Task> tasks = new ArrayList<>();
+    List<RecurringTask> templates = readRecords(path, (record, offset, length, blockTasks) -> {
+      long checksum = checksum(record);
+      Task task = decodeRecord(record, offset);
+      task.recordOffset = offset;
+      task.recordLength = length;
+      task.recordBlockTasks = blockTasks;
+      task.recordChecksum = checksum;
+      tasks.add(task);
+    });
+    return new Content(tasks, templates);
+  }
+
+  /**
+   * Reads the records of a task file without decoding them, see {@link Record}.
+   *
+   * @throws IOException            if an I/O error occurs or the file is malformed.
+   * @throws ClassNotFoundException if the recurring tasks do not match expected format.
+   */
+  static Scan scan(Path path) throws IOException, ClassNotFoundException {
+    List<Record> records = new ArrayList<>();
+    List<RecurringTask> templates = readRecords(path, (record, offset, length, blockTasks) -> {
+      // The UID follows the length prefix and the ID
+      ByteBuffer uid = record.duplicate().position(8);
+      records.add(new Record(getString(uid), checksum(record), record, offset));
+    });
+    return new Scan(records, templates);
+  }
+
+  /**
+   * Visits the records of a task file in order.
+   */
+  @FunctionalInterface
+  private interface RecordVisitor {
+
+    /**
+     * Visits a record.
+     *
+     * @param record     the record and its length prefix, from position to limit.
+     * @param offset     the offset of the record, or of its block in a compressed file.
+     * @param length     the length of the record, or of its block in a compressed file.
+     * @param blockTasks the number of tasks in the block of a compressed file, else 0.
+     */
+    void visit(ByteBuffer record, long offset, int length, int blockTasks) throws IOException;
+  }
+
+  /**
+   * Reads a task file, passing each record to a visitor.
+   *
+   * @return the recurring tasks.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<RecurringTask> readRecords(Path path, RecordVisitor visitor)
+          throws IOException, ClassNotFoundException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Task file too large: " + size + " bytes.");
+      }
+      buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new EOFException("Task file truncated.");
+        }
+      }
+      buffer.flip();
+    }
+    if (buffer.remaining() < V1_HEADER_BYTES || buffer.getInt() != MAGIC) {
+      throw new IOException("Not a task file: " + path);
+    }
+    int version = buffer.getInt();
+    if (version < 1 || version > VERSION) {
+      throw new IOException("Task file written by an incompatible version: " + version);
+    }
+    int taskCount = buffer.getInt();
+    Compression compression = version == UNCOMPRESSED_VERSION ? Compression.NONE
+            : compression(buffer.get());
+    if (compression == Compression.NONE) {
+      for (int i = 0; i < taskCount; i++) {
+        int offset = buffer.position();
+        ByteBuffer record = nextRecord(buffer, offset);
+        visitor.visit(record, offset, record.remaining(), 0);
+      }
+    } else {
+      int visited = 0;
+      while (visited < taskCount) {
+        int offset = buffer.position();
+        int blockTasks = buffer.getInt();
+        int rawLength = buffer.getInt();
+        int storedLength = buffer.getInt();
+        if (blockTasks <= 0) {
+          throw new IOException("Malformed task block at offset " + offset);
+        }
+        byte[] raw = compression.decompress(buffer.array(), buffer.position(), storedLength,
+                rawLength);
+        buffer.position(buffer.position() + storedLength);
+        ByteBuffer block = ByteBuffer.wrap(raw);
+        for (int i = 0; i < blockTasks; i++) {
+          visitor.visit(nextRecord(block, offset), offset, BLOCK_HEADER_BYTES + storedLength,
+                  blockTasks);
+        }
+        if (block.hasRemaining()) {
+          throw new IOException("Malformed task block at offset " + offset);
+        }
+        visited += blockTasks;
+      }
+    }
+    int length = buffer.getInt();
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+            buffer.array(), buffer.position(), length))) {
+      return (List<RecurringTask>) in.readObject();
+    }
+  }
+
+  private static Compression compression(byte ordinal) throws IOException {
+    if (ordinal < 0 || ordinal >= Compression.values().length) {
+      throw new IOException("Unknown task file compression: " + ordinal);
+    }
+    return Compression.values()[ordinal];
+  }
+
+  /**
+   * Returns the next length-prefixed record of a buffer as a slice, and moves past it.
+   */
+  private static ByteBuffer nextRecord(ByteBuffer buffer, long offset) throws IOException {
+    int start = buffer.position();
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IOException("Malformed task record at offset " + offset);
+    }
+    buffer.position(start + 4 + length);
+    return buffer.slice(start, 4 + length);
+  }
+
+  /**
+   * Decodes a length-prefixed record, consuming the buffer.
+   */
+  private static Task decodeRecord(ByteBuffer record, long offset) throws IOException {
+    record.getInt();
+    Task task = decode(record);
+    if (record.hasRemaining()) {
+      throw new IOException("Malformed task record at offset " + offset);
+    }
+    return task;
+  }
+
+  /**
+   * Computes the checksum of a length-prefixed record: its length in the high half, its CRC-32C
+   * in the low half, so that a valid checksum is never 0. The position is not moved.
+   */
+  static long checksum(ByteBuffer record) {
+    CRC32C crc = new CRC32C();
+    crc.update(record.duplicate());
+    return (long) record.remaining() << 32 | crc.getValue();
+  }
+
+  private static Task decode(ByteBuffer buffer) {
+    int id = buffer.getInt();
+    String uid = getString(buffer);
+    String title = getString(buffer);
+    String description = getString(buffer);
+    boolean completed = buffer.get() != 0;
+    long startTime = buffer.getLong();
+    long expectedEndTime = buffer.getLong();
+    long actualEndTime = buffer.getLong();
+    int heatIndex = buffer.getInt();
+    Task task = new Task(id, uid, title, startTime, expectedEndTime);
+    task.setDescription(description);
+    task.restoreCompletion(completed, actualEndTime);
+    task.restoreHeat(heatIndex);
+    if (buffer.get() != 0) {
+      task.setTag(new Tag(getString(buffer), getString(buffer), getString(buffer)));
+    }
+    for (int i = buffer.getInt(); i > 0; i--) {
+      task.addBlockerUid(getString(buffer));
+    }
+    int subtaskCount = buffer.getInt();
+    Subtask[] subtasks = new Subtask[subtaskCount];
+    for (int i = 0; i < subtaskCount; i++) {
+      int parentIndex = buffer.getInt();
+      int subtaskId = buffer.getInt();
+      String subtaskUid = getString(buffer);
+      String subtaskTitle = getString(buffer);
+      String subtaskDescription = getString(buffer);
+      boolean subtaskCompleted = buffer.get() != 0;
+      long subtaskStartTime = buffer.getLong();
+      long subtaskEndTime = buffer.getLong();
+      Subtask subtask = new Subtask(subtaskId, subtaskUid, subtaskTitle, subtaskStartTime, task);
+      subtask.setDescription(subtaskDescription);
+      subtask.restoreCompletion(subtaskCompleted, subtaskEndTime);
+      // Subtasks are in pre-order, so the parent has been added already
+      subtask.restoreParentSubtask(parentIndex < 0 ? null : subtasks[parentIndex]);
+      task.addSubtask(subtask);
+      subtasks[i] = subtask;
+    }
+    return task;
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length == NO_STRING) {
+      return null;
+    }
+    String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+            StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  /**
+   * Writes a task file in two steps: {@link #collect} encodes the changed tasks and plans the
+   * copies of the unchanged ones while the tasks cannot change, {@link #writeTo} then writes the
+   * file without needing the tasks. The previous file, if given, should be the one the extents
+   * recorded in the tasks refer to; it is ignored if it was written with another compression.
+   * Call {@link #applyExtents()} once the new file has replaced the previous one.
+   */
+  static final class Writer implements AutoCloseable {
+
+    /**
+     * A stretch of the new file, in file order.
+     */
+    private interface Part {
+    }
+
+    /**
+     * Bytes encoded in the JVM, as slices of the output buffers.
+     */
+    private record Encoded(ByteBuffer[] slices, long length) implements Part {
+    }
+
+    /**
+     * Bytes copied from the previous file. In a compressed file, one block holding the records
+     * of the tasks from first to end; in an uncompressed one, first equals end and the extents
+     * are known already.
+     */
+    private record Copy(long from, long length, int first, int end) implements Part {
+    }
+
+    /**
+     * Records of the tasks from first to end, compressed into a block when written.
+     */
+    private record Block(byte[] raw, int rawLength, int first, int end) implements Part {
+    }
+
+    private final FileChannel previous;
+    private final Compression compression;
+    private final List<Part> parts = new ArrayList<>();
+    // Every output buffer acquired, released on close
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    // Filled output buffers not yet in a part
+    private final List<ByteBuffer> slices = new ArrayList<>();
+    // Strings of the record being encoded, in write order; null for a missing value
+    private final List<byte[]> strings = new ArrayList<>();
+    private FileChannel source;
+    private List<Task> tasks = List.of();
+    private long[] offsets;
+    private int[] lengths;
+    private int[] blockTasks;
+    private ByteBuffer current;
+    private int sliceStart;
+    private int nextString;
+    private long position;
+    // Compressed files: records of the tasks from blockFirst, not in a part yet; uncompressed
+    // files: the record being encoded, before it is put into the output buffers
+    private ByteBuffer block = newBlock();
+    private int blockFirst;
+    // Compressed files: tasks after the block which are in one block of the previous file
+    private int candidateCount;
+    private long candidateOffset;
+    private int candidateLength;
+    private int candidateBlockTasks;
+    private long encodedBytes;
+    private long reusedBytes;
+
+    /**
+     * Creates a writer, reading the header of the previous file.
+     *
+     * @param previous    the channel of the previous file, or null to encode every task.
+     * @param compression the compression of the new file.
+     * @throws IOException if the header of the previous file cannot be read.
+     */
+    Writer(FileChannel previous, Compression compression) throws IOException {
+      this.previous = previous != null && compressionOf(previous) == compression
+              ? previous : null;
+      this.compression = compression;
+    }
+
+    private static ByteBuffer newBlock() {
+      return ByteBuffer.allocate(BLOCK_BYTES + BLOCK_BYTES / 4);
+    }
+
+    /**
+     * Reads the compression of a task file.
+     *
+     * @return the compression, or null if the file cannot be reused.
+     */
+    private static Compression compressionOf(FileChannel channel) throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+        // Keep reading, a read may return fewer bytes
+      }
+      if (header.position() < V1_HEADER_BYTES || header.getInt(0) != MAGIC) {
+        return null;
+      }
+      int version = header.getInt(4);
+      if (version == UNCOMPRESSED_VERSION) {
+        return Compression.NONE;
+      }
+      byte ordinal = header.get(V1_HEADER_BYTES);
+      return version == VERSION && ordinal >= 0 && ordinal < Compression.values().length
+              ? Compression.values()[ordinal] : null;
+    }
+
+    /**
+     * Encodes the header, the changed tasks and the recurring tasks, and plans the copies of
+     * the unchanged tasks. Must be called while the tasks cannot change; reads no file.
+     *
+     * @param tasks     the tasks, in list order.
+     * @param templates the recurring tasks.
+     * @param reuse     whether the extents recorded in the tasks refer to the previous file.
+     * @throws IOException if the recurring tasks cannot be serialized.
+     */
+    void collect(List<Task> tasks, List<RecurringTask> templates, boolean reuse)
+            throws IOException {
+      this.tasks = new ArrayList<>(tasks);
+      source = reuse ? previous : null;
+      offsets = new long[tasks.size()];
+      lengths = new int[tasks.size()];
+      blockTasks = new int[tasks.size()];
+      current = acquire();
+      buffers.add(current);
+      if (compression != Compression.NONE) {
+        current.putInt(MAGIC).putInt(VERSION).putInt(tasks.size())
+                .put((byte) compression.ordinal());
+        position = HEADER_BYTES;
+      } else {
+        current.putInt(MAGIC).putInt(UNCOMPRESSED_VERSION).putInt(tasks.size());
+        position = V1_HEADER_BYTES;
+      }
+      encodedBytes = position;
+      for (int i = 0; i < tasks.size(); i++) {
+        if (compression != Compression.NONE) {
+          writeBlockTask(i);
+        } else {
+          writeTask(i);
+        }
+      }
+      if (candidateCount > 0) {
+        resolveCandidates(tasks.size());
+      }
+      if (compression != Compression.NONE) {
+        flushBlock(tasks.size());
+      }
+      writeTemplates(templates);
+      closeEncoded();
+    }
+
+    /**
+     * Plans the record of a task of an uncompressed file, copied from the previous file if the
+     * task has not changed since.
+     */
+    private void writeTask(int index) throws IOException {
+      Task task = tasks.get(index);
+      offsets[index] = position;
+      if (source != null && task.recordOffset >= 0) {
+        lengths[index] = task.recordLength;
+        copy(task.recordOffset, task.recordLength, index, index);
+        position += task.recordLength;
+        return;
+      }
+      int length = 4 + encode(task);
+      task.recordChecksum = checksum(block.flip());
+      putOutBytes(block.array(), length);
+      block.clear();
+      lengths[index] = length;
+      position += length;
+      encodedBytes += length;
+    }
+
+    /**
+     * Adds a task of a compressed file. Unchanged tasks which are in one block of the previous
+     * file are held back as candidates: once all tasks of that block turned up, the block is
+     * copied, otherwise the candidates are encoded after all. This relies on the list keeping
+     * the relative order of unchanged tasks, which holds as re-added tasks count as changed.
+     */
+    private void writeBlockTask(int index) throws IOException {
+      Task task = tasks.get(index);
+      boolean reusable = source != null && task.recordOffset >= 0;
+      if (candidateCount > 0 && (!reusable || task.recordOffset != candidateOffset)) {
+        resolveCandidates(index);
+      }
+      if (!reusable) {
+        encodeIntoBlock(index);
+        return;
+      }
+      if (candidateCount == 0) {
+        candidateOffset = task.recordOffset;
+        candidateLength = task.recordLength;
+        candidateBlockTasks = task.recordBlockTasks;
+      }
+      candidateCount++;
+      if (candidateCount == candidateBlockTasks) {
+        resolveCandidates(index + 1);
+      }
+    }
+
+    /**
+     * Plans the copy of the block of the candidates before the given task if they are all of
+     * its tasks, or encodes them.
+     */
+    private void resolveCandidates(int end) throws IOException {
+      int first = end - candidateCount;
+      if (candidateCount == candidateBlockTasks) {
+        flushBlock(first);
+        copy(candidateOffset, candidateLength, first, end);
+        blockFirst = end;
+      } else {
+        for (int i = first; i < end; i++) {
+          encodeIntoBlock(i);
+        }
+      }
+      candidateCount = 0;
+    }
+
+    private void encodeIntoBlock(int index) throws IOException {
+      Task task = tasks.get(index);
+      int start = block.position();
+      int length = 4 + encode(task);
+      task.recordChecksum = checksum(block.slice(start, length));
+      if (block.position() >= BLOCK_BYTES) {
+        flushBlock(index + 1);
+      }
+    }
+
+    /**
+     * Ends the block holding the records of the tasks before the given one; it is compressed
+     * by {@link #writeTo}.
+     */
+    private void flushBlock(int end) {
+      if (end == blockFirst) {
+        return;
+      }
+      closeEncoded();
+      parts.add(new Block(block.array(), block.position(), blockFirst, end));
+      block = newBlock();
+      blockFirst = end;
+    }
+
+    private void writeTemplates(List<RecurringTask> templates) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+        oos.writeObject(new ArrayList<>(templates));
+      }
+      ensureOut(4);
+      current.putInt(bytes.size());
+      putOutBytes(bytes.toByteArray(), bytes.size());
+      position += 4 + bytes.size();
+      encodedBytes += 4 + bytes.size();
+    }
+
+    /**
+     * Writes the new file as collected: the encoded bytes with gathering writes, the unchanged
+     * records with {@link FileChannel#transferTo}, runs of adjacent ones with one call, and the
+     * blocks compressed on their own.
+     *
+     * @param out the channel of the new file, positioned at its start.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeTo(FileChannel out) throws IOException {
+      long written = 0;
+      long runStart = 0;
+      long runLength = 0;
+      for (Part part : parts) {
+        if (part instanceof Copy copy && runLength > 0 && runStart + runLength == copy.from()) {
+          place(copy.first(), copy.end(), written, copy.length());
+          runLength += copy.length();
+          written += copy.length();
+          continue;
+        }
+        transfer(out, runStart, runLength);
+        runLength = 0;
+        if (part instanceof Copy copy) {
+          place(copy.first(), copy.end(), written, copy.length());
+          runStart = copy.from();
+          runLength = copy.length();
+          written += copy.length();
+        } else if (part instanceof Encoded encoded) {
+          write(out, encoded.slices());
+          written += encoded.length();
+        } else if (part instanceof Block raw) {
+          byte[] stored = compression.compress(raw.raw(), raw.rawLength());
+          int length = BLOCK_HEADER_BYTES + stored.length;
+          ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES)
+                  .putInt(raw.end() - raw.first()).putInt(raw.rawLength()).putInt(stored.length);
+          write(out, new ByteBuffer[] {header.flip(), ByteBuffer.wrap(stored)});
+          place(raw.first(), raw.end(), written, length);
+          written += length;
+          encodedBytes += length;
+        }
+      }
+      transfer(out, runStart, runLength);
+    }
+
+    /**
+     * Records the extent of a block of a compressed file in each of its tasks.
+     */
+    private void place(int first, int end, long offset, long length) {
+      for (int i = first; i < end; i++) {
+        offsets[i] = offset;
+        lengths[i] = (int) length;
+        blockTasks[i] = end - first;
+      }
+    }
+
+    /**
+     * Records in the tasks the extents of their records in the new file.
+     */
+    void applyExtents() {
+      for (int i = 0; i < tasks.size(); i++) {
+        Task task = tasks.get(i);
+        task.recordOffset = offsets[i];
+        task.recordLength = lengths[i];
+        task.recordBlockTasks = blockTasks[i];
+      }
+    }
+
+    /**
+     * Gets the number of bytes encoded in the JVM, the header included.
+     */
+    long getEncodedBytes() {
+      return encodedBytes;
+    }
+
+    /**
+     * Gets the number of bytes copied from the previous file without passing through the JVM.
+     */
+    long getReusedBytes() {
+      return reusedBytes;
+    }
+
+    @Override
+    public void close() {
+      for (ByteBuffer buffer : buffers) {
+        release(buffer);
+      }
+      buffers.clear();
+      slices.clear();
+      parts.clear();
+      current = null;
+    }
+
+    /**
+     * Encodes a task record, preceded by its length, into the block.
+     *
+     * @return the length of the record without the length prefix.
+     */
+    private int encode(Task task) {
+      // First pass: collect the strings in write order, to know the length up front
+      strings.clear();
+      nextString = 0;
+      int length = TASK_FIXED_BYTES;
+      length += addString(task.getUid());
+      length += addString(task.getTitle());
+      length += addString(task.getDescription());
+      Tag tag = task.getTag();
+      if (tag != null) {
+        length += addString(tag.getName());
+        length += addString(tag.getColor());
+        length += addString(tag.getIcon());
+      }
+      List<String> blockers = task.getBlockerUids();
+      for (String blocker : blockers) {
+        length += addString(blocker);
+      }
+      List<Subtask> subtasks = task.getSubtasks();
+      for (Subtask subtask : subtasks) {
+        length += SUBTASK_FIXED_BYTES;
+        length += addString(subtask.getUid());
+        length += addString(subtask.getTitle());
+        length += addString(subtask.getDescription());
+      }
+
+      ensure(4 + 4);
+      block.putInt(length).putInt(task.getId());
+      putNextString();
+      putNextString();
+      putNextString();
+      ensure(1 + 8 + 8 + 8 + 4 + 1);
+      block.put((byte) (task.isCompleted() ? 1 : 0))
+              .putLong(task.getStartMillis())
+              .putLong(task.getExpectedEndMillis())
+              .putLong(task.getActualEndMillis())
+              .putInt(task.getHeatIndex())
+              .put((byte) (tag != null ? 1 : 0));
+      if (tag != null) {
+        putNextString();
+        putNextString();
+        putNextString();
+      }
+      ensure(4);
+      block.putInt(blockers.size());
+      for (int i = 0; i < blockers.size(); i++) {
+        putNextString();
+      }
+      ensure(4);
+      block.putInt(subtasks.size());
+      Map<Subtask, Integer> indexes = new IdentityHashMap<>();
+      for (int i = 0; i < subtasks.size(); i++) {
+        Subtask subtask = subtasks.get(i);
+        Subtask parent = subtask.getParentSubtask();
+        ensure(4 + 4);
+        block.putInt(parent == null ? -1 : indexes.get(parent)).putInt(subtask.getId());
+        indexes.put(subtask, i);
+        putNextString();
+        putNextString();
+        putNextString();
+        ensure(1 + 8 + 8);
+        block.put((byte) (subtask.isCompleted() ? 1 : 0))
+                .putLong(subtask.getStartMillis())
+                .putLong(subtask.getActualEndMillis());
+      }
+      return length;
+    }
+
+    private int addString(String value) {
+      byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+      strings.add(bytes);
+      return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private void putNextString() {
+      byte[] bytes = strings.get(nextString++);
+      ensure(4);
+      block.putInt(bytes == null ? NO_STRING : bytes.length);
+      if (bytes != null) {
+        ensure(bytes.length);
+        block.put(bytes);
+      }
+    }
+
+    /**
+     * Makes room in the block for a value, growing it if needed.
+     */
+    private void ensure(int bytes) {
+      if (block.remaining() < bytes) {
+        ByteBuffer grown = ByteBuffer.allocate(
+                Math.max(block.capacity() * 2, block.position() + bytes));
+        block = grown.put(block.flip());
+      }
+    }
+
+    /**
+     * Puts bytes into the output buffers, spanning as many as needed.
+     */
+    private void putOutBytes(byte[] bytes, int length) {
+      int offset = 0;
+      while (offset < length) {
+        ensureOut(1);
+        int count = Math.min(current.remaining(), length - offset);
+        current.put(bytes, offset, count);
+        offset += count;
+      }
+    }
+
+    /**
+     * Makes room for a primitive of up to 12 bytes, moving on to a new buffer if needed.
+     */
+    private void ensureOut(int bytes) {
+      if (current.remaining() >= bytes) {
+        return;
+      }
+      addSlice();
+      current = acquire();
+      buffers.add(current);
+      sliceStart = 0;
+    }
+
+    private void addSlice() {
+      if (current.position() > sliceStart) {
+        slices.add(current.slice(sliceStart, current.position() - sliceStart));
+        sliceStart = current.position();
+      }
+    }
+
+    /**
+     * Ends the encoded bytes not yet in a part, so that a copy or a block can follow them. The
+     * current buffer is kept, later bytes go after them.
+     */
+    private void closeEncoded() {
+      addSlice();
+      if (slices.isEmpty()) {
+        return;
+      }
+      long length = 0;
+      for (ByteBuffer slice : slices) {
+        length += slice.remaining();
+      }
+      parts.add(new Encoded(slices.toArray(new ByteBuffer[0]), length));
+      slices.clear();
+    }
+
+    /**
+     * Plans a copy of bytes of the previous file. Copies of adjacent records of an uncompressed
+     * file are merged into one part.
+     */
+    private void copy(long from, int length, int first, int end) {
+      closeEncoded();
+      reusedBytes += length;
+      if (first == end && !parts.isEmpty() && parts.get(parts.size() - 1) instanceof Copy last
+              && last.first() == last.end() && last.from() + last.length() == from) {
+        parts.set(parts.size() - 1, new Copy(last.from(), last.length() + length, first, end));
+        return;
+      }
+      parts.add(new Copy(from, length, first, end));
+    }
+
+    /**
+     * Writes buffers with gathering writes of up to {@link #MAX_GATHERED_BUFFERS} buffers, as
+     * far as the channel accepts them.
+     */
+    private static void write(FileChannel out, ByteBuffer[] buffers) throws IOException {
+      for (int first = 0; first < buffers.length; first += MAX_GATHERED_BUFFERS) {
+        int count = Math.min(MAX_GATHERED_BUFFERS, buffers.length - first);
+        long remaining = 0;
+        for (int i = first; i < first + count; i++) {
+          remaining += buffers[i].remaining();
+        }
+        while (remaining > 0) {
+          remaining -= out.write(buffers, first, count);
+        }
+      }
+    }
+
+    /**
+     * Copies a run of unchanged records or blocks from the previous file.
+     */
+    private void transfer(FileChannel out, long from, long length) throws IOException {
+      while (length > 0) {
+        long copied = source.transferTo(from, length, out);
+        if (copied <= 0) {
+          throw new EOFException("Previous task file truncated.");
+        }
+        from += copied;
+        length -= copied;
+      }
+    }
+  }
+}
@@ -1,18 +1,49 @@
 package task;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import metrics.AutoSaveWaitEvent;
+import metrics.Counter;
+import metrics.JfrEvents;
+import metrics.LatencyHistogram;
+import metrics.LoadEvent;
+import metrics.MetricsRegistry;
+import metrics.QueryEvent;
+import metrics.SaveEvent;
+import utils.Config;
 import utils.Settings;
 
 /**
  * Manages a collection of Task objects, providing operations to add, remove, and complete tasks.
  * Includes methods for saving to and loading from a file for persistent storage.
+ * All mutations go through {@link #batch(Consumer)}, which applies them under the write lock,
+ * then notifies listeners and triggers one auto-save per batch.
  */
 public class TaskManager {
 
@@ -25,6 +56,20 @@ public class TaskManager {
     INCOMPLETE,
   }
 
+  /**
+   * Task fields which query results depend on. Each has its own modification version, so a
+   * change only invalidates the cached queries which filter or sort on it.
+   */
+  enum IndexedField {
+    MEMBERSHIP,
+    COMPLETION,
+    DUE,
+    HEAT,
+    SUBTASKS,
+    DEPENDENCIES,
+    RECURRENCE,
+  }
+
   /**
    * Sort mode options.
    */
@@ -36,25 +81,183 @@ public class TaskManager {
     HEAT,
     COMPLETE,
     COMPLETE_R,
+    // Ready tasks, then blocked tasks, then completed tasks, each in creation order
+    READY_FIRST,
   }
 
-  private static TaskManager instance;
+  // Volatile, as the startup thread creates the instance while the EDT may ask for it
+  private static volatile TaskManager instance;
+
+  private static final int DEFAULT_QUERY_CACHE_SIZE = 8;
+  private static final int DEFAULT_UNDO_HISTORY_SIZE = 100;
+
+  // Metrics, see MetricsRegistry. Latencies include waiting for the lock.
+  private static final MetricsRegistry METRICS = MetricsRegistry.getInstance();
+  private static final LatencyHistogram BATCH_TIME = METRICS.histogram("task.batch");
+  private static final LatencyHistogram LOCK_WAIT_TIME = METRICS.histogram("task.batch.lockWait");
+  private static final LatencyHistogram ADD_TIME = METRICS.histogram("task.addTask");
+  private static final LatencyHistogram REMOVE_TIME = METRICS.histogram("task.removeTask");
+  private static final LatencyHistogram COMPLETE_TIME = METRICS.histogram("task.setTaskCompleted");
+  private static final LatencyHistogram SUBTASK_TIME =
+          METRICS.histogram("task.setSubtaskCompleted");
+  private static final LatencyHistogram HEAT_TIME = METRICS.histogram("task.updateHeat");
+  private static final LatencyHistogram LOOKUP_TIME = METRICS.histogram("task.lookup");
+  private static final LatencyHistogram GET_TASKS_TIME = METRICS.histogram("task.getTasks");
+  private static final LatencyHistogram RANGE_TIME = METRICS.histogram("task.getTasksInRange");
+  private static final LatencyHistogram CACHE_HIT_TIME = METRICS.histogram("task.getTasks.hit");
+  private static final LatencyHistogram CACHE_MISS_TIME = METRICS.histogram("task.getTasks.miss");
+  private static final Counter CACHE_HITS = METRICS.counter("task.queryCache.hits");
+  private static final Counter CACHE_MISSES = METRICS.counter("task.queryCache.misses");
+  private static final LatencyHistogram SAVE_TIME = METRICS.histogram("task.saveTasksToFile");
+  private static final LatencyHistogram LOAD_TIME = METRICS.histogram("task.loadTasksFromFile");
+  private static final Counter SAVE_BYTES = METRICS.counter("task.save.bytes");
+  private static final Counter SAVE_ENCODED_BYTES = METRICS.counter("task.save.encodedBytes");
+  private static final Counter SAVE_REUSED_BYTES = METRICS.counter("task.save.reusedBytes");
+  private static final Counter AUTOSAVE_QUEUE = METRICS.counter("task.autosave.queue");
+  private static final Counter AUTOSAVE_FAILURES = METRICS.counter("task.autosave.failures");
+  private static final Counter ROLLBACKS = METRICS.counter("task.batch.rollbacks");
+  private static final Counter UNDO_FAILURES = METRICS.counter("task.undo.failures");
 
   // Executor for async autosave
-  private final ExecutorService autoSaveExecutor = Executors.newSingleThreadExecutor();
+  private final ScheduledExecutorService autoSaveExecutor =
+          Executors.newSingleThreadScheduledExecutor();
+  // Set while an auto-save is scheduled; batches made until it runs are saved with it.
+  private final AtomicBoolean autoSavePending = new AtomicBoolean();
+
+  // Guards tasks; readers share the read lock, batches hold the write lock.
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final List<TaskChangeListener> listeners = new CopyOnWriteArrayList<>();
+  // Notified inside the write lock, see addLockedChangeListener
+  private final List<TaskChangeListener> lockedListeners = new CopyOnWriteArrayList<>();
 
   private List<Task> tasks;
+  private final Map<String, Task> tasksByUid = new HashMap<>();
+  private final Map<Integer, Task> tasksById = new HashMap<>();
+  private DependencyGraph dependencies = new DependencyGraph(tasksByUid::get);
+  private List<RecurringTask> recurringTasks = new ArrayList<>();
+  private final IntervalIndex intervals = new IntervalIndex();
+  // Columnar copy of tasks for filtering and sorting, null unless enabled.
+  private TaskTable table;
+  // Stores with at least this many tasks are queried in parallel.
+  private volatile int parallelQueryThreshold = Integer.MAX_VALUE;
+  // Results of recent queries; fieldVersions only change under the write lock.
+  private final QueryCache queryCache = new QueryCache(DEFAULT_QUERY_CACHE_SIZE);
+  private final long[] fieldVersions = new long[IndexedField.values().length];
+  // Undoable batches; only changed under the write lock.
+  private final UndoHistory history = new UndoHistory(DEFAULT_UNDO_HISTORY_SIZE);
+  private volatile ProgressSnapshot todayProgress;
+  private volatile boolean autoCompleteParent;
+  private volatile Compression compression = Compression.NONE;
+
+  private record ProgressSnapshot(LocalDate day, long stamp, TaskProgress progress) {
+  }
+
+  // Only the shared instance auto-saves; detached instances are saved by their owner.
+  private final boolean autoSave;
+  // The shared task file, only set for the instance backed by settings.json with the shared
+  // storage backend
+  private TaskStore store;
+  // The file auto-saved to, only set for the instance backed by settings.json
+  private String savePath;
+  // The file the record extents of the tasks refer to, null if none; see TaskCodec
+  private TaskCodec.FileStamp recordFile;
+
+  // Only accessed by the thread holding the write lock.
+  private TaskTransaction activeTransaction;
+  private long version;
 
   /**
    * Constructs a new TaskManager with an empty list of tasks.
    */
   private TaskManager() {
-    this.tasks = new ArrayList<>();
+    this(true);
+    Config config = Settings.getInstance().getConfig();
+    applyConfig(config);
+    // The save path and storage backend are only read here, they apply after a restart
+    savePath = config.taskSavePath();
     try {
-      loadTasksFromFile(Settings.getInstance().getTaskSavePath());
+      if (config.storageBackend() == Config.StorageBackend.SHARED) {
+        store = new TaskStore(this, Path.of(savePath));
+        store.load();
+      } else if (new File(savePath).exists()) {
+        loadTasksFromFile(savePath);
+      }
     } catch (IOException | ClassNotFoundException e) {
       throw new RuntimeException(e);
     }
+    if (store != null) {
+      try {
+        store.watch();
+      } catch (IOException e) {
+        System.err.println("Failed to watch the task file: " + e.getMessage());
+      }
+    }
+    Settings.getInstance().addConfigListener((oldConfig, newConfig) -> applyConfig(newConfig));
+    Runtime.getRuntime().addShutdownHook(new Thread(this::flushAutoSave, "jtodo-autosave-flush"));
+  }
+
+  /**
+   * Applies the settings which can change while the application runs.
+   */
+  private void applyConfig(Config config) {
+    useColumnarTable(config.columnarTable());
+    setParallelQueryThreshold(config.parallelQueryThreshold());
+    setQueryCacheSize(config.queryCacheSize());
+    setAutoCompleteParent(config.autoCompleteParent());
+    setCompression(config.taskFileCompression());
+    setUndoHistorySize(config.undoHistorySize());
+  }
+
+  private TaskManager(boolean autoSave) {
+    this.tasks = new ArrayList<>();
+    this.autoSave = autoSave;
+  }
+
+  /**
+   * Creates a TaskManager which is not backed by a file and never auto-saves.
+   * Useful for tools and benchmarks which must not touch the user's task store.
+   *
+   * @return a new, empty TaskManager.
+   */
+  public static TaskManager createInMemory() {
+    return new TaskManager(false);
+  }
+
+  /**
+   * Creates a TaskManager loaded from a file, independent of the shared instance and of
+   * settings.json. It never auto-saves; call {@link #saveTasksToFile(String)} to persist it.
+   *
+   * @param fileName the file to load, which may not exist yet.
+   * @return a new TaskManager.
+   * @throws IOException            if an I/O error occurs.
+   * @throws ClassNotFoundException if the file content does not match expected format.
+   */
+  public static TaskManager open(String fileName) throws IOException, ClassNotFoundException {
+    TaskManager manager = new TaskManager(false);
+    if (new File(fileName).exists()) {
+      manager.loadTasksFromFile(fileName);
+    }
+    return manager;
+  }
+
+  /**
+   * Enables or disables the columnar table, which speeds up getTasks on large stores at the
+   * cost of keeping a primitive copy of the sorted-on fields.
+   *
+   * @param enabled whether queries should run on the columnar table.
+   */
+  public void useColumnarTable(boolean enabled) {
+    lock.writeLock().lock();
+    try {
+      if (!enabled) {
+        table = null;
+      } else if (table == null) {
+        table = new TaskTable(tasks);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
@@ -66,24 +269,666 @@ public class TaskManager {
    */
   public static TaskManager getInstance() {
     if (instance == null) {
-      instance = new TaskManager();
+      synchronized (TaskManager.class) {
+        if (instance == null) {
+          instance = new TaskManager();
+        }
+      }
     }
     return instance;
   }
 
   /**
-   * If auto-saving is enabled by settings, save all tasks.
+   * If auto-saving is enabled by settings, save all tasks. The save runs after the auto-save
+   * delay of the settings, and changes made in the meantime are saved with it.
    *
    */
   public void triggerAutoSave() {
-    if (Settings.getInstance().getAutoSaveSetting()) {
-      autoSaveExecutor.submit(() -> {
-        try {
-          saveTasksToFile(Settings.getInstance().getTaskSavePath());
-        } catch (IOException e) {
-          System.err.println("Failed to save tasks: " + e.getMessage());
+    if (!autoSave) {
+      return;
+    }
+    Config config = Settings.getInstance().getConfig();
+    if (config.autoSave() && autoSavePending.compareAndSet(false, true)) {
+      AutoSaveWaitEvent waitEvent = null;
+      if (JfrEvents.isEnabled()) {
+        waitEvent = new AutoSaveWaitEvent();
+        waitEvent.queueDepth = AUTOSAVE_QUEUE.getValue();
+        waitEvent.begin();
+      }
+      AUTOSAVE_QUEUE.increment();
+      AutoSaveWaitEvent queuedEvent = waitEvent;
+      autoSaveExecutor.schedule(() -> {
+        AUTOSAVE_QUEUE.decrement();
+        if (queuedEvent != null) {
+          queuedEvent.commit();
+        }
+        flushAutoSave();
+      }, config.autoSaveDelayMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Saves now if an auto-save is scheduled, e.g. before the application exits.
+   */
+  private void flushAutoSave() {
+    // Cleared before saving, so a batch made during the save schedules another one
+    if (!autoSavePending.getAndSet(false)) {
+      return;
+    }
+    try {
+      if (store != null) {
+        store.commit();
+      } else {
+        saveTasksToFile(savePath);
+      }
+    } catch (IOException e) {
+      AUTOSAVE_FAILURES.increment();
+      System.err.println("Failed to save tasks: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Applies a batch of mutations atomically under a single write lock acquisition.
+   * If the batch throws, every mutation it made is rolled back and the exception is rethrown.
+   * Otherwise, listeners receive one change event and one auto-save is triggered.
+   * Calling this method from inside another batch joins the outer batch.
+   * The batch is not recorded in the undo history, see {@link #undoableBatch(Consumer)}.
+   *
+   * @param body the mutations to apply.
+   */
+  public void batch(Consumer<TaskTransaction> body) {
+    batch(body, false);
+  }
+
+  /**
+   * Applies a batch like {@link #batch(Consumer)}, and records it as one step of the undo
+   * history. Meant for changes made by the user, rather than merged from elsewhere. Calling
+   * this method from inside another batch joins the outer batch, which decides whether the
+   * changes are recorded.
+   *
+   * @param body the mutations to apply.
+   */
+  public void undoableBatch(Consumer<TaskTransaction> body) {
+    batch(body, true);
+  }
+
+  private void batch(Consumer<TaskTransaction> body, boolean undoable) {
+    TaskChangeEvent event;
+    long startNanos = System.nanoTime();
+    lock.writeLock().lock();
+    LOCK_WAIT_TIME.recordSince(startNanos);
+    try {
+      if (activeTransaction != null) {
+        body.accept(activeTransaction);
+        return;
+      }
+      TaskTransaction transaction = new TaskTransaction(this);
+      activeTransaction = transaction;
+      try {
+        body.accept(transaction);
+      } catch (RuntimeException | Error e) {
+        transaction.rollback();
+        ROLLBACKS.increment();
+        throw e;
+      } finally {
+        activeTransaction = null;
+      }
+      if (transaction.isEmpty()) {
+        return;
+      }
+      if (undoable) {
+        history.record(transaction.toHistoryEntry());
+      }
+      event = transaction.toEvent(++version);
+      fireLockedTasksChanged(event);
+    } finally {
+      lock.writeLock().unlock();
+      BATCH_TIME.recordSince(startNanos);
+    }
+    fireTasksChanged(event);
+    triggerAutoSave();
+  }
+
+  /**
+   * Reverts the last undoable batch which has not been undone yet. Like a batch, this fires
+   * one change event and triggers one auto-save, which coalesces with those of other steps.
+   * If the tasks have since changed in a way the batch cannot be reverted from, e.g. a task it
+   * added was removed by sync, nothing is changed and the history is cleared.
+   *
+   * @return false if there was nothing to undo or the batch could not be reverted.
+   * @throws IllegalStateException if called from inside a batch.
+   */
+  public boolean undo() {
+    return replay(true);
+  }
+
+  /**
+   * Reapplies the last undone batch, see {@link #undo()}.
+   *
+   * @return false if there was nothing to redo or the batch could not be reapplied.
+   * @throws IllegalStateException if called from inside a batch.
+   */
+  public boolean redo() {
+    return replay(false);
+  }
+
+  /**
+   * Returns how many batches can be undone.
+   *
+   * @return the number of batches before the cursor of the undo history.
+   */
+  public int getUndoCount() {
+    lock.readLock().lock();
+    try {
+      return history.undoCount();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns how many undone batches can be redone.
+   *
+   * @return the number of batches after the cursor of the undo history.
+   */
+  public int getRedoCount() {
+    lock.readLock().lock();
+    try {
+      return history.redoCount();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Sets how many undoable batches are kept, 0 to disable undo.
+   *
+   * @param size the maximum number of batches in the undo history.
+   */
+  public void setUndoHistorySize(int size) {
+    lock.writeLock().lock();
+    try {
+      history.setCapacity(size);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private boolean replay(boolean undo) {
+    TaskChangeEvent event;
+    long startNanos = System.nanoTime();
+    lock.writeLock().lock();
+    LOCK_WAIT_TIME.recordSince(startNanos);
+    try {
+      if (activeTransaction != null) {
+        throw new IllegalStateException("Cannot undo or redo inside a batch.");
+      }
+      UndoHistory.Entry entry = undo ? history.peekUndo() : history.peekRedo();
+      if (entry == null) {
+        return false;
+      }
+      TaskTransaction transaction = new TaskTransaction(this);
+      activeTransaction = transaction;
+      try {
+        transaction.replay(entry, undo);
+      } catch (RuntimeException e) {
+        transaction.rollback();
+        ROLLBACKS.increment();
+        UNDO_FAILURES.increment();
+        history.clear();
+        System.err.println("Failed to " + (undo ? "undo" : "redo") + ": " + e.getMessage());
+        return false;
+      } finally {
+        activeTransaction = null;
+      }
+      if (undo) {
+        history.undone();
+      } else {
+        history.redone();
+      }
+      event = transaction.toEvent(++version);
+      fireLockedTasksChanged(event);
+    } finally {
+      lock.writeLock().unlock();
+      BATCH_TIME.recordSince(startNanos);
+    }
+    fireTasksChanged(event);
+    triggerAutoSave();
+    return true;
+  }
+
+  /**
+   * Inserts a task into the list and every index. Caller must hold the write lock.
+   */
+  void attachTask(int index, Task task) {
+    // The task may have changed while it was not managed
+    task.recordOffset = -1;
+    task.recordChecksum = 0;
+    tasks.add(index, task);
+    tasksByUid.put(task.getUid(), task);
+    tasksById.put(task.getId(), task);
+    dependencies.addTask(task);
+    intervals.add(task);
+    fieldChanged(IndexedField.MEMBERSHIP);
+    fieldChanged(IndexedField.DEPENDENCIES);
+    if (table != null) {
+      table.insert(index, task);
+    }
+  }
+
+  /**
+   * Removes a task from the list and every index. Caller must hold the write lock.
+   *
+   * @return the former position of the task, or -1 if it is not managed.
+   */
+  int detachTask(Task task) {
+    // Identity lookup, Task.equals() is not reliable across runs.
+    for (int i = 0; i < tasks.size(); i++) {
+      if (tasks.get(i) == task) {
+        tasks.remove(i);
+        tasksByUid.remove(task.getUid());
+        tasksById.remove(task.getId());
+        dependencies.removeTask(task);
+        intervals.remove(task);
+        fieldChanged(IndexedField.MEMBERSHIP);
+        fieldChanged(IndexedField.DEPENDENCIES);
+        if (table != null) {
+          table.remove(i);
         }
-      });
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Refreshes the indexed fields of a task after a mutation. Caller must hold the write lock.
+   */
+  void taskChanged(Task task) {
+    task.recordOffset = -1;
+    task.recordChecksum = 0;
+    if (table != null) {
+      table.update(task);
+    }
+    dependencies.completionChanged(task);
+    intervals.update(task);
+  }
+
+  /**
+   * Records that a task is blocked by another one. Caller must hold the write lock.
+   *
+   * @return false if the dependency already exists.
+   * @throws IllegalArgumentException if a task is not managed or the dependency would close a
+   *                                  cycle.
+   */
+  boolean linkDependency(Task blocker, Task dependent) {
+    if (!dependencies.addEdge(blocker, dependent)) {
+      return false;
+    }
+    dependent.addBlockerUid(blocker.getUid());
+    return true;
+  }
+
+  /**
+   * Removes a dependency between two tasks. Caller must hold the write lock.
+   *
+   * @return false if there was no such dependency.
+   */
+  boolean unlinkDependency(Task blocker, Task dependent) {
+    boolean recorded = dependent.getBlockerUids().contains(blocker.getUid());
+    dependent.removeBlockerUid(blocker.getUid());
+    return dependencies.removeEdge(blocker, dependent) || recorded;
+  }
+
+  /**
+   * Invalidates cached queries depending on a field. Caller must hold the write lock.
+   */
+  void fieldChanged(IndexedField field) {
+    fieldVersions[field.ordinal()]++;
+  }
+
+  /**
+   * Invalidates every cached query. Caller must hold the write lock.
+   */
+  void allFieldsChanged() {
+    for (IndexedField field : IndexedField.values()) {
+      fieldChanged(field);
+    }
+  }
+
+  /**
+   * Returns a stamp which changes whenever a field the query depends on changes. Versions only
+   * grow, so their sum does too. Caller must hold the read or write lock.
+   */
+  private long queryStamp(QueryMode queryMode, SortMode sortMode) {
+    long stamp = fieldVersions[IndexedField.MEMBERSHIP.ordinal()];
+    if (effectiveQueryMode(queryMode, sortMode) != QueryMode.ALL) {
+      stamp += fieldVersions[IndexedField.COMPLETION.ordinal()];
+    }
+    switch (sortMode) {
+      case DUE, DUE_R -> stamp += fieldVersions[IndexedField.DUE.ordinal()];
+      case HEAT -> stamp += fieldVersions[IndexedField.HEAT.ordinal()];
+      case READY_FIRST -> stamp += fieldVersions[IndexedField.COMPLETION.ordinal()]
+              + fieldVersions[IndexedField.DEPENDENCIES.ordinal()];
+      default -> {
+        // Start times never change, and completion times change with COMPLETION.
+      }
+    }
+    return stamp;
+  }
+
+  private static int queryKey(QueryMode queryMode, SortMode sortMode) {
+    return queryMode.ordinal() * SortMode.values().length + sortMode.ordinal();
+  }
+
+  /**
+   * Returns the result of a query from the cache or computes and caches it. Caller must hold
+   * the read lock.
+   */
+  private List<Task> cachedQuery(QueryMode queryMode, SortMode sortMode, QueryEvent event) {
+    long startNanos = System.nanoTime();
+    int key = queryKey(queryMode, sortMode);
+    long stamp = queryStamp(queryMode, sortMode);
+    List<Task> result = queryCache.get(key, stamp);
+    if (result != null) {
+      CACHE_HITS.increment();
+      CACHE_HIT_TIME.recordSince(startNanos);
+      if (event != null) {
+        event.cacheHit = true;
+      }
+      return result;
+    }
+    result = Collections.unmodifiableList(sortTasks(queryMode, sortMode));
+    queryCache.put(key, stamp, result);
+    CACHE_MISSES.increment();
+    CACHE_MISS_TIME.recordSince(startNanos);
+    return result;
+  }
+
+  /**
+   * Sets how many query results are cached, 0 to disable the cache.
+   *
+   * @param size the maximum number of cached (query mode, sort mode) results.
+   */
+  public void setQueryCacheSize(int size) {
+    queryCache.setCapacity(size);
+  }
+
+  /**
+   * Sets whether completing the last open subtask of a task also completes the task.
+   *
+   * @param autoCompleteParent true to complete parents automatically.
+   */
+  public void setAutoCompleteParent(boolean autoCompleteParent) {
+    this.autoCompleteParent = autoCompleteParent;
+  }
+
+  /**
+   * Sets how task files are compressed from the next save on. Files are read in whichever
+   * compression they were written with.
+   *
+   * @param compression the compression of saved task files.
+   */
+  public void setCompression(Compression compression) {
+    this.compression = compression;
+  }
+
+  boolean isAutoCompleteParent() {
+    return autoCompleteParent;
+  }
+
+  /**
+   * Returns how much of the work due today is done. A task with subtasks counts one unit per
+   * subtask, so half-finished tasks show up, and occurrences of recurring tasks due today count
+   * too. The result is recomputed only after a change to membership, completion, due dates,
+   * subtasks or recurring tasks, or when the day changes.
+   *
+   * @return the progress of tasks due today.
+   */
+  public TaskProgress getTodayProgress() {
+    LocalDate today = LocalDate.now();
+    lock.readLock().lock();
+    try {
+      long stamp = fieldVersions[IndexedField.MEMBERSHIP.ordinal()]
+              + fieldVersions[IndexedField.COMPLETION.ordinal()]
+              + fieldVersions[IndexedField.DUE.ordinal()]
+              + fieldVersions[IndexedField.SUBTASKS.ordinal()]
+              + fieldVersions[IndexedField.RECURRENCE.ordinal()];
+      ProgressSnapshot snapshot = todayProgress;
+      if (snapshot != null && snapshot.stamp() == stamp && snapshot.day().equals(today)) {
+        return snapshot.progress();
+      }
+      ZoneId zone = ZoneId.systemDefault();
+      long dayStart = today.atStartOfDay(zone).toInstant().toEpochMilli();
+      long dayEnd = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+      int done = 0;
+      int total = 0;
+      for (Task task : tasks) {
+        long due = task.getExpectedEndMillis();
+        if (due < dayStart || due >= dayEnd) {
+          continue;
+        }
+        int subtaskCount = task.getSubtaskCount();
+        if (subtaskCount == 0) {
+          total++;
+          done += task.isCompleted() ? 1 : 0;
+        } else {
+          total += subtaskCount;
+          done += task.isCompleted() ? subtaskCount : task.getCompletedSubtaskCount();
+        }
+      }
+      for (RecurringTask template : recurringTasks) {
+        for (Iterator<Task> it = template.occurrences(dayStart, dayEnd); it.hasNext(); ) {
+          total++;
+          done += it.next().isCompleted() ? 1 : 0;
+        }
+      }
+      TaskProgress progress = new TaskProgress(done, total);
+      todayProgress = new ProgressSnapshot(today, stamp, progress);
+      return progress;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Iterates over the tasks in due order, like {@link #getTasks(QueryMode, SortMode)} with
+   * {@link SortMode#DUE}, merged with the occurrences of recurring tasks due in a window.
+   * Occurrences are generated while iterating, so only the part which is read is computed.
+   *
+   * @param queryMode  query mode, which also applies to occurrences.
+   * @param fromMillis the start of the occurrence window, inclusive.
+   * @param toMillis   the end of the occurrence window, exclusive.
+   * @return an iterator over the tasks and occurrences.
+   */
+  public Iterator<Task> iterateByDue(QueryMode queryMode, long fromMillis, long toMillis) {
+    List<Task> sorted;
+    List<RecurringTask> templates;
+    lock.readLock().lock();
+    try {
+      sorted = cachedQuery(queryMode, SortMode.DUE, null);
+      templates = new ArrayList<>(recurringTasks);
+    } finally {
+      lock.readLock().unlock();
+    }
+    return new DueOrderIterator(sorted.iterator(), templates, queryMode, fromMillis, toMillis);
+  }
+
+  /**
+   * Retrieves the tasks in due order merged with the occurrences due in a window, see
+   * {@link #iterateByDue(QueryMode, long, long)}.
+   *
+   * @param queryMode  query mode, which also applies to occurrences.
+   * @param fromMillis the start of the occurrence window, inclusive.
+   * @param toMillis   the end of the occurrence window, exclusive.
+   * @return a new list of tasks and occurrences.
+   */
+  public List<Task> getTasksByDue(QueryMode queryMode, long fromMillis, long toMillis) {
+    List<Task> result = new ArrayList<>();
+    iterateByDue(queryMode, fromMillis, toMillis).forEachRemaining(result::add);
+    return result;
+  }
+
+  /**
+   * Retrieves the tasks whose interval from start time to due time overlaps a window, and the
+   * occurrences of recurring tasks due in it, sorted by due time. Uses an interval index, so
+   * the cost depends on the number of overlapping tasks, not on the size of the store.
+   *
+   * @param queryMode  query mode.
+   * @param fromMillis the start of the window, inclusive.
+   * @param toMillis   the end of the window, exclusive.
+   * @return a new list of tasks and occurrences.
+   */
+  public List<Task> getTasksInRange(QueryMode queryMode, long fromMillis, long toMillis) {
+    long startNanos = System.nanoTime();
+    List<Task> result = new ArrayList<>();
+    Consumer<Task> collector = task -> {
+      if (queryMode == QueryMode.ALL
+              || task.isCompleted() == (queryMode == QueryMode.COMPLETE)) {
+        result.add(task);
+      }
+    };
+    boolean hasOccurrences;
+    lock.readLock().lock();
+    try {
+      intervals.forEachOverlapping(fromMillis, toMillis, collector);
+      int indexed = result.size();
+      for (RecurringTask template : recurringTasks) {
+        template.occurrences(fromMillis, toMillis).forEachRemaining(collector);
+      }
+      hasOccurrences = result.size() > indexed;
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (hasOccurrences) {
+      // The index lists tasks in due order already, only occurrences have to be merged in
+      result.sort(Comparator.comparingLong(Task::getExpectedEndMillis));
+    }
+    RANGE_TIME.recordSince(startNanos);
+    return result;
+  }
+
+  /**
+   * Retrieves the recurring tasks.
+   *
+   * @return a new list of the recurring tasks.
+   */
+  public List<RecurringTask> getRecurringTasks() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(recurringTasks);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adds a recurring task.
+   *
+   * @param template The recurring task to add.
+   */
+  public void addRecurringTask(RecurringTask template) {
+    undoableBatch(tx -> tx.addRecurringTask(template));
+  }
+
+  /**
+   * Removes a recurring task and with it all its occurrences.
+   *
+   * @param template The recurring task to remove.
+   */
+  public void removeRecurringTask(RecurringTask template) {
+    undoableBatch(tx -> tx.removeRecurringTask(template));
+  }
+
+  /**
+   * Adds a recurring task at a position. Caller must hold the write lock.
+   */
+  void attachRecurringTask(int index, RecurringTask template) {
+    recurringTasks.add(index, template);
+    fieldChanged(IndexedField.RECURRENCE);
+  }
+
+  /**
+   * Removes a recurring task. Caller must hold the write lock.
+   *
+   * @return the former position of the recurring task, or -1 if it is not managed.
+   */
+  int detachRecurringTask(RecurringTask template) {
+    int index = recurringTasks.indexOf(template);
+    if (index >= 0) {
+      recurringTasks.remove(index);
+      fieldChanged(IndexedField.RECURRENCE);
+    }
+    return index;
+  }
+
+  Task findTaskByUid(String uid) {
+    return tasksByUid.get(uid);
+  }
+
+  int taskCount() {
+    return tasks.size();
+  }
+
+  /**
+   * Runs a read-only function over the managed tasks while holding the read lock.
+   * The list passed to the function is an unmodifiable live view and must not escape it.
+   *
+   * @param reader the function to run.
+   * @param <T>    the result type.
+   * @return the result of the function.
+   */
+  public <T> T read(Function<List<Task>, T> reader) {
+    lock.readLock().lock();
+    try {
+      return reader.apply(Collections.unmodifiableList(tasks));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Registers a listener notified after every committed batch.
+   *
+   * @param listener the listener to add.
+   */
+  public void addChangeListener(TaskChangeListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Unregisters a listener.
+   *
+   * @param listener the listener to remove.
+   */
+  public void removeChangeListener(TaskChangeListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Registers a listener notified of every committed batch while the write lock is still
+   * held, so that it sees the batches in order and before any reader does. It must be quick and
+   * must not call back into the manager.
+   *
+   * @param listener the listener to add.
+   */
+  void addLockedChangeListener(TaskChangeListener listener) {
+    lockedListeners.add(listener);
+  }
+
+  void removeLockedChangeListener(TaskChangeListener listener) {
+    lockedListeners.remove(listener);
+  }
+
+  private void fireLockedTasksChanged(TaskChangeEvent event) {
+    for (TaskChangeListener listener : lockedListeners) {
+      listener.tasksChanged(event);
+    }
+  }
+
+  private void fireTasksChanged(TaskChangeEvent event) {
+    for (TaskChangeListener listener : listeners) {
+      listener.tasksChanged(event);
     }
   }
 
@@ -94,11 +939,9 @@ public class TaskManager {
    * @throws IllegalArgumentException if task is null.
    */
   public void addTask(Task task) {
-    if (task == null) {
-      throw new IllegalArgumentException("Task cannot be null.");
-    }
-    tasks.add(task);
-    triggerAutoSave();
+    long startNanos = System.nanoTime();
+    undoableBatch(tx -> tx.addTask(task));
+    ADD_TIME.recordSince(startNanos);
   }
 
   /**
@@ -107,8 +950,9 @@ public class TaskManager {
    * @param task The task to remove.
    */
   public void removeTask(Task task) {
-    tasks.remove(task);
-    triggerAutoSave();
+    long startNanos = System.nanoTime();
+    undoableBatch(tx -> tx.removeTask(task));
+    REMOVE_TIME.recordSince(startNanos);
   }
 
   /**
@@ -117,18 +961,20 @@ public class TaskManager {
    * @param task The task to complete.
    */
   public void setTaskCompleted(Task task, boolean completed) {
-    task.setCompleted(completed);
-    triggerAutoSave();
+    long startNanos = System.nanoTime();
+    undoableBatch(tx -> tx.setTaskCompleted(task, completed));
+    COMPLETE_TIME.recordSince(startNanos);
   }
 
   /**
-   * Marks a specified task as completed.
+   * Increases the heat index of a specified task.
    *
-   * @param task The task to complete.
+   * @param task The task to update.
    */
   public void updateHeat(Task task) {
-    task.increaseHeat();
-    triggerAutoSave();
+    long startNanos = System.nanoTime();
+    batch(tx -> tx.updateHeat(task));
+    HEAT_TIME.recordSince(startNanos);
   }
 
 
@@ -138,8 +984,120 @@ public class TaskManager {
    * @param subtask The subtask to complete.
    */
   public void setSubtaskCompleted(Subtask subtask, boolean completed) {
-    subtask.setCompleted(completed);
-    triggerAutoSave();
+    long startNanos = System.nanoTime();
+    undoableBatch(tx -> tx.setSubtaskCompleted(subtask, completed));
+    SUBTASK_TIME.recordSince(startNanos);
+  }
+
+  /**
+   * Records that a task is blocked by another task.
+   *
+   * @param blocker   The task which must be completed first.
+   * @param dependent The task which is blocked.
+   * @throws IllegalArgumentException if the dependency would close a cycle.
+   */
+  public void addDependency(Task blocker, Task dependent) {
+    undoableBatch(tx -> tx.addDependency(blocker, dependent));
+  }
+
+  /**
+   * Removes a dependency between two tasks.
+   *
+   * @param blocker   The task which blocks.
+   * @param dependent The task which is blocked.
+   */
+  public void removeDependency(Task blocker, Task dependent) {
+    undoableBatch(tx -> tx.removeDependency(blocker, dependent));
+  }
+
+  /**
+   * Retrieves the managed tasks which a task is blocked by, completed ones included.
+   *
+   * @param task The blocked task.
+   * @return a new list of the blockers.
+   */
+  public List<Task> getBlockers(Task task) {
+    lock.readLock().lock();
+    try {
+      return dependencies.blockers(task);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Retrieves the tasks which a task blocks.
+   *
+   * @param task The blocking task.
+   * @return a new list of the dependent tasks.
+   */
+  public List<Task> getDependents(Task task) {
+    lock.readLock().lock();
+    try {
+      return dependencies.dependents(task);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns whether a task is incomplete and all tasks it is blocked by are completed.
+   *
+   * @param task The task to check.
+   * @return true if the task can be worked on.
+   */
+  public boolean isReady(Task task) {
+    lock.readLock().lock();
+    try {
+      return dependencies.isReady(task);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Retrieves the incomplete tasks whose blockers are all completed. The set is maintained as
+   * tasks complete, so this does not scan the dependencies.
+   *
+   * @return a new list of the ready tasks.
+   */
+  public List<Task> getReadyTasks() {
+    lock.readLock().lock();
+    try {
+      return dependencies.readyTasks();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Retrieves the incomplete tasks in an order where every task comes after its blockers.
+   *
+   * @return a new list of the incomplete tasks.
+   */
+  public List<Task> getTopologicalOrder() {
+    lock.readLock().lock();
+    try {
+      return dependencies.topologicalOrder();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Retrieves the chain of incomplete tasks which is projected to finish last. A task is
+   * projected to finish at its expected end time, or, if later, its planned duration after
+   * its last incomplete blocker finishes.
+   *
+   * @return the tasks of the chain, blockers first, or an empty list if all tasks are completed.
+   */
+  public List<Task> getCriticalPath() {
+    lock.readLock().lock();
+    try {
+      return dependencies.criticalPath();
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   /**
@@ -149,9 +1107,45 @@ public class TaskManager {
    * @return An Optional containing the task if found, or an empty Optional if not found.
    */
   public Optional<Task> getTaskById(int id) {
-    return tasks.stream()
-            .filter(task -> task.getId() == id)
-            .findFirst();
+    long startNanos = System.nanoTime();
+    lock.readLock().lock();
+    try {
+      return Optional.ofNullable(tasksById.get(id));
+    } finally {
+      lock.readLock().unlock();
+      LOOKUP_TIME.recordSince(startNanos);
+    }
+  }
+
+  /**
+   * Retrieves a task by its stable UID.
+   *
+   * @param uid The UID of the task.
+   * @return An Optional containing the task if found, or an empty Optional if not found.
+   */
+  public Optional<Task> getTaskByUid(String uid) {
+    long startNanos = System.nanoTime();
+    lock.readLock().lock();
+    try {
+      return Optional.ofNullable(tasksByUid.get(uid));
+    } finally {
+      lock.readLock().unlock();
+      LOOKUP_TIME.recordSince(startNanos);
+    }
+  }
+
+  /**
+   * Returns the version of the task list, incremented by every committed batch.
+   *
+   * @return the current version.
+   */
+  public long getVersion() {
+    lock.readLock().lock();
+    try {
+      return version;
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   /**
@@ -160,42 +1154,156 @@ public class TaskManager {
    * @param queryMode query mode, default ALL
    * @param sortMode sort mode, default CREATION
    *
-   * @return a list of tasks sorted by creation time
+   * @return an unmodifiable list of tasks, shared with other callers of the same query
    */
   public List<Task> getTasks(QueryMode queryMode, SortMode sortMode) {
-    List<Task> tasks = getTasksByQueryMode(queryMode);
-    if (!tasks.isEmpty()) {
-      switch (sortMode) {
-        case CREATION:
-          tasks.sort(Comparator.comparing(Task::getStartTime));
-          break;
-        case CREATION_R:
-          tasks.sort(Comparator.comparing(Task::getStartTime).reversed());
-          break;
-        case DUE:
-          tasks.sort(Comparator.comparing(Task::getExpectedEndTime));
-          break;
-        case DUE_R:
-          tasks.sort(Comparator.comparing(Task::getExpectedEndTime).reversed());
-          break;
-        case HEAT:
-          tasks.sort(Comparator.comparing(Task::getHeatIndex).reversed());
-          break;
-        case COMPLETE:
-          tasks = getTasksByQueryMode(QueryMode.COMPLETE);
-          tasks.sort(Comparator.comparing(Task::getActualEndTime));
-          break;
-        case COMPLETE_R:
-          tasks = getTasksByQueryMode(QueryMode.COMPLETE);
-          tasks.sort(Comparator.comparing(Task::getActualEndTime).reversed());
-          break;
-        default:
-          break;
-      }
+    QueryEvent event = null;
+    if (JfrEvents.isEnabled()) {
+      event = new QueryEvent();
+      event.begin();
+    }
+    long startNanos = System.nanoTime();
+    List<Task> result;
+    lock.readLock().lock();
+    try {
+      result = cachedQuery(queryMode, sortMode, event);
+    } finally {
+      lock.readLock().unlock();
+      GET_TASKS_TIME.recordSince(startNanos);
+    }
+    if (event != null) {
+      event.queryMode = queryMode.name();
+      event.sortMode = sortMode.name();
+      event.resultSize = result.size();
+      event.commit();
+    }
+    return result;
+  }
+
+  private List<Task> sortTasks(QueryMode queryMode, SortMode sortMode) {
+    if (sortMode == SortMode.READY_FIRST) {
+      // The table has no columns for dependencies; three buckets keep creation order in O(n).
+      return readyFirst(getTasksByQueryMode(queryMode));
+    }
+    boolean parallel = tasks.size() >= parallelQueryThreshold;
+    if (table != null) {
+      return parallel ? table.parallelQuery(queryMode, sortMode) : table.query(queryMode, sortMode);
+    }
+    QueryMode mode = effectiveQueryMode(queryMode, sortMode);
+    List<Task> tasks;
+    if (parallel) {
+      // Only the filter runs in parallel: parallel object sorts do not keep equal keys in list
+      // order, which the columnar table gets from packing the row into the sort key.
+      tasks = this.tasks.parallelStream()
+              .filter(task -> mode == QueryMode.ALL
+                      || task.isCompleted() == (mode == QueryMode.COMPLETE))
+              .collect(Collectors.toCollection(ArrayList::new));
+    } else {
+      tasks = getTasksByQueryMode(mode);
     }
+    tasks.sort(comparator(sortMode));
     return tasks;
   }
 
+  private List<Task> readyFirst(List<Task> tasks) {
+    List<Task> blocked = new ArrayList<>();
+    List<Task> completed = new ArrayList<>();
+    List<Task> result = new ArrayList<>(tasks.size());
+    for (Task task : tasks) {
+      switch (dependencies.readyGroup(task)) {
+        case 0 -> result.add(task);
+        case 1 -> blocked.add(task);
+        default -> completed.add(task);
+      }
+    }
+    result.addAll(blocked);
+    result.addAll(completed);
+    return result;
+  }
+
+  private Comparator<Task> comparator(SortMode sortMode) {
+    return switch (sortMode) {
+      case CREATION -> Comparator.comparingLong(Task::getStartMillis);
+      case CREATION_R -> Comparator.comparingLong(Task::getStartMillis).reversed();
+      case DUE -> Comparator.comparingLong(Task::getExpectedEndMillis);
+      case DUE_R -> Comparator.comparingLong(Task::getExpectedEndMillis).reversed();
+      case HEAT -> Comparator.comparingInt(Task::getHeatIndex).reversed();
+      case COMPLETE -> Comparator.comparingLong(Task::getActualEndMillis);
+      case COMPLETE_R -> Comparator.comparingLong(Task::getActualEndMillis).reversed();
+      case READY_FIRST -> Comparator.comparingInt(dependencies::readyGroup);
+    };
+  }
+
+  /**
+   * Returns the query mode a query actually runs with; sorting by completion time only
+   * considers completed tasks.
+   */
+  static QueryMode effectiveQueryMode(QueryMode queryMode, SortMode sortMode) {
+    return sortMode == SortMode.COMPLETE || sortMode == SortMode.COMPLETE_R
+            ? QueryMode.COMPLETE : queryMode;
+  }
+
+  /**
+   * Returns the first tasks of {@link #getTasks(QueryMode, SortMode)}. On large stores with
+   * the columnar table this avoids sorting the tasks which are not returned.
+   *
+   * @param queryMode query mode
+   * @param sortMode  sort mode
+   * @param limit     maximum number of tasks to return
+   * @return at most limit tasks
+   */
+  public List<Task> getTopTasks(QueryMode queryMode, SortMode sortMode, int limit) {
+    long startNanos = System.nanoTime();
+    lock.readLock().lock();
+    try {
+      List<Task> sorted = queryCache.get(queryKey(queryMode, sortMode),
+              queryStamp(queryMode, sortMode));
+      if (sorted == null && table != null && tasks.size() >= parallelQueryThreshold
+              && sortMode != SortMode.READY_FIRST) {
+        return table.parallelTop(queryMode, sortMode, limit);
+      }
+      if (sorted == null) {
+        sorted = cachedQuery(queryMode, sortMode, null);
+      }
+      return new ArrayList<>(sorted.subList(0, Math.min(limit, sorted.size())));
+    } finally {
+      lock.readLock().unlock();
+      GET_TASKS_TIME.recordSince(startNanos);
+    }
+  }
+
+  /**
+   * Returns the size of {@link #getTasks(QueryMode, SortMode)} without building the list.
+   *
+   * @param queryMode query mode
+   * @param sortMode  sort mode
+   * @return the number of tasks the query returns
+   */
+  public int countTasks(QueryMode queryMode, SortMode sortMode) {
+    QueryMode mode = effectiveQueryMode(queryMode, sortMode);
+    lock.readLock().lock();
+    try {
+      if (table != null) {
+        return table.count(mode);
+      }
+      return (int) tasks.stream()
+              .filter(task -> mode == QueryMode.ALL
+                      || task.isCompleted() == (mode == QueryMode.COMPLETE))
+              .count();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Sets the number of tasks from which queries run in parallel on the fork/join pool.
+   *
+   * @param threshold the minimum store size for parallel queries.
+   */
+  public void setParallelQueryThreshold(int threshold) {
+    this.parallelQueryThreshold = threshold;
+  }
+
   /**
    * Retrieves a list of tasks sorted by default sort mode and filtered by default query mode.
    *
@@ -207,6 +1315,25 @@ public class TaskManager {
   }
 
 
+  /**
+   * Retrieves the tasks with a given tag.
+   *
+   * @param tag the tag, compared with equals.
+   * @return the matching tasks in creation order.
+   */
+  public List<Task> getTasksByTag(Tag tag) {
+    lock.readLock().lock();
+    try {
+      if (table != null) {
+        return table.withTag(tag);
+      }
+      return tasks.stream().filter(task -> tag.equals(task.getTag()))
+              .collect(Collectors.toList());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
   /**
    * Retrieves tasks with selected query mode.
    *
@@ -224,13 +1351,107 @@ public class TaskManager {
 
   /**
    * Saves the current list of tasks to a specified file for persistent storage.
+   * The tasks are written to a temporary file which then replaces the file, so readers never
+   * see a partially written file. Saving again to the same file only encodes the tasks which
+   * changed since; the records of the others are copied from the file, see {@link TaskCodec}.
    *
    * @param fileName The name of the file to save tasks to.
    * @throws IOException if an I/O error occurs.
    */
-  public synchronized void saveTasksToFile(String fileName) throws IOException {
-    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fileName))) {
-      oos.writeObject(tasks);
+  public void saveTasksToFile(String fileName) throws IOException {
+    saveTasksToFile(fileName, null);
+  }
+
+  /**
+   * Saves the tasks like {@link #saveTasksToFile(String)}. The read lock is only held while the
+   * changed tasks are encoded and the copies of the others are planned, so batches can go on
+   * while the file is written; if one does, the extents of the new file are not recorded and
+   * the next save encodes every task. Saves are serialized by the monitor of this manager.
+   *
+   * @param fileName    The name of the file to save tasks to.
+   * @param whileLocked called while the read lock is still held after encoding, so that it sees
+   *                    exactly the saved state; the action it returns, if any, runs once the
+   *                    file has been replaced. May be null.
+   * @throws IOException if an I/O error occurs.
+   */
+  synchronized void saveTasksToFile(String fileName, Supplier<Runnable> whileLocked)
+          throws IOException {
+    SaveEvent event = null;
+    if (JfrEvents.isEnabled()) {
+      event = new SaveEvent();
+      event.begin();
+    }
+    long startNanos = System.nanoTime();
+    int taskCount;
+    Runnable afterSave = null;
+    Path target = Path.of(fileName).toAbsolutePath();
+    // Not Files.createTempFile, whose owner-only permissions would carry over to the file
+    Path temporary = target.resolveSibling(target.getFileName() + "."
+            + ProcessHandle.current().pid() + "." + System.nanoTime() + ".tmp");
+    try (FileChannel previous = openIfExists(target);
+         TaskCodec.Writer writer = new TaskCodec.Writer(previous, compression)) {
+      // Stamped after opening, so a file replaced in between is not mistaken for the old one
+      TaskCodec.FileStamp previousFile = previous != null ? TaskCodec.FileStamp.read(target)
+              : null;
+      long savedVersion;
+      lock.readLock().lock();
+      try {
+        // Records can only be reused if nobody replaced the file since this manager wrote it
+        writer.collect(tasks, recurringTasks,
+                previousFile != null && previousFile.equals(recordFile));
+        savedVersion = version;
+        taskCount = tasks.size();
+        if (whileLocked != null) {
+          afterSave = whileLocked.get();
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+      try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+              StandardOpenOption.WRITE)) {
+        writer.writeTo(out);
+      }
+      try {
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      TaskCodec.FileStamp savedFile = TaskCodec.FileStamp.read(target);
+      lock.readLock().lock();
+      try {
+        // A task changed since may already have been told its record is stale
+        if (version == savedVersion) {
+          writer.applyExtents();
+          recordFile = savedFile;
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+      SAVE_ENCODED_BYTES.add(writer.getEncodedBytes());
+      SAVE_REUSED_BYTES.add(writer.getReusedBytes());
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    if (afterSave != null) {
+      afterSave.run();
+    }
+    long bytes = new File(fileName).length();
+    SAVE_BYTES.add(bytes);
+    SAVE_TIME.recordSince(startNanos);
+    if (event != null) {
+      event.path = fileName;
+      event.taskCount = taskCount;
+      event.bytes = bytes;
+      event.commit();
+    }
+  }
+
+  private static FileChannel openIfExists(Path path) throws IOException {
+    try {
+      return FileChannel.open(path, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      return null;
     }
   }
 
@@ -243,10 +1464,69 @@ public class TaskManager {
    */
   @SuppressWarnings("unchecked")
   public void loadTasksFromFile(String fileName) throws IOException, ClassNotFoundException {
-    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
-      tasks = (List<Task>) ois.readObject();
-    } catch (FileNotFoundException e) {
-      System.out.println("File not found.");
+    LoadEvent event = null;
+    if (JfrEvents.isEnabled()) {
+      event = new LoadEvent();
+      event.begin();
+    }
+    long startNanos = System.nanoTime();
+    List<Task> loaded;
+    List<RecurringTask> loadedTemplates;
+    Path path = Path.of(fileName).toAbsolutePath();
+    TaskCodec.FileStamp loadedFile = TaskCodec.FileStamp.read(path);
+    if (loadedFile == null) {
+      System.err.println("File not found.");
+      return;
+    }
+    if (TaskCodec.isTaskFile(path)) {
+      TaskCodec.Content content = TaskCodec.read(path);
+      loaded = content.tasks();
+      loadedTemplates = content.templates();
+    } else {
+      // Saved with Java serialization by an earlier version
+      loadedFile = null;
+      try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
+        loaded = (List<Task>) ois.readObject();
+        try {
+          loadedTemplates = (List<RecurringTask>) ois.readObject();
+        } catch (EOFException e) {
+          // Saved before recurring tasks
+          loadedTemplates = new ArrayList<>();
+        }
+      }
+    }
+    lock.writeLock().lock();
+    try {
+      tasks = loaded;
+      recordFile = loadedFile;
+      recurringTasks = loadedTemplates;
+      // The history refers to the replaced tasks
+      history.clear();
+      if (table != null) {
+        table = new TaskTable(loaded);
+      }
+      tasksByUid.clear();
+      tasksById.clear();
+      for (Task task : loaded) {
+        tasksByUid.put(task.getUid(), task);
+        tasksById.put(task.getId(), task);
+        Task.reserveId(task.getId());
+        task.getSubtasks().forEach(subtask -> Subtask.reserveId(subtask.getId()));
+      }
+      dependencies = new DependencyGraph(tasksByUid::get);
+      loaded.forEach(dependencies::addTask);
+      intervals.rebuild(loaded);
+      version++;
+      allFieldsChanged();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    LOAD_TIME.recordSince(startNanos);
+    if (event != null) {
+      event.path = fileName;
+      event.taskCount = loaded.size();
+      event.bytes = new File(fileName).length();
+      event.commit();
     }
   }
 
@@ -258,7 +1538,12 @@ public class TaskManager {
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder("Task List:\n");
-    tasks.forEach(task -> sb.append(task).append("\n"));
+    lock.readLock().lock();
+    try {
+      tasks.forEach(task -> sb.append(task).append("\n"));
+    } finally {
+      lock.readLock().unlock();
+    }
     return sb.toString();
   }
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package task;
+
+/**
+ * Amount of work done out of a total, e.g. for today's tasks. A task with subtasks counts as
+ * one unit per subtask, a task without subtasks as one unit.
+ *
+ * @param done  units done.
+ * @param total units in total.
+ */
+public record TaskProgress(int done, int total) {
+
+  /**
+   * Returns the done units as a whole percentage.
+   *
+   * @return 0 to 100, or 0 if there is no work.
+   */
+  public int percent() {
+    return total == 0 ? 0 : (int) (100L * done / total);
+  }
+}
@@ -0,0 +1,651 @@
+package task;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A task file shared by several processes, e.g. the GUI and the command line.
+ *
+ * <p>Every load and commit holds an exclusive {@link FileLock} on a sidecar file next to the
+ * task file, named like it with a ".lock" suffix. Its header holds a sequence number which
+ * each commit increments, so a process can tell cheaply whether another one committed since it
+ * last read the file. The task file itself keeps its format, so earlier versions can still read
+ * it, and is replaced atomically.
+ *
+ * <p>External commits are merged into the TaskManager instead of being overwritten: the state
+ * of the file when this process last read or wrote it is kept as a base, and each field of
+ * each task which changed in the file but not locally since then is applied in one batch.
+ * The base also keeps the checksum of each task record, so a merge only decodes the records
+ * which differ from it, and the UIDs of the tasks changed by batches since, so a commit only
+ * compares and captures those tasks.
+ * When both sides changed the same field, the local value wins. A task deleted in the file is
+ * deleted locally unless it was changed locally. Recurring tasks are merged by UID and by the
+ * completion status of each occurrence.
+ *
+ * <p>Two stores must not share a file within one JVM, as file locks are held per process.
+ */
+public final class TaskStore implements AutoCloseable {
+
+  private static final int HEADER_MAGIC = 0x4A54444F; // "JTDO"
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+  private static final long WATCH_SETTLE_MILLIS = 50;
+
+  /**
+   * Fields of a task which are merged independently.
+   */
+  private enum Field {
+    DESCRIPTION,
+    TAG,
+    DUE,
+    COMPLETION,
+    HEAT,
+    SUBTASKS,
+    DEPENDENCIES,
+  }
+
+  private record SubtaskState(String uid, String title, String description, long startTime,
+                              String parentUid, boolean completed, long actualEndTime) {
+  }
+
+  private record TaskState(String title, long startTime, String description, Tag tag,
+                           long dueTime, boolean completed, long actualEndTime, int heat,
+                           List<SubtaskState> subtasks, List<String> blockers) {
+
+    static TaskState capture(Task task) {
+      List<SubtaskState> subtasks = new ArrayList<>(task.getSubtaskCount());
+      for (Subtask subtask : task.getSubtasks()) {
+        Subtask parent = subtask.getParentSubtask();
+        subtasks.add(new SubtaskState(subtask.getUid(), subtask.getTitle(),
+                subtask.getDescription(), subtask.getStartMillis(),
+                parent == null ? null : parent.getUid(), subtask.isCompleted(),
+                subtask.getActualEndMillis()));
+      }
+      return new TaskState(task.getTitle(), task.getStartMillis(), task.getDescription(),
+              task.getTag(), task.getExpectedEndMillis(), task.isCompleted(),
+              task.getActualEndMillis(), task.getHeatIndex(), subtasks,
+              List.copyOf(task.getBlockerUids()));
+    }
+
+    Object get(Field field) {
+      return switch (field) {
+        case DESCRIPTION -> description;
+        case TAG -> tag;
+        case DUE -> dueTime;
+        case COMPLETION -> completed ? actualEndTime : null;
+        case HEAT -> heat;
+        case SUBTASKS -> subtasks;
+        case DEPENDENCIES -> blockers;
+      };
+    }
+  }
+
+  /**
+   * The content of the task file as this process last read or wrote it, with the checksum of
+   * each task record, 0 if unknown. Updated in place, task by task.
+   */
+  private record Snapshot(Map<String, TaskState> tasks, Map<String, Long> checksums,
+                          Map<String, BitSet> templates) {
+
+    static Snapshot empty() {
+      // In file order, so that a merge adds new tasks in that order
+      return new Snapshot(new LinkedHashMap<>(), new HashMap<>(), new HashMap<>());
+    }
+
+    static Snapshot capture(List<Task> tasks, List<RecurringTask> templates) {
+      Snapshot snapshot = empty();
+      for (Task task : tasks) {
+        snapshot.put(task.getUid(), TaskState.capture(task), task.recordChecksum);
+      }
+      snapshot.templates().putAll(captureTemplates(templates));
+      return snapshot;
+    }
+
+    static Map<String, BitSet> captureTemplates(List<RecurringTask> templates) {
+      Map<String, BitSet> states = new HashMap<>();
+      for (RecurringTask template : templates) {
+        states.put(template.getUid(), template.getCompletedOccurrences());
+      }
+      return states;
+    }
+
+    /**
+     * Records the state of a task, or that it is not in the file if the state is null.
+     */
+    void put(String uid, TaskState state, long checksum) {
+      if (state == null) {
+        tasks.remove(uid);
+        checksums.remove(uid);
+      } else {
+        tasks.put(uid, state);
+        checksums.put(uid, checksum);
+      }
+    }
+  }
+
+  private final TaskManager manager;
+  private final Path file;
+  private final Path lockFile;
+  private Snapshot base = Snapshot.empty();
+  // Tasks added, removed or updated by batches and not compared with the base since
+  private final Set<String> dirtyUids = ConcurrentHashMap.newKeySet();
+  private final TaskChangeListener dirtyTracker = this::markDirty;
+  private long sequence;
+  private FileTime modifiedTime;
+  private long size = -1;
+  private WatchService watchService;
+
+  /**
+   * Creates a store for a task file. Call {@link #load()} before the first commit.
+   *
+   * @param manager the task manager holding the tasks of the file.
+   * @param file    the task file, which may not exist yet.
+   */
+  public TaskStore(TaskManager manager, Path file) {
+    this.manager = manager;
+    this.file = file.toAbsolutePath();
+    this.lockFile = this.file.resolveSibling(this.file.getFileName() + ".lock");
+    manager.addLockedChangeListener(dirtyTracker);
+  }
+
+  private void markDirty(TaskChangeEvent event) {
+    for (Task task : event.getAdded()) {
+      dirtyUids.add(task.getUid());
+    }
+    for (Task task : event.getRemoved()) {
+      dirtyUids.add(task.getUid());
+    }
+    for (Task task : event.getUpdated()) {
+      dirtyUids.add(task.getUid());
+    }
+  }
+
+  /**
+   * Opens a store on a detached TaskManager, which never auto-saves.
+   *
+   * @param file the task file, which may not exist yet.
+   * @return a loaded store.
+   * @throws IOException            if an I/O error occurs.
+   * @throws ClassNotFoundException if the file content does not match expected format.
+   */
+  public static TaskStore open(Path file) throws IOException, ClassNotFoundException {
+    TaskStore store = new TaskStore(TaskManager.createInMemory(), file);
+    store.load();
+    return store;
+  }
+
+  public TaskManager getManager() {
+    return manager;
+  }
+
+  /**
+   * Replaces the tasks of the manager with the content of the file.
+   *
+   * @throws IOException            if an I/O error occurs.
+   * @throws ClassNotFoundException if the file content does not match expected format.
+   */
+  public synchronized void load() throws IOException, ClassNotFoundException {
+    try (FileChannel channel = openLockFile()) {
+      FileLock lock = channel.lock();
+      try {
+        if (Files.exists(file)) {
+          manager.loadTasksFromFile(file.toString());
+        }
+        base = manager.read(tasks -> {
+          dirtyUids.clear();
+          return Snapshot.capture(tasks, manager.getRecurringTasks());
+        });
+        sequence = readSequence(channel);
+        recordFileStamp();
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  /**
+   * Writes the tasks to the file, after merging changes committed by other processes since
+   * this one last read or wrote it. Does nothing if neither side changed anything.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  public synchronized void commit() throws IOException {
+    try (FileChannel channel = openLockFile()) {
+      FileLock lock = channel.lock();
+      try {
+        if (isChangedExternally(channel)) {
+          mergeExternalChanges(channel);
+        }
+        if (!manager.read(tasks -> hasLocalChanges())) {
+          return;
+        }
+        List<String> committed = new ArrayList<>();
+        try {
+          manager.saveTasksToFile(file.toString(), () -> captureCommitted(committed));
+        } catch (IOException | RuntimeException e) {
+          dirtyUids.addAll(committed);
+          throw e;
+        }
+        sequence++;
+        writeSequence(channel, sequence);
+        recordFileStamp();
+      } finally {
+        lock.release();
+      }
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Task file written by an incompatible version.", e);
+    }
+  }
+
+  /**
+   * Tells whether the tasks differ from the base, dropping the dirty tasks which do not.
+   * Caller must hold the read lock of the manager.
+   */
+  private boolean hasLocalChanges() {
+    boolean changed = false;
+    for (Iterator<String> it = dirtyUids.iterator(); it.hasNext(); ) {
+      String uid = it.next();
+      Task task = manager.findTaskByUid(uid);
+      TaskState old = base.tasks().get(uid);
+      if (task == null ? old == null : TaskState.capture(task).equals(old)) {
+        it.remove();
+      } else {
+        changed = true;
+      }
+    }
+    return changed || !base.templates().equals(
+            Snapshot.captureTemplates(manager.getRecurringTasks()));
+  }
+
+  /**
+   * Captures the dirty tasks as they are being saved, with the checksums of their new records,
+   * and moves their UIDs to the given list. Called under the read lock of the manager.
+   *
+   * @return the update of the base, to run once the file is saved.
+   */
+  private Runnable captureCommitted(List<String> committed) {
+    Snapshot saved = Snapshot.empty();
+    for (Iterator<String> it = dirtyUids.iterator(); it.hasNext(); ) {
+      String uid = it.next();
+      it.remove();
+      committed.add(uid);
+      Task task = manager.findTaskByUid(uid);
+      saved.put(uid, task == null ? null : TaskState.capture(task),
+              task == null ? 0 : task.recordChecksum);
+    }
+    Map<String, BitSet> templates = Snapshot.captureTemplates(manager.getRecurringTasks());
+    return () -> {
+      for (String uid : committed) {
+        base.put(uid, saved.tasks().get(uid), saved.checksums().getOrDefault(uid, 0L));
+      }
+      base.templates().clear();
+      base.templates().putAll(templates);
+    };
+  }
+
+  /**
+   * Merges changes committed by other processes, if there are any.
+   *
+   * @return true if the file had changed.
+   * @throws IOException if an I/O error occurs.
+   */
+  public synchronized boolean refresh() throws IOException {
+    if (!Files.exists(lockFile) && !isFileStampChanged()) {
+      return false;
+    }
+    try (FileChannel channel = openLockFile()) {
+      FileLock lock = channel.lock();
+      try {
+        if (!isChangedExternally(channel)) {
+          return false;
+        }
+        mergeExternalChanges(channel);
+        return true;
+      } finally {
+        lock.release();
+      }
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Task file written by an incompatible version.", e);
+    }
+  }
+
+  /**
+   * Starts a daemon thread which merges external changes as soon as the file system reports a
+   * change of the task file or of its lock file.
+   *
+   * @throws IOException if the directory cannot be watched.
+   */
+  public synchronized void watch() throws IOException {
+    if (watchService != null) {
+      return;
+    }
+    WatchService service = file.getFileSystem().newWatchService();
+    file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+    watchService = service;
+    Thread thread = new Thread(() -> watchLoop(service), "jtodo-store-watch");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void watchLoop(WatchService service) {
+    try {
+      while (true) {
+        WatchKey key = service.take();
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+          Object context = event.context();
+          relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                  || file.getFileName().equals(context) || lockFile.getFileName().equals(context);
+        }
+        key.reset();
+        if (!relevant) {
+          continue;
+        }
+        // A commit touches both files, let the burst of events settle
+        for (WatchKey next; (next = service.poll(WATCH_SETTLE_MILLIS, TimeUnit.MILLISECONDS))
+                != null; ) {
+          next.pollEvents();
+          next.reset();
+        }
+        try {
+          refresh();
+        } catch (IOException | RuntimeException e) {
+          System.err.println("Failed to merge external task changes: " + e.getMessage());
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Closed
+    }
+  }
+
+  /**
+   * Stops watching the file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    manager.removeLockedChangeListener(dirtyTracker);
+    if (watchService != null) {
+      watchService.close();
+      watchService = null;
+    }
+  }
+
+  private FileChannel openLockFile() throws IOException {
+    return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+  }
+
+  private static long readSequence(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+      // Keep reading until the header is complete or the file ends
+    }
+    if (header.hasRemaining() || header.getInt(0) != HEADER_MAGIC) {
+      return 0;
+    }
+    return header.getLong(Integer.BYTES);
+  }
+
+  private static void writeSequence(FileChannel channel, long sequence) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(HEADER_MAGIC).putLong(sequence);
+    header.flip();
+    while (header.hasRemaining()) {
+      channel.write(header, header.position());
+    }
+    channel.force(false);
+  }
+
+  // Writers which do not use a store, e.g. earlier versions, do not increment the sequence, so
+  // the modification time and size of the file are compared too.
+  private boolean isChangedExternally(FileChannel channel) throws IOException {
+    return readSequence(channel) != sequence || isFileStampChanged();
+  }
+
+  private boolean isFileStampChanged() throws IOException {
+    if (!Files.exists(file)) {
+      return size >= 0;
+    }
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    return attributes.size() != size || !attributes.lastModifiedTime().equals(modifiedTime);
+  }
+
+  private void recordFileStamp() throws IOException {
+    if (Files.exists(file)) {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      size = attributes.size();
+      modifiedTime = attributes.lastModifiedTime();
+    } else {
+      size = -1;
+      modifiedTime = null;
+    }
+  }
+
+  /**
+   * Reads the file and applies the changes it made relative to the base. Caller must hold the
+   * file lock.
+   */
+  private void mergeExternalChanges(FileChannel channel)
+          throws IOException, ClassNotFoundException {
+    if (!Files.exists(file)) {
+      // Deleted: keep the tasks, the next commit writes all of them again
+      base = Snapshot.empty();
+      manager.read(tasks -> {
+        tasks.forEach(task -> dirtyUids.add(task.getUid()));
+        return null;
+      });
+      sequence = readSequence(channel);
+      recordFileStamp();
+      return;
+    }
+    List<TaskCodec.Record> records;
+    List<RecurringTask> theirTemplates;
+    if (TaskCodec.isTaskFile(file)) {
+      TaskCodec.Scan scan = TaskCodec.scan(file);
+      records = scan.records();
+      theirTemplates = scan.templates();
+    } else {
+      // Saved with Java serialization by an earlier version, without checksums
+      TaskManager external = TaskManager.open(file.toString());
+      records = new ArrayList<>();
+      for (Task task : external.getTasks()) {
+        records.add(new TaskCodec.Record(task));
+      }
+      theirTemplates = external.getRecurringTasks();
+    }
+    // Only the records which differ from the base are decoded
+    Snapshot theirs = Snapshot.empty();
+    Set<String> present = new HashSet<>();
+    for (TaskCodec.Record record : records) {
+      String uid = record.getUid();
+      present.add(uid);
+      long checksum = record.getChecksum();
+      if (checksum == 0 || !base.checksums().getOrDefault(uid, 0L).equals(checksum)) {
+        theirs.put(uid, TaskState.capture(record.decode()), checksum);
+      }
+    }
+    List<String> deleted = new ArrayList<>();
+    for (String uid : base.tasks().keySet()) {
+      if (!present.contains(uid)) {
+        deleted.add(uid);
+      }
+    }
+    theirs.templates().putAll(Snapshot.captureTemplates(theirTemplates));
+    manager.batch(tx -> {
+      mergeTasks(tx, theirs, deleted);
+      mergeTemplates(tx, theirs, theirTemplates);
+    });
+    for (String uid : theirs.tasks().keySet()) {
+      base.put(uid, theirs.tasks().get(uid), theirs.checksums().get(uid));
+    }
+    for (String uid : deleted) {
+      base.put(uid, null, 0);
+    }
+    base.templates().clear();
+    base.templates().putAll(theirs.templates());
+    // Where the local side won, the tasks now differ from the new base
+    dirtyUids.addAll(theirs.tasks().keySet());
+    dirtyUids.addAll(deleted);
+    sequence = readSequence(channel);
+    recordFileStamp();
+  }
+
+  /**
+   * Applies the tasks of the file which differ from the base, and the deletions.
+   */
+  private void mergeTasks(TaskTransaction tx, Snapshot theirs, List<String> deleted) {
+    List<Task> dependencyChanges = new ArrayList<>();
+    List<TaskState> dependencyStates = new ArrayList<>();
+    for (Map.Entry<String, TaskState> entry : theirs.tasks().entrySet()) {
+      String uid = entry.getKey();
+      TaskState their = entry.getValue();
+      TaskState old = base.tasks().get(uid);
+      Task task = manager.findTaskByUid(uid);
+      if (task == null) {
+        if (old != null) {
+          continue; // Deleted locally, which wins
+        }
+        // Added by the other process; copied so that the local ID sequence is kept
+        task = new Task(uid, their.title(), new Date(their.startTime()),
+                new Date(their.dueTime()));
+        tx.addTask(task);
+        old = TaskState.capture(task);
+      } else if (old == null) {
+        continue; // On both sides without a common base, keep ours
+      }
+      TaskState ours = TaskState.capture(task);
+      for (Field field : Field.values()) {
+        if (Objects.equals(their.get(field), old.get(field))
+                || !Objects.equals(ours.get(field), old.get(field))) {
+          continue; // Unchanged in the file, or changed on both sides and ours wins
+        }
+        if (field == Field.DEPENDENCIES) {
+          dependencyChanges.add(task);
+          dependencyStates.add(their);
+        } else {
+          apply(tx, task, their, field);
+        }
+      }
+    }
+    // Deleted by the other process, unless changed locally since
+    for (String uid : deleted) {
+      Task task = manager.findTaskByUid(uid);
+      if (task != null && TaskState.capture(task).equals(base.tasks().get(uid))) {
+        tx.removeTask(task);
+      }
+    }
+    // After every task exists, so that blockers can be found
+    for (int i = 0; i < dependencyChanges.size(); i++) {
+      applyDependencies(tx, dependencyChanges.get(i), dependencyStates.get(i).blockers());
+    }
+  }
+
+  private void mergeTemplates(TaskTransaction tx, Snapshot theirs,
+                              List<RecurringTask> theirTemplates) {
+    Map<String, RecurringTask> ours = new HashMap<>();
+    for (RecurringTask template : manager.getRecurringTasks()) {
+      ours.put(template.getUid(), template);
+    }
+    for (RecurringTask theirTemplate : theirTemplates) {
+      String uid = theirTemplate.getUid();
+      BitSet old = base.templates().get(uid);
+      RecurringTask template = ours.get(uid);
+      if (old == null && template == null) {
+        tx.addRecurringTask(theirTemplate);
+      } else if (old != null && template != null) {
+        BitSet their = theirs.templates().get(uid);
+        BitSet changed = (BitSet) their.clone();
+        changed.xor(old);
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+          if (template.isOccurrenceCompleted(i) == old.get(i)) {
+            tx.setOccurrenceCompleted(template, i, their.get(i));
+          }
+        }
+      }
+    }
+    for (String uid : base.templates().keySet()) {
+      RecurringTask template = ours.get(uid);
+      if (template != null && !theirs.templates().containsKey(uid)) {
+        tx.removeRecurringTask(template);
+      }
+    }
+  }
+
+  private static void apply(TaskTransaction tx, Task task, TaskState state, Field field) {
+    switch (field) {
+      case DESCRIPTION -> tx.setDescription(task, state.description());
+      case TAG -> tx.setTag(task, state.tag());
+      case DUE -> tx.setDueDate(task, new Date(state.dueTime()));
+      case COMPLETION -> tx.setTaskCompleted(task, state.completed(),
+              state.completed() ? new Date(state.actualEndTime()) : null);
+      case HEAT -> tx.setHeat(task, state.heat());
+      case SUBTASKS -> tx.setSubtasks(task, copySubtasks(task, state.subtasks()));
+      default -> {
+        // DEPENDENCIES are applied once every task exists
+      }
+    }
+  }
+
+  private static List<Subtask> copySubtasks(Task task, List<SubtaskState> states) {
+    List<Subtask> subtasks = new ArrayList<>(states.size());
+    Map<String, Subtask> byUid = new HashMap<>();
+    for (SubtaskState state : states) {
+      Subtask subtask = new Subtask(state.uid(), state.title(), new Date(state.startTime()),
+              task);
+      subtask.setDescription(state.description());
+      subtask.restoreCompletion(state.completed(), state.actualEndTime());
+      if (state.parentUid() != null) {
+        subtask.setParentSubtask(byUid.get(state.parentUid()));
+      }
+      byUid.put(state.uid(), subtask);
+      subtasks.add(subtask);
+    }
+    return subtasks;
+  }
+
+  private void applyDependencies(TaskTransaction tx, Task task, List<String> blockers) {
+    for (String uid : List.copyOf(task.getBlockerUids())) {
+      Task blocker = manager.findTaskByUid(uid);
+      if (!blockers.contains(uid) && blocker != null) {
+        tx.removeDependency(blocker, task);
+      }
+    }
+    for (String uid : blockers) {
+      Task blocker = manager.findTaskByUid(uid);
+      if (blocker == null || task.getBlockerUids().contains(uid)) {
+        continue;
+      }
+      try {
+        tx.addDependency(blocker, task);
+      } catch (IllegalArgumentException e) {
+        // Would close a cycle with a dependency added locally
+        System.err.println("Skipped dependency " + uid + " -> " + task.getUid() + ": "
+                + e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,552 @@
+package task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Columnar copy of the fields that TaskManager filters and sorts on.
+ * Row i holds the values of the i-th task of the manager's list in parallel primitive arrays,
+ * so a query scans contiguous memory instead of visiting every Task object. Tags are
+ * dictionary-encoded, 0 meaning no tag. The Task objects stay the source of truth; the manager
+ * keeps the table in step with them while holding the write lock, and queries read it under the
+ * read lock.
+ */
+final class TaskTable {
+
+  private static final int INITIAL_CAPACITY = 16;
+  // Runs of this length are insertion sorted before merging.
+  private static final int SORT_RUN = 32;
+  // Rows scanned by one fork/join task of a parallel query.
+  private static final int CHUNK_ROWS = 1 << 14;
+  // Up to this limit, top-k queries keep a sorted buffer per chunk instead of sorting it.
+  private static final int SMALL_TOP = 256;
+
+  private Task[] rows = new Task[INITIAL_CAPACITY];
+  private int[] ids = new int[INITIAL_CAPACITY];
+  private boolean[] completed = new boolean[INITIAL_CAPACITY];
+  private long[] start = new long[INITIAL_CAPACITY];
+  private long[] due = new long[INITIAL_CAPACITY];
+  private long[] end = new long[INITIAL_CAPACITY];
+  private int[] heat = new int[INITIAL_CAPACITY];
+  private int[] tagCodes = new int[INITIAL_CAPACITY];
+  private int size;
+
+  private final List<Tag> tagDictionary = new ArrayList<>();
+  private final Map<Tag, Integer> tagCodeByTag = new HashMap<>();
+
+  // Row of each task id, -1 if none. Inserting or removing in the middle shifts rows, which
+  // only marks the index stale; it is rebuilt by the next lookup.
+  private int[] rowById = new int[0];
+  private boolean rowByIdValid = true;
+
+  /**
+   * Creates a table holding the given tasks in list order.
+   */
+  TaskTable(List<Task> tasks) {
+    for (Task task : tasks) {
+      insert(size, task);
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Inserts a row, mirroring List.add(index, task).
+   */
+  void insert(int index, Task task) {
+    if (size == rows.length) {
+      grow();
+    }
+    if (index < size) {
+      int moved = size - index;
+      System.arraycopy(rows, index, rows, index + 1, moved);
+      System.arraycopy(ids, index, ids, index + 1, moved);
+      System.arraycopy(completed, index, completed, index + 1, moved);
+      System.arraycopy(start, index, start, index + 1, moved);
+      System.arraycopy(due, index, due, index + 1, moved);
+      System.arraycopy(end, index, end, index + 1, moved);
+      System.arraycopy(heat, index, heat, index + 1, moved);
+      System.arraycopy(tagCodes, index, tagCodes, index + 1, moved);
+      rowByIdValid = false;
+    }
+    size++;
+    write(index, task);
+    if (rowByIdValid) {
+      indexRow(task.getId(), index);
+    }
+  }
+
+  /**
+   * Removes a row, mirroring List.remove(index).
+   */
+  void remove(int index) {
+    int id = ids[index];
+    int moved = size - index - 1;
+    if (moved > 0) {
+      System.arraycopy(rows, index + 1, rows, index, moved);
+      System.arraycopy(ids, index + 1, ids, index, moved);
+      System.arraycopy(completed, index + 1, completed, index, moved);
+      System.arraycopy(start, index + 1, start, index, moved);
+      System.arraycopy(due, index + 1, due, index, moved);
+      System.arraycopy(end, index + 1, end, index, moved);
+      System.arraycopy(heat, index + 1, heat, index, moved);
+      System.arraycopy(tagCodes, index + 1, tagCodes, index, moved);
+      rowByIdValid = false;
+    } else if (rowByIdValid && id < rowById.length) {
+      rowById[id] = -1;
+    }
+    size--;
+    rows[size] = null;
+  }
+
+  /**
+   * Copies the current field values of a task into its row; does nothing if it has none.
+   */
+  void update(Task task) {
+    int row = rowOf(task);
+    if (row >= 0) {
+      write(row, task);
+    }
+  }
+
+  /**
+   * Returns the tasks matching a query mode, sorted by a sort mode, with the same result as
+   * sorting the filtered list with TaskManager's comparators.
+   */
+  List<Task> query(TaskManager.QueryMode queryMode, TaskManager.SortMode sortMode) {
+    int[] selected = filter(TaskManager.effectiveQueryMode(queryMode, sortMode));
+    int count = selected.length;
+    long[] keys = sortKeys(selected, sortMode);
+    if (keys != null) {
+      sortByKey(keys, selected, count);
+    }
+    List<Task> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(rows[selected[i]]);
+    }
+    return result;
+  }
+
+  /**
+   * Parallel version of {@link #query}. Chunks of rows are filtered on the fork/join pool into
+   * disjoint ranges of one array of packed (key, row) longs, which Arrays.parallelSort then
+   * orders. Packing puts the row in the low bits, so equal keys keep list order as in query().
+   * Falls back to query() if the key range is too wide to pack.
+   */
+  List<Task> parallelQuery(TaskManager.QueryMode queryMode, TaskManager.SortMode sortMode) {
+    Scan scan = new Scan(TaskManager.effectiveQueryMode(queryMode, sortMode), sortMode);
+    if (!scan.packable) {
+      return query(queryMode, sortMode);
+    }
+    long[] packed = new long[scan.total];
+    IntStream.range(0, scan.chunks).parallel()
+            .forEach(chunk -> scan.pack(chunk, packed, scan.offsets[chunk]));
+    Arrays.parallelSort(packed);
+    return scan.toTasks(packed);
+  }
+
+  /**
+   * Returns the first tasks of {@link #query}, without sorting the rest. Every chunk keeps its
+   * own sorted top k, and the chunk results are merged pairwise in parallel.
+   */
+  List<Task> parallelTop(TaskManager.QueryMode queryMode, TaskManager.SortMode sortMode,
+                         int limit) {
+    Scan scan = new Scan(TaskManager.effectiveQueryMode(queryMode, sortMode), sortMode);
+    if (!scan.packable) {
+      List<Task> all = query(queryMode, sortMode);
+      return new ArrayList<>(all.subList(0, Math.min(limit, all.size())));
+    }
+    long[] top = IntStream.range(0, scan.chunks).parallel()
+            .mapToObj(chunk -> {
+              long[] packed = new long[scan.offsets[chunk + 1] - scan.offsets[chunk]];
+              scan.pack(chunk, packed, 0);
+              if (limit > SMALL_TOP || packed.length <= limit) {
+                Arrays.sort(packed);
+                return packed.length > limit ? Arrays.copyOf(packed, limit) : packed;
+              }
+              return smallestSorted(packed, limit);
+            })
+            .reduce(new long[0], (left, right) -> mergeTop(left, right, limit));
+    return scan.toTasks(top);
+  }
+
+  /**
+   * Returns the number of rows matching a query mode.
+   */
+  int count(TaskManager.QueryMode queryMode) {
+    if (queryMode == TaskManager.QueryMode.ALL) {
+      return size;
+    }
+    boolean wanted = queryMode == TaskManager.QueryMode.COMPLETE;
+    int count = 0;
+    for (int row = 0; row < size; row++) {
+      if (completed[row] == wanted) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the limit smallest values in ascending order. Past the first few values almost
+   * every value is larger than the current maximum and costs one comparison.
+   */
+  private static long[] smallestSorted(long[] values, int limit) {
+    long[] top = new long[limit];
+    int filled = 0;
+    for (long value : values) {
+      if (filled == limit) {
+        if (value >= top[limit - 1]) {
+          continue;
+        }
+        filled--;
+      }
+      int i = filled++;
+      while (i > 0 && top[i - 1] > value) {
+        top[i] = top[i - 1];
+        i--;
+      }
+      top[i] = value;
+    }
+    return top;
+  }
+
+  private static long[] mergeTop(long[] left, long[] right, int limit) {
+    long[] merged = new long[Math.min(limit, left.length + right.length)];
+    int i = 0;
+    int j = 0;
+    for (int k = 0; k < merged.length; k++) {
+      merged[k] = j >= right.length || (i < left.length && left[i] <= right[j])
+              ? left[i++] : right[j++];
+    }
+    return merged;
+  }
+
+  /**
+   * One parallel scan. The constructor makes a first parallel pass counting the matching rows
+   * of each chunk and their key range, which gives every chunk its output offset and decides
+   * whether (key - minimum key, row) fits into one long.
+   */
+  private final class Scan {
+
+    final boolean all;
+    final boolean wantCompleted;
+    final long[] column;
+    final boolean descending;
+    final int chunks;
+    final int[] offsets;
+    final int total;
+    final int rowBits;
+    final long minKey;
+    final boolean packable;
+
+    Scan(TaskManager.QueryMode queryMode, TaskManager.SortMode sortMode) {
+      all = queryMode == TaskManager.QueryMode.ALL;
+      wantCompleted = queryMode == TaskManager.QueryMode.COMPLETE;
+      column = switch (sortMode) {
+        case CREATION, CREATION_R -> start;
+        case DUE, DUE_R -> due;
+        case COMPLETE, COMPLETE_R -> end;
+        default -> null;
+      };
+      descending = sortMode == TaskManager.SortMode.CREATION_R
+              || sortMode == TaskManager.SortMode.DUE_R
+              || sortMode == TaskManager.SortMode.COMPLETE_R
+              || sortMode == TaskManager.SortMode.HEAT;
+      chunks = (size + CHUNK_ROWS - 1) / CHUNK_ROWS;
+      int[] counts = new int[chunks];
+      long[] minKeys = new long[chunks];
+      long[] maxKeys = new long[chunks];
+      IntStream.range(0, chunks).parallel().forEach(chunk -> {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        int count = 0;
+        for (int row = chunk * CHUNK_ROWS, end = chunkEnd(chunk); row < end; row++) {
+          if (matches(row)) {
+            long key = key(row);
+            min = Math.min(min, key);
+            max = Math.max(max, key);
+            count++;
+          }
+        }
+        counts[chunk] = count;
+        minKeys[chunk] = min;
+        maxKeys[chunk] = max;
+      });
+      offsets = new int[chunks + 1];
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        offsets[chunk + 1] = offsets[chunk] + counts[chunk];
+        min = Math.min(min, minKeys[chunk]);
+        max = Math.max(max, maxKeys[chunk]);
+      }
+      total = offsets[chunks];
+      rowBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+      minKey = min;
+      long span = max - min;
+      // An overflowing span is negative; otherwise it must leave rowBits free below bit 63.
+      packable = total == 0 || (span >= 0 && (span >>> (63 - rowBits)) == 0);
+    }
+
+    boolean matches(int row) {
+      return all || completed[row] == wantCompleted;
+    }
+
+    long key(int row) {
+      long key = column != null ? column[row] : heat[row];
+      return descending ? ~key : key;
+    }
+
+    int chunkEnd(int chunk) {
+      return Math.min(size, (chunk + 1) * CHUNK_ROWS);
+    }
+
+    void pack(int chunk, long[] out, int position) {
+      for (int row = chunk * CHUNK_ROWS, end = chunkEnd(chunk); row < end; row++) {
+        if (matches(row)) {
+          out[position++] = ((key(row) - minKey) << rowBits) | row;
+        }
+      }
+    }
+
+    List<Task> toTasks(long[] packed) {
+      long rowMask = (1L << rowBits) - 1;
+      Task[] result = new Task[packed.length];
+      IntStream.range(0, packed.length).parallel()
+              .forEach(i -> result[i] = rows[(int) (packed[i] & rowMask)]);
+      return new ArrayList<>(Arrays.asList(result));
+    }
+  }
+
+  /**
+   * Returns the rows matching a query mode in ascending order.
+   */
+  int[] filter(TaskManager.QueryMode queryMode) {
+    int[] selected = new int[size];
+    int count = 0;
+    switch (queryMode) {
+      case COMPLETE -> {
+        for (int row = 0; row < size; row++) {
+          if (completed[row]) {
+            selected[count++] = row;
+          }
+        }
+      }
+      case INCOMPLETE -> {
+        for (int row = 0; row < size; row++) {
+          if (!completed[row]) {
+            selected[count++] = row;
+          }
+        }
+      }
+      default -> {
+        for (int row = 0; row < size; row++) {
+          selected[count++] = row;
+        }
+      }
+    }
+    return count == size ? selected : Arrays.copyOf(selected, count);
+  }
+
+  /**
+   * Returns ascending sort keys of the selected rows. Descending orders use the bitwise
+   * complement, which reverses the order of every long value without overflow.
+   *
+   * @return the keys, or null if the sort mode keeps list order.
+   */
+  long[] sortKeys(int[] selected, TaskManager.SortMode sortMode) {
+    int count = selected.length;
+    long[] keys = new long[count];
+    switch (sortMode) {
+      case CREATION -> {
+        for (int i = 0; i < count; i++) {
+          keys[i] = start[selected[i]];
+        }
+      }
+      case CREATION_R -> {
+        for (int i = 0; i < count; i++) {
+          keys[i] = ~start[selected[i]];
+        }
+      }
+      case DUE -> {
+        for (int i = 0; i < count; i++) {
+          keys[i] = due[selected[i]];
+        }
+      }
+      case DUE_R -> {
+        for (int i = 0; i < count; i++) {
+          keys[i] = ~due[selected[i]];
+        }
+      }
+      case HEAT -> {
+        for (int i = 0; i < count; i++) {
+          keys[i] = ~(long) heat[selected[i]];
+        }
+      }
+      case COMPLETE -> {
+        for (int i = 0; i < count; i++) {
+          keys[i] = end[selected[i]];
+        }
+      }
+      case COMPLETE_R -> {
+        for (int i = 0; i < count; i++) {
+          keys[i] = ~end[selected[i]];
+        }
+      }
+      default -> {
+        return null;
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Returns the tasks with a tag equal to the given one, in list order.
+   */
+  List<Task> withTag(Tag tag) {
+    List<Task> result = new ArrayList<>();
+    Integer code = tagCodeByTag.get(tag);
+    if (code == null) {
+      return result;
+    }
+    int wanted = code;
+    for (int row = 0; row < size; row++) {
+      if (tagCodes[row] == wanted) {
+        result.add(rows[row]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Stable sort of keys, moving rows along with them. Equal keys keep the order of their rows,
+   * which is list order, so the result matches List.sort with the equivalent comparator.
+   * Already ordered neighbouring runs, common for CREATION, are not merged.
+   */
+  static void sortByKey(long[] keys, int[] rows, int count) {
+    for (int lo = 0; lo < count; lo += SORT_RUN) {
+      insertionSort(keys, rows, lo, Math.min(lo + SORT_RUN, count));
+    }
+    if (count <= SORT_RUN) {
+      return;
+    }
+    long[] keyBuffer = new long[count];
+    int[] rowBuffer = new int[count];
+    for (int width = SORT_RUN; width < count; width *= 2) {
+      for (int lo = 0; lo < count - width; lo += 2 * width) {
+        int mid = lo + width;
+        int hi = Math.min(lo + 2 * width, count);
+        if (keys[mid - 1] > keys[mid]) {
+          merge(keys, rows, keyBuffer, rowBuffer, lo, mid, hi);
+        }
+      }
+    }
+  }
+
+  private static void insertionSort(long[] keys, int[] rows, int lo, int hi) {
+    for (int i = lo + 1; i < hi; i++) {
+      long key = keys[i];
+      int row = rows[i];
+      int j = i;
+      while (j > lo && keys[j - 1] > key) {
+        keys[j] = keys[j - 1];
+        rows[j] = rows[j - 1];
+        j--;
+      }
+      keys[j] = key;
+      rows[j] = row;
+    }
+  }
+
+  private static void merge(long[] keys, int[] rows, long[] keyBuffer, int[] rowBuffer,
+                            int lo, int mid, int hi) {
+    System.arraycopy(keys, lo, keyBuffer, lo, hi - lo);
+    System.arraycopy(rows, lo, rowBuffer, lo, hi - lo);
+    int left = lo;
+    int right = mid;
+    for (int i = lo; i < hi; i++) {
+      if (right >= hi || (left < mid && keyBuffer[left] <= keyBuffer[right])) {
+        keys[i] = keyBuffer[left];
+        rows[i] = rowBuffer[left++];
+      } else {
+        keys[i] = keyBuffer[right];
+        rows[i] = rowBuffer[right++];
+      }
+    }
+  }
+
+  private void write(int row, Task task) {
+    rows[row] = task;
+    ids[row] = task.getId();
+    completed[row] = task.isCompleted();
+    start[row] = task.getStartMillis();
+    due[row] = task.getExpectedEndMillis();
+    end[row] = task.getActualEndMillis();
+    heat[row] = task.getHeatIndex();
+    tagCodes[row] = encodeTag(task.getTag());
+  }
+
+  private int encodeTag(Tag tag) {
+    if (tag == null) {
+      return 0;
+    }
+    Integer code = tagCodeByTag.get(tag);
+    if (code == null) {
+      // Tags are mutable, so the dictionary keeps its own copy of the key.
+      Tag key = new Tag(tag.getName(), tag.getColor(), tag.getIcon());
+      tagDictionary.add(key);
+      code = tagDictionary.size();
+      tagCodeByTag.put(key, code);
+    }
+    return code;
+  }
+
+  private int rowOf(Task task) {
+    if (!rowByIdValid) {
+      Arrays.fill(rowById, -1);
+      for (int row = 0; row < size; row++) {
+        indexRow(ids[row], row);
+      }
+      rowByIdValid = true;
+    }
+    int id = task.getId();
+    if (id >= 0 && id < rowById.length) {
+      int row = rowById[id];
+      if (row >= 0 && row < size && rows[row] == task) {
+        return row;
+      }
+    }
+    return -1;
+  }
+
+  private void indexRow(int id, int row) {
+    if (id < 0) {
+      return;
+    }
+    if (id >= rowById.length) {
+      int oldLength = rowById.length;
+      rowById = Arrays.copyOf(rowById, Math.max(id + 1, oldLength * 2));
+      Arrays.fill(rowById, oldLength, rowById.length, -1);
+    }
+    rowById[id] = row;
+  }
+
+  private void grow() {
+    int capacity = rows.length * 2;
+    rows = Arrays.copyOf(rows, capacity);
+    ids = Arrays.copyOf(ids, capacity);
+    completed = Arrays.copyOf(completed, capacity);
+    start = Arrays.copyOf(start, capacity);
+    due = Arrays.copyOf(due, capacity);
+    end = Arrays.copyOf(end, capacity);
+    heat = Arrays.copyOf(heat, capacity);
+    tagCodes = Arrays.copyOf(tagCodes, capacity);
+  }
+}
@@ -0,0 +1,672 @@
+package task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A batch of mutations applied to the tasks of a {@link TaskManager}.
+ * Instances are only handed out by {@link TaskManager#batch(java.util.function.Consumer)},
+ * which holds the TaskManager write lock for the whole lifetime of the transaction.
+ * Every mutation records its inverse so that the batch can be rolled back if it fails, and
+ * itself so that the batch can be redone after an undo.
+ */
+public class TaskTransaction {
+
+  /**
+   * A mutation, as the closures which revert and reapply it. They capture the old and new
+   * values of the changed fields, not copies of the tasks.
+   */
+  record Command(Runnable undo, Runnable redo) {
+  }
+
+  /**
+   * The change from one list of the subtasks of a task, in pre-order, to another: the indexes
+   * of the subtasks to remove, the subtasks to insert with their index in the resulting list and
+   * their parent, and the subtasks which are kept but nested below another parent. Only the
+   * changed subtasks are held, so that a small edit of a large tree stays small in the undo
+   * history.
+   */
+  private record SubtaskDelta(int[] removedIndexes, int[] insertedIndexes, Subtask[] inserted,
+                              Subtask[] insertedParents, Subtask[] moved,
+                              Subtask[] movedParents) {
+
+    /**
+     * Computes the change between two lists. A subtask in both is kept if it is in the same
+     * order relative to the subtasks kept before it, otherwise it is removed and inserted again.
+     */
+    static SubtaskDelta between(List<Subtask> from, Subtask[] fromParents, List<Subtask> to,
+                                Subtask[] toParents) {
+      Map<Subtask, Integer> fromIndexes = new IdentityHashMap<>();
+      for (int i = 0; i < from.size(); i++) {
+        fromIndexes.put(from.get(i), i);
+      }
+      boolean[] kept = new boolean[from.size()];
+      List<Integer> insertedIndexes = new ArrayList<>();
+      List<Subtask> inserted = new ArrayList<>();
+      List<Subtask> insertedParents = new ArrayList<>();
+      List<Subtask> moved = new ArrayList<>();
+      List<Subtask> movedParents = new ArrayList<>();
+      int lastKept = -1;
+      for (int i = 0; i < to.size(); i++) {
+        Integer index = fromIndexes.get(to.get(i));
+        if (index != null && index > lastKept) {
+          kept[index] = true;
+          lastKept = index;
+          if (fromParents[index] != toParents[i]) {
+            moved.add(to.get(i));
+            movedParents.add(toParents[i]);
+          }
+        } else {
+          insertedIndexes.add(i);
+          inserted.add(to.get(i));
+          insertedParents.add(toParents[i]);
+        }
+      }
+      List<Integer> removedIndexes = new ArrayList<>();
+      for (int i = 0; i < kept.length; i++) {
+        if (!kept[i]) {
+          removedIndexes.add(i);
+        }
+      }
+      return new SubtaskDelta(toIntArray(removedIndexes), toIntArray(insertedIndexes),
+              inserted.toArray(new Subtask[0]), insertedParents.toArray(new Subtask[0]),
+              moved.toArray(new Subtask[0]), movedParents.toArray(new Subtask[0]));
+    }
+
+    private static int[] toIntArray(List<Integer> values) {
+      return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Applies the change to a task whose subtasks are the list it was computed from.
+     */
+    void applyTo(Task task) {
+      List<Subtask> subtasks = task.getSubtasks();
+      for (int i = removedIndexes.length - 1; i >= 0; i--) {
+        subtasks.remove(removedIndexes[i]);
+      }
+      for (int i = 0; i < inserted.length; i++) {
+        inserted[i].restoreParentSubtask(insertedParents[i]);
+        subtasks.add(insertedIndexes[i], inserted[i]);
+      }
+      for (int i = 0; i < moved.length; i++) {
+        moved[i].restoreParentSubtask(movedParents[i]);
+      }
+      task.clearSubtasks();
+      for (Subtask subtask : subtasks) {
+        subtask.setParentTask(task);
+        task.addSubtask(subtask);
+      }
+    }
+  }
+
+  private final TaskManager manager;
+  private final List<Command> log = new ArrayList<>();
+  private final Set<Task> added = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final Set<Task> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final Set<Task> updated = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  TaskTransaction(TaskManager manager) {
+    this.manager = manager;
+  }
+
+  /**
+   * Returns a snapshot of the tasks as seen inside this transaction.
+   *
+   * @return a list of tasks in creation order.
+   */
+  public List<Task> getTasks() {
+    return manager.read(ArrayList::new);
+  }
+
+  /**
+   * Adds a new task.
+   *
+   * @param task The task to add, cannot be null.
+   * @throws IllegalArgumentException if task is null.
+   */
+  public void addTask(Task task) {
+    if (task == null) {
+      throw new IllegalArgumentException("Task cannot be null.");
+    }
+    if (manager.findTaskByUid(task.getUid()) != null) {
+      throw new IllegalArgumentException("Task " + task.getUid() + " is already managed.");
+    }
+    int index = manager.taskCount();
+    manager.attachTask(index, task);
+    record(() -> detach(task), () -> reattach(index, task));
+    if (!removed.remove(task)) {
+      added.add(task);
+    }
+  }
+
+  /**
+   * Removes a task. Removing a task which is not managed has no effect.
+   *
+   * @param task The task to remove.
+   */
+  public void removeTask(Task task) {
+    int index = manager.detachTask(task);
+    if (index < 0) {
+      return;
+    }
+    record(() -> reattach(index, task), () -> detach(task));
+    updated.remove(task);
+    if (!added.remove(task)) {
+      removed.add(task);
+    }
+  }
+
+  /**
+   * Marks a task as completed or not completed. For an occurrence of a recurring task, this
+   * records the status on its template.
+   *
+   * @param task      The task to update.
+   * @param completed the new completion status.
+   */
+  public void setTaskCompleted(Task task, boolean completed) {
+    if (task.getTemplate() != null) {
+      setOccurrenceCompleted(task, completed);
+      return;
+    }
+    boolean oldCompleted = task.isCompleted();
+    long oldEndTime = task.getActualEndMillis();
+    task.setCompleted(completed);
+    long newEndTime = task.getActualEndMillis();
+    record(() -> task.restoreCompletion(oldCompleted, oldEndTime),
+            () -> task.restoreCompletion(completed, newEndTime));
+    manager.fieldChanged(TaskManager.IndexedField.COMPLETION);
+    markUpdated(task);
+  }
+
+  /**
+   * Marks a subtask as completed or not completed.
+   *
+   * @param subtask   The subtask to update.
+   * @param completed the new completion status.
+   */
+  public void setSubtaskCompleted(Subtask subtask, boolean completed) {
+    applySubtaskCompleted(subtask, completed);
+    subtaskChanged(subtask);
+  }
+
+  /**
+   * Sets the completion status of a subtask together with an explicit completion time.
+   *
+   * @param subtask       The subtask to update.
+   * @param completed     the new completion status.
+   * @param actualEndTime the completion time, ignored when completed is false.
+   */
+  public void setSubtaskCompleted(Subtask subtask, boolean completed, Date actualEndTime) {
+    boolean oldCompleted = subtask.isCompleted();
+    long oldEndTime = subtask.getActualEndMillis();
+    long newEndTime = completed ? Task.toMillis(actualEndTime) : oldEndTime;
+    subtask.restoreCompletion(completed, newEndTime);
+    record(() -> subtask.restoreCompletion(oldCompleted, oldEndTime),
+            () -> subtask.restoreCompletion(completed, newEndTime));
+    subtaskChanged(subtask);
+  }
+
+  /**
+   * Sets the completion status of a task together with an explicit completion time,
+   * e.g. when applying a change made on another device.
+   *
+   * @param task          The task to update.
+   * @param completed     the new completion status.
+   * @param actualEndTime the completion time, ignored when completed is false.
+   */
+  public void setTaskCompleted(Task task, boolean completed, Date actualEndTime) {
+    if (task.getTemplate() != null) {
+      setOccurrenceCompleted(task, completed);
+      return;
+    }
+    boolean oldCompleted = task.isCompleted();
+    long oldEndTime = task.getActualEndMillis();
+    long newEndTime = completed ? Task.toMillis(actualEndTime) : oldEndTime;
+    task.restoreCompletion(completed, newEndTime);
+    record(() -> task.restoreCompletion(oldCompleted, oldEndTime),
+            () -> task.restoreCompletion(completed, newEndTime));
+    manager.fieldChanged(TaskManager.IndexedField.COMPLETION);
+    markUpdated(task);
+  }
+
+  /**
+   * Marks an occurrence of a recurring task as completed or not completed. Only the status is
+   * stored, not the completion time.
+   *
+   * @param occurrence an occurrence from {@link RecurringTask#occurrences(long, long)}.
+   * @param completed  the new completion status.
+   */
+  public void setOccurrenceCompleted(Task occurrence, boolean completed) {
+    setOccurrenceCompleted(occurrence.getTemplate(), occurrence.getOccurrenceIndex(), completed);
+  }
+
+  /**
+   * Marks an occurrence of a recurring task, given by its index, as completed or not completed.
+   */
+  void setOccurrenceCompleted(RecurringTask template, int index, boolean completed) {
+    boolean oldCompleted = template.isOccurrenceCompleted(index);
+    template.setOccurrenceCompleted(index, completed);
+    record(() -> template.setOccurrenceCompleted(index, oldCompleted),
+            () -> template.setOccurrenceCompleted(index, completed));
+    manager.fieldChanged(TaskManager.IndexedField.RECURRENCE);
+  }
+
+  /**
+   * Adds a recurring task.
+   *
+   * @param template The recurring task to add.
+   * @throws IllegalArgumentException if the recurring task is already managed.
+   */
+  public void addRecurringTask(RecurringTask template) {
+    if (manager.getRecurringTasks().contains(template)) {
+      throw new IllegalArgumentException("Recurring task " + template.getUid()
+              + " is already managed.");
+    }
+    int index = manager.getRecurringTasks().size();
+    manager.attachRecurringTask(index, template);
+    record(() -> detachRecurring(template), () -> reattachRecurring(index, template));
+  }
+
+  /**
+   * Removes a recurring task. Removing one which is not managed has no effect.
+   *
+   * @param template The recurring task to remove.
+   */
+  public void removeRecurringTask(RecurringTask template) {
+    int index = manager.detachRecurringTask(template);
+    if (index >= 0) {
+      record(() -> reattachRecurring(index, template), () -> detachRecurring(template));
+    }
+  }
+
+  /**
+   * Increases the heat index of a task.
+   *
+   * @param task The task to update.
+   */
+  public void updateHeat(Task task) {
+    int oldHeat = task.getHeatIndex();
+    task.increaseHeat();
+    int newHeat = task.getHeatIndex();
+    record(() -> task.restoreHeat(oldHeat), () -> task.restoreHeat(newHeat));
+    manager.fieldChanged(TaskManager.IndexedField.HEAT);
+    markUpdated(task);
+  }
+
+  /**
+   * Sets the heat index of a task.
+   *
+   * @param task      The task to update.
+   * @param heatIndex the new heat index.
+   */
+  public void setHeat(Task task, int heatIndex) {
+    int oldHeat = task.getHeatIndex();
+    task.restoreHeat(heatIndex);
+    record(() -> task.restoreHeat(oldHeat), () -> task.restoreHeat(heatIndex));
+    manager.fieldChanged(TaskManager.IndexedField.HEAT);
+    markUpdated(task);
+  }
+
+  /**
+   * Sets the description of a task. Setting the current description has no effect.
+   *
+   * @param task        The task to update.
+   * @param description the new description.
+   */
+  public void setDescription(Task task, String description) {
+    String oldDescription = task.getDescription();
+    if (Objects.equals(oldDescription, description)) {
+      return;
+    }
+    task.setDescription(description);
+    record(() -> task.setDescription(oldDescription), () -> task.setDescription(description));
+    markUpdated(task);
+  }
+
+  /**
+   * Sets the due date of a task. Setting the current due date has no effect.
+   *
+   * @param task    The task to update.
+   * @param dueDate the new due date, cannot be null.
+   * @throws IllegalArgumentException if dueDate is null.
+   */
+  public void setDueDate(Task task, Date dueDate) {
+    if (dueDate == null) {
+      throw new IllegalArgumentException("Expected end time cannot be null.");
+    }
+    long oldDueDate = task.getExpectedEndMillis();
+    if (oldDueDate == dueDate.getTime()) {
+      return;
+    }
+    task.setDueDate(dueDate);
+    long newDueDate = task.getExpectedEndMillis();
+    record(() -> task.restoreExpectedEndMillis(oldDueDate),
+            () -> task.restoreExpectedEndMillis(newDueDate));
+    manager.fieldChanged(TaskManager.IndexedField.DUE);
+    markUpdated(task);
+  }
+
+  /**
+   * Sets the tag of a task. Setting a tag equal to the current one has no effect.
+   *
+   * @param task The task to update.
+   * @param tag  the new tag, may be null.
+   */
+  public void setTag(Task task, Tag tag) {
+    Tag oldTag = task.getTag();
+    if (Objects.equals(oldTag, tag)) {
+      return;
+    }
+    task.setTag(tag);
+    record(() -> task.setTag(oldTag), () -> task.setTag(tag));
+    markUpdated(task);
+  }
+
+  /**
+   * Replaces all subtasks of a task, re-parenting the new subtasks to it. The subtasks are
+   * nested below their parent subtask if it comes earlier in the list, e.g. when the list is in
+   * the pre-order returned by {@link Task#getSubtasks()}, and placed at the top level otherwise.
+   * Passing the current subtasks in their current order has no effect.
+   *
+   * @param task     The task to update.
+   * @param subtasks the new subtasks.
+   */
+  public void setSubtasks(Task task, List<Subtask> subtasks) {
+    List<Subtask> oldSubtasks = task.getSubtasks();
+    if (isSameSubtasks(oldSubtasks, subtasks)) {
+      return;
+    }
+    Subtask[] oldParents = parentsOf(oldSubtasks);
+    task.clearSubtasks();
+    for (Subtask subtask : subtasks) {
+      subtask.setParentTask(task);
+      task.addSubtask(subtask);
+    }
+    List<Subtask> newSubtasks = task.getSubtasks();
+    Subtask[] newParents = parentsOf(newSubtasks);
+    SubtaskDelta undo = SubtaskDelta.between(newSubtasks, newParents, oldSubtasks, oldParents);
+    SubtaskDelta redo = SubtaskDelta.between(oldSubtasks, oldParents, newSubtasks, newParents);
+    record(() -> undo.applyTo(task), () -> redo.applyTo(task));
+    manager.fieldChanged(TaskManager.IndexedField.SUBTASKS);
+    markUpdated(task);
+  }
+
+  /**
+   * Appends a subtask to the top level of a task, re-parenting it to the task.
+   *
+   * @param task    The task to update.
+   * @param subtask the subtask to add.
+   */
+  public void addSubtask(Task task, Subtask subtask) {
+    addSubtask(task, null, subtask);
+  }
+
+  /**
+   * Appends a subtask to the children of another subtask, re-parenting it to the task.
+   *
+   * @param task    The task to update.
+   * @param parent  the parent subtask, which must belong to task, or null for the top level.
+   * @param subtask the subtask to add.
+   * @throws IllegalArgumentException if parent does not belong to task.
+   */
+  public void addSubtask(Task task, Subtask parent, Subtask subtask) {
+    if (parent != null && parent.getOwner() != task) {
+      throw new IllegalArgumentException("Parent subtask does not belong to the task.");
+    }
+    Task oldParent = subtask.getParentTask();
+    Subtask oldParentSubtask = subtask.getParentSubtask();
+    subtask.setParentSubtask(parent);
+    subtask.setParentTask(task);
+    task.addSubtask(subtask);
+    Subtask newParentSubtask = subtask.getParentSubtask();
+    record(() -> {
+      task.removeSubtask(subtask);
+      subtask.setParentTask(oldParent);
+      subtask.restoreParentSubtask(oldParentSubtask);
+    }, () -> {
+      subtask.restoreParentSubtask(newParentSubtask);
+      subtask.setParentTask(task);
+      task.addSubtask(subtask);
+    });
+    manager.fieldChanged(TaskManager.IndexedField.SUBTASKS);
+    markUpdated(task);
+  }
+
+  /**
+   * Moves a subtask and its descendants below another subtask of the same task, as its last
+   * child.
+   *
+   * @param subtask   the subtask to move.
+   * @param newParent the new parent subtask, or null to move to the top level.
+   * @throws IllegalArgumentException if the subtasks belong to different tasks, or newParent is
+   *                                  the subtask itself or one of its descendants.
+   */
+  public void moveSubtask(Subtask subtask, Subtask newParent) {
+    Task task = subtask.getOwner();
+    if (task == null) {
+      throw new IllegalArgumentException("Subtask does not belong to a task.");
+    }
+    Subtask oldParent = subtask.getParentSubtask();
+    Subtask oldNext = task.nextSibling(subtask);
+    task.moveSubtask(subtask, newParent, null);
+    record(() -> task.moveSubtask(subtask, oldParent, oldNext),
+            () -> task.moveSubtask(subtask, newParent, null));
+    manager.fieldChanged(TaskManager.IndexedField.SUBTASKS);
+    markUpdated(task);
+  }
+
+  /**
+   * Records that a task is blocked by another task.
+   *
+   * @param blocker   The task which must be completed first.
+   * @param dependent The task which is blocked.
+   * @throws IllegalArgumentException if a task is not managed or the dependency would close a
+   *                                  cycle.
+   */
+  public void addDependency(Task blocker, Task dependent) {
+    if (manager.linkDependency(blocker, dependent)) {
+      record(() -> manager.unlinkDependency(blocker, dependent),
+              () -> manager.linkDependency(blocker, dependent));
+      manager.fieldChanged(TaskManager.IndexedField.DEPENDENCIES);
+      markUpdated(dependent);
+    }
+  }
+
+  /**
+   * Removes a dependency between two tasks.
+   *
+   * @param blocker   The task which blocks.
+   * @param dependent The task which is blocked.
+   */
+  public void removeDependency(Task blocker, Task dependent) {
+    if (manager.unlinkDependency(blocker, dependent)) {
+      record(() -> manager.linkDependency(blocker, dependent),
+              () -> manager.unlinkDependency(blocker, dependent));
+      manager.fieldChanged(TaskManager.IndexedField.DEPENDENCIES);
+      markUpdated(dependent);
+    }
+  }
+
+  /**
+   * Returns whether this transaction has changed anything.
+   *
+   * @return true if at least one mutation was applied.
+   */
+  boolean isEmpty() {
+    return log.isEmpty();
+  }
+
+  /**
+   * Reverts every mutation in reverse order.
+   */
+  void rollback() {
+    for (int i = log.size() - 1; i >= 0; i--) {
+      log.get(i).undo().run();
+    }
+    log.clear();
+    // Undo restores fields directly, bypassing markUpdated.
+    updated.forEach(manager::taskChanged);
+    removed.forEach(manager::taskChanged);
+    manager.allFieldsChanged();
+    added.clear();
+    removed.clear();
+    updated.clear();
+  }
+
+  TaskChangeEvent toEvent(long version) {
+    return new TaskChangeEvent(version, added, removed, updated);
+  }
+
+  /**
+   * Returns the mutations of this transaction as an entry of the undo history.
+   */
+  UndoHistory.Entry toHistoryEntry() {
+    return new UndoHistory.Entry(log.toArray(new Command[0]), added.toArray(new Task[0]),
+            removed.toArray(new Task[0]), updated.toArray(new Task[0]));
+  }
+
+  /**
+   * Reverts or reapplies the mutations of an earlier transaction, as mutations of this one, so
+   * that a failure rolls back whatever was replayed.
+   *
+   * @param entry the earlier transaction.
+   * @param undo  true to revert it, false to reapply it.
+   * @throws IllegalStateException if a task it updated is no longer managed, or one it added or
+   *                               removed has since been removed or added again.
+   */
+  void replay(UndoHistory.Entry entry, boolean undo) {
+    for (Task task : entry.updated()) {
+      if (manager.findTaskByUid(task.getUid()) != task) {
+        throw new IllegalStateException("Task " + task.getUid() + " is no longer managed.");
+      }
+    }
+    Command[] commands = entry.commands();
+    if (undo) {
+      for (int i = commands.length - 1; i >= 0; i--) {
+        commands[i].undo().run();
+        log.add(new Command(commands[i].redo(), commands[i].undo()));
+      }
+    } else {
+      for (Command command : commands) {
+        command.redo().run();
+        log.add(command);
+      }
+    }
+    Collections.addAll(removed, undo ? entry.added() : entry.removed());
+    Collections.addAll(added, undo ? entry.removed() : entry.added());
+    Collections.addAll(updated, entry.updated());
+    // Commands restore fields directly, bypassing markUpdated.
+    added.forEach(manager::taskChanged);
+    updated.forEach(manager::taskChanged);
+    manager.allFieldsChanged();
+  }
+
+  private void applySubtaskCompleted(Subtask subtask, boolean completed) {
+    boolean oldCompleted = subtask.isCompleted();
+    long oldEndTime = subtask.getActualEndMillis();
+    subtask.setCompleted(completed);
+    long newEndTime = subtask.getActualEndMillis();
+    record(() -> subtask.restoreCompletion(oldCompleted, oldEndTime),
+            () -> subtask.restoreCompletion(completed, newEndTime));
+  }
+
+  private void record(Runnable undo, Runnable redo) {
+    log.add(new Command(undo, redo));
+  }
+
+  /**
+   * Re-inserts a task at its former position, or at the end if fewer tasks are left.
+   */
+  private void reattach(int index, Task task) {
+    if (manager.findTaskByUid(task.getUid()) != null) {
+      throw new IllegalStateException("Task " + task.getUid() + " is managed again.");
+    }
+    manager.attachTask(Math.min(index, manager.taskCount()), task);
+  }
+
+  private void detach(Task task) {
+    if (manager.detachTask(task) < 0) {
+      throw new IllegalStateException("Task " + task.getUid() + " is no longer managed.");
+    }
+  }
+
+  private void reattachRecurring(int index, RecurringTask template) {
+    List<RecurringTask> templates = manager.getRecurringTasks();
+    if (templates.contains(template)) {
+      throw new IllegalStateException("Recurring task " + template.getUid()
+              + " is managed again.");
+    }
+    manager.attachRecurringTask(Math.min(index, templates.size()), template);
+  }
+
+  private void detachRecurring(RecurringTask template) {
+    if (manager.detachRecurringTask(template) < 0) {
+      throw new IllegalStateException("Recurring task " + template.getUid()
+              + " is no longer managed.");
+    }
+  }
+
+  /**
+   * Returns whether two lists hold the same subtask instances in the same order. The parents of
+   * subtasks in a task cannot be changed directly, so the same instances keep their nesting.
+   */
+  private static boolean isSameSubtasks(List<Subtask> subtasks, List<Subtask> others) {
+    if (subtasks.size() != others.size()) {
+      return false;
+    }
+    for (int i = 0; i < subtasks.size(); i++) {
+      if (subtasks.get(i) != others.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Subtask[] parentsOf(List<Subtask> subtasks) {
+    Subtask[] parents = new Subtask[subtasks.size()];
+    for (int i = 0; i < parents.length; i++) {
+      parents[i] = subtasks.get(i).getParentSubtask();
+    }
+    return parents;
+  }
+
+  /**
+   * Marks the parent of a subtask whose status changed as updated and, if enabled, completes
+   * each ancestor subtask, and finally the parent, whose descendants are all completed.
+   */
+  private void subtaskChanged(Subtask subtask) {
+    manager.fieldChanged(TaskManager.IndexedField.SUBTASKS);
+    Task parent = subtask.getParentTask();
+    if (parent == null) {
+      return;
+    }
+    markUpdated(parent);
+    if (!manager.isAutoCompleteParent() || !subtask.isCompleted()) {
+      return;
+    }
+    // A loop rather than recursion, as subtasks may be nested arbitrarily deep
+    for (Subtask ancestor = subtask.getParentSubtask(); ancestor != null
+            && !ancestor.isCompleted()
+            && ancestor.getCompletedSubtreeCount() == ancestor.getSubtreeCount() - 1;
+            ancestor = ancestor.getParentSubtask()) {
+      applySubtaskCompleted(ancestor, true);
+    }
+    if (!parent.isCompleted() && parent.getCompletedSubtaskCount() == parent.getSubtaskCount()) {
+      setTaskCompleted(parent, true);
+    }
+  }
+
+  private void markUpdated(Task task) {
+    manager.taskChanged(task);
+    if (!added.contains(task)) {
+      updated.add(task);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package task;
+
+/**
+ * Bounded history of undoable batches, oldest first, in a ring buffer. Entries before the
+ * cursor can be undone, entries after it redone; recording a new entry drops the ones which
+ * could be redone. Besides the number of entries, the total number of commands is bounded, so a
+ * few huge batches cannot hold on to unbounded memory.
+ * Only accessed under TaskManager's lock, readers under the read lock.
+ */
+final class UndoHistory {
+
+  /**
+   * The mutations of one batch and the tasks it added, removed and updated.
+   */
+  record Entry(TaskTransaction.Command[] commands, Task[] added, Task[] removed,
+               Task[] updated) {
+  }
+
+  // Total number of commands kept, over all entries
+  static final int MAX_COMMANDS = 100_000;
+
+  private Entry[] entries;
+  private int head;
+  private int size;
+  private int cursor;
+  private int commandCount;
+
+  UndoHistory(int capacity) {
+    entries = new Entry[Math.max(0, capacity)];
+  }
+
+  /**
+   * Records a batch as the next one to undo, evicting the oldest entries as needed. A batch
+   * with more than {@link #MAX_COMMANDS} commands clears the history instead, as the entries
+   * before it could not be undone without undoing it first.
+   */
+  void record(Entry entry) {
+    while (size > cursor) {
+      removeLast();
+    }
+    int commands = entry.commands().length;
+    if (entries.length == 0 || commands > MAX_COMMANDS) {
+      clear();
+      return;
+    }
+    while (size == entries.length || commandCount + commands > MAX_COMMANDS) {
+      removeFirst();
+    }
+    entries[(head + size) % entries.length] = entry;
+    size++;
+    cursor = size;
+    commandCount += commands;
+  }
+
+  /**
+   * Returns the entry which the next undo reverts, or null if there is none.
+   */
+  Entry peekUndo() {
+    return cursor == 0 ? null : entries[(head + cursor - 1) % entries.length];
+  }
+
+  /**
+   * Returns the entry which the next redo reapplies, or null if there is none.
+   */
+  Entry peekRedo() {
+    return cursor == size ? null : entries[(head + cursor) % entries.length];
+  }
+
+  void undone() {
+    cursor--;
+  }
+
+  void redone() {
+    cursor++;
+  }
+
+  int undoCount() {
+    return cursor;
+  }
+
+  int redoCount() {
+    return size - cursor;
+  }
+
+  /**
+   * Changes the maximum number of entries, keeping the newest ones.
+   */
+  void setCapacity(int capacity) {
+    capacity = Math.max(0, capacity);
+    while (size > capacity) {
+      removeFirst();
+    }
+    Entry[] resized = new Entry[capacity];
+    for (int i = 0; i < size; i++) {
+      resized[i] = entries[(head + i) % entries.length];
+    }
+    entries = resized;
+    head = 0;
+  }
+
+  void clear() {
+    while (size > 0) {
+      removeLast();
+    }
+    head = 0;
+    cursor = 0;
+  }
+
+  private void removeFirst() {
+    commandCount -= entries[head].commands().length;
+    entries[head] = null;
+    head = (head + 1) % entries.length;
+    size--;
+    cursor = Math.max(0, cursor - 1);
+  }
+
+  private void removeLast() {
+    int index = (head + size - 1) % entries.length;
+    commandCount -= entries[index].commands().length;
+    entries[index] = null;
+    size--;
+    cursor = Math.min(cursor, size);
+  }
+}
@@ -0,0 +1,165 @@
+package utils;
+
+import java.util.Locale;
+import org.json.JSONObject;
+import task.Compression;
+
+/**
+ * Immutable snapshot of the application settings. {@link Settings} publishes a new snapshot
+ * whenever settings.json changes, so a component reading several values from one snapshot
+ * always sees a consistent set.
+ *
+ * @param taskSavePath           file the tasks are saved to.
+ * @param autoSave               whether tasks are saved after every change.
+ * @param autoSaveDelayMillis    delay after a change before auto-saving; changes made in the
+ *                               meantime are saved together.
+ * @param storageBackend         how the task file is accessed.
+ * @param taskFileCompression    how the task file is compressed; none by default, which lets
+ *                               saves reuse unchanged records and earlier releases read it.
+ * @param syncDirectory          directory of the file-based sync server, empty to disable sync.
+ * @param apiPort                port of the local HTTP API, 0 to disable it.
+ * @param metricsFile            file metrics are appended to every minute, empty to disable.
+ * @param jfrEvents              whether the JTodo Java Flight Recorder events are registered.
+ * @param edtStallMillis         dispatch time after which the EDT watchdog samples stacks, 0 to
+ *                               disable it.
+ * @param edtStallFile           collapsed-stack file written by the EDT watchdog.
+ * @param columnarTable          whether TaskManager keeps a columnar copy of tasks for queries.
+ * @param parallelQueryThreshold number of tasks from which queries run in parallel.
+ * @param queryCacheSize         number of query results TaskManager caches, 0 to disable.
+ * @param pageSize               maximum number of rows a list view shows at once.
+ * @param autoCompleteParent     whether completing the last open subtask completes its task.
+ * @param recurrenceHorizonDays  number of days ahead for which occurrences of recurring tasks
+ *                               are listed.
+ * @param undoHistorySize        number of changes which can be undone, 0 to disable undo.
+ */
+public record Config(String taskSavePath,
+                     boolean autoSave,
+                     int autoSaveDelayMillis,
+                     StorageBackend storageBackend,
+                     Compression taskFileCompression,
+                     String syncDirectory,
+                     int apiPort,
+                     String metricsFile,
+                     boolean jfrEvents,
+                     int edtStallMillis,
+                     String edtStallFile,
+                     boolean columnarTable,
+                     int parallelQueryThreshold,
+                     int queryCacheSize,
+                     int pageSize,
+                     boolean autoCompleteParent,
+                     int recurrenceHorizonDays,
+                     int undoHistorySize) {
+
+  /**
+   * How the task file is accessed.
+   */
+  public enum StorageBackend {
+    /**
+     * Locked, watched and merged with other processes using the same file.
+     */
+    SHARED,
+    /**
+     * Owned by this process alone: saved without locking, external changes are ignored.
+     */
+    FILE
+  }
+
+  /**
+   * The settings used when settings.json does not exist or lacks a value.
+   */
+  public static final Config DEFAULTS = new Config("./tasks-saving.data", true, 500,
+          StorageBackend.SHARED, Compression.NONE, "", 0, "", false, 0, "./edt-stalls.folded",
+          false, 200_000, 8, 500, false, 14, 100);
+
+  /**
+   * Reads settings from JSON, using the default for every missing or invalid value.
+   *
+   * @param json the content of settings.json.
+   * @return a new snapshot.
+   */
+  public static Config fromJson(JSONObject json) {
+    Config d = DEFAULTS;
+    return new Config(
+            json.optString("taskSavePath", d.taskSavePath),
+            json.optBoolean("autoSave", d.autoSave),
+            Math.max(0, json.optInt("autoSaveDelayMillis", d.autoSaveDelayMillis)),
+            parseBackend(json.optString("storageBackend", d.storageBackend.name())),
+            parseCompression(json.optString("taskFileCompression",
+                    d.taskFileCompression.name())),
+            json.optString("syncDirectory", d.syncDirectory),
+            json.optInt("apiPort", d.apiPort),
+            json.optString("metricsFile", d.metricsFile),
+            json.optBoolean("jfrEvents", d.jfrEvents),
+            Math.max(0, json.optInt("edtStallMillis", d.edtStallMillis)),
+            json.optString("edtStallFile", d.edtStallFile),
+            json.optBoolean("columnarTable", d.columnarTable),
+            Math.max(0, json.optInt("parallelQueryThreshold", d.parallelQueryThreshold)),
+            Math.max(0, json.optInt("queryCacheSize", d.queryCacheSize)),
+            Math.max(1, json.optInt("pageSize", d.pageSize)),
+            json.optBoolean("autoCompleteParent", d.autoCompleteParent),
+            Math.max(0, json.optInt("recurrenceHorizonDays", d.recurrenceHorizonDays)),
+            Math.max(0, json.optInt("undoHistorySize", d.undoHistorySize)));
+  }
+
+  private static StorageBackend parseBackend(String name) {
+    try {
+      return StorageBackend.valueOf(name.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Unknown storage backend " + name + "; using "
+              + DEFAULTS.storageBackend + ".");
+      return DEFAULTS.storageBackend;
+    }
+  }
+
+  private static Compression parseCompression(String name) {
+    try {
+      return Compression.valueOf(name.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Unknown task file compression " + name + "; using "
+              + DEFAULTS.taskFileCompression + ".");
+      return DEFAULTS.taskFileCompression;
+    }
+  }
+
+  /**
+   * Writes these settings as JSON, in the format read by {@link #fromJson(JSONObject)}.
+   *
+   * @return a new JSON object.
+   */
+  public JSONObject toJson() {
+    JSONObject json = new JSONObject();
+    json.put("taskSavePath", taskSavePath);
+    json.put("autoSave", autoSave);
+    json.put("autoSaveDelayMillis", autoSaveDelayMillis);
+    json.put("storageBackend", storageBackend.name().toLowerCase(Locale.ROOT));
+    json.put("taskFileCompression", taskFileCompression.name().toLowerCase(Locale.ROOT));
+    json.put("syncDirectory", syncDirectory);
+    json.put("apiPort", apiPort);
+    json.put("metricsFile", metricsFile);
+    json.put("jfrEvents", jfrEvents);
+    json.put("edtStallMillis", edtStallMillis);
+    json.put("edtStallFile", edtStallFile);
+    json.put("columnarTable", columnarTable);
+    json.put("parallelQueryThreshold", parallelQueryThreshold);
+    json.put("queryCacheSize", queryCacheSize);
+    json.put("pageSize", pageSize);
+    json.put("autoCompleteParent", autoCompleteParent);
+    json.put("recurrenceHorizonDays", recurrenceHorizonDays);
+    json.put("undoHistorySize", undoHistorySize);
+    return json;
+  }
+
+  /**
+   * Returns a copy of these settings with another task save path.
+   *
+   * @param path the new task save path.
+   * @return a new snapshot.
+   */
+  public Config withTaskSavePath(String path) {
+    return new Config(path, autoSave, autoSaveDelayMillis, storageBackend, taskFileCompression,
+            syncDirectory, apiPort, metricsFile, jfrEvents, edtStallMillis, edtStallFile,
+            columnarTable, parallelQueryThreshold, queryCacheSize, pageSize, autoCompleteParent,
+            recurrenceHorizonDays, undoHistorySize);
+  }
+}
@@ -0,0 +1,16 @@
+package utils;
+
+/**
+ * Listener notified by {@link Settings} when a new configuration snapshot is published.
+ */
+@FunctionalInterface
+public interface ConfigListener {
+
+  /**
+   * Called on the thread which published the snapshot, e.g. the settings watcher thread.
+   *
+   * @param oldConfig the previous snapshot.
+   * @param newConfig the new snapshot, which differs from the previous one.
+   */
+  void configChanged(Config oldConfig, Config newConfig);
+}
@@ -1,28 +1,51 @@
 package utils;
 
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
  * Manages application settings, including task storage paths, in a singleton.
  * Loads settings from a JSON file or creates it if it does not exist.
+ *
+ * <p>The settings are held as an immutable {@link Config} snapshot published through a volatile
+ * reference, so reading a setting costs a field read. Once {@link #watch()} has been called,
+ * edits of the file are picked up while the application runs and announced to the
+ * {@link ConfigListener}s.
  */
 public class Settings {
 
-  private static final String SETTINGS_FILE = "settings.json";
-  private static Settings instance;
+  // May be overridden with -Djtodo.settings=<path>, e.g. by scripts.
+  private static final String SETTINGS_FILE = System.getProperty("jtodo.settings",
+          "settings.json");
+  // Time to let an editor finish writing the file before it is reloaded
+  private static final long SETTLE_MILLIS = 50;
+  // Volatile, as the startup thread creates the instance while the EDT may ask for it
+  private static volatile Settings instance;
 
-  // Default task save path
-  private String taskSavePath = "./tasks-saving.data";
-
-  // Auto-saving
-  private boolean autoSave = true;
+  private final Path file = Path.of(SETTINGS_FILE).toAbsolutePath();
+  private final List<ConfigListener> listeners = new CopyOnWriteArrayList<>();
+  // Writes the file off the caller's thread, in the order the changes were made
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "jtodo-settings-writer");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private volatile Config config = Config.DEFAULTS;
+  private Thread watchThread;
 
   // Private constructor to enforce singleton pattern
   private Settings() {
@@ -36,7 +59,11 @@ public class Settings {
    */
   public static Settings getInstance() {
     if (instance == null) {
-      instance = new Settings();
+      synchronized (Settings.class) {
+        if (instance == null) {
+          instance = new Settings();
+        }
+      }
     }
     return instance;
   }
@@ -45,50 +72,157 @@ public class Settings {
    * Loads settings from the JSON file. If the file does not exist, saves the default settings.
    */
   private void loadSettings() {
-    File file = new File(SETTINGS_FILE);
-    if (file.exists()) {
-      try (BufferedReader reader = new BufferedReader(
-              new FileReader(file, StandardCharsets.UTF_8))) {
-        StringBuilder content = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-          content.append(line);
-        }
-        JSONObject json = new JSONObject(content.toString());
-        this.taskSavePath = json.optString("taskSavePath", "./tasks-saving.data");
-        this.autoSave = json.optBoolean("autoSave", true);
-      } catch (IOException e) {
+    if (Files.exists(file)) {
+      Config loaded = readConfig();
+      if (loaded != null) {
+        config = loaded;
+      } else {
         System.err.println("Error loading settings file; using default settings.");
-        e.printStackTrace();
       }
     } else {
       saveSettings();  // Create settings file if it does not exist
     }
   }
 
+  /**
+   * Reads and parses the settings file.
+   *
+   * @return the settings in the file, or null if it cannot be read or parsed
+   */
+  private Config readConfig() {
+    try {
+      return Config.fromJson(new JSONObject(Files.readString(file, StandardCharsets.UTF_8)));
+    } catch (IOException | JSONException e) {
+      System.err.println("Error reading settings file " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+
   /**
    * Saves the current settings to the JSON file.
    */
   public void saveSettings() {
-    JSONObject json = new JSONObject();
-    json.put("taskSavePath", this.taskSavePath);
-    json.put("autoSave", this.autoSave);
+    writeConfig(config);
+  }
 
-    try (FileWriter writer = new FileWriter(SETTINGS_FILE, StandardCharsets.UTF_8)) {
-      writer.write(json.toString(4));  // Write formatted JSON output
+  private void writeConfig(Config snapshot) {
+    try {
+      Files.writeString(file, snapshot.toJson().toString(4),  // Write formatted JSON output
+              StandardCharsets.UTF_8);
     } catch (IOException e) {
       System.err.println("Error saving settings file.");
       e.printStackTrace();
     }
   }
 
+  /**
+   * Starts reloading the settings whenever the settings file changes. A file which cannot be
+   * parsed, e.g. while it is being edited, is ignored and the current settings are kept.
+   * Calling this more than once has no further effect.
+   */
+  public synchronized void watch() {
+    if (watchThread != null) {
+      return;
+    }
+    WatchService watchService;
+    try {
+      watchService = file.getFileSystem().newWatchService();
+      file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e) {
+      System.err.println("Error watching settings file; changes apply after a restart.");
+      e.printStackTrace();
+      return;
+    }
+    watchThread = new Thread(() -> watchLoop(watchService), "jtodo-settings-watch");
+    watchThread.setDaemon(true);
+    watchThread.start();
+  }
+
+  private void watchLoop(WatchService watchService) {
+    try (watchService) {
+      while (true) {
+        WatchKey key = watchService.take();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                  || file.getFileName().equals(event.context())) {
+            changed = true;
+          }
+        }
+        if (changed) {
+          Thread.sleep(SETTLE_MILLIS);
+          key.pollEvents();  // Drop the events caused by the rest of the write
+          reload();
+        }
+        if (!key.reset()) {
+          return;
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Stop watching
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Reads the settings file again and publishes its settings if they differ from the current
+   * ones. The current settings are kept if the file cannot be read or parsed.
+   */
+  public void reload() {
+    Config loaded = readConfig();
+    if (loaded != null) {
+      publish(loaded);
+    }
+  }
+
+  private synchronized void publish(Config newConfig) {
+    Config oldConfig = config;
+    if (oldConfig.equals(newConfig)) {
+      return;
+    }
+    config = newConfig;
+    for (ConfigListener listener : listeners) {
+      listener.configChanged(oldConfig, newConfig);
+    }
+  }
+
+  /**
+   * Gets the current settings. Components reading several settings should read them from one
+   * snapshot, which does not change while a reload happens.
+   *
+   * @return the current snapshot
+   */
+  public Config getConfig() {
+    return config;
+  }
+
+  /**
+   * Registers a listener notified whenever new settings are published.
+   *
+   * @param listener the listener to add
+   */
+  public void addConfigListener(ConfigListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Unregisters a config listener.
+   *
+   * @param listener the listener to remove
+   */
+  public void removeConfigListener(ConfigListener listener) {
+    listeners.remove(listener);
+  }
+
   /**
    * Gets the task save path.
    *
    * @return the task save path
    */
   public String getTaskSavePath() {
-    return taskSavePath;
+    return config.taskSavePath();
   }
 
   /**
@@ -97,18 +231,122 @@ public class Settings {
    * @return boolean value of setting
    */
   public boolean getAutoSaveSetting() {
-    return autoSave;
+    return config.autoSave();
+  }
+
+  /**
+   * Gets the directory of the file-based sync server.
+   *
+   * @return the sync directory, or an empty string if sync is disabled
+   */
+  public String getSyncDirectory() {
+    return config.syncDirectory();
+  }
+
+  /**
+   * Gets the port of the local HTTP API.
+   *
+   * @return the port, or 0 if the API is disabled
+   */
+  public int getApiPort() {
+    return config.apiPort();
+  }
+
+  /**
+   * Gets the file which metrics are periodically appended to.
+   *
+   * @return the metrics file, or an empty string if dumping is disabled
+   */
+  public String getMetricsFile() {
+    return config.metricsFile();
+  }
+
+  /**
+   * Gets whether the Java Flight Recorder events are enabled.
+   *
+   * @return true if the JTodo events should be registered with JFR
+   */
+  public boolean getJfrEventsSetting() {
+    return config.jfrEvents();
+  }
+
+  /**
+   * Gets the dispatch time after which the event dispatch thread counts as stalled.
+   *
+   * @return the threshold in milliseconds, or 0 if the watchdog is disabled
+   */
+  public int getEdtStallMillis() {
+    return config.edtStallMillis();
+  }
+
+  /**
+   * Gets the collapsed-stack file written by the EDT watchdog.
+   *
+   * @return the file path
+   */
+  public String getEdtStallFile() {
+    return config.edtStallFile();
+  }
+
+  /**
+   * Gets whether TaskManager runs queries on a columnar copy of the tasks.
+   *
+   * @return true if the columnar table is enabled
+   */
+  public boolean getColumnarTableSetting() {
+    return config.columnarTable();
+  }
+
+  /**
+   * Gets the number of tasks from which TaskManager queries run in parallel.
+   *
+   * @return the minimum store size for parallel queries
+   */
+  public int getParallelQueryThreshold() {
+    return config.parallelQueryThreshold();
   }
 
   /**
-   * Sets the task save path and saves settings.
+   * Gets the number of query results TaskManager caches.
+   *
+   * @return the cache size, 0 if query results are not cached
+   */
+  public int getQueryCacheSize() {
+    return config.queryCacheSize();
+  }
+
+  /**
+   * Gets whether completing the last open subtask of a task also completes the task.
+   *
+   * @return true if parents are completed automatically
+   */
+  public boolean getAutoCompleteParentSetting() {
+    return config.autoCompleteParent();
+  }
+
+  /**
+   * Gets the number of days ahead for which occurrences of recurring tasks are listed.
+   *
+   * @return the number of days, counted from the start of today
+   */
+  public int getRecurrenceHorizonDays() {
+    return config.recurrenceHorizonDays();
+  }
+
+  /**
+   * Sets the task save path. The new settings are published at once and written to the file
+   * in the background.
    *
    * @param path the new task save path
    */
   public void setTaskSavePath(String path) {
-    this.taskSavePath = path;
-    saveSettings();
+    Config snapshot;
+    synchronized (this) {
+      publish(config.withTaskSavePath(path));
+      snapshot = config;
+    }
+    writer.execute(() -> writeConfig(snapshot));
   }
 
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+package utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import task.Subtask;
+import task.Tag;
+import task.Task;
+
+/**
+ * JSON representation of tasks shared by the command line and the HTTP API.
+ * Times are written as epoch milliseconds.
+ */
+public final class TaskJson {
+
+  private TaskJson() {
+  }
+
+  /**
+   * Converts a task and its subtasks to JSON.
+   *
+   * @param task the task to convert.
+   * @return a JSON object.
+   */
+  public static JSONObject toJson(Task task) {
+    JSONObject json = new JSONObject();
+    json.put("id", task.getId());
+    json.put("uid", task.getUid());
+    json.put("title", task.getTitle());
+    json.put("description", task.getDescription() == null ? JSONObject.NULL
+            : task.getDescription());
+    json.put("completed", task.isCompleted());
+    json.put("startTime", task.getStartMillis());
+    json.put("expectedEndTime", task.getExpectedEndMillis());
+    json.put("actualEndTime", task.getActualEndMillis() == Task.NO_TIME ? JSONObject.NULL
+            : task.getActualEndMillis());
+    json.put("heatIndex", task.getHeatIndex());
+    json.put("blockedBy", new JSONArray(task.getBlockerUids()));
+    Tag tag = task.getTag();
+    if (tag != null) {
+      json.put("tag", new JSONObject()
+              .put("name", tag.getName())
+              .put("color", tag.getColor())
+              .put("icon", tag.getIcon() == null ? JSONObject.NULL : tag.getIcon()));
+    }
+    JSONArray subtasks = new JSONArray();
+    for (Subtask subtask : task.getSubtasks()) {
+      subtasks.put(toJson(subtask));
+    }
+    json.put("subtasks", subtasks);
+    return json;
+  }
+
+  /**
+   * Converts a subtask to JSON.
+   *
+   * @param subtask the subtask to convert.
+   * @return a JSON object.
+   */
+  public static JSONObject toJson(Subtask subtask) {
+    return new JSONObject()
+            .put("id", subtask.getId())
+            .put("uid", subtask.getUid())
+            .put("title", subtask.getTitle())
+            .put("description", subtask.getDescription() == null ? JSONObject.NULL
+                    : subtask.getDescription())
+            .put("completed", subtask.isCompleted())
+            .put("startTime", subtask.getStartMillis())
+            .put("actualEndTime", subtask.getActualEndMillis() == Task.NO_TIME ? JSONObject.NULL
+                    : subtask.getActualEndMillis())
+            .put("parentUid", subtask.getParentSubtask() == null ? JSONObject.NULL
+                    : subtask.getParentSubtask().getUid())
+            .put("subtreeCount", subtask.getSubtreeCount())
+            .put("completedSubtreeCount", subtask.getCompletedSubtreeCount());
+  }
+}
@@ -0,0 +1,58 @@
+#!/bin/sh
+# Measures GUI startup, e.g. ./startup-bench.sh 10
+#
+# Starts JTodo the given number of times (default 5) with the JDK's default CDS archive only,
+# then with the AppCDS archive of build-cds.sh, and prints the average milliseconds from launching the JVM to:
+#   firstPaint   the main frame's first paint, before any task is shown
+#   firstScreen  the first screen of tasks is painted
+#   interactive  every row is built and the menus are enabled
+# Each run exits on its own once the other frames' classes are loaded. Needs a display.
+
+DIR=$(cd "$(dirname "$0")" && pwd)
+CP=${JTODO_JAR:-$DIR/out/artifacts/JTodo_jar/JTodo.jar}
+ARCHIVE=${JTODO_CDS_ARCHIVE:-$DIR/out/jtodo.jsa}
+RUNS=${1:-5}
+
+now_millis() {
+  # %N is not supported everywhere, e.g. by BSD date
+  millis=$(date +%s%3N)
+  case $millis in
+    *N) echo "$(date +%s)000" ;;
+    *) echo "$millis" ;;
+  esac
+}
+
+bench() {
+  label=$1
+  shift
+  i=0
+  while [ "$i" -lt "$RUNS" ]; do
+    java "$@" -Djtodo.startup.launchMillis="$(now_millis)" -Djtodo.startup.report=true \
+      -Djtodo.startup.exit=true $JTODO_JAVA_OPTS -cp "$CP" Main 2>&1 >/dev/null
+    i=$((i + 1))
+  done | awk -v label="$label" '
+    $1 == "startup" { sum[$2] += $3; count[$2]++ }
+    END {
+      printf "%-8s", label
+      n = split("firstPaint firstScreen interactive", names, " ")
+      for (i = 1; i <= n; i++) {
+        if (count[names[i]] > 0) {
+          printf "  %s %6.1f ms", names[i], sum[names[i]] / count[names[i]]
+        } else {
+          printf "  %s      - ms", names[i]
+        }
+      }
+      printf "\n"
+    }'
+}
+
+if [ ! -f "$CP" ]; then
+  echo "$CP not found, build the JTodo:jar artifact first." >&2
+  exit 1
+fi
+bench "JDK CDS" -Xshare:auto
+if [ -f "$ARCHIVE" ]; then
+  bench "AppCDS" -XX:SharedArchiveFile="$ARCHIVE" -Xlog:cds=off -Xlog:cds+dynamic=off
+else
+  echo "$ARCHIVE not found, run ./build-cds.sh to compare with AppCDS." >&2
+fi